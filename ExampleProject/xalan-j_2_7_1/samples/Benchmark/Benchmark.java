@@ -0,0 +1,680 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.util.Random;
+import java.util.Vector;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xml.dtm.Axis;
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMAxisTraverser;
+import org.apache.xml.dtm.DTMManager;
+import org.apache.xml.serializer.Method;
+import org.apache.xml.serializer.OutputPropertiesFactory;
+import org.apache.xml.serializer.Serializer;
+import org.apache.xml.serializer.SerializerFactory;
+import org.apache.xml.utils.IntVector;
+import org.apache.xml.utils.PrefixResolverDefault;
+import org.apache.xpath.XPath;
+import org.apache.xpath.objects.XMLStringFactoryImpl;
+
+/**
+ * What it does: this sample times the main parts of the processor on a
+ * fixed set of documents and stylesheets, so that the effect of a change
+ * can be measured by running it before and after the change.
+ *
+ * The workloads are:
+ *
+ * xpath.compile: compiling a set of XPath expressions.
+ * dtm.build: parsing the catalog into a DTM.
+ * compile.interpretive.*, compile.xsltc.*: compiling a stylesheet into a
+ * Templates object with the interpretive processor and with XSLTC.
+ * transform.interpretive.*, transform.xsltc.*: transforming a document
+ * with a compiled stylesheet, writing the result to a stream which
+ * discards it.
+ * serialize.xml, serialize.html: writing the catalog, already parsed
+ * into a DTM, with the XML and the HTML serializers.
+ * lookup.default.T, lookup.concurrent.T: resolving node handles of
+ * several copies of the catalog to their DTMs, and asking the DTMs about
+ * the nodes, from T threads at once, with DTMManagerDefault and with
+ * DTMManagerConcurrent. Each thread does the same amount of work, so the
+ * time per operation stays flat as T grows for as long as the lookups
+ * scale with the number of processors. T doubles from 1 up to the number
+ * of processors.
+ * dispatch.xsltc.N: transforming a generated document of rows with an
+ * XSLTC stylesheet of N templates which match row[@type = '...'], for N
+ * from 10 to 1000, to show how template dispatch scales with the number
+ * of templates.
+ *
+ * The source document of most workloads is a catalog of 600 book
+ * records, generated from a fixed seed so that every run measures the
+ * same input.
+ *
+ * Description of files included with the sample:
+ *
+ * templates.xsl: template rules, attribute value templates, string
+ * functions and conditionals.
+ * keys.xsl: grouping with xsl:key.
+ * sort.xsl: xsl:sort on several text and number keys.
+ * number.xsl: xsl:number and format-number().
+ * html.xsl: a table written with the HTML output method.
+ *
+ * The todo.xml and todo.xsl files of the translets sample are used as
+ * well, as an example of a small document and a larger stylesheet.
+ *
+ * Each workload is run repeatedly for a fixed time, first to warm up
+ * and then to measure, and the average time per operation is reported
+ * for each measured iteration. Run this sample from the Benchmark
+ * subdirectory with
+ *
+ * java Benchmark [-warmup n] [-iterations n] [-time ms] [-only name]
+ *                [-threads n]
+ *
+ * where -warmup is the number of iterations which are not reported
+ * (default 3), -iterations the number which are (default 5), -time the
+ * length of each iteration in milliseconds (default 1000), -only runs
+ * only the workloads whose names contain the given string, and -threads
+ * sets the largest number of threads of the lookup workloads (default
+ * the number of processors).
+ */
+public class Benchmark
+{
+  /** The stylesheets which are compiled and used to transform the catalog. */
+  static final String[] STYLESHEETS =
+    { "templates", "keys", "sort", "number", "html" };
+
+  /** The expressions compiled by xpath.compile. */
+  static final String[] EXPRESSIONS = {
+    "/catalog/book",
+    "//book[@category = 'history']/title",
+    "book[price > 20 and price < 40][position() mod 2 = 1]",
+    "sum(chapters/chapter/@pages) div count(chapters/chapter)",
+    "concat(substring-before(author, ' '), ', ', substring-after(author, ' '))",
+    "ancestor-or-self::*[1]/following-sibling::book[last()]",
+    "count(preceding::book[@year = current()/@year]) + 1",
+    "translate(normalize-space(title), 'abc', 'ABC') != ''",
+    "id('b0001')/chapters/chapter[2]",
+    "../book[not(@category = preceding-sibling::book/@category)]"
+  };
+
+  /** The numbers of templates of the dispatch.xsltc workloads. */
+  static final int[] DISPATCH_TEMPLATES = { 10, 30, 100, 300, 1000 };
+
+  /** The number of rows in the document of the dispatch.xsltc workloads. */
+  static final int DISPATCH_ROWS = 5000;
+
+  /** The number of copies of the catalog of the lookup workloads. */
+  static final int LOOKUP_DOCUMENTS = 4;
+
+  /** The number of handle lookups each thread of a lookup workload does. */
+  static final int LOOKUPS = 1000000;
+
+  /** The number of book records in the catalog. */
+  static final int CATALOG_BOOKS = 600;
+
+  /** The seed of the random numbers the catalog is generated from. */
+  static final long CATALOG_SEED = 20070101L;
+
+  /** The values the fields of the catalog's records are chosen from. */
+  static final String[] CATEGORIES = {
+    "children", "cookery", "fiction", "history", "poetry", "reference",
+    "science", "travel"
+  };
+  static final String[] FIRST_NAMES = {
+    "Anna", "Bruno", "Carla", "David", "Elena", "Farid", "Greta", "Hiro",
+    "Ines", "Jonas", "Kofi", "Lena", "Marta", "Nils", "Olga", "Pavel"
+  };
+  static final String[] LAST_NAMES = {
+    "Adler", "Brandt", "Castro", "Dubois", "Eriksen", "Fischer", "Garcia",
+    "Hansen", "Ivanov", "Jensen", "Kowalski", "Larsen", "Moreau", "Novak"
+  };
+  static final String[] WORDS = {
+    "Atlas", "Bridge", "Empire", "Forest", "Garden", "Glass", "Harbor",
+    "Island", "Journey", "Kitchen", "Lantern", "Letters", "Machine", "North",
+    "Orchard", "River", "Salt", "Silent", "Stone", "Winter"
+  };
+  static final String[] CENTS = { "00", "25", "50", "95", "99" };
+
+  // Configurable options
+  private static int warmup = 3;
+  private static int iterations = 5;
+  private static long time = 1000;
+  private static String only = null;
+  private static int threads = Runtime.getRuntime().availableProcessors();
+
+  /** Directory holding the input files. */
+  private static File dir = new File(".");
+
+  /**
+   * Where the lookup workloads leave their results, so that the lookups
+   * can not be optimized away.
+   */
+  static volatile int lookupResult;
+
+  /** A stream which throws away what is written to it. */
+  static final OutputStream SINK = new OutputStream()
+  {
+    public void write(int b) {}
+    public void write(byte[] b, int off, int len) {}
+  };
+
+  /**
+   * A piece of work which is timed.
+   */
+  static abstract class Workload
+  {
+    final String name;
+
+    Workload(String name)
+    {
+      this.name = name;
+    }
+
+    /**
+     * Do the work once.
+     */
+    abstract void run() throws Exception;
+  }
+
+  public static void main(String argv[])
+    throws Exception
+  {
+    for (int i = 0; i < argv.length; i++)
+    {
+      if ("-warmup".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        warmup = Integer.parseInt(argv[++i]);
+      else if ("-iterations".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        iterations = Integer.parseInt(argv[++i]);
+      else if ("-time".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        time = Long.parseLong(argv[++i]);
+      else if ("-only".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        only = argv[++i];
+      else if ("-dir".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        dir = new File(argv[++i]);
+      else if ("-threads".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        threads = Integer.parseInt(argv[++i]);
+      else
+      {
+        System.err.println("Usage: java Benchmark [-warmup n] [-iterations n]"
+                           + " [-time ms] [-only name] [-dir directory]"
+                           + " [-threads n]");
+        System.exit(1);
+      }
+    }
+
+    Vector workloads = createWorkloads();
+
+    System.out.println("# " + org.apache.xalan.Version.getVersion()
+                       + ", Java " + System.getProperty("java.version")
+                       + " (" + System.getProperty("java.vm.name") + ")");
+    System.out.println("# warmup " + warmup + ", iterations " + iterations
+                       + ", " + time + " ms each; times in ms per operation");
+
+    for (int i = 0; i < workloads.size(); i++)
+    {
+      Workload workload = (Workload) workloads.elementAt(i);
+
+      if (only == null || workload.name.indexOf(only) >= 0)
+        measure(workload);
+    }
+  }
+
+  /**
+   * Run a workload and print the time per operation of each measured
+   * iteration, then their mean and the smallest.
+   */
+  static void measure(Workload workload)
+    throws Exception
+  {
+    DecimalFormat format = new DecimalFormat("0.000");
+    StringBuffer line = new StringBuffer(workload.name);
+    double total = 0;
+    double best = Double.MAX_VALUE;
+
+    for (int i = 0; i < warmup; i++)
+      iterate(workload);
+
+    for (int i = 0; i < iterations; i++)
+    {
+      double msPerOp = iterate(workload);
+
+      total += msPerOp;
+      best = Math.min(best, msPerOp);
+      line.append('\t').append(format.format(msPerOp));
+    }
+
+    if (iterations > 0)
+    {
+      line.append("\tmean ").append(format.format(total / iterations));
+      line.append("\tbest ").append(format.format(best));
+    }
+
+    System.out.println(line);
+  }
+
+  /**
+   * Run a workload over and over for the length of an iteration.
+   *
+   * @return The average time of one run, in milliseconds.
+   */
+  static double iterate(Workload workload)
+    throws Exception
+  {
+    long start = System.currentTimeMillis();
+    long now;
+    int ops = 0;
+
+    do
+    {
+      workload.run();
+      ops++;
+      now = System.currentTimeMillis();
+    }
+    while (now - start < time);
+
+    return (double) (now - start) / ops;
+  }
+
+  /**
+   * Load the input files and set up the workloads. Files are read into
+   * memory first, and the catalog is generated there, so that neither
+   * is timed.
+   */
+  static Vector createWorkloads()
+    throws Exception
+  {
+    Vector workloads = new Vector();
+    final byte[] catalog = createCatalog();
+    final String catalogId = dir.toURL().toString();
+    final TransformerFactory interpretive =
+      new org.apache.xalan.processor.TransformerFactoryImpl();
+    final TransformerFactory xsltc =
+      new org.apache.xalan.xsltc.trax.TransformerFactoryImpl();
+
+    workloads.addElement(new Workload("xpath.compile")
+    {
+      PrefixResolverDefault resolver = new PrefixResolverDefault(null);
+
+      void run() throws Exception
+      {
+        for (int i = 0; i < EXPRESSIONS.length; i++)
+          new XPath(EXPRESSIONS[i], null, resolver, XPath.SELECT, null);
+      }
+    });
+
+    workloads.addElement(new Workload("dtm.build")
+    {
+      DTMManager manager =
+        DTMManager.newInstance(XMLStringFactoryImpl.getFactory());
+
+      void run() throws Exception
+      {
+        DTM dtm = manager.getDTM(source(catalog, catalogId), false, null,
+                                 false, true);
+
+        manager.release(dtm, true);
+      }
+    });
+
+    // Stylesheets are compiled, and then used to transform.
+    File todoDir = new File(new File(dir, ".."), "translets");
+    String[] names = new String[STYLESHEETS.length + 1];
+    File[] sheets = new File[names.length];
+    byte[][] docs = new byte[names.length][];
+    String[] docIds = new String[names.length];
+
+    for (int i = 0; i < STYLESHEETS.length; i++)
+    {
+      names[i] = STYLESHEETS[i];
+      sheets[i] = new File(dir, STYLESHEETS[i] + ".xsl");
+      docs[i] = catalog;
+      docIds[i] = catalogId;
+    }
+    names[STYLESHEETS.length] = "todo";
+    sheets[STYLESHEETS.length] = new File(todoDir, "todo.xsl");
+    docs[STYLESHEETS.length] = read(new File(todoDir, "todo.xml"));
+    docIds[STYLESHEETS.length] =
+      new File(todoDir, "todo.xml").toURL().toString();
+
+    addCompileWorkloads(workloads, "compile.interpretive.", interpretive,
+                        names, sheets);
+    addCompileWorkloads(workloads, "compile.xsltc.", xsltc, names, sheets);
+    addTransformWorkloads(workloads, "transform.interpretive.", interpretive,
+                          names, sheets, docs, docIds);
+    addTransformWorkloads(workloads, "transform.xsltc.", xsltc, names,
+                          sheets, docs, docIds);
+
+    addLookupWorkloads(workloads, "lookup.default.",
+                       new org.apache.xml.dtm.ref.DTMManagerDefault(),
+                       catalog, catalogId);
+    addLookupWorkloads(workloads, "lookup.concurrent.",
+                       new org.apache.xml.dtm.ref.DTMManagerConcurrent(),
+                       catalog, catalogId);
+    addDispatchWorkloads(workloads, "dispatch.xsltc.", xsltc);
+
+    // The serializers are fed from a DTM, which is built once.
+    DTMManager manager =
+      DTMManager.newInstance(XMLStringFactoryImpl.getFactory());
+    final DTM dtm = manager.getDTM(source(catalog, catalogId), false, null,
+                                   false, true);
+
+    workloads.addElement(new Workload("serialize.xml")
+    {
+      void run() throws Exception
+      {
+        serialize(dtm, Method.XML);
+      }
+    });
+
+    workloads.addElement(new Workload("serialize.html")
+    {
+      void run() throws Exception
+      {
+        serialize(dtm, Method.HTML);
+      }
+    });
+
+    return workloads;
+  }
+
+  /**
+   * Add a workload which compiles each of the stylesheets.
+   */
+  static void addCompileWorkloads(Vector workloads, String prefix,
+                                  final TransformerFactory factory,
+                                  String[] names, File[] sheets)
+    throws Exception
+  {
+    for (int i = 0; i < names.length; i++)
+    {
+      final byte[] sheet = read(sheets[i]);
+      final String sheetId = sheets[i].toURL().toString();
+
+      workloads.addElement(new Workload(prefix + names[i])
+      {
+        void run() throws Exception
+        {
+          factory.newTemplates(source(sheet, sheetId));
+        }
+      });
+    }
+  }
+
+  /**
+   * Add a workload which transforms a document with each of the
+   * stylesheets, compiled beforehand.
+   */
+  static void addTransformWorkloads(Vector workloads, String prefix,
+                                    TransformerFactory factory,
+                                    String[] names, File[] sheets,
+                                    byte[][] docs, String[] docIds)
+    throws Exception
+  {
+    for (int i = 0; i < names.length; i++)
+    {
+      final Templates templates =
+        factory.newTemplates(new StreamSource(sheets[i]));
+      final byte[] doc = docs[i];
+      final String docId = docIds[i];
+
+      workloads.addElement(new Workload(prefix + names[i])
+      {
+        void run() throws Exception
+        {
+          templates.newTransformer().transform(source(doc, docId),
+                                               new StreamResult(SINK));
+        }
+      });
+    }
+  }
+
+  /**
+   * Add a workload for each number of threads, doubling from 1 up to the
+   * -threads option, which resolves node handles of LOOKUP_DOCUMENTS
+   * copies of the catalog with a DTM manager.  Each thread resolves
+   * LOOKUPS handles to their DTMs and asks each DTM for the type of the
+   * node, which maps the handle back to a node identity.
+   */
+  static void addLookupWorkloads(Vector workloads, String prefix,
+                                 final DTMManager manager, byte[] catalog,
+                                 String catalogId)
+    throws Exception
+  {
+    manager.setXMLStringFactory(XMLStringFactoryImpl.getFactory());
+
+    IntVector nodes = new IntVector();
+
+    for (int i = 0; i < LOOKUP_DOCUMENTS; i++)
+    {
+      DTM dtm = manager.getDTM(source(catalog, catalogId), false, null,
+                               false, true);
+      int doc = dtm.getDocument();
+      DTMAxisTraverser traverser = dtm.getAxisTraverser(Axis.DESCENDANT);
+
+      for (int node = traverser.first(doc); DTM.NULL != node;
+           node = traverser.next(doc, node))
+        nodes.addElement(node);
+    }
+
+    final int[] handles = new int[nodes.size()];
+
+    for (int i = 0; i < handles.length; i++)
+      handles[i] = nodes.elementAt(i);
+
+    for (int count = 1; count <= Math.max(1, threads); count *= 2)
+    {
+      final int n = count;
+
+      workloads.addElement(new Workload(prefix + n)
+      {
+        void run() throws Exception
+        {
+          Thread[] workers = new Thread[n];
+
+          for (int t = 0; t < n; t++)
+          {
+            final int start = t * handles.length / n;
+
+            workers[t] = new Thread()
+            {
+              public void run()
+              {
+                int sum = 0;
+
+                for (int i = 0, h = start; i < LOOKUPS; i++)
+                {
+                  int handle = handles[h];
+
+                  sum += manager.getDTM(handle).getNodeType(handle);
+                  if (++h == handles.length)
+                    h = 0;
+                }
+                lookupResult = sum;
+              }
+            };
+            workers[t].start();
+          }
+          for (int t = 0; t < n; t++)
+            workers[t].join();
+        }
+      });
+    }
+  }
+
+  /**
+   * Add a workload for each number of templates in DISPATCH_TEMPLATES,
+   * which transforms a document of rows with a stylesheet that has that
+   * many templates matching row[@type = '...'].  The rows use every type
+   * in turn, so that each template is instantiated.
+   */
+  static void addDispatchWorkloads(Vector workloads, String prefix,
+                                   TransformerFactory factory)
+    throws Exception
+  {
+    for (int i = 0; i < DISPATCH_TEMPLATES.length; i++)
+    {
+      int count = DISPATCH_TEMPLATES[i];
+      StringBuffer sheet = new StringBuffer();
+      StringBuffer doc = new StringBuffer();
+
+      sheet.append("<xsl:stylesheet version=\"1.0\" xmlns:xsl=")
+           .append("\"http://www.w3.org/1999/XSL/Transform\">\n")
+           .append("<xsl:template match=\"/\"><out>")
+           .append("<xsl:apply-templates select=\"rows/row\"/>")
+           .append("</out></xsl:template>\n");
+      for (int t = 0; t < count; t++)
+      {
+        sheet.append("<xsl:template match=\"row[@type = 't").append(t)
+             .append("']\"><r").append(t % 10).append(">")
+             .append("<xsl:value-of select=\".\"/></r").append(t % 10)
+             .append("></xsl:template>\n");
+      }
+      sheet.append("</xsl:stylesheet>\n");
+
+      doc.append("<rows>");
+      for (int r = 0; r < DISPATCH_ROWS; r++)
+      {
+        doc.append("<row type=\"t").append(r % count).append("\">")
+           .append(r).append("</row>");
+      }
+      doc.append("</rows>");
+
+      final Templates templates = factory.newTemplates(
+        new StreamSource(new java.io.StringReader(sheet.toString())));
+      final byte[] bytes = doc.toString().getBytes("UTF-8");
+
+      workloads.addElement(new Workload(prefix + count)
+      {
+        void run() throws Exception
+        {
+          templates.newTransformer().transform(source(bytes, null),
+                                               new StreamResult(SINK));
+        }
+      });
+    }
+  }
+
+  /**
+   * Generate the catalog of CATALOG_BOOKS book records.  Each book has a
+   * category, a year from 1950 to 2006, a title of two to four words, an
+   * author, a price of up to 80 euros and one to four chapters.  The
+   * random numbers start from CATALOG_SEED, so the catalog is the same
+   * every time.
+   */
+  static byte[] createCatalog()
+    throws IOException
+  {
+    Random random = new Random(CATALOG_SEED);
+    StringBuffer doc = new StringBuffer();
+    DecimalFormat id = new DecimalFormat("0000");
+
+    doc.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n");
+    for (int b = 1; b <= CATALOG_BOOKS; b++)
+    {
+      doc.append("  <book id=\"b").append(id.format(b))
+         .append("\" category=\"")
+         .append(CATEGORIES[random.nextInt(CATEGORIES.length)])
+         .append("\" year=\"").append(1950 + random.nextInt(57))
+         .append("\">\n    <title>");
+      for (int w = 2 + random.nextInt(3); w > 0; w--)
+      {
+        doc.append(WORDS[random.nextInt(WORDS.length)]);
+        if (w > 1)
+          doc.append(' ');
+      }
+      doc.append("</title>\n    <author>")
+         .append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(' ')
+         .append(LAST_NAMES[random.nextInt(LAST_NAMES.length)])
+         .append("</author>\n    <price currency=\"EUR\">")
+         .append(4 + random.nextInt(76)).append('.')
+         .append(CENTS[random.nextInt(CENTS.length)])
+         .append("</price>\n    <chapters>\n");
+      for (int c = 1 + random.nextInt(4); c > 0; c--)
+      {
+        doc.append("      <chapter pages=\"").append(5 + random.nextInt(56))
+           .append("\">").append(WORDS[random.nextInt(WORDS.length)])
+           .append(' ')
+           .append(WORDS[random.nextInt(WORDS.length)].toLowerCase())
+           .append("</chapter>\n");
+      }
+      doc.append("    </chapters>\n  </book>\n");
+    }
+    doc.append("</catalog>\n");
+    return doc.toString().getBytes("UTF-8");
+  }
+
+  /**
+   * Write a whole DTM with the serializer for an output method.
+   */
+  static void serialize(DTM dtm, String method)
+    throws Exception
+  {
+    Serializer serializer = SerializerFactory.getSerializer(
+      OutputPropertiesFactory.getDefaultMethodProperties(method));
+
+    serializer.setOutputStream(SINK);
+    dtm.dispatchToEvents(dtm.getDocument(), serializer.asContentHandler());
+  }
+
+  /**
+   * Make a Source which reads from memory.
+   */
+  static Source source(byte[] bytes, String systemId)
+  {
+    return new StreamSource(new ByteArrayInputStream(bytes), systemId);
+  }
+
+  /**
+   * Read a whole file.
+   */
+  static byte[] read(File file)
+    throws IOException
+  {
+    InputStream in = new FileInputStream(file);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+
+    try
+    {
+      while ((n = in.read(buffer)) > 0)
+        out.write(buffer, 0, n);
+    }
+    finally
+    {
+      in.close();
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,44 @@
+<xsl:stylesheet 
+      xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="1.0">
+
+  <!--
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the  "License");
+   * you may not use this file except in compliance with the License.
+   * You may obtain a copy of the License at
+   *
+   *     http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing, software
+   * distributed under the License is distributed on an "AS IS" BASIS,
+   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   * See the License for the specific language governing permissions and
+   * limitations under the License.
+  -->
+
+  <!-- A table of books, written by the HTML serializer. -->
+  <xsl:output method="html"/>
+
+  <xsl:template match="catalog">
+    <html>
+      <head><title>Catalog</title></head>
+      <body>
+        <table border="1">
+          <tr><th>Title</th><th>Author</th><th>Year</th><th>Price</th></tr>
+          <xsl:for-each select="book">
+            <tr>
+              <td><a href="#{@id}"><xsl:value-of select="title"/></a></td>
+              <td><xsl:value-of select="author"/></td>
+              <td><xsl:value-of select="@year"/></td>
+              <td align="right"><xsl:value-of select="price"/>&#160;&#8364;</td>
+            </tr>
+          </xsl:for-each>
+        </table>
+      </body>
+    </html>
+  </xsl:template>
+
+</xsl:stylesheet>
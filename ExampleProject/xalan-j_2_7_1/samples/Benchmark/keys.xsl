@@ -0,0 +1,40 @@
+<xsl:stylesheet 
+      xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="1.0">
+
+  <!--
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the  "License");
+   * you may not use this file except in compliance with the License.
+   * You may obtain a copy of the License at
+   *
+   *     http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing, software
+   * distributed under the License is distributed on an "AS IS" BASIS,
+   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   * See the License for the specific language governing permissions and
+   * limitations under the License.
+  -->
+
+  <!-- Grouping with xsl:key, in the Muenchian style. -->
+  <xsl:output method="xml" indent="yes"/>
+
+  <xsl:key name="by-category" match="book" use="@category"/>
+  <xsl:key name="by-author" match="book" use="author"/>
+
+  <xsl:template match="catalog">
+    <categories>
+      <xsl:for-each select="book[generate-id() = generate-id(key('by-category', @category)[1])]">
+        <category name="{@category}" books="{count(key('by-category', @category))}">
+          <xsl:for-each select="key('by-category', @category)[generate-id() = generate-id(key('by-author', author)[1])]">
+            <author name="{author}" books="{count(key('by-author', author))}"/>
+          </xsl:for-each>
+        </category>
+      </xsl:for-each>
+    </categories>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,48 @@
+<xsl:stylesheet 
+      xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="1.0">
+
+  <!--
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the  "License");
+   * you may not use this file except in compliance with the License.
+   * You may obtain a copy of the License at
+   *
+   *     http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing, software
+   * distributed under the License is distributed on an "AS IS" BASIS,
+   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   * See the License for the specific language governing permissions and
+   * limitations under the License.
+  -->
+
+  <!-- Numbering with xsl:number, and format-number(). -->
+  <xsl:output method="xml" indent="yes"/>
+
+  <xsl:decimal-format name="euro" decimal-separator="," grouping-separator="."/>
+
+  <xsl:template match="catalog">
+    <contents>
+      <xsl:apply-templates select="book/chapters/chapter"/>
+    </contents>
+  </xsl:template>
+
+  <xsl:template match="chapter">
+    <entry>
+      <xsl:attribute name="section">
+        <xsl:number level="multiple" count="book|chapter" format="1.a"/>
+      </xsl:attribute>
+      <xsl:attribute name="seq">
+        <xsl:number level="any" format="i"/>
+      </xsl:attribute>
+      <xsl:attribute name="price">
+        <xsl:value-of select="format-number(../../price * 1000, '#.##0,00', 'euro')"/>
+      </xsl:attribute>
+      <xsl:value-of select="."/>
+    </entry>
+  </xsl:template>
+
+</xsl:stylesheet>
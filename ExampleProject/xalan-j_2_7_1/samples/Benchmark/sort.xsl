@@ -0,0 +1,46 @@
+<xsl:stylesheet 
+      xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="1.0">
+
+  <!--
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the  "License");
+   * you may not use this file except in compliance with the License.
+   * You may obtain a copy of the License at
+   *
+   *     http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing, software
+   * distributed under the License is distributed on an "AS IS" BASIS,
+   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   * See the License for the specific language governing permissions and
+   * limitations under the License.
+  -->
+
+  <!-- Sorting on several keys, by number and by text. -->
+  <xsl:output method="xml" indent="yes"/>
+
+  <xsl:template match="catalog">
+    <by-price>
+      <xsl:for-each select="book">
+        <xsl:sort select="@category"/>
+        <xsl:sort select="price" data-type="number" order="descending"/>
+        <xsl:sort select="title"/>
+        <book ref="{@id}" price="{price}"/>
+      </xsl:for-each>
+    </by-price>
+    <by-year>
+      <xsl:apply-templates select="book">
+        <xsl:sort select="@year" data-type="number"/>
+        <xsl:sort select="author" case-order="upper-first"/>
+      </xsl:apply-templates>
+    </by-year>
+  </xsl:template>
+
+  <xsl:template match="book">
+    <book ref="{@id}" year="{@year}"/>
+  </xsl:template>
+
+</xsl:stylesheet>
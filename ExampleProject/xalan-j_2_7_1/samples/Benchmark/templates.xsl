@@ -0,0 +1,55 @@
+<xsl:stylesheet 
+      xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="1.0">
+
+  <!--
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the  "License");
+   * you may not use this file except in compliance with the License.
+   * You may obtain a copy of the License at
+   *
+   *     http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing, software
+   * distributed under the License is distributed on an "AS IS" BASIS,
+   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   * See the License for the specific language governing permissions and
+   * limitations under the License.
+  -->
+
+  <!-- Template rules, attribute value templates and conditionals. -->
+  <xsl:output method="xml" indent="yes"/>
+
+  <xsl:template match="catalog">
+    <books count="{count(book)}">
+      <xsl:apply-templates select="book"/>
+    </books>
+  </xsl:template>
+
+  <xsl:template match="book">
+    <book ref="{@id}" pages="{sum(chapters/chapter/@pages)}">
+      <xsl:if test="@year &lt; 1970">
+        <xsl:attribute name="classic">yes</xsl:attribute>
+      </xsl:if>
+      <xsl:apply-templates select="title|author|price"/>
+    </book>
+  </xsl:template>
+
+  <xsl:template match="title">
+    <name><xsl:value-of select="translate(., 'abcdefghijklmnopqrstuvwxyz', 'ABCDEFGHIJKLMNOPQRSTUVWXYZ')"/></name>
+  </xsl:template>
+
+  <xsl:template match="author">
+    <by surname="{substring-after(., ' ')}"><xsl:value-of select="substring-before(., ' ')"/></by>
+  </xsl:template>
+
+  <xsl:template match="price">
+    <xsl:choose>
+      <xsl:when test=". &gt; 50"><expensive><xsl:value-of select="."/></expensive></xsl:when>
+      <xsl:otherwise><cost><xsl:value-of select="."/></cost></xsl:otherwise>
+    </xsl:choose>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.xpath.CachedXPathAPI;
+import org.apache.xpath.axes.IteratorCache;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * What it does: this sample checks that a long-lived CachedXPathAPI does
+ * not keep every expression it has evaluated. CachedXPathAPI compiles the
+ * expression string on each call but keeps one XPathContext, which keeps
+ * free iterators of the expressions it evaluates for reuse. The sample
+ * evaluates many calls over a small document and checks that the number
+ * of expressions whose iterators are kept stays bounded, and reports the
+ * heap in use before and after.
+ *
+ * Usage: java CachedXPath [-calls n]
+ *
+ * It exits with status 1 if more expressions are kept than the cache
+ * allows.
+ */
+public class CachedXPath
+{
+  public static void main(String argv[])
+    throws Exception
+  {
+    int calls = 20000;
+
+    for (int i = 0; i < argv.length; i++)
+    {
+      if ("-calls".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        calls = Integer.parseInt(argv[++i]);
+      else
+      {
+        System.err.println("Usage: java CachedXPath [-calls n]");
+        System.exit(1);
+      }
+    }
+
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+      .parse(new InputSource(new StringReader(
+        "<doc><item n='1'><v>1</v></item><item n='2'><v>2</v></item></doc>")));
+    CachedXPathAPI api = new CachedXPathAPI();
+    IteratorCache cache = api.getXPathContext().getIteratorCache();
+
+    long before = usedMemory();
+
+    for (int i = 0; i < calls; i++)
+      api.eval(doc, "count(/doc/item/v)");
+
+    long after = usedMemory();
+    int pools = cache.getPoolCount();
+
+    System.out.println(calls + " calls: " + pools + " expressions kept, heap "
+                       + (before / 1024) + "K before, "
+                       + (after / 1024) + "K after");
+    if (pools > cache.getMaxPools())
+    {
+      System.out.println("FAILED, at most " + cache.getMaxPools()
+                         + " expressions should be kept");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Get the heap in use after a collection.
+   */
+  static long usedMemory()
+  {
+    Runtime rt = Runtime.getRuntime();
+
+    for (int i = 0; i < 3; i++)
+      System.gc();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xalan.processor.TransformerFactoryImpl;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * What it does: this sample checks that the parallel-threads attribute
+ * does not change the result of a transformation. Each stylesheet in the
+ * directory is run over a document, once on one thread and once with
+ * xsl:apply-templates selections shared among several threads, and the
+ * results are compared. By default the stylesheets of the Benchmark
+ * sample are run over the catalog it generates; the catalog has enough
+ * records for its larger selections to be shared, while its smaller
+ * ones are not. The -in option names a file in the directory to use
+ * instead.
+ * Last, a stylesheet reaching DOM trees, which the threads can't share,
+ * through document() and through a global parameter is run the same way.
+ *
+ * Usage: java Parallel [-threads n] [-dir directory] [-in file]
+ *
+ * It exits with status 1 if any of the results differ.
+ */
+public class Parallel
+{
+  public static void main(String argv[])
+    throws Exception
+  {
+    int threads = 4;
+    File dir = new File("../Benchmark");
+    String in = null;
+
+    for (int i = 0; i < argv.length; i++)
+    {
+      if ("-threads".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        threads = Integer.parseInt(argv[++i]);
+      else if ("-dir".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        dir = new File(argv[++i]);
+      else if ("-in".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        in = argv[++i];
+      else
+      {
+        System.err.println("Usage: java Parallel [-threads n]"
+                           + " [-dir directory] [-in file]");
+        System.exit(1);
+      }
+    }
+
+    byte[] doc = (null == in) ? Benchmark.createCatalog()
+                              : Benchmark.read(new File(dir, in));
+    File[] files = dir.listFiles();
+    boolean failed = false;
+
+    for (int i = 0; i < files.length; i++)
+    {
+      if (!files[i].getName().endsWith(".xsl"))
+        continue;
+
+      String expected = transform(new StreamSource(files[i]), doc, 0, false);
+      String actual = transform(new StreamSource(files[i]), doc, threads,
+                                false);
+
+      failed |= !compare(files[i].getName(), expected, actual);
+    }
+
+    for (int i = 0; i < 2; i++)
+    {
+      boolean domParam = (i == 1);
+      String name = domParam ? "DOM parameter" : "document() of a DOM tree";
+      String expected = transform(new StreamSource(new StringReader(DOM_XSL)),
+                                  doc, 0, domParam);
+      String actual = transform(new StreamSource(new StringReader(DOM_XSL)),
+                                doc, threads, domParam);
+
+      failed |= !compare(name, expected, actual);
+    }
+    if (failed)
+      System.exit(1);
+  }
+
+  /**
+   * A stylesheet which loads a document in the middle of a large
+   * selection, and uses a global parameter.
+   */
+  static final String DOM_XSL =
+      "<xsl:stylesheet version='1.0'"
+    + " xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>"
+    + "<xsl:param name='side'/>"
+    + "<xsl:template match='/'>"
+    + "<out><xsl:apply-templates select='//*'/></out>"
+    + "</xsl:template>"
+    + "<xsl:template match='*'>"
+    + "<e n='{name()}' side='{$side}'>"
+    + "<xsl:if test='position() = 1000'>"
+    + "<xsl:value-of select=\"document('side.xml')/side\"/>"
+    + "</xsl:if>"
+    + "</e>"
+    + "</xsl:template>"
+    + "</xsl:stylesheet>";
+
+  /**
+   * Print whether two results are the same.
+   *
+   * @return true if they are.
+   */
+  static boolean compare(String name, String expected, String actual)
+  {
+    if (expected.equals(actual))
+    {
+      System.out.println(name + ": ok");
+      return true;
+    }
+    System.out.println(name + ": FAILED, " + actual.length()
+                       + " characters instead of " + expected.length());
+    return false;
+  }
+
+  /**
+   * Parse a small document into a DOM tree.
+   */
+  static Document side()
+    throws Exception
+  {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+      .parse(new InputSource(new StringReader("<side>from DOM</side>")));
+  }
+
+  /**
+   * Transform the document with a stylesheet, on the given number of
+   * threads, or serially if it is 0. The documents loaded by document()
+   * are DOM trees, and the side parameter is either a string or one.
+   */
+  static String transform(Source xsl, byte[] doc, int threads,
+                          boolean domParam)
+    throws Exception
+  {
+    TransformerFactory tfactory = new TransformerFactoryImpl();
+
+    tfactory.setAttribute(TransformerFactoryImpl.PROPERTY_PARALLEL_THREADS,
+                          new Integer(threads));
+
+    Templates templates = tfactory.newTemplates(xsl);
+    Transformer transformer = templates.newTransformer();
+    StringWriter out = new StringWriter();
+
+    transformer.setURIResolver(new URIResolver()
+      {
+        public Source resolve(String href, String base)
+          throws TransformerException
+        {
+          try
+          {
+            return new DOMSource(side(), href);
+          }
+          catch (Exception e)
+          {
+            throw new TransformerException(e);
+          }
+        }
+      });
+    if (domParam)
+      transformer.setParameter("side", side().getDocumentElement());
+    else
+      transformer.setParameter("side", "from a string");
+
+    transformer.transform(new StreamSource(new ByteArrayInputStream(doc)),
+                          new StreamResult(out));
+    return out.toString();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xalan.processor.TransformerFactoryImpl;
+import org.apache.xalan.transformer.TransformerImpl;
+
+/**
+ * What it does: this sample checks that the streaming attribute does not
+ * change the result of a transformation. Each stylesheet in the directory
+ * is run over a generated document of items with many children, once in
+ * the normal way and once in streaming mode, and the results are
+ * compared. The document is big enough for the streamed tree to discard
+ * nodes while it is being transformed.
+ *
+ * Usage: java Streaming [-items n] [-children n] [-dir directory]
+ *
+ * It exits with status 1 if any of the results differ.
+ */
+public class Streaming
+{
+  public static void main(String argv[])
+    throws Exception
+  {
+    int items = 3;
+    int children = 3000;
+    File dir = new File(".");
+
+    for (int i = 0; i < argv.length; i++)
+    {
+      if ("-items".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        items = Integer.parseInt(argv[++i]);
+      else if ("-children".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        children = Integer.parseInt(argv[++i]);
+      else if ("-dir".equalsIgnoreCase(argv[i]) && i + 1 < argv.length)
+        dir = new File(argv[++i]);
+      else
+      {
+        System.err.println("Usage: java Streaming [-items n] [-children n]"
+                           + " [-dir directory]");
+        System.exit(1);
+      }
+    }
+
+    String doc = createDocument(items, children);
+    File[] files = dir.listFiles();
+    boolean failed = false;
+
+    for (int i = 0; i < files.length; i++)
+    {
+      if (!files[i].getName().endsWith(".xsl"))
+        continue;
+
+      String expected = transform(files[i], doc, false);
+      String actual = transform(files[i], doc, true);
+
+      if (expected.equals(actual))
+        System.out.println(files[i].getName() + ": ok");
+      else
+      {
+        System.out.println(files[i].getName() + ": FAILED, "
+                           + actual.length() + " characters instead of "
+                           + expected.length());
+        failed = true;
+      }
+    }
+    if (failed)
+      System.exit(1);
+  }
+
+  /**
+   * Make a document of items, each of which has the given number of
+   * children, inside a couple of levels of wrapper elements.
+   */
+  static String createDocument(int items, int children)
+  {
+    StringBuffer doc = new StringBuffer();
+
+    doc.append("<doc><group>");
+    for (int i = 0; i < items; i++)
+    {
+      doc.append("<item n=\"").append(i).append("\">");
+      for (int j = 0; j < children; j++)
+        doc.append("<c>").append(i).append('.').append(j).append("</c>");
+      doc.append("</item>");
+    }
+    doc.append("</group></doc>");
+    return doc.toString();
+  }
+
+  /**
+   * Transform the document with a stylesheet, with or without the
+   * streaming attribute.
+   */
+  static String transform(File xsl, String doc, boolean streaming)
+    throws Exception
+  {
+    TransformerFactory tfactory = new TransformerFactoryImpl();
+
+    tfactory.setAttribute(TransformerFactoryImpl.FEATURE_STREAMING,
+                          Boolean.valueOf(streaming));
+
+    Templates templates = tfactory.newTemplates(new StreamSource(xsl));
+    Transformer transformer = templates.newTransformer();
+
+    if (streaming && transformer instanceof TransformerImpl
+        && !((TransformerImpl) transformer).getStreaming())
+      System.out.println(xsl.getName() + ": not streamable");
+
+    StringWriter out = new StringWriter();
+    transformer.transform(new StreamSource(new StringReader(doc)),
+                          new StreamResult(out));
+    return out.toString();
+  }
+}
@@ -0,0 +1,42 @@
+<?xml version="1.0"?>
+
+  <!--
+   * Licensed to the Apache Software Foundation (ASF) under one
+   * or more contributor license agreements. See the NOTICE file
+   * distributed with this work for additional information
+   * regarding copyright ownership. The ASF licenses this file
+   * to you under the Apache License, Version 2.0 (the  "License");
+   * you may not use this file except in compliance with the License.
+   * You may obtain a copy of the License at
+   *
+   *     http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing, software
+   * distributed under the License is distributed on an "AS IS" BASIS,
+   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   * See the License for the specific language governing permissions and
+   * limitations under the License.
+  -->
+
+<!-- Selects items on the descendant axis and then walks the children of
+     each one, so the selection has to go back into an item's subtree after
+     its children have been processed. -->
+<xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform" version="1.0">
+
+<xsl:template match="/">
+<out>
+  <xsl:apply-templates select="descendant::item"/>
+</out>
+</xsl:template>
+
+<xsl:template match="item">
+<item n="{@n}">
+  <xsl:apply-templates/>
+</item>
+</xsl:template>
+
+<xsl:template match="c">
+<c><xsl:value-of select="."/></c>
+</xsl:template>
+
+</xsl:stylesheet>
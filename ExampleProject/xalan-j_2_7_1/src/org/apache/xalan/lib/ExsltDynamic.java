@@ -22,14 +22,18 @@ package org.apache.xalan.lib;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerException;
 
 import org.apache.xalan.extensions.ExpressionContext;
 import org.apache.xalan.res.XSLMessages;
 import org.apache.xalan.res.XSLTErrorResources;
+import org.apache.xalan.templates.StylesheetRoot;
+import org.apache.xalan.transformer.TransformerImpl;
 import org.apache.xpath.NodeSet;
 import org.apache.xpath.NodeSetDTM;
 import org.apache.xpath.XPath;
+import org.apache.xpath.XPathCache;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.objects.XBoolean;
 import org.apache.xpath.objects.XNodeSet;
@@ -62,6 +66,80 @@ public class ExsltDynamic extends ExsltBase
 {
 
    public static final String EXSL_URI = "http://exslt.org/common";
+
+  /**
+   * System property giving the number of compiled expressions which the
+   * dynamic functions keep for reuse, for each stylesheet. The default is
+   * 256.
+   */
+  public static final String XPATH_CACHE_SIZE_PROPERTY =
+    "org.apache.xalan.lib.ExsltDynamic.cacheSize";
+
+  /** The size of the expression cache of each stylesheet. */
+  private static final int s_xpathCacheSize = getXPathCacheSizeProperty();
+
+  /**
+   * Get the cache of compiled expressions the dynamic functions use when
+   * run by transformers made from a stylesheet, to read its statistics
+   * or change its size.
+   *
+   * @param templates The stylesheet, as compiled by the Xalan
+   *                  interpretive processor.
+   *
+   * @return The XPathCache of the stylesheet, or null if it is not a
+   * StylesheetRoot.
+   */
+  public static XPathCache getXPathCache(Templates templates)
+  {
+    if (templates instanceof StylesheetRoot)
+      return ((StylesheetRoot) templates).getXPathCache(s_xpathCacheSize);
+    return null;
+  }
+
+  /**
+   * Compile an expression, or take it from the expression cache of the
+   * running stylesheet. The cache belongs to the stylesheet, since the
+   * compiled expressions refer to its elements.
+   *
+   * @param xctxt The XPath runtime state.
+   * @param expr The expression string.
+   *
+   * @return The compiled expression, which must not be modified.
+   *
+   * @throws TransformerException if the expression cannot be compiled.
+   */
+  private static XPath getXPath(XPathContext xctxt, String expr)
+    throws TransformerException
+  {
+    Object owner = xctxt.getOwnerObject();
+
+    if (owner instanceof TransformerImpl)
+      return getXPathCache(((TransformerImpl) owner).getStylesheet())
+        .getXPath(expr, xctxt.getSAXLocator(), xctxt.getNamespaceContext(),
+                  XPath.SELECT);
+
+    return new XPath(expr, xctxt.getSAXLocator(),
+                     xctxt.getNamespaceContext(), XPath.SELECT);
+  }
+
+  /**
+   * Read the XPATH_CACHE_SIZE_PROPERTY system property.
+   *
+   * @return The requested cache size, or 256 if it is not set or invalid.
+   */
+  private static int getXPathCacheSizeProperty()
+  {
+    try
+    {
+      String size = System.getProperty(XPATH_CACHE_SIZE_PROPERTY);
+      if (null != size)
+        return Math.max(0, Integer.parseInt(size.trim()));
+    }
+    catch (SecurityException se){}
+    catch (NumberFormatException nfe){}
+
+    return 256;
+  }
    
   /**
    * The dyn:max function calculates the maximum value for the nodes passed as 
@@ -121,9 +199,7 @@ public class ExsltDynamic extends ExsltBase
       double result = 0;
       try
       {
-        XPath dynamicXPath = new XPath(expr, xctxt.getSAXLocator(),
-                                       xctxt.getNamespaceContext(),
-                                       XPath.SELECT);
+        XPath dynamicXPath = getXPath(xctxt, expr);
         result = dynamicXPath.execute(xctxt, contextNode, xctxt.getNamespaceContext()).num();
       }
       catch (TransformerException e)
@@ -202,9 +278,7 @@ public class ExsltDynamic extends ExsltBase
       double result = 0;
       try
       {
-        XPath dynamicXPath = new XPath(expr, xctxt.getSAXLocator(),
-                                       xctxt.getNamespaceContext(),
-                                       XPath.SELECT);
+        XPath dynamicXPath = getXPath(xctxt, expr);
         result = dynamicXPath.execute(xctxt, contextNode, xctxt.getNamespaceContext()).num();
       }
       catch (TransformerException e)
@@ -282,9 +356,7 @@ public class ExsltDynamic extends ExsltBase
       double result = 0;
       try
       {
-        XPath dynamicXPath = new XPath(expr, xctxt.getSAXLocator(),
-                                       xctxt.getNamespaceContext(),
-                                       XPath.SELECT);
+        XPath dynamicXPath = getXPath(xctxt, expr);
         result = dynamicXPath.execute(xctxt, contextNode, xctxt.getNamespaceContext()).num();
       }
       catch (TransformerException e)
@@ -388,9 +460,7 @@ public class ExsltDynamic extends ExsltBase
       XObject object = null;
       try
       {
-        XPath dynamicXPath = new XPath(expr, xctxt.getSAXLocator(),
-                                       xctxt.getNamespaceContext(),
-                                       XPath.SELECT);
+        XPath dynamicXPath = getXPath(xctxt, expr);
         object = dynamicXPath.execute(xctxt, contextNode, xctxt.getNamespaceContext());
         
         if (object instanceof XNodeSet)
@@ -468,9 +538,7 @@ public class ExsltDynamic extends ExsltBase
       try
       {
         xctxt = ((XPathContext.XPathExpressionContext) myContext).getXPathContext();
-        XPath dynamicXPath = new XPath(xpathExpr, xctxt.getSAXLocator(),
-                                       xctxt.getNamespaceContext(),
-                                       XPath.SELECT);
+        XPath dynamicXPath = getXPath(xctxt, xpathExpr);
 
         return dynamicXPath.execute(xctxt, myContext.getContextNode(),
                                     xctxt.getNamespaceContext());
@@ -559,9 +627,7 @@ public class ExsltDynamic extends ExsltBase
         XObject object = null;
         try
         {
-          XPath dynamicXPath = new XPath(expr, xctxt.getSAXLocator(),
-                                         xctxt.getNamespaceContext(),
-                                         XPath.SELECT);
+          XPath dynamicXPath = getXPath(xctxt, expr);
           object = dynamicXPath.execute(xctxt, contextNode, xctxt.getNamespaceContext());
           
           if (object instanceof XNodeSet)
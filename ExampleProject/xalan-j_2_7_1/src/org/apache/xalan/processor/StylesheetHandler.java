@@ -87,6 +87,41 @@ public class StylesheetHandler extends DefaultHandler
    * The flag for the setting of the source_location feature;
    */
   private boolean m_source_location = false;
+
+  /**
+   * The flag for the setting of the off-heap storage feature;
+   */
+  private boolean m_off_heap_storage = false;
+
+  /**
+   * The flag for the setting of the streaming feature;
+   */
+  private boolean m_streaming = false;
+
+  /**
+   * The flag for the setting of the compile XPath feature;
+   */
+  private boolean m_compile_xpath = false;
+
+  /**
+   * The value of the off-heap directory property;
+   */
+  private String m_off_heap_directory = null;
+
+  /**
+   * The value of the document cache entries property;
+   */
+  private int m_document_cache_entries = 0;
+
+  /**
+   * The value of the document cache size property;
+   */
+  private long m_document_cache_size = 0;
+
+  /**
+   * The value of the parallel threads property;
+   */
+  private int m_parallel_threads = 0;
   
   /**
    * Create a StylesheetHandler object, creating a root stylesheet
@@ -115,6 +150,20 @@ public class StylesheetHandler extends DefaultHandler
             TransformerFactoryImpl.FEATURE_INCREMENTAL)).booleanValue();
     m_source_location = ((Boolean) processor.getAttribute(
             TransformerFactoryImpl.FEATURE_SOURCE_LOCATION)).booleanValue();
+    m_off_heap_storage = ((Boolean) processor.getAttribute(
+            TransformerFactoryImpl.FEATURE_OFF_HEAP_STORAGE)).booleanValue();
+    m_off_heap_directory = (String) processor.getAttribute(
+            TransformerFactoryImpl.PROPERTY_OFF_HEAP_DIRECTORY);
+    m_streaming = ((Boolean) processor.getAttribute(
+            TransformerFactoryImpl.FEATURE_STREAMING)).booleanValue();
+    m_compile_xpath = ((Boolean) processor.getAttribute(
+            TransformerFactoryImpl.FEATURE_COMPILE_XPATH)).booleanValue();
+    m_document_cache_entries = ((Integer) processor.getAttribute(
+            TransformerFactoryImpl.PROPERTY_DOCUMENT_CACHE_ENTRIES)).intValue();
+    m_document_cache_size = ((Long) processor.getAttribute(
+            TransformerFactoryImpl.PROPERTY_DOCUMENT_CACHE_SIZE)).longValue();
+    m_parallel_threads = ((Integer) processor.getAttribute(
+            TransformerFactoryImpl.PROPERTY_PARALLEL_THREADS)).intValue();
     // m_schema = new XSLTSchema();
     init(processor);
     
@@ -1198,6 +1247,13 @@ public class StylesheetHandler extends DefaultHandler
         m_stylesheetRoot.setOptimizer(m_optimize);
         m_stylesheetRoot.setIncremental(m_incremental);
         m_stylesheetRoot.setSource_location(m_source_location);  		
+        m_stylesheetRoot.setOffHeapStorage(m_off_heap_storage);
+        m_stylesheetRoot.setOffHeapDirectory(m_off_heap_directory);
+        m_stylesheetRoot.setStreaming(m_streaming);
+        m_stylesheetRoot.setDocumentCacheLimits(m_document_cache_entries,
+                                                m_document_cache_size);
+        m_stylesheetRoot.setParallelThreads(m_parallel_threads);
+        m_stylesheetRoot.setCompileXPath(m_compile_xpath);
     }
     return m_stylesheetRoot;
   }
@@ -105,6 +105,34 @@ public class TransformerFactoryImpl extends SAXTransformerFactory
   public static final String FEATURE_SOURCE_LOCATION =
                              XalanProperties.SOURCE_LOCATION;
 
+  /** Static string to be used for off-heap storage feature */
+  public static final String FEATURE_OFF_HEAP_STORAGE =
+                             "http://xml.apache.org/xalan/features/off-heap-storage";
+
+  /** Static string to be used for streaming feature */
+  public static final String FEATURE_STREAMING =
+                             "http://xml.apache.org/xalan/features/streaming";
+
+  /** Static string to be used for compile XPath feature */
+  public static final String FEATURE_COMPILE_XPATH =
+                             "http://xml.apache.org/xalan/features/compile-xpath";
+
+  /** Static string to be used for the off-heap storage directory property */
+  public static final String PROPERTY_OFF_HEAP_DIRECTORY =
+                             "http://xml.apache.org/xalan/properties/off-heap-directory";
+
+  /** Static string to be used for the document cache entries property */
+  public static final String PROPERTY_DOCUMENT_CACHE_ENTRIES =
+                             "http://xml.apache.org/xalan/properties/document-cache-entries";
+
+  /** Static string to be used for the document cache size property */
+  public static final String PROPERTY_DOCUMENT_CACHE_SIZE =
+                             "http://xml.apache.org/xalan/properties/document-cache-size";
+
+  /** Static string to be used for the parallel threads property */
+  public static final String PROPERTY_PARALLEL_THREADS =
+                             "http://xml.apache.org/xalan/properties/parallel-threads";
+
   public javax.xml.transform.Templates processFromNode(Node node)
           throws TransformerConfigurationException
   {
@@ -496,6 +524,63 @@ public class TransformerFactoryImpl extends SAXTransformerFactory
    * default this attribute is set to false. 
    */
   private boolean m_incremental = false;
+
+  /**
+   * Flag set by FEATURE_OFF_HEAP_STORAGE.
+   * This feature specifies whether the node tables of source documents
+   * should be kept outside the Java heap, so that very large inputs do
+   * not need a very large heap. By default this attribute is set to false.
+   */
+  private boolean m_off_heap_storage = false;
+
+  /**
+   * Flag set by FEATURE_STREAMING.
+   * This feature specifies whether source documents should be built
+   * incrementally and their nodes discarded once the transformation has
+   * moved past them, when the stylesheet allows it. By default this
+   * attribute is set to false.
+   */
+  private boolean m_streaming = false;
+
+  /**
+   * Flag set by FEATURE_COMPILE_XPATH.
+   * This feature specifies whether the number and boolean valued
+   * expressions of a stylesheet should be compiled into bytecode once
+   * the stylesheet has been built. By default this attribute is set to
+   * false.
+   */
+  private boolean m_compile_xpath = false;
+
+  /**
+   * Value set by PROPERTY_OFF_HEAP_DIRECTORY.
+   * The directory in which to create the files which back off-heap node
+   * tables. If null, direct buffers are used instead of files.
+   */
+  private String m_off_heap_directory = null;
+
+  /**
+   * Value set by PROPERTY_DOCUMENT_CACHE_ENTRIES.
+   * The number of documents loaded by document() which each Templates
+   * object keeps for reuse by all of its transformers. By default this
+   * attribute is set to 0, which disables the cache.
+   */
+  private int m_document_cache_entries = 0;
+
+  /**
+   * Value set by PROPERTY_DOCUMENT_CACHE_SIZE.
+   * The maximum total size, in bytes, of the documents kept by the
+   * document cache of each Templates object.
+   */
+  private long m_document_cache_size = 64L * 1024 * 1024;
+
+  /**
+   * Value set by PROPERTY_PARALLEL_THREADS.
+   * The number of threads among which xsl:apply-templates may divide
+   * a large selection, when the stylesheet allows it. By default this
+   * attribute is set to 0, which keeps the whole transformation on the
+   * calling thread.
+   */
+  private int m_parallel_threads = 0;
   
   /**
    * Allows the user to set specific attributes on the underlying
@@ -570,6 +655,97 @@ public class TransformerFactoryImpl extends SAXTransformerFactory
         throw new IllegalArgumentException(XSLMessages.createMessage(XSLTErrorResources.ER_BAD_VALUE, new Object[]{name, value})); //name + " bad value " + value);
       }
     }
+
+    else if (name.equals(FEATURE_OFF_HEAP_STORAGE))
+    {
+      if(value instanceof Boolean)
+      {
+        // Accept a Boolean object..
+        m_off_heap_storage = ((Boolean)value).booleanValue();
+      }
+      else if(value instanceof String)
+      {
+        // .. or a String object
+        m_off_heap_storage = (new Boolean((String)value)).booleanValue();
+      }
+      else
+      {
+        // Give a more meaningful error message
+        throw new IllegalArgumentException(XSLMessages.createMessage(XSLTErrorResources.ER_BAD_VALUE, new Object[]{name, value})); //name + " bad value " + value);
+      }
+    }
+
+    else if (name.equals(FEATURE_STREAMING))
+    {
+      if(value instanceof Boolean)
+      {
+        // Accept a Boolean object..
+        m_streaming = ((Boolean)value).booleanValue();
+      }
+      else if(value instanceof String)
+      {
+        // .. or a String object
+        m_streaming = (new Boolean((String)value)).booleanValue();
+      }
+      else
+      {
+        // Give a more meaningful error message
+        throw new IllegalArgumentException(XSLMessages.createMessage(XSLTErrorResources.ER_BAD_VALUE, new Object[]{name, value})); //name + " bad value " + value);
+      }
+    }
+
+    else if (name.equals(FEATURE_COMPILE_XPATH))
+    {
+      if(value instanceof Boolean)
+      {
+        // Accept a Boolean object..
+        m_compile_xpath = ((Boolean)value).booleanValue();
+      }
+      else if(value instanceof String)
+      {
+        // .. or a String object
+        m_compile_xpath = (new Boolean((String)value)).booleanValue();
+      }
+      else
+      {
+        // Give a more meaningful error message
+        throw new IllegalArgumentException(XSLMessages.createMessage(XSLTErrorResources.ER_BAD_VALUE, new Object[]{name, value})); //name + " bad value " + value);
+      }
+    }
+
+    else if (name.equals(PROPERTY_OFF_HEAP_DIRECTORY))
+    {
+      if(value == null || value instanceof String)
+      {
+        m_off_heap_directory = (String)value;
+      }
+      else if(value instanceof java.io.File)
+      {
+        m_off_heap_directory = ((java.io.File)value).getPath();
+      }
+      else
+      {
+        // Give a more meaningful error message
+        throw new IllegalArgumentException(XSLMessages.createMessage(XSLTErrorResources.ER_BAD_VALUE, new Object[]{name, value})); //name + " bad value " + value);
+      }
+    }
+
+    else if (name.equals(PROPERTY_DOCUMENT_CACHE_ENTRIES))
+    {
+      m_document_cache_entries =
+        (int) Math.min(getNonNegativeNumber(name, value), Integer.MAX_VALUE);
+    }
+
+    else if (name.equals(PROPERTY_DOCUMENT_CACHE_SIZE))
+    {
+      m_document_cache_size = getNonNegativeNumber(name, value);
+    }
+
+    else if (name.equals(PROPERTY_PARALLEL_THREADS))
+    {
+      m_parallel_threads =
+        (int) Math.min(getNonNegativeNumber(name, value), Integer.MAX_VALUE);
+    }
     
     else
     {
@@ -577,6 +753,40 @@ public class TransformerFactoryImpl extends SAXTransformerFactory
     }
   }
 
+  /**
+   * Get the value of a numeric attribute, which may be given as a Number
+   * or as a String.
+   *
+   * @param name The name of the attribute.
+   * @param value The value of the attribute.
+   * @return The value as a long.
+   *
+   * @throws IllegalArgumentException if the value is not a non-negative
+   * number.
+   */
+  private long getNonNegativeNumber(String name, Object value)
+          throws IllegalArgumentException
+  {
+    long result = -1;
+
+    try
+    {
+      if (value instanceof Number)
+        result = ((Number)value).longValue();
+      else if (value instanceof String)
+        result = Long.parseLong(((String)value).trim());
+    }
+    catch (NumberFormatException nfe){}
+
+    if (result < 0)
+    {
+      // Give a more meaningful error message
+      throw new IllegalArgumentException(XSLMessages.createMessage(XSLTErrorResources.ER_BAD_VALUE, new Object[]{name, value})); //name + " bad value " + value);
+    }
+
+    return result;
+  }
+
   /**
    * Allows the user to retrieve specific attributes on the underlying
    * implementation.
@@ -601,6 +811,34 @@ public class TransformerFactoryImpl extends SAXTransformerFactory
     {
       return new Boolean(m_source_location);
     }
+    else if (name.equals(FEATURE_OFF_HEAP_STORAGE))
+    {
+      return new Boolean(m_off_heap_storage);
+    }
+    else if (name.equals(FEATURE_STREAMING))
+    {
+      return new Boolean(m_streaming);
+    }
+    else if (name.equals(FEATURE_COMPILE_XPATH))
+    {
+      return new Boolean(m_compile_xpath);
+    }
+    else if (name.equals(PROPERTY_OFF_HEAP_DIRECTORY))
+    {
+      return m_off_heap_directory;
+    }
+    else if (name.equals(PROPERTY_DOCUMENT_CACHE_ENTRIES))
+    {
+      return new Integer(m_document_cache_entries);
+    }
+    else if (name.equals(PROPERTY_DOCUMENT_CACHE_SIZE))
+    {
+      return new Long(m_document_cache_size);
+    }
+    else if (name.equals(PROPERTY_PARALLEL_THREADS))
+    {
+      return new Integer(m_parallel_threads);
+    }
     else
       throw new IllegalArgumentException(XSLMessages.createMessage(XSLTErrorResources.ER_ATTRIB_VALUE_NOT_RECOGNIZED, new Object[]{name})); //name + " attribute not recognized");
   }
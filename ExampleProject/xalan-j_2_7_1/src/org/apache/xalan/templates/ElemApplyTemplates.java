@@ -28,9 +28,11 @@ import org.apache.xalan.transformer.StackGuard;
 import org.apache.xalan.transformer.TransformerImpl;
 import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.dtm.DTMManager;
 import org.apache.xml.serializer.SerializationHandler;
 import org.apache.xml.utils.IntStack;
 import org.apache.xml.utils.QName;
+import org.apache.xpath.NodeSetDTM;
 import org.apache.xpath.VariableStack;
 import org.apache.xpath.XPath;
 import org.apache.xpath.XPathContext;
@@ -210,6 +212,7 @@ public class ElemApplyTemplates extends ElemCallTemplate
     int thisframe = vars.getStackFrame();
     StackGuard guard = transformer.getStackGuard();
     boolean check = (guard.getRecursionLimit() > -1) ? true : false;
+    final int floor = transformer.getSourceNodesFloor();
     
     boolean pushContextNodeListFlag = false;
       
@@ -231,7 +234,8 @@ public class ElemApplyTemplates extends ElemCallTemplate
       if (transformer.getDebug())
       {
         transformer.getTraceManager().fireSelectedEvent(sourceNode, this,
-                "select", new XPath(m_selectExpression),
+                "select", (null != m_xpath) ? m_xpath
+                                            : new XPath(m_selectExpression),
                 new org.apache.xpath.objects.XNodeSet(sourceNodes));
       }
 
@@ -244,6 +248,21 @@ public class ElemApplyTemplates extends ElemCallTemplate
       // Should be able to get this from the iterator but there must be a bug.
       DTM dtm = xctxt.getDTM(sourceNode);
       
+      // Let other threads share a large selection, if the transformer
+      // allows it. Parameters are not passed between threads. The
+      // selection is read only once, into a list which both the threads
+      // and this one can walk.
+      if (nParams == 0 && transformer.getParallelThreads() > 1
+          && !transformer.getDebug())
+      {
+        NodeSetDTM nodes = new SelectedNodes(xctxt.getDTMManager());
+
+        nodes.addNodes(sourceNodes);
+        if (!transformer.transformSelectedNodesInParallel(this, nodes))
+          transformSelectedNodes(transformer, nodes, 0, nodes.size());
+        return;
+      }
+
       int argsFrame = -1;
       if(nParams > 0)
       {
@@ -286,6 +305,10 @@ public class ElemApplyTemplates extends ElemCallTemplate
         {
           dtm = xctxt.getDTM(child);
         }
+
+        // In streaming mode, let go of the nodes we have moved past.
+        transformer.releaseSourceNodesBefore(dtm, child, floor,
+                                             m_selectsDescendants);
         
         final int exNodeType = dtm.getExpandedTypeID(child);
 
@@ -439,6 +462,7 @@ public class ElemApplyTemplates extends ElemCallTemplate
                 "select", new XPath(m_selectExpression),
                 new org.apache.xpath.objects.XNodeSet(sourceNodes));
       
+      transformer.setSourceNodesFloor(floor);
       // Unlink to the original stack frame  
       if(nParams > 0)
         vars.unlink(thisframe);
@@ -450,5 +474,174 @@ public class ElemApplyTemplates extends ElemCallTemplate
       sourceNodes.detach();
     }
   }
+  /**
+   * Instantiate the template rules for a run of the nodes selected by
+   * this instruction, on behalf of a transformer which is sharing the
+   * selection among several threads. This instruction must have no
+   * xsl:with-param children.
+   *
+   * @param transformer The transformer which owns the current thread.
+   * @param sourceNodes The whole selection, which becomes the current
+   *                    node list. It must support setCurrentPos().
+   * @param start The index of the first node to process.
+   * @param end The index after the last node to process.
+   *
+   * @throws TransformerException
+   * @xsl.usage internal
+   */
+  public void transformSelectedNodes(TransformerImpl transformer,
+                                     DTMIterator sourceNodes,
+                                     int start, int end)
+            throws TransformerException
+  {
+
+    final XPathContext xctxt = transformer.getXPathContext();
+    final VariableStack vars = xctxt.getVarStack();
+    final SerializationHandler rth = transformer.getSerializationHandler();
+    final StylesheetRoot sroot = transformer.getStylesheet();
+    final TemplateList tl = sroot.getTemplateListComposed();
+    final boolean quiet = transformer.getQuietConflictWarnings();
+    final QName mode = transformer.getMode();
+    final StackGuard guard = transformer.getStackGuard();
+    final boolean check = guard.getRecursionLimit() > -1;
+
+    xctxt.pushCurrentNode(DTM.NULL);
+    xctxt.pushCurrentExpressionNode(DTM.NULL);
+    xctxt.pushSAXLocatorNull();
+    transformer.pushElemTemplateElement(null);
+    xctxt.pushContextNodeList(sourceNodes);
+
+    try
+    {
+      IntStack currentNodes = xctxt.getCurrentNodeStack();
+      IntStack currentExpressionNodes = xctxt.getCurrentExpressionNodeStack();
+      DTM dtm = null;
+
+      sourceNodes.setCurrentPos(start);
+      for (int i = start; i < end; i++)
+      {
+        int child = sourceNodes.nextNode();
+        currentNodes.setTop(child);
+        currentExpressionNodes.setTop(child);
+
+        if (null == dtm || xctxt.getDTM(child) != dtm)
+          dtm = xctxt.getDTM(child);
+
+        ElemTemplate template = tl.getTemplateFast(xctxt, child,
+                                      dtm.getExpandedTypeID(child), mode,
+                                      -1, quiet, dtm);
+
+        // If that didn't locate a node, fall back to a default template rule.
+        if (null == template)
+        {
+          switch (dtm.getNodeType(child))
+          {
+          case DTM.DOCUMENT_FRAGMENT_NODE :
+          case DTM.ELEMENT_NODE :
+            template = sroot.getDefaultRule();
+            break;
+          case DTM.ATTRIBUTE_NODE :
+          case DTM.CDATA_SECTION_NODE :
+          case DTM.TEXT_NODE :
+            transformer.pushPairCurrentMatched(sroot.getDefaultTextRule(), child);
+            transformer.setCurrentElement(sroot.getDefaultTextRule());
+            dtm.dispatchCharactersEvents(child, rth, false);
+            transformer.popCurrentMatched();
+            continue;
+          case DTM.DOCUMENT_NODE :
+            template = sroot.getDefaultRootRule();
+            break;
+          default :
+            continue;
+          }
+        }
+        else
+        {
+          transformer.setCurrentElement(template);
+        }
+
+        transformer.pushPairCurrentMatched(template, child);
+        if (check)
+          guard.checkForInfinateLoop();
+
+        int currentFrameBottom = 0;
+        if (template.m_frameSize > 0)
+        {
+          xctxt.pushRTFContext();
+          currentFrameBottom = vars.getStackFrame();
+          vars.link(template.m_frameSize);
+
+          // No parameters are passed, so the xsl:params take their
+          // default values.
+          if (template.m_inArgsSize > 0)
+            vars.clearLocalSlots(0, template.m_inArgsSize);
+        }
+
+        for (ElemTemplateElement t = template.m_firstChild;
+             t != null; t = t.m_nextSibling)
+        {
+          xctxt.setSAXLocator(t);
+          try
+          {
+            transformer.pushElemTemplateElement(t);
+            t.execute(transformer);
+          }
+          finally
+          {
+            transformer.popElemTemplateElement();
+          }
+        }
+
+        if (template.m_frameSize > 0)
+        {
+          vars.unlink(currentFrameBottom);
+          xctxt.popRTFContext();
+        }
+
+        transformer.popCurrentMatched();
+      }
+    }
+    catch (SAXException se)
+    {
+      transformer.getErrorListener().fatalError(new TransformerException(se));
+    }
+    finally
+    {
+      xctxt.popContextNodeList();
+      transformer.popElemTemplateElement();
+      xctxt.popSAXLocator();
+      xctxt.popCurrentExpressionNode();
+      xctxt.popCurrentNode();
+    }
+  }
 
+  /**
+   * A selection read into a list, so that it can be shared among threads
+   * or walked by index. Unlike a plain NodeSetDTM, asking for its length,
+   * as last() does, leaves the current position alone.
+   */
+  private static class SelectedNodes extends NodeSetDTM
+  {
+    static final long serialVersionUID = 6402187410543712803L;
+
+    /**
+     * Create an empty list.
+     *
+     * @param dtmManager The DTMManager of the transformer.
+     */
+    SelectedNodes(DTMManager dtmManager)
+    {
+      super(dtmManager);
+    }
+
+    /**
+     * The number of nodes in the list, all of which are already known.
+     *
+     * @return The number of nodes.
+     */
+    public int getLength()
+    {
+      return size();
+    }
+  }
 }
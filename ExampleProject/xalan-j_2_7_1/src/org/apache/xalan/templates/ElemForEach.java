@@ -92,6 +92,14 @@ public class ElemForEach extends ElemTemplateElement implements ExpressionOwner
    */
   protected XPath m_xpath = null;  
 
+  /**
+   * True if the "select" expression walks descendants, so that in
+   * streaming mode the subtree of each node it selects must be kept until
+   * the next one has been found. Set by StreamabilityChecker.
+   * @serial
+   */
+  boolean m_selectsDescendants = false;
+
   /**
    * Set the "select" attribute.
    *
@@ -334,6 +342,7 @@ public class ElemForEach extends ElemTemplateElement implements ExpressionOwner
     final int sourceNode = xctxt.getCurrentNode();
     DTMIterator sourceNodes = m_selectExpression.asIterator(xctxt,
             sourceNode);
+    final int floor = transformer.getSourceNodesFloor();
 
     try
     {
@@ -405,6 +414,10 @@ public class ElemForEach extends ElemTemplateElement implements ExpressionOwner
           docID = child & DTMManager.IDENT_DTM_DEFAULT;
         }
 
+        // In streaming mode, let go of the nodes we have moved past.
+        transformer.releaseSourceNodesBefore(dtm, child, floor,
+                                             m_selectsDescendants);
+
         //final int exNodeType = dtm.getExpandedTypeID(child);
         final int nodeType = dtm.getNodeType(child); 
 
@@ -464,6 +477,7 @@ public class ElemForEach extends ElemTemplateElement implements ExpressionOwner
                 "select", new XPath(m_selectExpression),
                 new org.apache.xpath.objects.XNodeSet(sourceNodes));
 
+      transformer.setSourceNodesFloor(floor);
       xctxt.popSAXLocator();
       xctxt.popContextNodeList();
       transformer.popElemTemplateElement();
@@ -31,6 +31,7 @@ import javax.xml.transform.TransformerException;
 
 import org.apache.xalan.res.XSLMessages;
 import org.apache.xalan.res.XSLTErrorResources;
+import org.apache.xalan.transformer.TransformerImpl;
 import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMIterator;
 import org.apache.xml.utils.XMLString;
@@ -235,6 +236,7 @@ public class FuncDocument extends Function2Args
     try
     {
       source = treeMgr.resolveURI(base, uri, xctxt.getSAXLocator());
+      checkSharedSource(xctxt, source);
       newDoc = treeMgr.getNode(source);
     }
     catch (IOException ioe)
@@ -258,6 +260,7 @@ public class FuncDocument extends Function2Args
       try
       {
         source = treeMgr.resolveURI(base, uri, xctxt.getSAXLocator());
+        checkSharedSource(xctxt, source);
       }
       catch (IOException ioe)
       {
@@ -374,6 +377,22 @@ public class FuncDocument extends Function2Args
     return newDoc;
   }
 
+  /**
+   * Let a transformer instantiating templates on several threads check
+   * that they can all read the document about to be loaded.
+   *
+   * @param xctxt The XPath runtime state.
+   * @param source The document's Source.
+   */
+  private void checkSharedSource(XPathContext xctxt, Source source)
+  {
+
+    Object owner = xctxt.getOwnerObject();
+
+    if (owner instanceof TransformerImpl)
+      ((TransformerImpl) owner).checkSharedSource(source);
+  }
+
   /**
    * Tell the user of an error, and probably throw an
    * exception.
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xalan.templates;
+
+import org.apache.xpath.ExpressionOwner;
+import org.apache.xpath.functions.FuncExtFunction;
+import org.apache.xpath.functions.Function;
+
+/**
+ * Decides whether a composed stylesheet is free of side effects, so that
+ * its templates may be instantiated on several threads at once and their
+ * results put together afterwards.
+ *
+ * <p>A stylesheet is side-effect free when it has no extension elements,
+ * no xsl:message instructions, and calls no extension functions other
+ * than the built-in Xalan and EXSLT ones. Everything else an XSLT
+ * template does only affects the result tree.</p>
+ * @xsl.usage internal
+ */
+class SideEffectChecker extends XSLTVisitor
+{
+
+  /** False once a side effect has been found. */
+  private boolean m_sideEffectFree = true;
+
+  /**
+   * Check a stylesheet.
+   *
+   * @param root The composed stylesheet.
+   *
+   * @return true if no instruction or function in the stylesheet can have
+   *         effects outside the result tree.
+   */
+  boolean isSideEffectFree(StylesheetRoot root)
+  {
+    m_sideEffectFree = true;
+    root.callVisitors(this);
+    return m_sideEffectFree;
+  }
+
+  /**
+   * Note xsl:message, whose output would be interleaved differently.
+   *
+   * @param elem The instruction.
+   *
+   * @return true if the sub expressions should be traversed.
+   */
+  public boolean visitInstruction(ElemTemplateElement elem)
+  {
+    if (elem.getXSLToken() == Constants.ELEMNAME_MESSAGE)
+      m_sideEffectFree = false;
+    return m_sideEffectFree;
+  }
+
+  /**
+   * Extension elements may do anything.
+   *
+   * @param elem The extension element.
+   *
+   * @return false, since there is no need to look further.
+   */
+  public boolean visitExtensionElement(ElemExtensionCall elem)
+  {
+    m_sideEffectFree = false;
+    return false;
+  }
+
+  /**
+   * Note calls to extension functions, unless they are built in.
+   *
+   * @param owner The owner of the expression.
+   * @param func The function reference.
+   *
+   * @return true if the sub expressions should be traversed.
+   */
+  public boolean visitFunction(ExpressionOwner owner, Function func)
+  {
+    if (func instanceof FuncExtFunction
+        && !isBuiltIn(((FuncExtFunction) func).getNamespace()))
+      m_sideEffectFree = false;
+    return m_sideEffectFree;
+  }
+
+  /**
+   * Tell whether a namespace holds only the built-in extension functions,
+   * none of which has side effects.
+   *
+   * @param namespace The namespace of an extension function.
+   *
+   * @return true if the namespace is the Xalan or an EXSLT one.
+   */
+  private static boolean isBuiltIn(String namespace)
+  {
+    return Constants.S_BUILTIN_EXTENSIONS_URL.equals(namespace)
+           || Constants.S_EXSLT_COMMON_URL.equals(namespace)
+           || Constants.S_EXSLT_MATH_URL.equals(namespace)
+           || Constants.S_EXSLT_SETS_URL.equals(namespace)
+           || Constants.S_EXSLT_DATETIME_URL.equals(namespace)
+           || Constants.S_EXSLT_DYNAMIC_URL.equals(namespace)
+           || Constants.S_EXSLT_STRINGS_URL.equals(namespace);
+  }
+}
@@ -0,0 +1,790 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xalan.templates;
+
+import java.util.Vector;
+
+import javax.xml.transform.TransformerException;
+
+import org.apache.xml.dtm.Axis;
+import org.apache.xpath.Expression;
+import org.apache.xpath.ExpressionOwner;
+import org.apache.xpath.XPath;
+import org.apache.xpath.XPathVisitor;
+import org.apache.xpath.axes.AxesWalker;
+import org.apache.xpath.axes.LocPathIterator;
+import org.apache.xpath.axes.SelfIteratorNoPredicate;
+import org.apache.xpath.axes.UnionPathIterator;
+import org.apache.xpath.axes.WalkingIterator;
+import org.apache.xpath.functions.FuncBoolean;
+import org.apache.xpath.functions.FuncContains;
+import org.apache.xpath.functions.FuncCurrent;
+import org.apache.xpath.functions.FuncExtFunction;
+import org.apache.xpath.functions.FuncFalse;
+import org.apache.xpath.functions.FuncId;
+import org.apache.xpath.functions.FuncLang;
+import org.apache.xpath.functions.FuncLast;
+import org.apache.xpath.functions.FuncNormalizeSpace;
+import org.apache.xpath.functions.FuncNot;
+import org.apache.xpath.functions.FuncNumber;
+import org.apache.xpath.functions.FuncPosition;
+import org.apache.xpath.functions.FuncStartsWith;
+import org.apache.xpath.functions.FuncString;
+import org.apache.xpath.functions.FuncStringLength;
+import org.apache.xpath.functions.FuncTrue;
+import org.apache.xpath.functions.Function;
+import org.apache.xpath.functions.FunctionDef1Arg;
+import org.apache.xpath.objects.XObject;
+import org.apache.xpath.operations.And;
+import org.apache.xpath.operations.Bool;
+import org.apache.xpath.operations.Equals;
+import org.apache.xpath.operations.Gt;
+import org.apache.xpath.operations.Gte;
+import org.apache.xpath.operations.Lt;
+import org.apache.xpath.operations.Lte;
+import org.apache.xpath.operations.NotEquals;
+import org.apache.xpath.operations.Operation;
+import org.apache.xpath.operations.Or;
+import org.apache.xpath.operations.UnaryOperation;
+import org.apache.xpath.operations.Variable;
+import org.apache.xpath.patterns.FunctionPattern;
+import org.apache.xpath.patterns.StepPattern;
+import org.apache.xpath.patterns.UnionPattern;
+
+/**
+ * Decides whether a composed stylesheet can be run in streaming mode, in
+ * which the source tree is built incrementally and the nodes which
+ * precede the node being processed, other than its ancestors and their
+ * attributes, are discarded.
+ *
+ * <p>The check is conservative. A stylesheet is streamable when:</p>
+ * <ul>
+ * <li>no expression uses the preceding, preceding-sibling or root-relative
+ * axes, filter expressions, or the functions last(), key(), id(),
+ * document(), current() or extension functions; ancestors may only be
+ * used to reach their attributes;</li>
+ * <li>xsl:apply-templates and xsl:for-each only select downwards, and
+ * do not sort;</li>
+ * <li>once an instruction has processed the children or descendants of
+ * the context node, no later instruction reads them again;</li>
+ * <li>local variables and parameters are bound to strings, numbers,
+ * booleans or result tree fragments, never to source nodes;</li>
+ * <li>global variables do not depend on the source tree;</li>
+ * <li>match patterns do not test positions, and only test attributes of
+ * the ancestors they match;</li>
+ * <li>there are no xsl:number instructions, attribute set uses or
+ * extension elements.</li>
+ * </ul>
+ * @xsl.usage internal
+ */
+class StreamabilityChecker
+{
+
+  /** An expression which does not look at the context node. */
+  private static final int READS_NOTHING = 0;
+
+  /**
+   * An expression which looks only at the context node itself, its
+   * attributes and namespaces, or those of its ancestors.
+   */
+  private static final int READS_ATTRIBUTES = 1;
+
+  /** An expression which looks at the content of the context node. */
+  private static final int READS_CONTENT = 2;
+
+  /** Cleared when something is found which cannot be streamed. */
+  private boolean m_streamable;
+
+  /** True while checking the content of a global variable. */
+  private boolean m_global;
+
+  /** The visitor used to classify expressions. */
+  private ExpressionChecker m_exprChecker = new ExpressionChecker();
+
+  /** The visitor used to check the node-sets which are iterated over. */
+  private SelectionChecker m_selectionChecker = new SelectionChecker();
+
+  /**
+   * Check a stylesheet.
+   *
+   * @param root The composed stylesheet.
+   *
+   * @return true if the stylesheet can be run in streaming mode.
+   */
+  boolean isStreamable(StylesheetRoot root)
+  {
+    m_streamable = true;
+
+    try
+    {
+      m_global = true;
+      Vector vars = root.getVariablesAndParamsComposed();
+      for (int i = 0; m_streamable && i < vars.size(); i++)
+        checkVariable((ElemVariable) vars.elementAt(i), false);
+      m_global = false;
+
+      int n = root.getGlobalImportCount();
+      for (int i = 0; m_streamable && i < n; i++)
+      {
+        StylesheetComposed imported = root.getGlobalImport(i);
+        int includedCount = imported.getIncludeCountComposed();
+        for (int j = -1; m_streamable && j < includedCount; j++)
+        {
+          Stylesheet included = imported.getIncludeComposed(j);
+          int templateCount = included.getTemplateCount();
+          for (int k = 0; m_streamable && k < templateCount; k++)
+            checkTemplate(included.getTemplate(k));
+        }
+      }
+    }
+    catch (TransformerException te)
+    {
+      return false;
+    }
+
+    return m_streamable;
+  }
+
+  /**
+   * Check a template rule or named template.
+   *
+   * @param template The template.
+   */
+  private void checkTemplate(ElemTemplate template)
+  {
+    XPath match = template.getMatch();
+    if (null != match)
+      checkPattern(match.getExpression());
+
+    checkSequence(template, false);
+  }
+
+  /**
+   * Check a match pattern. Predicates on the step which matches the node
+   * itself may look at its content, which has not been discarded, but
+   * not at its position, which would mean counting its preceding
+   * siblings. Predicates on the other steps, which match ancestors, may
+   * only look at attributes.
+   *
+   * @param pattern A StepPattern or UnionPattern.
+   */
+  private void checkPattern(Expression pattern)
+  {
+    if (pattern instanceof UnionPattern)
+    {
+      StepPattern[] patterns = ((UnionPattern) pattern).getPatterns();
+      for (int i = 0; i < patterns.length; i++)
+        checkPattern(patterns[i]);
+      return;
+    }
+
+    if (!(pattern instanceof StepPattern))
+    {
+      m_streamable = false;
+      return;
+    }
+
+    boolean head = true;
+    for (StepPattern step = (StepPattern) pattern; null != step;
+         step = step.getRelativePathPattern())
+    {
+      if (step instanceof FunctionPattern)
+      {
+        m_streamable = false;
+        return;
+      }
+
+      int n = step.getPredicateCount();
+      for (int i = 0; i < n; i++)
+      {
+        Expression pred = step.getPredicate(i);
+        int reads = classify(pred);
+        if (m_exprChecker.m_positional || !isBoolean(pred)
+            || (!head && reads == READS_CONTENT))
+          m_streamable = false;
+      }
+      head = false;
+    }
+  }
+
+  /**
+   * Check a sequence of instructions, each of which is evaluated with the
+   * same context node.
+   *
+   * @param parent The parent of the instructions.
+   * @param iterated true if the children of the context node have already
+   *                 been processed, and so may have been discarded.
+   *
+   * @return true if the children of the context node have been processed
+   *         by the end of the sequence.
+   */
+  private boolean checkSequence(ElemTemplateElement parent, boolean iterated)
+  {
+    for (ElemTemplateElement elem = parent.getFirstChildElem();
+         m_streamable && null != elem; elem = elem.getNextSiblingElem())
+    {
+      iterated = checkInstruction(elem, iterated);
+    }
+    return iterated;
+  }
+
+  /**
+   * Check a single instruction.
+   *
+   * @param elem The instruction.
+   * @param iterated true if the children of the context node may have been
+   *                 discarded.
+   *
+   * @return true if the children of the context node may have been
+   *         discarded after the instruction.
+   */
+  private boolean checkInstruction(ElemTemplateElement elem, boolean iterated)
+  {
+    switch (elem.getXSLToken())
+    {
+    case Constants.ELEMNAME_APPLY_TEMPLATES :
+    {
+      ElemApplyTemplates apply = (ElemApplyTemplates) elem;
+      checkParams(apply, iterated);
+      return checkIteration(apply, iterated);
+    }
+    case Constants.ELEMNAME_FOREACH :
+    {
+      ElemForEach forEach = (ElemForEach) elem;
+      iterated = checkIteration(forEach, iterated);
+      checkSequence(forEach, false);
+      return iterated;
+    }
+    case Constants.ELEMNAME_CALLTEMPLATE :
+      checkParams((ElemCallTemplate) elem, iterated);
+      // The called template may read and process anything.
+      checkRead(READS_CONTENT, iterated);
+      return true;
+    case Constants.ELEMNAME_APPLY_IMPORTS :
+      checkRead(READS_CONTENT, iterated);
+      return true;
+    case Constants.ELEMNAME_VARIABLE :
+    case Constants.ELEMNAME_PARAMVARIABLE :
+      return checkVariable((ElemVariable) elem, iterated);
+    case Constants.ELEMNAME_IF :
+    {
+      checkRead(classify(((ElemIf) elem).getTest().getExpression()), iterated);
+      return checkSequence(elem, iterated) || iterated;
+    }
+    case Constants.ELEMNAME_CHOOSE :
+    {
+      boolean result = iterated;
+      for (ElemTemplateElement branch = elem.getFirstChildElem();
+           m_streamable && null != branch;
+           branch = branch.getNextSiblingElem())
+      {
+        if (branch instanceof ElemWhen)
+          checkRead(classify(((ElemWhen) branch).getTest().getExpression()),
+                    iterated);
+        result |= checkSequence(branch, iterated);
+      }
+      return result;
+    }
+    case Constants.ELEMNAME_COPY :
+      // A shallow copy only needs the node itself.
+      checkRead(READS_ATTRIBUTES, iterated);
+      // fall through
+    case Constants.ELEMNAME_LITERALRESULT :
+    case Constants.ELEMNAME_ELEMENT :
+    case Constants.ELEMNAME_ATTRIBUTE :
+      if (null != ((ElemUse) elem).getUseAttributeSets())
+        m_streamable = false;
+      // fall through
+    case Constants.ELEMNAME_TEXT :
+    case Constants.ELEMNAME_TEXTLITERALRESULT :
+    case Constants.ELEMNAME_VALUEOF :
+    case Constants.ELEMNAME_COPY_OF :
+    case Constants.ELEMNAME_COMMENT :
+    case Constants.ELEMNAME_PI :
+    case Constants.ELEMNAME_MESSAGE :
+    case Constants.ELEMNAME_FALLBACK :
+      checkRead(classifyAttributes(elem), iterated);
+      return checkSequence(elem, iterated);
+    default :
+      // xsl:number, xsl:sort, extension elements and anything else.
+      m_streamable = false;
+      return iterated;
+    }
+  }
+
+  /**
+   * Check the select expression of xsl:apply-templates or xsl:for-each.
+   *
+   * @param elem The instruction.
+   * @param iterated true if the children of the context node may have been
+   *                 discarded.
+   *
+   * @return true if the children of the context node may have been
+   *         discarded after the instruction.
+   */
+  private boolean checkIteration(ElemForEach elem, boolean iterated)
+  {
+    if (m_global || elem.getSortElemCount() > 0)
+    {
+      m_streamable = false;
+      return iterated;
+    }
+
+    Expression select = elem.getSelect();
+    classify(select);
+
+    int reads = checkSelection(select);
+    elem.m_selectsDescendants = m_selectionChecker.m_descends;
+    if (reads == READS_CONTENT)
+    {
+      if (iterated)
+        m_streamable = false;
+      return true;
+    }
+    return iterated;
+  }
+
+  /**
+   * Check that a node-set expression which is iterated over only selects
+   * nodes which follow the context node: its attributes, namespaces,
+   * children or descendants.
+   *
+   * @param select The expression.
+   *
+   * @return READS_CONTENT if the expression selects children or
+   *         descendants, or READS_ATTRIBUTES if it only selects attributes
+   *         or namespaces.
+   */
+  private int checkSelection(Expression select)
+  {
+    m_selectionChecker.m_reads = READS_ATTRIBUTES;
+    m_selectionChecker.m_descends = false;
+    select.callVisitors(null, m_selectionChecker);
+    return m_selectionChecker.m_reads;
+  }
+
+  /**
+   * Check the xsl:with-param children of xsl:apply-templates or
+   * xsl:call-template, which are evaluated before it starts.
+   *
+   * @param elem The instruction.
+   * @param iterated true if the children of the context node may have been
+   *                 discarded.
+   */
+  private void checkParams(ElemCallTemplate elem, boolean iterated)
+  {
+    int n = elem.getParamElemCount();
+    for (int i = 0; m_streamable && i < n; i++)
+    {
+      ElemWithParam param = elem.getParamElem(i);
+      XPath select = param.getSelect();
+      if (null != select)
+        checkValue(select.getExpression(), iterated);
+      else
+        checkSequence(param, iterated);
+    }
+  }
+
+  /**
+   * Check an xsl:variable or xsl:param.
+   *
+   * @param var The variable.
+   * @param iterated true if the children of the context node may have been
+   *                 discarded.
+   *
+   * @return true if the children of the context node may have been
+   *         discarded after the variable is evaluated.
+   */
+  private boolean checkVariable(ElemVariable var, boolean iterated)
+  {
+    XPath select = var.getSelect();
+    if (null != select)
+    {
+      checkValue(select.getExpression(), iterated);
+      return iterated;
+    }
+    return checkSequence(var, iterated);
+  }
+
+  /**
+   * Check the value of a variable or parameter, which must not be a
+   * node-set, since the nodes in it might be discarded while it is in
+   * scope.
+   *
+   * @param expr The select expression.
+   * @param iterated true if the children of the context node may have been
+   *                 discarded.
+   */
+  private void checkValue(Expression expr, boolean iterated)
+  {
+    if (!(expr instanceof Operation || expr instanceof UnaryOperation
+          || expr instanceof Function || expr instanceof Variable
+          || expr instanceof XObject))
+      m_streamable = false;
+
+    checkRead(classify(expr), iterated);
+  }
+
+  /**
+   * Check that an instruction can read what it needs from the context node.
+   *
+   * @param reads What the instruction reads, one of the READS_ constants.
+   * @param iterated true if the children of the context node may have been
+   *                 discarded.
+   */
+  private void checkRead(int reads, boolean iterated)
+  {
+    if ((iterated && reads == READS_CONTENT)
+        || (m_global && reads != READS_NOTHING))
+      m_streamable = false;
+  }
+
+  /**
+   * Classify the expressions in the attributes of an instruction.
+   *
+   * @param elem The instruction.
+   *
+   * @return One of the READS_ constants.
+   */
+  private int classifyAttributes(ElemTemplateElement elem)
+  {
+    m_exprChecker.reset();
+    elem.callChildVisitors(m_exprChecker, true);
+    if (elem instanceof ElemPI && null != ((ElemPI) elem).getName())
+      ((ElemPI) elem).getName().callVisitors(m_exprChecker);
+    return m_exprChecker.m_reads;
+  }
+
+  /**
+   * Classify an expression.
+   *
+   * @param expr The expression.
+   *
+   * @return One of the READS_ constants.
+   */
+  private int classify(Expression expr)
+  {
+    m_exprChecker.reset();
+    expr.callVisitors(null, m_exprChecker);
+    return m_exprChecker.m_reads;
+  }
+
+  /**
+   * Tell whether a predicate is certain to be boolean, and so is not
+   * interpreted as a position.
+   *
+   * @param pred The predicate expression.
+   *
+   * @return true if the predicate is a boolean or node-set expression.
+   */
+  private static boolean isBoolean(Expression pred)
+  {
+    return pred instanceof LocPathIterator
+           || pred instanceof UnionPathIterator
+           || pred instanceof And || pred instanceof Or
+           || pred instanceof Equals || pred instanceof NotEquals
+           || pred instanceof Lt || pred instanceof Lte
+           || pred instanceof Gt || pred instanceof Gte
+           || pred instanceof Bool
+           || pred instanceof FuncNot || pred instanceof FuncBoolean
+           || pred instanceof FuncTrue || pred instanceof FuncFalse
+           || pred instanceof FuncContains || pred instanceof FuncStartsWith
+           || pred instanceof FuncLang;
+  }
+
+  /**
+   * Get the axes of the steps of a location path.
+   *
+   * @param path The location path.
+   *
+   * @return The axis of each step, in order.
+   */
+  private static int[] getAxes(LocPathIterator path)
+  {
+    if (path instanceof WalkingIterator)
+    {
+      int n = 0;
+      for (AxesWalker walker = ((WalkingIterator) path).getFirstWalker();
+           null != walker; walker = walker.getNextWalker())
+        n++;
+
+      int[] axes = new int[n];
+      n = 0;
+      for (AxesWalker walker = ((WalkingIterator) path).getFirstWalker();
+           null != walker; walker = walker.getNextWalker())
+        axes[n++] = walker.getAxis();
+      return axes;
+    }
+    // "." does not report its axis.
+    if (path instanceof SelfIteratorNoPredicate)
+      return new int[]{ Axis.SELF };
+    return new int[]{ path.getAxis() };
+  }
+
+  /**
+   * Tell whether a location path has predicates on a step which goes up to
+   * the ancestors, whose content may have been discarded.
+   *
+   * @param path The location path.
+   *
+   * @return true if an ancestor step has predicates.
+   */
+  private static boolean hasUpwardPredicates(LocPathIterator path)
+  {
+    if (path instanceof WalkingIterator)
+    {
+      for (AxesWalker walker = ((WalkingIterator) path).getFirstWalker();
+           null != walker; walker = walker.getNextWalker())
+      {
+        if (isUpward(walker.getAxis()) && walker.getPredicateCount() > 0)
+          return true;
+      }
+      return false;
+    }
+    return isUpward(path.getAxis()) && path.getPredicateCount() > 0;
+  }
+
+  /**
+   * @param axis An axis.
+   * @return true if the axis leads to ancestors of the context node.
+   */
+  private static boolean isUpward(int axis)
+  {
+    return axis == Axis.PARENT || axis == Axis.ANCESTOR
+           || axis == Axis.ANCESTORORSELF;
+  }
+
+  /**
+   * Visits the select expression of xsl:apply-templates or xsl:for-each.
+   * This must be a location path, or a union of them, which only moves
+   * down the tree.
+   */
+  private class SelectionChecker extends XPathVisitor
+  {
+    /** READS_CONTENT if children or descendants are selected. */
+    int m_reads;
+
+    /**
+     * True if descendants are selected, so that the walk comes back into
+     * the subtree of each node after it has been processed.
+     */
+    boolean m_descends;
+
+    /**
+     * Check the axes of a location path. Its predicates have already been
+     * checked as ordinary expressions.
+     */
+    public boolean visitLocationPath(ExpressionOwner owner,
+                                     LocPathIterator path)
+    {
+      int[] axes = getAxes(path);
+      for (int i = 0; i < axes.length; i++)
+      {
+        switch (axes[i])
+        {
+        case Axis.ATTRIBUTE :
+        case Axis.NAMESPACE :
+          break;
+        case Axis.DESCENDANT :
+        case Axis.DESCENDANTORSELF :
+          m_descends = true;
+          // fall through
+        case Axis.CHILD :
+          m_reads = READS_CONTENT;
+          break;
+        default :
+          m_streamable = false;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * The paths of a union are visited in turn.
+     */
+    public boolean visitUnionPath(ExpressionOwner owner,
+                                  UnionPathIterator path)
+    {
+      return true;
+    }
+
+    /**
+     * Anything else may select nodes from elsewhere.
+     */
+    public boolean visitFunction(ExpressionOwner owner, Function func)
+    {
+      m_streamable = false;
+      return false;
+    }
+
+    /**
+     * Anything else may select nodes from elsewhere.
+     */
+    public boolean visitVariableRef(ExpressionOwner owner, Variable var)
+    {
+      m_streamable = false;
+      return false;
+    }
+  }
+
+  /**
+   * Visits an expression to find out what it reads, and whether it uses
+   * anything which cannot be streamed.
+   */
+  private class ExpressionChecker extends XSLTVisitor
+  {
+    /** What the expression reads, one of the READS_ constants. */
+    int m_reads;
+
+    /** True if the expression calls position(). */
+    boolean m_positional;
+
+    /** Prepare to visit another expression. */
+    void reset()
+    {
+      m_reads = READS_NOTHING;
+      m_positional = false;
+    }
+
+    /**
+     * Check a location path. Paths may go down to any of the
+     * following nodes, which have not been discarded, and may go up to
+     * attributes of ancestors, which are kept.
+     */
+    public boolean visitLocationPath(ExpressionOwner owner,
+                                     LocPathIterator path)
+    {
+      int[] axes = getAxes(path);
+      int reads = READS_ATTRIBUTES;
+      boolean upwards = false;
+
+      for (int i = 0; i < axes.length; i++)
+      {
+        switch (axes[i])
+        {
+        case Axis.ATTRIBUTE :
+        case Axis.NAMESPACE :
+          upwards = false;
+          break;
+        case Axis.PARENT :
+        case Axis.ANCESTOR :
+        case Axis.ANCESTORORSELF :
+          upwards = true;
+          break;
+        case Axis.CHILD :
+        case Axis.DESCENDANT :
+        case Axis.DESCENDANTORSELF :
+        case Axis.SELF :
+        case Axis.FOLLOWING :
+        case Axis.FOLLOWINGSIBLING :
+          reads = READS_CONTENT;
+          upwards = false;
+          break;
+        default :
+          // Root-relative paths, preceding axes and filter expressions.
+          m_streamable = false;
+        }
+      }
+
+      // An ancestor's content may have been discarded.
+      if (upwards || hasUpwardPredicates(path))
+        m_streamable = false;
+
+      m_reads = Math.max(m_reads, reads);
+      return true;
+    }
+
+    /**
+     * Check a function call.
+     */
+    public boolean visitFunction(ExpressionOwner owner, Function func)
+    {
+      if (func instanceof FuncLast || func instanceof FuncCurrent
+          || func instanceof FuncId || func instanceof FuncKey
+          || func instanceof FuncDocument || func instanceof FuncExtFunction)
+      {
+        m_streamable = false;
+      }
+      else if (func instanceof FuncPosition)
+      {
+        m_positional = true;
+      }
+      else if (func instanceof FunctionDef1Arg
+               && null == ((FunctionDef1Arg) func).getArg0())
+      {
+        // The function applies to the context node.
+        if (func instanceof FuncString || func instanceof FuncStringLength
+            || func instanceof FuncNormalizeSpace
+            || func instanceof FuncNumber)
+          m_reads = READS_CONTENT;
+        else
+          m_reads = Math.max(m_reads, READS_ATTRIBUTES);
+      }
+      else if (func instanceof FuncLang)
+      {
+        m_reads = Math.max(m_reads, READS_ATTRIBUTES);
+      }
+      return true;
+    }
+
+    /**
+     * Patterns are checked separately.
+     */
+    public boolean visitMatchPattern(ExpressionOwner owner,
+                                     StepPattern pattern)
+    {
+      m_streamable = false;
+      return false;
+    }
+
+    /**
+     * Do not descend into child instructions, which are checked in turn.
+     */
+    public boolean visitInstruction(ElemTemplateElement elem)
+    {
+      return false;
+    }
+
+    /**
+     * Do not descend into child instructions, which are checked in turn.
+     */
+    public boolean visitLiteralResultElement(ElemLiteralResult elem)
+    {
+      return false;
+    }
+
+    /**
+     * Do not descend into child instructions, which are checked in turn.
+     */
+    public boolean visitVariableOrParamDecl(ElemVariable elem)
+    {
+      return false;
+    }
+
+    /**
+     * Do not descend into child instructions, which are checked in turn.
+     */
+    public boolean visitExtensionElement(ElemExtensionCall elem)
+    {
+      return false;
+    }
+  }
+}
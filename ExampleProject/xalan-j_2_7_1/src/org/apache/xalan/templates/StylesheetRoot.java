@@ -43,7 +43,9 @@ import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.ref.ExpandedNameTable;
 import org.apache.xml.utils.IntStack;
 import org.apache.xml.utils.QName;
+import org.apache.xpath.SourceTreeCache;
 import org.apache.xpath.XPath;
+import org.apache.xpath.XPathCache;
 import org.apache.xpath.XPathContext;
 
 /**
@@ -70,6 +72,72 @@ public class StylesheetRoot extends StylesheetComposed
      */  
     private boolean m_source_location = false;
 
+    /**
+     * The flag for the setting of the off-heap storage feature;
+     */
+    private boolean m_off_heap_storage = false;
+
+    /**
+     * The value of the off-heap directory property;
+     */
+    private String m_off_heap_directory = null;
+
+    /**
+     * The flag for the setting of the streaming feature;
+     */
+    private boolean m_streaming = false;
+
+    /**
+     * Whether this stylesheet can be run in streaming mode, or null if
+     * that has not yet been determined.
+     */
+    private Boolean m_streamable = null;
+
+    /**
+     * The number of documents the document cache may hold, or 0 for no cache;
+     */
+    private int m_document_cache_entries = 0;
+
+    /**
+     * The total size, in bytes, of the documents the document cache may hold;
+     */
+    private long m_document_cache_size = 0;
+
+    /**
+     * The document cache shared by all transformers made from this
+     * stylesheet, created when first requested.
+     */
+    private SourceTreeCache m_document_cache = null;
+
+    /**
+     * The expressions compiled while this stylesheet runs, shared by all
+     * transformers made from it, created when first requested.
+     */
+    private XPathCache m_xpath_cache = null;
+
+    /**
+     * The number of threads which may share an xsl:apply-templates;
+     */
+    private int m_parallel_threads = 0;
+
+    /**
+     * Whether this stylesheet is free of side effects, so that its
+     * templates may be run on several threads, or null if that has not
+     * yet been determined.
+     */
+    private Boolean m_parallelizable = null;
+
+    /**
+     * The flag for the setting of the compile XPath feature;
+     */
+    private boolean m_compile_xpath = false;
+
+    /**
+     * Whether the expressions of this stylesheet have been compiled into
+     * bytecode since it was last composed.
+     */
+    private boolean m_xpath_compiled = false;
+
     /**
      * State of the secure processing feature.
      */
@@ -237,6 +305,10 @@ public class StylesheetRoot extends StylesheetComposed
    */
   public void recompose() throws TransformerException
   {
+    m_streamable = null;
+    m_parallelizable = null;
+    m_xpath_compiled = false;
+
     // Now we make a Vector that is going to hold all of the recomposable elements
 
       Vector recomposableElements = new Vector();
@@ -1402,4 +1474,157 @@ public class StylesheetRoot extends StylesheetComposed
         m_source_location = b;
     }
 
+    /**
+     * @return off-heap storage flag
+     */
+    public boolean getOffHeapStorage() {
+        return m_off_heap_storage;
+    }
+
+    /**
+     * @param b Off-heap storage flag
+     */
+    public void setOffHeapStorage(boolean b) {
+        m_off_heap_storage = b;
+    }
+
+    /**
+     * @return off-heap storage directory, or null
+     */
+    public String getOffHeapDirectory() {
+        return m_off_heap_directory;
+    }
+
+    /**
+     * @param dir Off-heap storage directory, or null
+     */
+    public void setOffHeapDirectory(String dir) {
+        m_off_heap_directory = dir;
+    }
+
+    /**
+     * @return streaming flag
+     */
+    public boolean getStreaming() {
+        return m_streaming;
+    }
+
+    /**
+     * @param b Streaming flag
+     */
+    public void setStreaming(boolean b) {
+        m_streaming = b;
+    }
+
+    /**
+     * Tell whether this stylesheet only looks at the source tree in ways
+     * which allow it to be transformed in streaming mode, where nodes are
+     * discarded once the transformation has moved past them.
+     *
+     * @return true if the stylesheet can be run in streaming mode
+     * @see StreamabilityChecker
+     */
+    public synchronized boolean isStreamable() {
+        if (m_streamable == null)
+            m_streamable = new StreamabilityChecker().isStreamable(this)
+                           ? Boolean.TRUE : Boolean.FALSE;
+        return m_streamable.booleanValue();
+    }
+
+    /**
+     * @param entries Maximum number of documents in the document cache,
+     *                or 0 for no cache
+     * @param size Maximum total size of the document cache, in bytes
+     */
+    public synchronized void setDocumentCacheLimits(int entries, long size) {
+        m_document_cache_entries = entries;
+        m_document_cache_size = size;
+        m_document_cache = null;
+    }
+
+    /**
+     * Get the cache of documents loaded by document(), which is shared by
+     * all the transformers made from this stylesheet.
+     *
+     * @return the document cache, or null if caching is not enabled
+     */
+    public synchronized SourceTreeCache getDocumentCache() {
+        if (m_document_cache == null && m_document_cache_entries > 0)
+            m_document_cache = new SourceTreeCache(m_document_cache_entries,
+                                                   m_document_cache_size);
+        return m_document_cache;
+    }
+
+    /**
+     * Get the cache of expressions compiled while this stylesheet runs,
+     * such as those of the EXSLT dynamic functions. The compiled
+     * expressions refer to the stylesheet's elements, so the cache
+     * belongs to the stylesheet and goes away with it.
+     *
+     * @param maxSize The maximum number of expressions to hold, used if
+     *                the cache has to be created.
+     *
+     * @return the expression cache
+     */
+    public synchronized XPathCache getXPathCache(int maxSize) {
+        if (m_xpath_cache == null)
+            m_xpath_cache = new XPathCache(maxSize);
+        return m_xpath_cache;
+    }
+
+    /**
+     * @return the number of threads which may share an
+     *         xsl:apply-templates, or 0 or 1 for none
+     */
+    public int getParallelThreads() {
+        return m_parallel_threads;
+    }
+
+    /**
+     * @param threads The number of threads which may share an
+     *                xsl:apply-templates, or 0 or 1 for none
+     */
+    public void setParallelThreads(int threads) {
+        m_parallel_threads = threads;
+    }
+
+    /**
+     * Tell whether this stylesheet is free of instructions and functions
+     * whose effects could be seen outside the result tree, so that its
+     * templates may be instantiated on several threads at once.
+     *
+     * @return true if the templates may be run in parallel
+     * @see SideEffectChecker
+     */
+    public synchronized boolean isParallelizable() {
+        if (m_parallelizable == null)
+            m_parallelizable = new SideEffectChecker().isSideEffectFree(this)
+                               ? Boolean.TRUE : Boolean.FALSE;
+        return m_parallelizable.booleanValue();
+    }
+
+    /**
+     * @return compile XPath flag
+     */
+    public boolean getCompileXPath() {
+        return m_compile_xpath;
+    }
+
+    /**
+     * Set whether the number and boolean valued expressions of this
+     * stylesheet should be compiled into bytecode. Since expressions can
+     * only be compiled once the stylesheet has been composed, setting the
+     * flag compiles them straight away.
+     *
+     * @param b Compile XPath flag
+     * @see XPathCompilingVisitor
+     */
+    public synchronized void setCompileXPath(boolean b) {
+        m_compile_xpath = b;
+        if (m_compile_xpath && !m_xpath_compiled) {
+            new XPathCompilingVisitor().compile(this);
+            m_xpath_compiled = true;
+        }
+    }
+
 }
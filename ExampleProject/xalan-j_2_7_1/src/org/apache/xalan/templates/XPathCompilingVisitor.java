@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xalan.templates;
+
+import org.apache.xpath.ExpressionOwner;
+import org.apache.xpath.compiler.BytecodeCompiler;
+import org.apache.xpath.functions.Function;
+import org.apache.xpath.operations.Operation;
+import org.apache.xpath.operations.UnaryOperation;
+
+/**
+ * Walks a composed stylesheet, compiling the number and boolean valued
+ * expressions found in its instructions, patterns and variables into
+ * bytecode.
+ * @see BytecodeCompiler
+ * @xsl.usage internal
+ */
+class XPathCompilingVisitor extends XSLTVisitor
+{
+
+  /** The compiler the expressions are handed to. */
+  private final BytecodeCompiler m_compiler = new BytecodeCompiler();
+
+  /**
+   * Compile the expressions of a stylesheet in place.
+   *
+   * @param root The composed stylesheet.
+   */
+  void compile(StylesheetRoot root)
+  {
+    root.callVisitors(this);
+  }
+
+  /**
+   * @see BytecodeCompiler#visitBinaryOperation(ExpressionOwner, Operation)
+   */
+  public boolean visitBinaryOperation(ExpressionOwner owner, Operation op)
+  {
+    return m_compiler.visitBinaryOperation(owner, op);
+  }
+
+  /**
+   * @see BytecodeCompiler#visitUnaryOperation(ExpressionOwner, UnaryOperation)
+   */
+  public boolean visitUnaryOperation(ExpressionOwner owner, UnaryOperation op)
+  {
+    return m_compiler.visitUnaryOperation(owner, op);
+  }
+
+  /**
+   * @see BytecodeCompiler#visitFunction(ExpressionOwner, Function)
+   */
+  public boolean visitFunction(ExpressionOwner owner, Function func)
+  {
+    return m_compiler.visitFunction(owner, func);
+  }
+}
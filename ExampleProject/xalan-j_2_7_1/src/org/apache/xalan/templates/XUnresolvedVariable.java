@@ -124,11 +124,14 @@ public class XUnresolvedVariable extends XObject
       if(-1 != velem.m_frameSize)
       	vars.link(velem.m_frameSize);
       XObject var = velem.getValue(m_transformer, m_context);
-      m_doneEval = true;
       return var;
     }
     finally
     {
+      // Left false, an evaluation given up part way would later be taken
+      // for a variable referencing itself.
+      m_doneEval = true;
+
       // These two statements need to be combined into one operation.
       // vars.setStackFrame(currentFrame);
       
@@ -0,0 +1,844 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xalan.trace;
+
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.apache.xalan.templates.ElemLiteralResult;
+import org.apache.xalan.templates.ElemTemplate;
+import org.apache.xalan.templates.ElemTemplateElement;
+import org.apache.xalan.templates.StylesheetRoot;
+import org.apache.xalan.transformer.TransformerImpl;
+
+/**
+ * A trace listener which counts how often each template, instruction,
+ * select expression and extension function is used, and how much time is
+ * spent in it, and writes the totals as a flat profile or as a call tree.
+ *
+ * <p>Rather than printing events as they happen, the listener adds them to
+ * a call tree of its own, so it is cheap enough to leave on for some of
+ * the transformations of a running application; see
+ * {@link #sample(TransformerImpl)}. One listener may be shared by any
+ * number of transformers, on any number of threads.</p>
+ *
+ * <p>Times are read from the millisecond clock at every event, and each
+ * interval is charged to whatever was running when it ended. A single call
+ * is usually charged 0 or 1 milliseconds, so times are only meaningful in
+ * total, over many calls.</p>
+ * @xsl.usage advanced
+ */
+public class ProfilingTraceListener implements TraceListenerEx3
+{
+
+  /**
+   * Set to true if every instruction is to be profiled. If false, only
+   * templates, select expressions and extension functions are, and the
+   * time spent in other instructions is charged to their template.
+   */
+  public boolean m_profileInstructions = true;
+
+  /**
+   * Only one in this many of the transformers passed to
+   * {@link #sample(TransformerImpl)} is profiled.
+   */
+  public int m_sampleEvery = 1;
+
+  /** The number of transformers passed to {@link #sample(TransformerImpl)}. */
+  private int m_offered = 0;
+
+  /** The profile of each thread which has sent events, as a {@link State}. */
+  private final ThreadLocal m_state = new ThreadLocal();
+
+  /** All the profiles in m_state, to be put together for reports. */
+  private final Vector m_states = new Vector();
+
+  /**
+   * Add this listener to a transformer if it is one of those to be
+   * sampled, which is one in every {@link #m_sampleEvery}.
+   *
+   * @param transformer A transformer about to be used.
+   *
+   * @return true if the listener was added.
+   *
+   * @throws java.util.TooManyListenersException
+   */
+  public boolean sample(TransformerImpl transformer)
+          throws java.util.TooManyListenersException
+  {
+
+    synchronized (this)
+    {
+      if (m_offered++ % Math.max(1, m_sampleEvery) != 0)
+        return false;
+    }
+
+    transformer.getTraceManager().addTraceListener(this);
+
+    return true;
+  }
+
+  /**
+   * Throw away everything recorded so far. This should only be called
+   * while no transformation is using the listener.
+   */
+  public void reset()
+  {
+
+    synchronized (m_states)
+    {
+      for (int i = 0; i < m_states.size(); i++)
+      {
+        State state = (State) m_states.elementAt(i);
+
+        state.m_root = new CallNode(null, null, null);
+        state.m_top = state.m_root;
+        state.m_transformer = null;
+      }
+    }
+  }
+
+  /**
+   * Called when an instruction or template starts.
+   *
+   * @param ev the trace event.
+   */
+  public void trace(TracerEvent ev)
+  {
+
+    State state = getState(ev.m_processor);
+    ElemTemplateElement elem = ev.m_styleNode;
+
+    state.charge();
+
+    if (!m_profileInstructions && !(elem instanceof ElemTemplate))
+      return;
+
+    CallNode top = state.m_top;
+
+    // xsl:for-each starts again for each node it selects.
+    if (top.m_key == elem)
+    {
+      top.m_reentered++;
+      return;
+    }
+
+    CallNode node = top.getChild(elem, elem, null);
+
+    node.m_calls++;
+    state.m_top = node;
+  }
+
+  /**
+   * Called when an instruction or template ends.
+   *
+   * @param ev the trace event.
+   */
+  public void traceEnd(TracerEvent ev)
+  {
+
+    State state = getState(ev.m_processor);
+    ElemTemplateElement elem = ev.m_styleNode;
+
+    state.charge();
+
+    if (!m_profileInstructions && !(elem instanceof ElemTemplate))
+      return;
+
+    state.end(elem);
+  }
+
+  /**
+   * Called just after a select expression has been evaluated, which is
+   * the time since the last event.
+   *
+   * @param ev the selection event.
+   */
+  public void selected(SelectionEvent ev)
+  {
+
+    State state = getState(ev.m_processor);
+
+    // Some instructions make a new XPath for each event, but the
+    // expression inside stays the same.
+    CallNode node = state.m_top.getChild(ev.m_xpath.getExpression(),
+                                         ev.m_styleNode, ev.m_attributeName);
+
+    if (null == node.m_pattern)
+      node.m_pattern = ev.m_xpath.getPatternString();
+
+    node.m_calls++;
+    state.charge(node);
+  }
+
+  /**
+   * Called after the nodes of an xsl:apply-templates or xsl:for-each have
+   * been processed.
+   *
+   * @param ev the selection event.
+   */
+  public void selectEnd(EndSelectionEvent ev)
+  {
+    getState(ev.m_processor).charge();
+  }
+
+  /**
+   * Called when the result tree is written to.
+   *
+   * @param ev the generate event.
+   */
+  public void generated(GenerateEvent ev)
+  {
+
+    State state = (State) m_state.get();
+
+    if (null != state)
+      state.charge();
+  }
+
+  /**
+   * Called when an extension function or element starts.
+   *
+   * @param ee the extension event.
+   */
+  public void extension(ExtensionEvent ee)
+  {
+
+    State state = getState(ee.m_transformer);
+    CallNode node = state.m_top.getChild(ee.m_method, null, null);
+
+    state.charge();
+    node.m_calls++;
+    state.m_top = node;
+  }
+
+  /**
+   * Called when an extension function or element ends.
+   *
+   * @param ee the extension event.
+   */
+  public void extensionEnd(ExtensionEvent ee)
+  {
+
+    State state = getState(ee.m_transformer);
+
+    state.charge();
+    state.end(ee.m_method);
+  }
+
+  /**
+   * Write a flat profile: for each template, instruction, select
+   * expression and extension function, the number of calls, the time
+   * spent in it and in what it called (inclusive), and the time spent in
+   * it alone (exclusive). The most expensive by exclusive time come first.
+   *
+   * @param pw Where to write the profile.
+   */
+  public void writeFlatProfile(PrintWriter pw)
+  {
+
+    CallNode root = merge();
+    Hashtable entries = new Hashtable();
+
+    addFlatEntries(root, entries, new Hashtable());
+
+    Entry[] sorted = new Entry[entries.size()];
+    Enumeration e = entries.elements();
+
+    for (int i = 0; e.hasMoreElements(); i++)
+      sorted[i] = (Entry) e.nextElement();
+
+    Arrays.sort(sorted, new Comparator()
+    {
+      public int compare(Object o1, Object o2)
+      {
+        long d = ((Entry) o2).m_self - ((Entry) o1).m_self;
+
+        return (d < 0) ? -1 : (d > 0) ? 1 : 0;
+      }
+    });
+
+    pw.println("Flat profile, " + root.m_inclusive + " ms in total");
+    pw.println(pad("calls", 10) + pad("incl ms", 10) + pad("excl ms", 10)
+               + pad("excl %", 8) + "  name");
+
+    for (int i = 0; i < sorted.length; i++)
+    {
+      Entry entry = sorted[i];
+
+      pw.println(pad(Long.toString(entry.m_calls), 10)
+                 + pad(Long.toString(entry.m_inclusive), 10)
+                 + pad(Long.toString(entry.m_self), 10)
+                 + pad(percent(entry.m_self, root.m_inclusive), 8)
+                 + "  " + entry.m_node.getLabel());
+    }
+    pw.flush();
+  }
+
+  /**
+   * Write the call tree: each template, instruction, select expression
+   * and extension function, below whatever called it, with its inclusive
+   * time, exclusive time and number of calls.
+   *
+   * @param pw Where to write the tree.
+   * @param minPercent Calls which took less than this percentage of the
+   *        total time are left out, along with what they called.
+   */
+  public void writeCallTree(PrintWriter pw, double minPercent)
+  {
+
+    CallNode root = merge();
+
+    pw.println("Call tree, " + root.m_inclusive + " ms in total");
+    pw.println(pad("incl ms", 10) + pad("excl ms", 10) + pad("calls", 10)
+               + "  name");
+
+    long min = (long) Math.ceil(root.m_inclusive * minPercent / 100);
+    CallNode[] children = root.getSortedChildren();
+
+    for (int i = 0; i < children.length; i++)
+      writeCallTree(pw, children[i], 0, min);
+
+    pw.flush();
+  }
+
+  /**
+   * Write a node of the call tree and, indented, its children.
+   *
+   * @param pw Where to write the tree.
+   * @param node The node.
+   * @param depth The depth of the node.
+   * @param min The smallest inclusive time of a node to be written.
+   */
+  private void writeCallTree(PrintWriter pw, CallNode node, int depth,
+                             long min)
+  {
+
+    if (node.m_inclusive < min)
+      return;
+
+    StringBuffer line = new StringBuffer();
+
+    line.append(pad(Long.toString(node.m_inclusive), 10));
+    line.append(pad(Long.toString(node.m_self), 10));
+    line.append(pad(Long.toString(node.m_calls), 10));
+    line.append("  ");
+
+    for (int i = 0; i < depth; i++)
+      line.append("  ");
+
+    line.append(node.getLabel());
+    pw.println(line);
+
+    CallNode[] children = node.getSortedChildren();
+
+    for (int i = 0; i < children.length; i++)
+      writeCallTree(pw, children[i], depth + 1, min);
+  }
+
+  /**
+   * Add up the calls and times of every node in a call tree by what they
+   * are the profile of. Time spent in a recursive call is only counted
+   * once in the inclusive time.
+   *
+   * @param node A node of the merged call tree.
+   * @param entries The totals so far, by key.
+   * @param active The keys of the node's ancestors.
+   */
+  private void addFlatEntries(CallNode node, Hashtable entries,
+                              Hashtable active)
+  {
+
+    CallNode[] children = node.getSortedChildren();
+
+    for (int i = 0; i < children.length; i++)
+    {
+      CallNode child = children[i];
+      Entry entry = (Entry) entries.get(child.m_key);
+
+      if (null == entry)
+      {
+        entry = new Entry(child);
+        entries.put(child.m_key, entry);
+      }
+
+      entry.m_calls += child.m_calls;
+      entry.m_self += child.m_self;
+
+      if (null == active.get(child.m_key))
+      {
+        entry.m_inclusive += child.m_inclusive;
+        active.put(child.m_key, child);
+        addFlatEntries(child, entries, active);
+        active.remove(child.m_key);
+      }
+      else
+        addFlatEntries(child, entries, active);
+    }
+  }
+
+  /**
+   * Put together the call trees of all the threads, and work out the
+   * inclusive times.
+   *
+   * @return The root of the merged tree.
+   */
+  private CallNode merge()
+  {
+
+    CallNode root = new CallNode(null, null, null);
+
+    synchronized (m_states)
+    {
+      for (int i = 0; i < m_states.size(); i++)
+        root.add(((State) m_states.elementAt(i)).m_root);
+    }
+
+    root.sum();
+
+    return root;
+  }
+
+  /**
+   * Get the profile of the current thread, starting it again if a
+   * different transformer is now running on it.
+   *
+   * @param transformer The transformer which sent the event.
+   *
+   * @return The profile of the thread.
+   */
+  private State getState(TransformerImpl transformer)
+  {
+
+    State state = (State) m_state.get();
+
+    if (null == state)
+    {
+      state = new State();
+      m_state.set(state);
+      m_states.addElement(state);
+    }
+
+    if (null == state.m_transformer
+        || state.m_transformer.get() != transformer)
+    {
+      state.m_transformer = new WeakReference(transformer);
+      state.m_top = state.m_root;
+      state.m_last = System.currentTimeMillis();
+    }
+
+    return state;
+  }
+
+  /**
+   * Right-align a string in a column.
+   *
+   * @param s The string.
+   * @param width The width of the column.
+   *
+   * @return The padded string.
+   */
+  private static String pad(String s, int width)
+  {
+
+    StringBuffer buf = new StringBuffer(width);
+
+    for (int i = s.length(); i < width; i++)
+      buf.append(' ');
+
+    return buf.append(s).toString();
+  }
+
+  /**
+   * Format part of a total as a percentage.
+   *
+   * @param part The part.
+   * @param total The total.
+   *
+   * @return The percentage, to one decimal place.
+   */
+  private static String percent(long part, long total)
+  {
+
+    if (total == 0)
+      return "0.0";
+
+    long tenths = (part * 1000 + total / 2) / total;
+
+    return (tenths / 10) + "." + (tenths % 10);
+  }
+
+  /**
+   * The profile of one thread: its call tree, and where in the tree it is.
+   */
+  private static class State
+  {
+
+    /** The root of the call tree, which is never called itself. */
+    CallNode m_root = new CallNode(null, null, null);
+
+    /** The node being run. */
+    CallNode m_top = m_root;
+
+    /**
+     * The transformer running on the thread, which is only weakly held so
+     * that the listener does not keep it alive after it has been used.
+     */
+    WeakReference m_transformer;
+
+    /** The time of the last event. */
+    long m_last = System.currentTimeMillis();
+
+    /**
+     * Charge the time since the last event to the node being run.
+     */
+    void charge()
+    {
+      charge(m_top);
+    }
+
+    /**
+     * Charge the time since the last event to a node.
+     *
+     * @param node The node which used the time.
+     */
+    void charge(CallNode node)
+    {
+
+      long now = System.currentTimeMillis();
+
+      node.m_self += now - m_last;
+      m_last = now;
+    }
+
+    /**
+     * Leave the node for a key. If a call ended without an event, as
+     * when an error stopped it, the nodes it left open are left too.
+     *
+     * @param key The key of the node which has ended.
+     */
+    void end(Object key)
+    {
+
+      CallNode node = m_top;
+
+      while (node != m_root && node.m_key != key)
+        node = node.m_parent;
+
+      if (node == m_root)
+        return;
+
+      if (node.m_reentered > 0)
+      {
+        node.m_reentered--;
+        m_top = node;
+      }
+      else
+        m_top = node.m_parent;
+    }
+  }
+
+  /**
+   * One place in the call tree: a template, instruction, select
+   * expression or extension function, called from its parent.
+   */
+  private static class CallNode
+  {
+
+    /**
+     * What this is the profile of: an ElemTemplateElement, the Expression
+     * of a select expression, or the Method or Constructor of an extension.
+     */
+    final Object m_key;
+
+    /** The instruction or template, if the key is one or belongs to one. */
+    final ElemTemplateElement m_elem;
+
+    /** The text of a select expression, if it is known. */
+    String m_pattern;
+
+    /** The name of the attribute which holds a select expression. */
+    final String m_attributeName;
+
+    /** The caller. */
+    CallNode m_parent;
+
+    /** The callees by key, or null if there are none. */
+    Hashtable m_children;
+
+    /** The callee which was called last, which is likely to be again. */
+    CallNode m_lastChild;
+
+    /** The number of calls. */
+    long m_calls;
+
+    /** The time spent in the calls, not counting callees. */
+    long m_self;
+
+    /** The time spent in the calls, counting callees. Set by sum(). */
+    long m_inclusive;
+
+    /** How many times this node has started again before ending. */
+    int m_reentered;
+
+    /**
+     * Create a node.
+     *
+     * @param key What the node is the profile of.
+     * @param elem The instruction or template of the node.
+     * @param attributeName The attribute of a select expression.
+     */
+    CallNode(Object key, ElemTemplateElement elem, String attributeName)
+    {
+      m_key = key;
+      m_elem = elem;
+      m_attributeName = attributeName;
+    }
+
+    /**
+     * Get the callee for a key, creating it if need be.
+     *
+     * @param key What the callee is the profile of.
+     * @param elem The instruction or template of the callee.
+     * @param attributeName The attribute of a select expression.
+     *
+     * @return The callee.
+     */
+    CallNode getChild(Object key, ElemTemplateElement elem,
+                      String attributeName)
+    {
+
+      CallNode child = m_lastChild;
+
+      if (null != child && child.m_key == key)
+        return child;
+
+      if (null == m_children)
+        m_children = new Hashtable();
+
+      child = (CallNode) m_children.get(key);
+
+      if (null == child)
+      {
+        child = new CallNode(key, elem, attributeName);
+        child.m_parent = this;
+        m_children.put(key, child);
+      }
+
+      m_lastChild = child;
+
+      return child;
+    }
+
+    /**
+     * Add the calls and times of another tree to this one.
+     *
+     * @param other A node with the same key as this one.
+     */
+    void add(CallNode other)
+    {
+
+      m_calls += other.m_calls;
+      m_self += other.m_self;
+
+      if (null == other.m_children)
+        return;
+
+      Enumeration e = other.m_children.elements();
+
+      while (e.hasMoreElements())
+      {
+        CallNode child = (CallNode) e.nextElement();
+
+        CallNode merged = getChild(child.m_key, child.m_elem,
+                                   child.m_attributeName);
+
+        if (null == merged.m_pattern)
+          merged.m_pattern = child.m_pattern;
+
+        merged.add(child);
+      }
+    }
+
+    /**
+     * Work out the inclusive time of this node and its descendants.
+     *
+     * @return The inclusive time of this node.
+     */
+    long sum()
+    {
+
+      m_inclusive = m_self;
+
+      if (null != m_children)
+      {
+        Enumeration e = m_children.elements();
+
+        while (e.hasMoreElements())
+          m_inclusive += ((CallNode) e.nextElement()).sum();
+      }
+
+      return m_inclusive;
+    }
+
+    /**
+     * Get the callees, the most expensive first.
+     *
+     * @return The callees, sorted by inclusive time.
+     */
+    CallNode[] getSortedChildren()
+    {
+
+      if (null == m_children)
+        return new CallNode[0];
+
+      CallNode[] children = new CallNode[m_children.size()];
+      Enumeration e = m_children.elements();
+
+      for (int i = 0; e.hasMoreElements(); i++)
+        children[i] = (CallNode) e.nextElement();
+
+      Arrays.sort(children, new Comparator()
+      {
+        public int compare(Object o1, Object o2)
+        {
+          long d = ((CallNode) o2).m_inclusive - ((CallNode) o1).m_inclusive;
+
+          return (d < 0) ? -1 : (d > 0) ? 1 : 0;
+        }
+      });
+
+      return children;
+    }
+
+    /**
+     * Describe what this node is the profile of.
+     *
+     * @return A line of text naming the node.
+     */
+    String getLabel()
+    {
+
+      if (null == m_elem)
+        return "extension " + m_key;
+
+      StringBuffer label = new StringBuffer();
+
+      if (m_elem instanceof ElemTemplate)
+        appendTemplate(label, (ElemTemplate) m_elem);
+      else if (m_elem instanceof ElemLiteralResult)
+        label.append('<').append(m_elem.getNodeName()).append('>');
+      else
+        label.append("xsl:").append(m_elem.getNodeName());
+
+      if (null != m_attributeName)
+      {
+        label.append(' ').append(m_attributeName);
+
+        if (null != m_pattern)
+          label.append("=\"").append(m_pattern).append('"');
+      }
+
+      if (m_elem.getLineNumber() > 0)
+      {
+        String systemId = m_elem.getSystemId();
+
+        label.append(" (");
+
+        if (null != systemId)
+          label.append(systemId.substring(systemId.lastIndexOf('/') + 1))
+               .append(':');
+
+        label.append(m_elem.getLineNumber()).append(')');
+      }
+
+      return label.toString();
+    }
+
+    /**
+     * Describe a template by its match pattern, mode and name.
+     *
+     * @param label Where to add the description.
+     * @param template The template.
+     */
+    private static void appendTemplate(StringBuffer label,
+                                       ElemTemplate template)
+    {
+
+      StylesheetRoot root = template.getStylesheetRoot();
+
+      if (template == root.getDefaultRootRule())
+        label.append("(default root rule)");
+      else if (template == root.getDefaultTextRule())
+        label.append("(default text rule)");
+      else if (template == root.getDefaultRule())
+        label.append("(default rule)");
+      else
+      {
+        label.append("template");
+
+        if (null != template.getMatch())
+          label.append(" match=\"")
+               .append(template.getMatch().getPatternString()).append('"');
+
+        if (null != template.getMode())
+          label.append(" mode=\"").append(template.getMode()).append('"');
+
+        if (null != template.getName())
+          label.append(" name=\"").append(template.getName()).append('"');
+      }
+    }
+  }
+
+  /**
+   * The totals for one key in the flat profile.
+   */
+  private static class Entry
+  {
+
+    /** A node with the key, used for its label. */
+    final CallNode m_node;
+
+    /** The number of calls. */
+    long m_calls;
+
+    /** The time spent in the calls, not counting callees. */
+    long m_self;
+
+    /** The time spent in the calls, counting callees. */
+    long m_inclusive;
+
+    /**
+     * Create an empty entry.
+     *
+     * @param node A node with the key of the entry.
+     */
+    Entry(CallNode node)
+    {
+      m_node = node;
+    }
+  }
+}
@@ -88,7 +88,13 @@ public class TraceManager
       // The following line added to fix the bug#5140: hasTraceListeners() returns true
       // after adding and removing a listener.
       // Check: if m_traceListeners is empty, then set it to NULL.
-      if (0 == m_traceListeners.size()) m_traceListeners = null;
+      if (0 == m_traceListeners.size())
+      {
+        m_traceListeners = null;
+
+        // Without listeners there is no need for the slower debug paths.
+        m_transformer.setDebug(false);
+      }
     }
   }
 
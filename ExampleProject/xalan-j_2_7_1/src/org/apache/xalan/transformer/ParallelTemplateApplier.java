@@ -0,0 +1,784 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xalan.transformer;
+
+import java.util.Arrays;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xalan.templates.ElemApplyTemplates;
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMManager;
+import org.apache.xml.dtm.ref.DTMManagerDefault;
+import org.apache.xml.dtm.ref.sax2dtm.SAX2DTM;
+import org.apache.xml.serializer.SerializationHandler;
+import org.apache.xml.serializer.ToXMLSAXHandler;
+import org.apache.xml.utils.QName;
+import org.apache.xml.utils.ThreadControllerWrapper;
+import org.apache.xml.utils.WrappedRuntimeException;
+import org.apache.xpath.NodeSetDTM;
+import org.apache.xpath.VariableStack;
+import org.apache.xpath.XPathContext;
+import org.apache.xpath.objects.XNodeSet;
+import org.apache.xpath.objects.XObject;
+import org.xml.sax.SAXException;
+
+/**
+ * Shares the nodes selected by an xsl:apply-templates among several
+ * threads.
+ *
+ * <p>The selection is cut into chunks of consecutive nodes. Each thread
+ * has its own TransformerImpl, made from the same stylesheet and sharing
+ * the DTMManager of the calling transformer, so it sees the same
+ * documents but has its own variables, keys and result. A global
+ * variable or parameter is evaluated by the calling transformer when a
+ * thread first uses it, while the calling thread waits for the threads
+ * to finish. A thread instantiates the template rules for a chunk into a
+ * result tree fragment, inside a wrapper element which catches any
+ * attributes added before other content. The calling thread copies the
+ * finished chunks to its own result in document order, giving the
+ * wrapper's attributes to the element being built, which is where they
+ * would have gone had the chunk been transformed serially.</p>
+ *
+ * <p>Only transformers whose stylesheet has no side effects use this
+ * class, and it gives a selection back to the caller unless every tree
+ * held by the DTMManager is a completely built SAX2DTM, which may safely
+ * be read by several threads at once. If a thread comes to load a
+ * document which would not be, it stops, and the calling transformer
+ * instantiates the rest of the selection itself.</p>
+ * @xsl.usage internal
+ */
+class ParallelTemplateApplier
+{
+
+  /** The smallest number of nodes worth giving to a thread. */
+  static final int MIN_CHUNK_SIZE = 256;
+
+  /** The number of chunks to make for each thread, to even out the load. */
+  static final int CHUNKS_PER_THREAD = 4;
+
+  /** The number of finished chunks which may wait to be copied, per thread. */
+  static final int CHUNKS_AHEAD_PER_THREAD = 2;
+
+  /** The name of the element which wraps the result of each chunk. */
+  private static final String WRAPPER = "chunk";
+
+  /** The transformer on whose behalf the selections are processed. */
+  private final TransformerImpl m_transformer;
+
+  /**
+   * The transformers of the worker threads, created when first needed
+   * and reused for the rest of the transformation.
+   */
+  private final TransformerImpl[] m_workers;
+
+  // The state of the selection being processed, guarded by this object.
+
+  /** The instruction which made the selection. */
+  private ElemApplyTemplates m_instruction;
+
+  /** The selected nodes. */
+  private NodeSetDTM m_nodes;
+
+  /** The mode in which the templates are applied. */
+  private QName m_mode;
+
+  /** The number of nodes in each chunk but the last. */
+  private int m_chunkSize;
+
+  /** The number of chunks. */
+  private int m_chunkCount;
+
+  /**
+   * The first chunk the workers should not transform, because a worker
+   * has failed on it or can't share a document it needs.
+   */
+  private int m_stopChunk;
+
+  /** The number of chunks a worker may start before the oldest is copied. */
+  private int m_window;
+
+  /** The next chunk to be started. */
+  private int m_nextChunk;
+
+  /** The number of chunks copied to the result. */
+  private int m_copiedChunks;
+
+  /**
+   * The document nodes of the result tree fragments of the chunks which
+   * have not been copied yet, or DTM.NULL for those not yet finished.
+   */
+  private int[] m_results;
+
+  /** The error thrown by a worker on the stop chunk, or null. */
+  private Throwable m_error;
+
+  /** Set when the workers should stop before the selection is done. */
+  private boolean m_cancelled;
+
+  /** The running workers, or null. */
+  private Worker[] m_tasks;
+
+  /**
+   * Held while the calling transformer's XPath context is in use, so
+   * that the workers evaluate global variables with it one at a time,
+   * and not while the calling thread copies a chunk.
+   */
+  private final Object m_contextLock = new Object();
+
+  /**
+   * Create a ParallelTemplateApplier.
+   *
+   * @param transformer The transformer on whose behalf selections will
+   *                    be processed.
+   * @param threads The number of threads to use.
+   */
+  ParallelTemplateApplier(TransformerImpl transformer, int threads)
+  {
+    m_transformer = transformer;
+    m_workers = new TransformerImpl[threads];
+  }
+
+  /**
+   * Process the nodes selected by an xsl:apply-templates on several
+   * threads, if the selection is large enough and all the trees the
+   * templates can reach can be read by several threads.
+   *
+   * @param xslInstruction The xsl:apply-templates, which must have no
+   *                       xsl:with-param children.
+   * @param nodes The selected nodes. They are not changed.
+   *
+   * @return true if the nodes have been processed, false if the caller
+   * should process them itself.
+   *
+   * @throws TransformerException
+   */
+  boolean transformSelectedNodes(ElemApplyTemplates xslInstruction,
+                                 NodeSetDTM nodes)
+          throws TransformerException
+  {
+
+    XPathContext xctxt = m_transformer.getXPathContext();
+    DTMManager mgr = xctxt.getDTMManager();
+
+    // A global variable evaluated for a worker may apply templates too.
+    if (null != m_nodes || !isShareable(mgr, nodes))
+      return false;
+
+    int size = nodes.size();
+    int threads = m_workers.length;
+
+    m_instruction = xslInstruction;
+    m_nodes = nodes;
+    m_mode = m_transformer.getMode();
+    m_chunkSize = Math.max(MIN_CHUNK_SIZE,
+                      (size + threads * CHUNKS_PER_THREAD - 1)
+                      / (threads * CHUNKS_PER_THREAD));
+    m_chunkCount = (size + m_chunkSize - 1) / m_chunkSize;
+    m_stopChunk = m_chunkCount;
+    m_window = threads * CHUNKS_AHEAD_PER_THREAD;
+    m_nextChunk = 0;
+    m_copiedChunks = 0;
+    m_results = new int[m_chunkCount];
+    Arrays.fill(m_results, DTM.NULL);
+    m_error = null;
+    m_cancelled = false;
+
+    threads = Math.min(threads, m_chunkCount);
+
+    for (int i = 0; i < threads; i++)
+    {
+      if (null == m_workers[i])
+        m_workers[i] = m_transformer.createParallelWorker(this);
+    }
+
+    Worker[] tasks = new Worker[threads];
+    Thread[] running = new Thread[threads];
+    int serialStart = size;
+
+    for (int i = 0; i < threads; i++)
+      tasks[i] = new Worker(m_workers[i]);
+
+    synchronized (this)
+    {
+      m_tasks = tasks;
+    }
+
+    try
+    {
+      for (int i = 0; i < threads; i++)
+        running[i] = ThreadControllerWrapper.runThread(tasks[i], -1);
+
+      for (int chunk = 0; chunk < m_chunkCount; chunk++)
+      {
+        int doc = waitForChunk(chunk);
+
+        if (DTM.NULL == doc)
+        {
+          serialStart = chunk * m_chunkSize;
+          break;
+        }
+
+        DTM result = mgr.getDTM(doc);
+
+        try
+        {
+          synchronized (m_contextLock)
+          {
+            copyChunk(result, doc);
+          }
+        }
+        finally
+        {
+          synchronized (this)
+          {
+            m_results[chunk] = DTM.NULL;
+            m_copiedChunks = chunk + 1;
+            notifyAll();
+          }
+          mgr.release(result, true);
+        }
+      }
+    }
+    finally
+    {
+      synchronized (this)
+      {
+        m_cancelled = true;
+        notifyAll();
+      }
+
+      for (int i = 0; i < threads; i++)
+      {
+        try
+        {
+          if (null != running[i])
+            ThreadControllerWrapper.waitThread(running[i], tasks[i]);
+        }
+        catch (InterruptedException ie){}
+
+        // A worker which was thrown out of a template may not be in a
+        // fit state to be used again.
+        if (tasks[i].m_failed)
+          m_workers[i] = null;
+      }
+
+      // Drop the results which weren't copied because of an error.
+      for (int i = 0; i < m_chunkCount; i++)
+      {
+        if (DTM.NULL != m_results[i])
+          mgr.release(mgr.getDTM(m_results[i]), true);
+      }
+
+      synchronized (this)
+      {
+        m_tasks = null;
+      }
+      m_instruction = null;
+      m_nodes = null;
+      m_results = null;
+    }
+
+    // The rest of the selection needs a document the workers can't share.
+    if (serialStart < size)
+      xslInstruction.transformSelectedNodes(m_transformer, nodes, serialStart,
+                                            size);
+
+    return true;
+  }
+
+  /**
+   * Tell whether a selection is large enough to share and all the trees
+   * the workers could reach can be read by several threads.
+   *
+   * @param mgr The DTMManager of the calling transformer.
+   * @param nodes The selected nodes.
+   *
+   * @return true if the selection should be shared.
+   */
+  private boolean isShareable(DTMManager mgr, NodeSetDTM nodes)
+  {
+
+    if (nodes.size() < 2 * MIN_CHUNK_SIZE
+        || !(mgr instanceof DTMManagerDefault))
+      return false;
+
+    // Besides the selected nodes, the workers may reach any tree through
+    // a global parameter or a document() already loaded. DOM2DTM, for
+    // one, builds itself as it is read.
+    DTM[] dtms = ((DTMManagerDefault) mgr).getDTMs();
+
+    for (int i = 0; i < dtms.length; i++)
+    {
+      if (!(dtms[i] instanceof SAX2DTM))
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Stop a worker thread which is about to load a document that could
+   * not be read by several threads, if this is called on one. The
+   * chunk it is transforming and those after it are then left for the
+   * calling transformer to transform.
+   *
+   * @param source The Source of the document.
+   *
+   * @throws SerialFallback if the calling thread is a worker and the
+   * source would not be parsed into a new SAX2DTM.
+   */
+  void checkSource(Source source)
+  {
+
+    if (source instanceof StreamSource || source instanceof SAXSource)
+      return;
+
+    synchronized (this)
+    {
+      if (null == m_tasks)
+        return;
+
+      Thread thread = Thread.currentThread();
+
+      for (int i = 0; i < m_tasks.length; i++)
+      {
+        if (thread == m_tasks[i].m_thread && m_tasks[i].m_chunk >= 0)
+        {
+          stopAt(m_tasks[i].m_chunk, null);
+          throw new SerialFallback();
+        }
+      }
+    }
+  }
+
+  /**
+   * Keep the workers from transforming a chunk or any after it. The
+   * calling thread throws the error when it comes to the chunk, or
+   * transforms the rest of the selection itself if there is none.
+   *
+   * @param chunk The index of the chunk.
+   * @param error The error a worker threw on the chunk, or null.
+   */
+  private synchronized void stopAt(int chunk, Throwable error)
+  {
+
+    // An earlier chunk decides, as it would have serially.
+    if (chunk < m_stopChunk)
+    {
+      m_stopChunk = chunk;
+      m_error = error;
+    }
+    notifyAll();
+  }
+
+  /**
+   * Get the value of a global variable or parameter for a worker,
+   * evaluating it with the calling transformer if it hasn't been used yet.
+   *
+   * @param index The index of the variable in the global stack frame.
+   *
+   * @return The value, which the worker may keep.
+   *
+   * @throws TransformerException
+   */
+  XObject getGlobalVariable(int index) throws TransformerException
+  {
+
+    synchronized (m_contextLock)
+    {
+      XPathContext xctxt = m_transformer.getXPathContext();
+      VariableStack vars = xctxt.getVarStack();
+
+      // Other workers may be reading the result tree fragments of the
+      // globals evaluated so far, so those of this one go elsewhere.
+      if (vars.elementAt(index).getType() == XObject.CLASS_UNRESOLVEDVARIABLE)
+        xctxt.startNewGlobalRTFDTM();
+
+      XObject value = vars.getGlobalVariable(xctxt, index, false);
+
+      // The position of a node-set belongs to one thread, so each
+      // worker gets its own copy of the nodes.
+      if (value.getType() == XObject.CLASS_NODESET)
+      {
+        XNodeSet copy = new XNodeSet(new NodeSetDTM(value.iter()));
+
+        copy.setShouldCacheNodes(true);
+        value = copy;
+      }
+
+      return value;
+    }
+  }
+
+  /**
+   * Wait until a chunk has been transformed.
+   *
+   * @param chunk The index of the chunk.
+   *
+   * @return The document node of the result tree fragment holding the
+   *         chunk's result, or DTM.NULL if the workers have stopped
+   *         before it for the calling transformer to go on serially.
+   *
+   * @throws TransformerException if a worker has failed on the chunk.
+   */
+  private synchronized int waitForChunk(int chunk) throws TransformerException
+  {
+
+    while (DTM.NULL == m_results[chunk] && chunk < m_stopChunk)
+    {
+      try
+      {
+        wait();
+      }
+      catch (InterruptedException ie)
+      {
+        throw new TransformerException(ie);
+      }
+    }
+
+    if (DTM.NULL != m_results[chunk])
+      return m_results[chunk];
+
+    if (null != m_error)
+    {
+      if (m_error instanceof TransformerException)
+        throw (TransformerException) m_error;
+      else if (m_error instanceof RuntimeException)
+        throw (RuntimeException) m_error;
+      else if (m_error instanceof Error)
+        throw (Error) m_error;
+      else
+        throw new TransformerException((Exception) m_error);
+    }
+
+    return DTM.NULL;
+  }
+
+  /**
+   * Copy the result of a chunk to the calling transformer's result.
+   *
+   * @param result The result tree fragment holding the chunk's result.
+   * @param doc The document node of the result tree fragment.
+   *
+   * @throws TransformerException
+   */
+  private void copyChunk(DTM result, int doc) throws TransformerException
+  {
+
+    SerializationHandler rth = m_transformer.getSerializationHandler();
+    int wrapper = result.getFirstChild(doc);
+
+    try
+    {
+      // The handler drops these if the element they belong to has
+      // already been given content, as it would have done serially.
+      for (int ns = result.getFirstNamespaceNode(wrapper, false);
+           DTM.NULL != ns;
+           ns = result.getNextNamespaceNode(wrapper, ns, false))
+      {
+        ClonerToResultTree.cloneToResultTree(ns, DTM.NAMESPACE_NODE, result,
+                                             rth, false);
+      }
+
+      for (int attr = result.getFirstAttribute(wrapper);
+           DTM.NULL != attr;
+           attr = result.getNextAttribute(attr))
+      {
+        ClonerToResultTree.cloneToResultTree(attr, DTM.ATTRIBUTE_NODE, result,
+                                             rth, false);
+      }
+
+      for (int n = result.getFirstChild(wrapper);
+           DTM.NULL != n;
+           n = result.getNextSibling(n))
+      {
+        rth.flushPending();
+
+        if (result.getNodeType(n) == DTM.ELEMENT_NODE
+                && result.getNamespaceURI(n) == null)
+          rth.startPrefixMapping("", "");
+        result.dispatchToEvents(n, rth);
+      }
+    }
+    catch (SAXException se)
+    {
+      throw new TransformerException(se);
+    }
+  }
+
+  /**
+   * Transform a chunk of the selection into a new result tree fragment.
+   *
+   * @param worker The worker's transformer.
+   * @param nodes The worker's copy of the selection.
+   * @param chunk The index of the chunk.
+   *
+   * @return The document node of a new result tree fragment, whose
+   *         document element wraps the result of the chunk.
+   *
+   * @throws TransformerException
+   */
+  private int transformChunk(TransformerImpl worker, NodeSetDTM nodes,
+                             int chunk)
+          throws TransformerException
+  {
+
+    int start = chunk * m_chunkSize;
+    int end = Math.min(start + m_chunkSize, nodes.size());
+    DTM result = worker.getXPathContext().getDTMManager().getDTM(null, true,
+                                                    null, false, false);
+    ToXMLSAXHandler rth = new ToXMLSAXHandler();
+    int doc;
+
+    rth.setContentHandler(result.getContentHandler());
+    rth.setTransformer(worker);
+    worker.setSerializationHandler(rth);
+
+    try
+    {
+      rth.startDocument();
+      rth.startElement("", WRAPPER, WRAPPER);
+      m_instruction.transformSelectedNodes(worker, nodes, start, end);
+      rth.endElement("", WRAPPER, WRAPPER);
+      rth.flushPending();
+
+      // The document node may not be known after the document is closed.
+      doc = result.getDocument();
+      rth.endDocument();
+    }
+    catch (SAXException se)
+    {
+      worker.getXPathContext().getDTMManager().release(result, true);
+      throw new TransformerException(se);
+    }
+    catch (TransformerException te)
+    {
+      worker.getXPathContext().getDTMManager().release(result, true);
+      throw te;
+    }
+    finally
+    {
+      worker.setSerializationHandler(null);
+    }
+
+    return doc;
+  }
+
+  /**
+   * Transforms chunks on a worker thread until none are left.
+   */
+  private class Worker implements Runnable
+  {
+
+    /** The transformer of this thread. */
+    private final TransformerImpl m_worker;
+
+    /** The thread running this worker, once it has started. */
+    Thread m_thread;
+
+    /** The chunk being transformed, or -1. */
+    int m_chunk = -1;
+
+    /** Set if the transformer was thrown out of a template. */
+    boolean m_failed;
+
+    /**
+     * Create a Worker.
+     *
+     * @param worker The transformer to use.
+     */
+    Worker(TransformerImpl worker)
+    {
+      m_worker = worker;
+    }
+
+    /**
+     * Take chunks in order and transform them, waiting whenever too many
+     * results are waiting to be copied.
+     */
+    public void run()
+    {
+
+      m_thread = Thread.currentThread();
+
+      // Each thread moves its own position through the selection.
+      NodeSetDTM nodes =
+        new ContextNodes(m_worker.getXPathContext().getDTMManager());
+
+      nodes.appendNodes(m_nodes);
+      m_worker.pushMode(m_mode);
+
+      int chunk = -1;
+
+      try
+      {
+        while (true)
+        {
+          synchronized (ParallelTemplateApplier.this)
+          {
+            while (!m_cancelled && m_nextChunk < m_stopChunk
+                   && m_nextChunk >= m_copiedChunks + m_window)
+              ParallelTemplateApplier.this.wait();
+
+            if (m_cancelled || m_nextChunk >= m_stopChunk)
+              return;
+
+            chunk = m_nextChunk++;
+            m_chunk = chunk;
+          }
+
+          int result = transformChunk(m_worker, nodes, chunk);
+
+          synchronized (ParallelTemplateApplier.this)
+          {
+            // The chunk may have been given up while it was transformed.
+            if (m_cancelled || chunk >= m_stopChunk)
+            {
+              DTMManager mgr = m_worker.getXPathContext().getDTMManager();
+              mgr.release(mgr.getDTM(result), true);
+              return;
+            }
+            m_results[chunk] = result;
+            ParallelTemplateApplier.this.notifyAll();
+          }
+        }
+      }
+      catch (Throwable t)
+      {
+        if (t instanceof WrappedRuntimeException
+            && null != ((WrappedRuntimeException) t).getException())
+          t = ((WrappedRuntimeException) t).getException();
+
+        m_failed = true;
+
+        // A SerialFallback has already stopped the workers at its chunk.
+        stopAt(chunk, t);
+      }
+      finally
+      {
+        synchronized (ParallelTemplateApplier.this)
+        {
+          m_chunk = -1;
+        }
+        m_worker.popMode();
+      }
+    }
+  }
+
+  /**
+   * The value of a global variable or parameter in a worker, until the
+   * worker first uses it and gets it from the calling transformer.
+   */
+  class SharedGlobal extends XObject
+  {
+    static final long serialVersionUID = 4472106735233958571L;
+
+    /** The index of the variable in the global stack frame. */
+    private final int m_index;
+
+    /**
+     * Create a SharedGlobal.
+     *
+     * @param index The index of the variable in the global stack frame.
+     */
+    SharedGlobal(int index)
+    {
+      m_index = index;
+    }
+
+    /**
+     * Get the variable's value from the calling transformer.
+     *
+     * @param xctxt The worker's XPath runtime state, which is not used.
+     *
+     * @return The value, which the worker's VariableStack keeps.
+     *
+     * @throws TransformerException
+     */
+    public XObject execute(XPathContext xctxt) throws TransformerException
+    {
+      return getGlobalVariable(m_index);
+    }
+
+    /**
+     * Tell the VariableStack that the value is still to be found.
+     *
+     * @return CLASS_UNRESOLVEDVARIABLE
+     */
+    public int getType()
+    {
+      return CLASS_UNRESOLVEDVARIABLE;
+    }
+
+    /**
+     * Given a request type, return the equivalent string.
+     * For diagnostic purposes.
+     *
+     * @return An informational string.
+     */
+    public String getTypeString()
+    {
+      return "SharedGlobal (" + m_index + ")";
+    }
+  }
+
+  /**
+   * Thrown on a worker which has come to load a document that several
+   * threads could not read, to get it out of the templates it is in.
+   */
+  static class SerialFallback extends Error
+  {
+    static final long serialVersionUID = -6181752340857216593L;
+  }
+
+  /**
+   * The context node list of a worker. Unlike a plain NodeSetDTM, asking
+   * for its length, as last() does, leaves the current position alone.
+   */
+  private static class ContextNodes extends NodeSetDTM
+  {
+    static final long serialVersionUID = -2938419385926404352L;
+
+    /**
+     * Create an empty list.
+     *
+     * @param dtmManager The DTMManager of the worker.
+     */
+    ContextNodes(DTMManager dtmManager)
+    {
+      super(dtmManager);
+    }
+
+    /**
+     * The number of nodes in the list, all of which are already known.
+     *
+     * @return The number of nodes.
+     */
+    public int getLength()
+    {
+      return size();
+    }
+  }
+}
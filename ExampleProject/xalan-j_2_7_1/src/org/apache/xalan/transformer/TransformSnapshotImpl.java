@@ -99,7 +99,7 @@ class TransformSnapshotImpl implements TransformSnapshot
    * so a tool can discover the matched template, and matched
    * node. 
    */
-  private Stack m_currentMatchTemplates;
+  private ObjectStack m_currentMatchTemplates;
 
   /**
    * A node vector used as a stack to track the current
@@ -121,7 +121,7 @@ class TransformSnapshotImpl implements TransformSnapshot
    * Stack for the purposes of flagging infinite recursion with
    * attribute sets.
    */
-  private Stack m_attrSetStack;
+  private ObjectStack m_attrSetStack;
 
   /** Indicate whether a namespace context was pushed */
   boolean m_nsContextPushed;
@@ -176,14 +176,14 @@ class TransformSnapshotImpl implements TransformSnapshot
       m_currentTemplateElements =
         (ObjectStack) transformer.m_currentTemplateElements.clone();
       m_currentMatchTemplates =
-        (Stack) transformer.m_currentMatchTemplates.clone();
+        (ObjectStack) transformer.m_currentMatchTemplates.clone();
       m_currentMatchNodes =
         (NodeVector) transformer.m_currentMatchedNodes.clone();
       m_countersTable =
         (CountersTable) transformer.getCountersTable().clone();
 
       if (transformer.m_attrSetStack != null)
-        m_attrSetStack = (Stack) transformer.m_attrSetStack.clone();
+        m_attrSetStack = (ObjectStack) transformer.m_attrSetStack.clone();
     }
     catch (CloneNotSupportedException cnse)
     {
@@ -233,13 +233,13 @@ class TransformSnapshotImpl implements TransformSnapshot
       transformer.m_currentTemplateElements =
         (ObjectStack) m_currentTemplateElements.clone();
       transformer.m_currentMatchTemplates =
-        (Stack) m_currentMatchTemplates.clone();
+        (ObjectStack) m_currentMatchTemplates.clone();
       transformer.m_currentMatchedNodes =
         (NodeVector) m_currentMatchNodes.clone();
       transformer.m_countersTable = (CountersTable) m_countersTable.clone();
 
       if (m_attrSetStack != null)
-        transformer.m_attrSetStack = (Stack) m_attrSetStack.clone();
+        transformer.m_attrSetStack = (ObjectStack) m_attrSetStack.clone();
     }
     catch (CloneNotSupportedException cnse)
     {
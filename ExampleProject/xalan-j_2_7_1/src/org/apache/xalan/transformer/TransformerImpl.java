@@ -24,7 +24,6 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.Enumeration;
 import java.util.Properties;
-import java.util.Stack;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -54,6 +53,7 @@ import org.apache.xml.serializer.Serializer;
 import org.apache.xml.serializer.SerializerFactory;
 import org.apache.xalan.templates.AVT;
 import org.apache.xalan.templates.Constants;
+import org.apache.xalan.templates.ElemApplyTemplates;
 import org.apache.xalan.templates.ElemAttributeSet;
 import org.apache.xalan.templates.ElemForEach;
 import org.apache.xalan.templates.ElemSort;
@@ -72,6 +72,7 @@ import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMIterator;
 import org.apache.xml.dtm.DTMManager;
 import org.apache.xml.dtm.DTMWSFilter;
+import org.apache.xml.dtm.ref.sax2dtm.SAX2DTM;
 import org.apache.xml.serializer.ToSAXHandler;
 import org.apache.xml.serializer.ToTextStream;
 import org.apache.xml.serializer.ToXMLSAXHandler;
@@ -86,6 +87,7 @@ import org.apache.xml.utils.SAXSourceLocator;
 import org.apache.xml.utils.ThreadControllerWrapper;
 import org.apache.xpath.Arg;
 import org.apache.xpath.ExtensionsProvider;
+import org.apache.xpath.NodeSetDTM;
 import org.apache.xpath.VariableStack;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.functions.FuncExtFunction;
@@ -213,7 +215,7 @@ public class TransformerImpl extends Transformer
    * org.apache.xalan.transformer.TransformState interface,
    * so a tool can discover the matched template
    */
-  Stack m_currentMatchTemplates = new Stack();
+  ObjectStack m_currentMatchTemplates = new ObjectStack();
 
   /**
    * A node vector used as a stack to track the current
@@ -261,7 +263,7 @@ public class TransformerImpl extends Transformer
    * Stack for the purposes of flagging infinite recursion with
    * attribute sets.
    */
-  Stack m_attrSetStack = null;
+  ObjectStack m_attrSetStack = null;
 
   /**
    * The table of counters for xsl:number support.
@@ -303,6 +305,49 @@ public class TransformerImpl extends Transformer
    */    
   private boolean m_incremental = false;
 
+  /**
+   * The flag for the setting of the streaming feature, which is only
+   * honoured if the stylesheet is streamable.
+   */
+  private boolean m_streaming = false;
+
+  /**
+   * The source tree whose nodes may be discarded during the current
+   * transformation, or null if the transformation is not streaming.
+   */
+  private SAX2DTM m_streamingDTM = null;
+
+  /**
+   * The node being processed by the outermost xsl:apply-templates or
+   * xsl:for-each which walks descendants, or DTM.NULL. Its walk goes on
+   * through the subtree of that node, so nothing is discarded while an
+   * instruction nested inside it runs.
+   */
+  private int m_streamingFloor = DTM.NULL;
+
+  /**
+   * The number of threads which may share an xsl:apply-templates, which
+   * is only honoured if the stylesheet has no side effects.
+   */
+  private int m_parallelThreads = 0;
+
+  /**
+   * Shares xsl:apply-templates selections among threads, created when
+   * first needed and kept for the rest of the transformation.
+   */
+  private ParallelTemplateApplier m_parallelApplier = null;
+
+  /**
+   * The ParallelTemplateApplier this transformer works for, if it
+   * instantiates templates on another transformer's behalf.
+   */
+  private ParallelTemplateApplier m_parallelOwner = null;
+
+  /**
+   * The node against which the global variables are evaluated.
+   */
+  private int m_globalContextNode = DTM.NULL;
+
   /**
    * The flag for the setting of the source_location feature;
    * This flag should have the same value as the FEATURE_SOURCE_LOCATION feature
@@ -376,7 +421,7 @@ public class TransformerImpl extends Transformer
   /**
    * A stack of current template modes.
    */
-  private Stack m_modes = new Stack();
+  private ObjectStack m_modes = new ObjectStack();
 
   //==========================================================
   // SECTION: Constructor
@@ -391,7 +436,14 @@ public class TransformerImpl extends Transformer
    // throws javax.xml.transform.TransformerException    
   {
     m_optimizer = stylesheet.getOptimizer();
-    m_incremental = stylesheet.getIncremental();
+    // Streaming needs the source tree to be built incrementally. If the
+    // stylesheet can't be streamed, fall back silently to the normal mode.
+    m_streaming = stylesheet.getStreaming() && stylesheet.isStreamable();
+    m_incremental = stylesheet.getIncremental() || m_streaming;
+    // Worker threads can only read completely built source trees.
+    if (!m_incremental && stylesheet.getParallelThreads() > 1
+        && stylesheet.isParallelizable())
+      m_parallelThreads = stylesheet.getParallelThreads();
     m_source_location = stylesheet.getSource_location();  	
     setStylesheet(stylesheet);
     XPathContext xPath = new XPathContext(this);
@@ -399,6 +451,9 @@ public class TransformerImpl extends Transformer
     xPath.getDTMManager().setIncremental(m_incremental);
     xPath.setSource_location(m_source_location);
     xPath.getDTMManager().setSource_location(m_source_location);
+    xPath.getDTMManager().setOffHeapStorage(stylesheet.getOffHeapStorage());
+    xPath.getDTMManager().setOffHeapDirectory(stylesheet.getOffHeapDirectory());
+    xPath.getSourceTreeManager().setDocumentCache(stylesheet.getDocumentCache());
     
     if (stylesheet.isSecureProcessing())
       xPath.setSecureProcessing(true);
@@ -511,15 +566,19 @@ public class TransformerImpl extends Transformer
       m_currentTemplateElements.removeAllElements();     
       m_currentMatchTemplates.removeAllElements();
       m_currentMatchedNodes.removeAllElements();
+      m_modes.removeAllElements();
       
       m_serializationHandler = null;      
       m_outputTarget = null;
       m_keyManager = new KeyManager();
-      m_attrSetStack = null;
+      if (null != m_attrSetStack)
+        m_attrSetStack.removeAllElements();
       m_countersTable = null;
-      m_currentTemplateRuleIsNull = new BoolStack();
+      m_currentTemplateRuleIsNull.clear();
       m_xmlSource = null;
       m_doc = DTM.NULL;
+      m_globalContextNode = DTM.NULL;
+      m_parallelApplier = null;
       m_isTransformDone = false;
       m_transformThread = null;
 
@@ -696,11 +755,17 @@ public class TransformerImpl extends Transformer
           fatalError(e);
         }           
       }
-      DTM dtm = mgr.getDTM(source, false, this, true, true);
+      // A streamed tree is never searched, so don't index it.
+      DTM dtm = mgr.getDTM(source, false, this, true, !m_streaming);
       dtm.setDocumentBaseURI(base);
       
       boolean hardDelete = true;  // %REVIEW% I have to think about this. -sb
 
+      // Trace listeners may hold on to any node, so don't discard nodes
+      // while debugging.
+      if (m_streaming && !getDebug() && dtm instanceof SAX2DTM)
+        m_streamingDTM = (SAX2DTM) dtm;
+
       try
       {
       	// NOTE: This will work because this is _NOT_ a shared DTM, and thus has
@@ -710,6 +775,8 @@ public class TransformerImpl extends Transformer
       }
       finally
       {
+        m_streamingDTM = null;
+        m_streamingFloor = DTM.NULL;
         if (shouldRelease)
           mgr.release(dtm, hardDelete);
       }
@@ -1766,9 +1833,7 @@ public class TransformerImpl extends Transformer
 
     synchronized (m_reentryGuard)
     {
-      VariableStack varstack = new VariableStack();
-
-      m_xcontext.setVarStack(varstack);
+      m_xcontext.getVarStack().reset();
 
       m_userParams = null;
     }
@@ -1801,6 +1866,7 @@ public class TransformerImpl extends Transformer
     VariableStack vs = xctxt.getVarStack();
     StylesheetRoot sr = getStylesheet();
     Vector vars = sr.getVariablesAndParamsComposed();
+    m_globalContextNode = contextNode;
     
     int i = vars.size();
     vs.link(i);
@@ -2966,7 +3032,7 @@ public class TransformerImpl extends Transformer
 
     if (null == m_attrSetStack)
     {
-      m_attrSetStack = new Stack();
+      m_attrSetStack = new ObjectStack();
     }
 
     if (!m_attrSetStack.empty())
@@ -3190,7 +3256,7 @@ public class TransformerImpl extends Transformer
    */
   public QName getMode()
   {
-    return m_modes.isEmpty() ? null : (QName) m_modes.peek();
+    return m_modes.empty() ? null : (QName) m_modes.peek();
   }
 
   // %TODO% Doc
@@ -3667,6 +3733,150 @@ public class TransformerImpl extends Transformer
         return m_incremental;
     }
 
+    /**
+     * @return Streaming flag, which is only set if the stylesheet is
+     * streamable
+     */
+    public boolean getStreaming() {
+        return m_streaming;
+    }
+
+    /**
+     * Tell the source tree that a node has just been selected for
+     * processing, so that in streaming mode the nodes which precede it,
+     * other than its ancestors, can be discarded. A streamable stylesheet
+     * never goes back to them.
+     *
+     * <p>An iteration over descendants comes back to the subtree of the
+     * node after processing it, to look for the next one, so while it is
+     * processing a node nothing at or after that node is discarded.
+     * Nested iterations then discard nothing at all, since everything
+     * before the node was discarded when it was selected.</p>
+     *
+     * @param dtm The DTM which holds the node.
+     * @param node The node which is about to be processed.
+     * @param floor The value of getSourceNodesFloor() when the iteration
+     *              started.
+     * @param descends true if the iteration walks descendants.
+     */
+    public void releaseSourceNodesBefore(DTM dtm, int node, int floor,
+                                         boolean descends) {
+        if (DTM.NULL != floor || dtm != m_streamingDTM || null == dtm)
+            return;
+        m_streamingDTM.releaseNodesBefore(node);
+        m_streamingFloor = descends ? node : DTM.NULL;
+    }
+
+    /**
+     * @return The node from which an enclosing iteration over descendants
+     * still needs the source tree, or DTM.NULL.
+     * @see #releaseSourceNodesBefore(DTM, int, int, boolean)
+     */
+    public int getSourceNodesFloor() {
+        return m_streamingFloor;
+    }
+
+    /**
+     * Restore the value of getSourceNodesFloor() when an iteration ends.
+     *
+     * @param floor The value of getSourceNodesFloor() when the iteration
+     *              started.
+     */
+    public void setSourceNodesFloor(int floor) {
+        m_streamingFloor = floor;
+    }
+
+    /**
+     * @return The number of threads which may share an
+     * xsl:apply-templates, or 0 if the transformation is not parallel
+     */
+    public int getParallelThreads() {
+        return m_parallelThreads;
+    }
+
+    /**
+     * Share the nodes selected by an xsl:apply-templates among several
+     * threads, if parallel transformation is enabled and the selection is
+     * large enough for it to pay.
+     *
+     * @param xslInstruction The xsl:apply-templates, which must have no
+     * xsl:with-param children.
+     * @param nodes The selected nodes, already read into a list. They
+     * are not changed.
+     *
+     * @return true if the nodes have been processed, false if the caller
+     * should process them itself.
+     *
+     * @throws TransformerException
+     * @xsl.usage internal
+     */
+    public boolean transformSelectedNodesInParallel(
+            ElemApplyTemplates xslInstruction, NodeSetDTM nodes)
+            throws TransformerException {
+        if (m_parallelThreads < 2 || getDebug())
+            return false;
+        if (null == m_parallelApplier)
+            m_parallelApplier =
+                new ParallelTemplateApplier(this, m_parallelThreads);
+        return m_parallelApplier.transformSelectedNodes(xslInstruction,
+                                                        nodes);
+    }
+
+    /**
+     * Make a transformer which can instantiate templates on another
+     * thread on behalf of this one. It shares this transformer's
+     * documents, including those loaded by document(), and reads the
+     * values of its global variables and parameters, but has its own
+     * local variables, keys and result.
+     *
+     * @param owner The ParallelTemplateApplier the new transformer works
+     * for.
+     *
+     * @return A new transformer, ready to instantiate templates.
+     *
+     * @throws TransformerException
+     */
+    TransformerImpl createParallelWorker(ParallelTemplateApplier owner)
+            throws TransformerException {
+        TransformerImpl worker = new TransformerImpl(m_stylesheetRoot);
+        worker.m_parallelThreads = 0;
+        worker.m_parallelOwner = owner;
+        worker.m_quietConflictWarnings = m_quietConflictWarnings;
+        worker.m_xcontext.setDTMManager(m_xcontext.getDTMManager());
+        worker.m_xcontext.setSourceTreeManager(
+            m_xcontext.getSourceTreeManager());
+        worker.setErrorListener(m_errorHandler);
+        worker.setExtensionsTable(m_stylesheetRoot);
+        worker.pushGlobalVars(m_globalContextNode);
+
+        // The globals are only evaluated when a worker first uses them,
+        // and then once for all the workers, by this transformer.
+        VariableStack workerVars = worker.m_xcontext.getVarStack();
+        int n = m_stylesheetRoot.getVariablesAndParamsComposed().size();
+
+        for (int i = 0; i < n; i++)
+            workerVars.setGlobalVariable(i, owner.new SharedGlobal(i));
+        return worker;
+    }
+
+    /**
+     * Make sure a document about to be loaded by document() can be read
+     * by several threads, if templates are being instantiated on several
+     * threads. If it can't, the threads stop and the calling transformer
+     * instantiates the rest of the selection itself.
+     *
+     * @param source The document's Source, as returned by the
+     * URIResolver.
+     * @xsl.usage internal
+     */
+    public void checkSharedSource(Source source) {
+        ParallelTemplateApplier applier =
+            (null != m_parallelOwner) ? m_parallelOwner : m_parallelApplier;
+
+        if (null != applier)
+            applier.checkSource(source);
+    }
+
     /**
      * @return Optimization flag
      */
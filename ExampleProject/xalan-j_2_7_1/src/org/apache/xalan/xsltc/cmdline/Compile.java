@@ -64,7 +64,9 @@ public final class Compile {
 	    boolean inputIsURL = false;
 	    boolean useStdIn = false;
 	    boolean classNameSet = false;
-	    final GetOpt getopt = new GetOpt(args, "o:d:j:p:uxhsinv");
+	    String registryClassName = null;
+	    String[] stylesheetIds = null;
+	    final GetOpt getopt = new GetOpt(args, "o:d:j:p:r:uxhsinv");
 	    if (args.length < 1) printUsage();
 
 	    final XSLTC xsltc = new XSLTC();
@@ -89,6 +91,9 @@ public final class Compile {
 		case 'j':  
 		    xsltc.setJarFileName(getopt.getOptionArg());
 		    break;
+		case 'r':
+		    registryClassName = getopt.getOptionArg();
+		    break;
 		case 'x':
 		    xsltc.setDebug(true);
 		    break;
@@ -114,6 +119,10 @@ public final class Compile {
 		    System.err.println(new ErrorMsg(ErrorMsg.COMPILE_STDIN_ERR));
 		}
 		compileOK = xsltc.compile(System.in, xsltc.getClassName());
+		// Register the translet under its name without the package
+		final String className = xsltc.getClassName();
+		stylesheetIds = new String[] {
+		    className.substring(className.lastIndexOf('.') + 1) };
 	    }
 	    else {
 		// Generate a vector containg URLs for all stylesheets specified
@@ -129,11 +138,14 @@ public final class Compile {
 		    stylesheetVector.addElement(url);
 		}
 		compileOK = xsltc.compile(stylesheetVector);
+		stylesheetIds = stylesheetNames;
 	    }
 
 	    // Compile the stylesheet and output class/jar file(s)
 	    if (compileOK) {
 		xsltc.printWarnings();
+		if (registryClassName != null)
+		    xsltc.outputRegistry(registryClassName, stylesheetIds);
 		if (xsltc.getJarFileName() != null) xsltc.outputToJar();
 	    }
 	    else {
@@ -105,6 +105,7 @@ final class Import extends TopLevelElement {
 
 	    _imported.setSourceLoader(loader);
 	    _imported.setSystemId(docToLoad);
+	    xsltc.addModule(docToLoad);
 	    _imported.setParentStylesheet(context);
 	    _imported.setImportingStylesheet(context);
         _imported.setTemplateInlining(context.getTemplateInlining());
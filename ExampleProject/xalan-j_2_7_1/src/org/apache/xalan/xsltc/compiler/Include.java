@@ -106,6 +106,7 @@ final class Include extends TopLevelElement {
 
 	    _included.setSourceLoader(loader);
 	    _included.setSystemId(docToLoad);
+	    xsltc.addModule(docToLoad);
 	    _included.setParentStylesheet(context);
 	    _included.setIncludingStylesheet(context);
 	    _included.setTemplateInlining(context.getTemplateInlining());
@@ -146,6 +146,14 @@ class StepPattern extends RelativePathPattern {
     public void reduceKernelPattern() {
 	_isEpsilon = true;
     }
+
+    /**
+     * Returns true if the node type of this pattern is no longer tested,
+     * because it is only tested against nodes of that type.
+     */
+    public boolean isReduced() {
+	return _isEpsilon;
+    }
 	
     public String toString() {
 	final StringBuffer buffer = new StringBuffer("stepPattern(\"");
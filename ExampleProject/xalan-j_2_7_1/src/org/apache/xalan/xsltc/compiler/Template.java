@@ -334,7 +334,12 @@ public final class Template extends TopLevelElement {
 	    }
 	}
         
+        // The body of an inlined template can be moved out of
+        // applyTemplates() as a whole, so that it doesn't keep
+        // applyTemplates() too big for the JIT compiler.
+        methodGen.markChunkStart();
         translateContents(classGen, methodGen);
+        methodGen.markChunkEnd();
 	il.setPositions(true);
     }
         
@@ -21,14 +21,31 @@
 
 package org.apache.xalan.xsltc.compiler;
 
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Vector;
 
+import org.apache.bcel.generic.ALOAD;
+import org.apache.bcel.generic.ASTORE;
+import org.apache.bcel.generic.BranchHandle;
+import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.GOTO_W;
+import org.apache.bcel.generic.IFEQ;
+import org.apache.bcel.generic.IF_ICMPEQ;
+import org.apache.bcel.generic.INVOKEINTERFACE;
+import org.apache.bcel.generic.INVOKEVIRTUAL;
+import org.apache.bcel.generic.InstructionConstants;
 import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.LOOKUPSWITCH;
+import org.apache.bcel.generic.LocalVariableGen;
+import org.apache.bcel.generic.PUSH;
 import org.apache.xalan.xsltc.compiler.util.ClassGenerator;
 import org.apache.xalan.xsltc.compiler.util.MethodGenerator;
+import org.apache.xalan.xsltc.compiler.util.Type;
+import org.apache.xalan.xsltc.compiler.util.Util;
+import org.apache.xml.dtm.Axis;
+import org.apache.xml.dtm.DTM;
 
 /**
  * A test sequence is a sequence of patterns that
@@ -48,6 +65,14 @@ import org.apache.xalan.xsltc.compiler.util.MethodGenerator;
  */
 final class TestSeq {
 
+    /**
+     * The least number of consecutive patterns of the form
+     * <code>name[@attr = 'literal']</code>, all testing the same attribute,
+     * that are dispatched on the hash code of the attribute value instead
+     * of being tested one after the other.
+     */
+    private static final int MIN_HASHED_PATTERNS = 3;
+
     /**
      * Integer code for the kernel type of this test sequence
      */
@@ -229,47 +254,34 @@ final class TestSeq {
 	// Init handle to jump when all patterns failed
 	InstructionHandle fail = (_default == null) ? continuation
 	    : getTemplateHandle(_default);
-	
-	// Compile all patterns in reverse order
-	for (int n = count - 1; n >= 0; n--) {
-	    final LocationPathPattern pattern = getPattern(n);
-	    final Template template = pattern.getTemplate();
-	    final InstructionList il = new InstructionList();
-
-	    // Patterns expect current node on top of stack
-	    il.append(methodGen.loadCurrentNode());
-
-	    // Apply the test-code compiled for the pattern
-	    InstructionList ilist = methodGen.getInstructionList(pattern);
-	    if (ilist == null) {
-		ilist = pattern.compile(classGen, methodGen);
-		methodGen.addInstructionList(pattern, ilist);
-	    }
 
-	    // Make a copy of the instruction list for backpatching
-	    InstructionList copyOfilist = ilist.copy();
+	// The attribute tested by each pattern, for hashed dispatch
+	final int[] attrTypes = new int[count];
+	for (int n = 0; n < count; n++) {
+	    attrTypes[n] = getHashedAttributeType(getPattern(n));
+	}
 
-	    FlowList trueList = pattern.getTrueList();
-	    if (trueList != null) {
-		trueList = trueList.copyAndRedirect(ilist, copyOfilist);
-	    }
-	    FlowList falseList = pattern.getFalseList();
-	    if (falseList != null) {
-		falseList = falseList.copyAndRedirect(ilist, copyOfilist);
+	// Compile all patterns in reverse order
+	int n = count - 1;
+	while (n >= 0) {
+	    // Find the run of patterns testing the same attribute
+	    int first = n;
+	    if (attrTypes[n] != -1) {
+		while (first > 0 && attrTypes[first - 1] == attrTypes[n]) {
+		    first--;
+		}
 	    }
 
-	    il.append(copyOfilist);
-
-	    // On success branch to the template code
-	    final InstructionHandle gtmpl = getTemplateHandle(template);
-	    final InstructionHandle success = il.append(new GOTO_W(gtmpl));
-
-	    if (trueList != null) {
-		trueList.backPatch(success);
+	    final InstructionList il;
+	    if (n - first + 1 >= MIN_HASHED_PATTERNS) {
+		il = compileHashedPatterns(classGen, methodGen, first, n,
+					   attrTypes[n], fail);
+		n = first - 1;
+	    }
+	    else {
+		il = compilePattern(classGen, methodGen, getPattern(n), fail);
+		n--;
 	    }
-	    if (falseList != null) {
-		falseList.backPatch(fail);
-	    } 
 
 	    // Next pattern's 'fail' target is this pattern's first instruction
 	    fail = il.getStart();
@@ -284,4 +296,256 @@ final class TestSeq {
 	}
 	return (_start = fail);
     }
+
+    /**
+     * Compile the code for a pattern, which branches to the code of its
+     * template if the pattern matches and to 'fail' otherwise.
+     */
+    private InstructionList compilePattern(ClassGenerator classGen,
+					   MethodGenerator methodGen,
+					   LocationPathPattern pattern,
+					   InstructionHandle fail)
+    {
+	final Template template = pattern.getTemplate();
+	final InstructionList il = new InstructionList();
+
+	// Patterns expect current node on top of stack
+	il.append(methodGen.loadCurrentNode());
+
+	// Apply the test-code compiled for the pattern
+	InstructionList ilist = methodGen.getInstructionList(pattern);
+	if (ilist == null) {
+	    ilist = pattern.compile(classGen, methodGen);
+	    methodGen.addInstructionList(pattern, ilist);
+	}
+
+	// Make a copy of the instruction list for backpatching
+	InstructionList copyOfilist = ilist.copy();
+
+	FlowList trueList = pattern.getTrueList();
+	if (trueList != null) {
+	    trueList = trueList.copyAndRedirect(ilist, copyOfilist);
+	}
+	FlowList falseList = pattern.getFalseList();
+	if (falseList != null) {
+	    falseList = falseList.copyAndRedirect(ilist, copyOfilist);
+	}
+
+	il.append(copyOfilist);
+
+	// On success branch to the template code
+	final InstructionHandle gtmpl = getTemplateHandle(template);
+	final InstructionHandle success = il.append(new GOTO_W(gtmpl));
+
+	if (trueList != null) {
+	    trueList.backPatch(success);
+	}
+	if (falseList != null) {
+	    falseList.backPatch(fail);
+	} 
+	return il;
+    }
+
+    /**
+     * Compile the code for the patterns first to last, which all test the
+     * same attribute of the current node against a string literal. Only a
+     * pattern whose literal has the hash code of the attribute value can
+     * match, so the code switches on that hash code to the patterns with
+     * literals of the same hash code, which are compiled in order. A
+     * pattern that tests nothing but the attribute value is compiled as a
+     * comparison of the value with its literal, and other patterns are
+     * compiled as usual. If the current node has no such attribute, none
+     * of them can match.
+     */
+    private InstructionList compileHashedPatterns(ClassGenerator classGen,
+						  MethodGenerator methodGen,
+						  int first, int last,
+						  int attrType,
+						  InstructionHandle fail)
+    {
+	final ConstantPoolGen cpg = classGen.getConstantPool();
+
+	// Find the distinct hash codes of the literals
+	final int[] hashes = new int[last - first + 1];
+	for (int n = first; n <= last; n++) {
+	    hashes[n - first] = getHashedLiteral(getPattern(n)).hashCode();
+	}
+	Arrays.sort(hashes);
+	int keys = 0;
+	for (int i = 0; i < hashes.length; i++) {
+	    if (i == 0 || hashes[i] != hashes[keys - 1]) {
+		hashes[keys++] = hashes[i];
+	    }
+	}
+	final int[] match = new int[keys];
+	System.arraycopy(hashes, 0, match, 0, keys);
+
+	// The attribute value, which is compared with the literals
+	final LocalVariableGen value =
+	    methodGen.addLocalVariable("hashed_attr_value",
+				       Util.getJCRefType(Constants.STRING_SIG),
+				       null, null);
+	final int equals = cpg.addMethodref(Constants.STRING_CLASS, "equals",
+					    "(" + Constants.OBJECT_SIG + ")Z");
+
+	// Compile the patterns for each hash code in reverse order
+	final InstructionHandle[] targets = new InstructionHandle[keys];
+	final InstructionList patterns = new InstructionList();
+	for (int k = 0; k < keys; k++) {
+	    InstructionHandle next = fail;
+	    InstructionList chain = null;
+	    for (int n = last; n >= first; n--) {
+		final LocationPathPattern pattern = getPattern(n);
+		final String literal = getHashedLiteral(pattern);
+		if (literal.hashCode() == match[k]) {
+		    final InstructionList il;
+		    if (pattern instanceof StepPattern
+			&& ((StepPattern) pattern).isReduced()) {
+			il = new InstructionList();
+			il.append(new ALOAD(value.getIndex()));
+			il.append(new PUSH(cpg, literal));
+			il.append(new INVOKEVIRTUAL(equals));
+			il.append(new IFEQ(next));
+			il.append(new GOTO_W(getTemplateHandle(
+			    pattern.getTemplate())));
+		    }
+		    else {
+			il = compilePattern(classGen, methodGen, pattern, next);
+		    }
+		    next = il.getStart();
+		    if (chain != null) {
+			il.append(chain);
+		    }
+		    chain = il;
+		}
+	    }
+	    targets[k] = next;
+	    patterns.append(chain);
+	}
+
+	// Get the attribute value of the current node and switch on its hash
+	final int getAttributeNode = cpg.addInterfaceMethodref(Constants.DOM_INTF,
+							       "getAttributeNode",
+							       "(II)I");
+	final int getNodeValue =
+	    cpg.addInterfaceMethodref(Constants.DOM_INTF,
+				      Constants.GET_NODE_VALUE,
+				      Constants.GET_NODE_VALUE_SIG);
+	final int hashCode =
+	    cpg.addMethodref(Constants.STRING_CLASS, "hashCode", "()I");
+
+	final InstructionList il = new InstructionList();
+	il.append(methodGen.loadDOM());
+	il.append(new PUSH(cpg, attrType));
+	il.append(methodGen.loadCurrentNode());
+	il.append(new INVOKEINTERFACE(getAttributeNode, 3));
+	il.append(InstructionConstants.DUP);
+	il.append(new PUSH(cpg, DTM.NULL));
+	final BranchHandle noAttribute = il.append(new IF_ICMPEQ(null));
+	il.append(methodGen.loadDOM());
+	il.append(InstructionConstants.SWAP);
+	il.append(new INVOKEINTERFACE(getNodeValue, 2));
+	il.append(InstructionConstants.DUP);
+	value.setStart(il.append(new ASTORE(value.getIndex())));
+	il.append(new INVOKEVIRTUAL(hashCode));
+	il.append(new LOOKUPSWITCH(match, targets, fail));
+	noAttribute.setTarget(il.append(InstructionConstants.POP));
+	il.append(new GOTO_W(fail));
+
+	il.append(patterns);
+	value.setEnd(il.getEnd());
+	return il;
+    }
+
+    /**
+     * Returns the type of the attribute if a pattern is of the form
+     * <code>name[@attr = 'literal']</code> (or an equivalent form), or -1.
+     * The attribute belongs to the node that is matched, and the pattern
+     * cannot match if its value is not equal to the literal.
+     */
+    private static int getHashedAttributeType(LocationPathPattern pattern) {
+	final Step step = getHashedAttributeStep(pattern);
+	return (step == null) ? -1 : step.getNodeType();
+    }
+
+    /**
+     * Returns the literal which the attribute value of the matched node is
+     * compared with by a pattern of the form
+     * <code>name[@attr = 'literal']</code>.
+     */
+    private static String getHashedLiteral(LocationPathPattern pattern) {
+	final EqualityExpr equality = getHashedEquality(pattern);
+	final Expression left = unwrapCast(equality.getLeft());
+	final Expression right = unwrapCast(equality.getRight());
+	return (left instanceof LiteralExpr) ? ((LiteralExpr) left).getValue()
+	    : ((LiteralExpr) right).getValue();
+    }
+
+    private static Step getHashedAttributeStep(LocationPathPattern pattern) {
+	final EqualityExpr equality = getHashedEquality(pattern);
+	if (equality == null) {
+	    return null;
+	}
+
+	final Expression left = unwrapCast(equality.getLeft());
+	final Expression right = unwrapCast(equality.getRight());
+	final Step step;
+	if (left instanceof Step && right instanceof LiteralExpr) {
+	    step = (Step) left;
+	}
+	else if (right instanceof Step && left instanceof LiteralExpr) {
+	    step = (Step) right;
+	}
+	else {
+	    return null;
+	}
+
+	// Only a named attribute of the matched node, without predicates
+	final int type = step.getNodeType();
+	if (step.getAxis() != Axis.ATTRIBUTE || type < DTM.NTYPES
+	    || step.getPredicates() != null && step.getPredicates().size() > 0) {
+	    return null;
+	}
+	final Vector names = step.getParser().getXSLTC().getNamesIndex();
+	final String name = (String) names.elementAt(type - DTM.NTYPES);
+	if (name.indexOf('*') >= 0 || name.indexOf('@') < 0) {
+	    return null;
+	}
+	return step;
+    }
+
+    /**
+     * Returns the equality expression of a pattern whose kernel step
+     * matches an element and has only that expression as its predicate.
+     */
+    private static EqualityExpr getHashedEquality(LocationPathPattern pattern) {
+	final StepPattern kernel = pattern.getKernelPattern();
+	if (kernel == null || kernel.getAxis() != Axis.CHILD
+	    || kernel._predicates == null || kernel._predicates.size() != 1) {
+	    return null;
+	}
+
+	final Expression exp =
+	    ((Predicate) kernel._predicates.elementAt(0)).getExpr();
+	if (exp instanceof EqualityExpr && ((EqualityExpr) exp).getOp()) {
+	    return (EqualityExpr) exp;
+	}
+	return null;
+    }
+
+    /**
+     * Returns the expression converted by casts which keep its string
+     * value, such as a cast of an attribute step to a string.
+     */
+    private static Expression unwrapCast(Expression exp) {
+	while (exp instanceof CastExpr) {
+	    final Type type = exp.getType();
+	    if (type != Type.String && type != Type.NodeSet
+		&& type != Type.Node) {
+		break;
+	    }
+	    exp = ((CastExpr) exp).getExpr();
+	}
+	return exp;
+    }
 }
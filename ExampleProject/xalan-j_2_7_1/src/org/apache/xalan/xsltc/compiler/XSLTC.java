@@ -40,6 +40,15 @@ import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ANEWARRAY;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.FieldGen;
+import org.apache.bcel.generic.InstructionConstants;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.PUSH;
+import org.apache.bcel.generic.PUTSTATIC;
 import org.apache.xalan.xsltc.compiler.util.ErrorMsg;
 import org.apache.xalan.xsltc.compiler.util.Util;
 import org.apache.xml.dtm.DTM;
@@ -102,6 +111,10 @@ public final class XSLTC {
     public static final int BYTEARRAY_AND_FILE_OUTPUT = 4;
     public static final int BYTEARRAY_AND_JAR_OUTPUT  = 5;
 
+    // The fields of a translet registry, see outputRegistry()
+    public static final String REGISTRY_IDS_FIELD     = "STYLESHEET_IDS";
+    public static final String REGISTRY_CLASSES_FIELD = "TRANSLET_CLASSES";
+
 
     // Compiler options (passed from command line or XSLTC client)
     private boolean _debug = false;      // -x
@@ -112,6 +125,8 @@ public final class XSLTC {
     private int     _outputType = FILE_OUTPUT; // by default
 
     private Vector  _classes;
+    private Vector  _modules;
+    private Vector  _transletClassNames;
     private Vector  _bcelClasses;
     private boolean _callsNodeset = false;
     private boolean _multiDocument = false;
@@ -176,6 +191,24 @@ public final class XSLTC {
 	return _parser.getOutputProperties();
     }
 
+    /**
+     * Only for user by the internal TrAX implementation.
+     * Record the system id of a stylesheet module that was imported or
+     * included by the stylesheet being compiled.
+     */
+    public void addModule(String systemId) {
+	_modules.addElement(systemId);
+    }
+
+    /**
+     * Only for user by the internal TrAX implementation.
+     * Returns the system ids of the stylesheet modules that were imported
+     * or included by the last stylesheet compiled.
+     */
+    public Vector getModules() {
+	return _modules;
+    }
+
     /**
      * Initializes the compiler to compile a new stylesheet
      */
@@ -184,6 +217,7 @@ public final class XSLTC {
 	_reader = null;
 	_classes = new Vector();
 	_bcelClasses = new Vector();
+	_transletClassNames = new Vector();
     }
 
     /**
@@ -199,6 +233,7 @@ public final class XSLTC {
 	_namespaceIndex = new Vector(32);
 	_namespacePrefixes = new Hashtable();
         _stylesheet     = null;
+	_modules        = new Vector();
 	_parser.init();
 	//_variableSerial     = 1;
 	_modeSerial         = 1;
@@ -370,6 +405,10 @@ public final class XSLTC {
 		synchronized (getClass()) {
 		    _stylesheet.translate();
 		}
+
+		if (!_parser.errorsFound()) {
+		    _transletClassNames.addElement(_className);
+		}
 	    }
 	}
 	catch (Exception e) {
@@ -870,6 +909,110 @@ public final class XSLTC {
 	}
     }
 
+    /**
+     * Returns the names of the translet classes generated since init() was
+     * called, in the order their stylesheets were compiled.
+     */
+    public Vector getTransletClassNames() {
+	return _transletClassNames;
+    }
+
+    /**
+     * Returns the id under which a stylesheet is recorded by
+     * outputRegistry(): its file name without the directory and the
+     * extension, made into a Java name as for the translet class.  So
+     * "h.xsl", "./h.xsl", "/styles/h.xsl", "file:/styles/h.xsl" and "h"
+     * all have the id "h".
+     * @param stylesheet The file name, path or URL of the stylesheet, or
+     * an id
+     */
+    public static String getRegistryId(String stylesheet) {
+	return Util.toJavaName(Util.noExtName(Util.baseName(stylesheet)));
+    }
+
+    /**
+     * Generate a registry class, which maps an id for each stylesheet
+     * compiled since init() was called to the name of its translet class.
+     * The class is output like the translets, so that it can be put on
+     * the CLASSPATH with them and given to TransformerFactoryImpl as its
+     * translet-registry attribute.  It has two public static fields,
+     * REGISTRY_IDS_FIELD and REGISTRY_CLASSES_FIELD, which are arrays of
+     * the ids and the translet class names.
+     * @param registryClassName The full name of the registry class
+     * @param stylesheetIds The file names, paths or URLs of the
+     * stylesheets, in the order they were compiled, which are turned into
+     * ids by getRegistryId()
+     */
+    public void outputRegistry(String registryClassName,
+			       String[] stylesheetIds) {
+	final int count = _transletClassNames.size();
+	if (stylesheetIds.length != count) {
+	    throw new IllegalArgumentException();
+	}
+
+	final String[] classNames = new String[count];
+	_transletClassNames.copyInto(classNames);
+
+	final String[] ids = new String[count];
+	for (int i = 0; i < count; i++) {
+	    ids[i] = getRegistryId(stylesheetIds[i]);
+	}
+
+	// Class synchronization is needed for BCEL
+	synchronized (getClass()) {
+	    final ClassGen registry = new ClassGen(registryClassName,
+		Constants.OBJECT_CLASS,
+		registryClassName.substring(
+		    registryClassName.lastIndexOf('.') + 1) + ".java",
+		Constants.ACC_PUBLIC | Constants.ACC_SUPER | Constants.ACC_FINAL,
+		new String[] {});
+	    final ConstantPoolGen cpg = registry.getConstantPool();
+	    final InstructionList il = new InstructionList();
+
+	    // Initialize each field with an array of strings
+	    addRegistryField(registry, il, REGISTRY_IDS_FIELD, ids);
+	    addRegistryField(registry, il, REGISTRY_CLASSES_FIELD, classNames);
+	    il.append(InstructionConstants.RETURN);
+
+	    final MethodGen clinit = new MethodGen(Constants.ACC_STATIC,
+		org.apache.bcel.generic.Type.VOID,
+		org.apache.bcel.generic.Type.NO_ARGS, null, "<clinit>",
+		registryClassName, il, cpg);
+	    clinit.setMaxStack();
+	    clinit.setMaxLocals();
+	    registry.addMethod(clinit.getMethod());
+	    il.dispose();
+
+	    dumpClass(registry.getJavaClass());
+	}
+    }
+
+    /**
+     * Add a public static final String[] field to a registry class, and
+     * the code that initializes it to the static initializer.
+     */
+    private void addRegistryField(ClassGen registry, InstructionList il,
+				  String name, String[] values) {
+	final ConstantPoolGen cpg = registry.getConstantPool();
+	final String signature = "[" + Constants.STRING_SIG;
+
+	registry.addField(new FieldGen(
+	    Constants.ACC_PUBLIC | Constants.ACC_STATIC | Constants.ACC_FINAL,
+	    org.apache.bcel.generic.Type.getType(signature),
+	    name, cpg).getField());
+
+	il.append(new PUSH(cpg, values.length));
+	il.append(new ANEWARRAY(cpg.addClass(Constants.STRING_CLASS)));
+	for (int i = 0; i < values.length; i++) {
+	    il.append(InstructionConstants.DUP);
+	    il.append(new PUSH(cpg, i));
+	    il.append(new PUSH(cpg, values[i]));
+	    il.append(InstructionConstants.AASTORE);
+	}
+	il.append(new PUTSTATIC(cpg.addFieldref(registry.getClassName(),
+						name, signature)));
+    }
+
     /**
      * File separators are converted to forward slashes for ZIP files.
      */
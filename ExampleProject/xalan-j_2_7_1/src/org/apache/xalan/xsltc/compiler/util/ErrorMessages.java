@@ -679,7 +679,8 @@ public class ErrorMessages extends ListResourceBundle {
         "SYNOPSIS\n"+
         "   java org.apache.xalan.xsltc.cmdline.Compile [-o <output>]\n"+
         "      [-d <directory>] [-j <jarfile>] [-p <package>]\n"+
-        "      [-n] [-x] [-u] [-v] [-h] { <stylesheet> | -i }\n\n"+
+        "      [-r <registry>] [-n] [-x] [-u] [-v] [-h]\n"+
+        "      { <stylesheet> | -i }\n\n"+
         "OPTIONS\n"+
         "   -o <output>    assigns the name <output> to the generated\n"+
         "                  translet.  By default the translet name is\n"+
@@ -690,6 +691,11 @@ public class ErrorMessages extends ListResourceBundle {
         "                  name specified as <jarfile>\n"+
         "   -p <package>   specifies a package name prefix for all generated\n"+
         "                  translet classes.\n"+
+        "   -r <registry>  generates a class named <registry> which maps\n"+
+        "                  each <stylesheet> to its translet, for use with\n"+
+        "                  the translet-registry attribute.  A stylesheet\n"+
+        "                  is registered under its file name without the\n"+
+        "                  directory or extension, e.g. 'h' for 'dir/h.xsl'.\n"+
         "   -n             enables template inlining (default behavior better\n"+
         "                  on average).\n"+
         "   -x             turns on additional debugging message output\n"+
@@ -998,7 +1004,38 @@ public class ErrorMessages extends ListResourceBundle {
          "kilobytes.  This is usually caused by templates in a stylesheet " +
          "that are very large.  Try restructuring your stylesheet to use " +
          "smaller templates."
-        }
+        },
+
+        /*
+         * Note to translators:  The "translet cache" is a directory where
+         * compiled stylesheets are kept, so that they need not be compiled
+         * again.  The first substitution text is the name of the compiled
+         * class; the second is the reason it could not be written.
+         */
+        {ErrorMsg.TRANSLET_CACHE_STORE_ERR,
+         "Could not store the translet ''{0}'' in the translet cache: {1}"},
+
+        /*
+         * Note to translators:  A "translet registry" is a class generated
+         * by the command-line compiler which lists the compiled stylesheets.
+         * The substitution text is the name of the TransformerFactory
+         * attribute which names that class; it should not be translated.
+         */
+        {ErrorMsg.TRANSLET_REGISTRY_UNSET_ERR,
+         "No translet registry is set.  Set the ''{0}'' attribute of the "+
+         "TransformerFactory to the name of a registry class generated by "+
+         "the -r option of the command-line compiler."},
+
+        /*
+         * Note to translators:  The substitution text is the name of a
+         * TransformerFactory attribute; it should not be translated.  The
+         * attribute names one output, which several stylesheets compiled
+         * at once would all write to.
+         */
+        {ErrorMsg.PARALLEL_COMPILE_ATTRIBUTE_ERR,
+         "The ''{0}'' attribute names a single translet or jar file, so it "+
+         "cannot be set when several stylesheets are compiled at once.  "+
+         "Compile them one at a time instead."}
     };
     }
 }
@@ -161,6 +161,12 @@ public final class ErrorMsg {
                                             "OUTLINE_ERR_DELETED_TARGET";
     public static final String OUTLINE_ERR_METHOD_TOO_BIG =
                                             "OUTLINE_ERR_METHOD_TOO_BIG";
+    public static final String TRANSLET_CACHE_STORE_ERR =
+                                            "TRANSLET_CACHE_STORE_ERR";
+    public static final String TRANSLET_REGISTRY_UNSET_ERR =
+                                            "TRANSLET_REGISTRY_UNSET_ERR";
+    public static final String PARALLEL_COMPILE_ATTRIBUTE_ERR =
+                                            "PARALLEL_COMPILE_ATTRIBUTE_ERR";
                                                      
     // All error messages are localized and are stored in resource bundles.
     // This array and the following 4 strings are read from that bundle.
@@ -98,6 +98,12 @@ public class MethodGenerator extends MethodGen
     private static final int TARGET_METHOD_SIZE = 60000;
     private static final int MINIMUM_OUTLINEABLE_CHUNK_SIZE = 1000;
 
+    // HotSpot does not JIT-compile methods of more than this many bytes of
+    // byte code (its HugeMethodLimit), so they are always interpreted.
+    private static final int HUGE_METHOD_SIZE = 8000;
+    private static final int TARGET_JIT_METHOD_SIZE = 7000;
+    private static final int MINIMUM_JIT_OUTLINEABLE_CHUNK_SIZE = 300;
+
     private Instruction       _iloadCurrent;
     private Instruction       _istoreCurrent;
     private final Instruction _astoreHandler;
@@ -822,11 +828,16 @@ public class MethodGenerator extends MethodGen
      * @param classGen The {@link ClassGen} with which the generated methods
      *                 will be associated 
      * @param totalMethodSize the size of the bytecode in the original method
+     * @param targetMethodSize the size that no outlined method may exceed
+     * @param minimumChunkSize the size below which a chunk is not worth
+     *                 outlining
      * @return a <code>java.util.ArrayList</code> containing the
      *  {@link MethodGenerator.Chunk}s that may be outlined from this method
      */
     private ArrayList getCandidateChunks(ClassGenerator classGen,
-                                         int totalMethodSize) {
+                                         int totalMethodSize,
+                                         int targetMethodSize,
+                                         int minimumChunkSize) {
         Iterator instructions = getInstructionList().iterator();
         ArrayList candidateChunks = new ArrayList();
         ArrayList currLevelChunks = new ArrayList();
@@ -918,17 +929,17 @@ public class MethodGenerator extends MethodGen
 
                 // Two ranges of chunk size to consider:
                 //
-                // 1. [0,TARGET_METHOD_SIZE]
+                // 1. [0,targetMethodSize]
                 //      Keep this chunk in consideration as a candidate,
                 //      and ignore its subchunks, if any - there's nothing to be
                 //      gained by outlining both the current chunk and its
                 //      children!
                 //
-                // 2. (TARGET_METHOD_SIZE,+infinity)
+                // 2. (targetMethodSize,+infinity)
                 //      Ignore this chunk - it's too big.  Add its subchunks
                 //      as candidates, after merging adjacent chunks to produce
                 //      chunks that are as large as possible
-                if (chunkSize <= TARGET_METHOD_SIZE) {
+                if (chunkSize <= targetMethodSize) {
                     currLevelChunks.add(currentHandle);
                 } else {
                     if (!openChunkAtCurrLevel) {
@@ -950,7 +961,8 @@ public class MethodGenerator extends MethodGen
 
                             // Merge adjacent siblings
                             ArrayList mergedChildChunks =
-                                        mergeAdjacentChunks(childChunks);
+                                        mergeAdjacentChunks(childChunks,
+                                                            targetMethodSize);
 
                             // Add chunks that mean minimum size requirements
                             // to the list of candidate chunks for outlining
@@ -959,8 +971,8 @@ public class MethodGenerator extends MethodGen
                                     (Chunk)mergedChildChunks.get(i);
                                 int mergedSize = mergedChunk.getChunkSize();
 
-                                if (mergedSize >= MINIMUM_OUTLINEABLE_CHUNK_SIZE
-                                        && mergedSize <= TARGET_METHOD_SIZE) {
+                                if (mergedSize >= minimumChunkSize
+                                        && mergedSize <= targetMethodSize) {
                                     candidateChunks.add(mergedChunk);
                                 }
                             }
@@ -988,10 +1000,12 @@ public class MethodGenerator extends MethodGen
      * @param chunks array of sibling {@link MethodGenerator.Chunk}s that are
      *               under consideration for outlining.  Chunks must be in
      *               the order encountered in the {@link InstructionList}
+     * @param targetMethodSize the size that no merged chunk may exceed
      * @return a <code>java.util.ArrayList</code> of
      *         <code>MethodGenerator.Chunk</code>s maximally merged 
      */
-    private ArrayList mergeAdjacentChunks(Chunk[] chunks) {
+    private ArrayList mergeAdjacentChunks(Chunk[] chunks,
+                                          int targetMethodSize) {
         int[] adjacencyRunStart = new int[chunks.length];
         int[] adjacencyRunLength = new int[chunks.length];
         boolean[] chunkWasMerged = new boolean[chunks.length];
@@ -1078,7 +1092,7 @@ public class MethodGenerator extends MethodGen
 
                     // If the current subrun is small enough to outline,
                     // merge it, and split the remaining chunks in the run
-                    if (mergeSize <= TARGET_METHOD_SIZE) {
+                    if (mergeSize <= targetMethodSize) {
                         foundChunksToMerge = true;
 
                         for (int j = mergeStart; j <= mergeEnd; j++) {
@@ -1092,7 +1106,7 @@ public class MethodGenerator extends MethodGen
                         // Adjust the length of the current run of adjacent
                         // chunks to end at the newly merged chunk...
                         adjacencyRunLength[run] =
-                                adjacencyRunStart[run] - mergeStart;
+                                mergeStart - adjacencyRunStart[run];
 
                         int trailingRunLength = runEnd - mergeEnd;
 
@@ -1135,9 +1149,42 @@ public class MethodGenerator extends MethodGen
     public Method[] outlineChunks(ClassGenerator classGen,
                                   int originalMethodSize) {
         ArrayList methodsOutlined = new ArrayList();
+        int currentMethodSize = outlineChunks(classGen, originalMethodSize,
+                                              TARGET_METHOD_SIZE,
+                                              MINIMUM_OUTLINEABLE_CHUNK_SIZE,
+                                              methodsOutlined);
+
+        // Outlining failed to reduce the size of the current method
+        // sufficiently.  Throw an internal error.
+        if (currentMethodSize > MAX_METHOD_SIZE) {
+            String msg = (new ErrorMsg(ErrorMsg.OUTLINE_ERR_METHOD_TOO_BIG))
+                                  .toString();
+            throw new InternalError(msg);
+        }
+
+        return appendThisMethod(methodsOutlined);
+    }
+
+    /**
+     * Outlines chunks of this method, largest first, until it is no bigger
+     * than <code>targetMethodSize</code> or no chunk is left to outline.
+     * @param classGen The {@link ClassGen} with which the generated methods
+     *                 will be associated
+     * @param originalMethodSize The number of bytes of bytecode represented by
+     *                 the {@link InstructionList} of this method
+     * @param targetMethodSize the size to bring this method down to, which no
+     *                 outlined method exceeds either
+     * @param minimumChunkSize the size below which a chunk is not worth
+     *                 outlining
+     * @param methodsOutlined the <code>java.util.ArrayList</code> to which
+     *                 the outlined <code>Method</code>s are added
+     * @return the size of the byte code left in this method
+     */
+    private int outlineChunks(ClassGenerator classGen, int originalMethodSize,
+                              int targetMethodSize, int minimumChunkSize,
+                              ArrayList methodsOutlined) {
         int currentMethodSize = originalMethodSize;
 
-        int outlinedCount = 0;
         boolean moreMethodsOutlined;
         String originalMethodName = getName();
 
@@ -1150,32 +1197,35 @@ public class MethodGenerator extends MethodGen
             originalMethodName = "$lt$clinit$gt$";
         }
 
-        // Loop until the original method comes in under the JVM limit or
+        // Loop until the original method comes in under the target size or
         // the loop was unable to outline any more methods
         do {
             // Get all the best candidates for outlining, and sort them in
             // ascending order of size
             ArrayList candidateChunks = getCandidateChunks(classGen,
-                                                           currentMethodSize);
+                                                           currentMethodSize,
+                                                           targetMethodSize,
+                                                           minimumChunkSize);
             Collections.sort(candidateChunks);
 
             moreMethodsOutlined = false;
 
             // Loop over the candidates for outlining, from the largest to the
             // smallest and outline them one at a time, until the loop has
-            // outlined all or the original method comes in under the JVM
-            // limit on the size of a method.
+            // outlined all or the original method comes in under the target
+            // size.
             for (int i = candidateChunks.size()-1;
-                 i >= 0 && currentMethodSize > TARGET_METHOD_SIZE;
+                 i >= 0 && currentMethodSize > targetMethodSize;
                  i--) {
                 Chunk chunkToOutline = (Chunk)candidateChunks.get(i);
 
+                // Outlined methods are numbered across all the passes made
+                // over this method
                 methodsOutlined.add(outline(chunkToOutline.getChunkStart(),
                                             chunkToOutline.getChunkEnd(),
                                             originalMethodName + "$outline$"
-                                                               + outlinedCount,
+                                                + methodsOutlined.size(),
                                             classGen));
-                outlinedCount++;
                 moreMethodsOutlined = true;
 
                 InstructionList il = getInstructionList();
@@ -1187,16 +1237,46 @@ public class MethodGenerator extends MethodGen
                         lastInst.getPosition()
                                 + lastInst.getInstruction().getLength();
             }
-        } while (moreMethodsOutlined && currentMethodSize > TARGET_METHOD_SIZE);
+        } while (moreMethodsOutlined && currentMethodSize > targetMethodSize);
 
-        // Outlining failed to reduce the size of the current method
-        // sufficiently.  Throw an internal error.
-        if (currentMethodSize > MAX_METHOD_SIZE) {
-            String msg = (new ErrorMsg(ErrorMsg.OUTLINE_ERR_METHOD_TOO_BIG))
-                                  .toString();
-            throw new InternalError(msg);
+        return currentMethodSize;
+    }
+
+    /**
+     * Determines whether outlining all the chunks that could be outlined
+     * into methods of no more than <code>targetMethodSize</code> bytes would
+     * bring this method down to that size as well.
+     * @param classGen The {@link ClassGen} with which the generated methods
+     *                 will be associated
+     * @param methodSize The number of bytes of bytecode represented by
+     *                 the {@link InstructionList} of this method
+     * @param targetMethodSize the size to bring this method down to
+     * @param minimumChunkSize the size below which a chunk is not worth
+     *                 outlining
+     * @return <code>true</code> if this method could be outlined down to
+     *         <code>targetMethodSize</code>
+     */
+    private boolean isOutlineableTo(ClassGenerator classGen, int methodSize,
+                                    int targetMethodSize,
+                                    int minimumChunkSize) {
+        ArrayList candidateChunks = getCandidateChunks(classGen, methodSize,
+                                                       targetMethodSize,
+                                                       minimumChunkSize);
+        int remainingSize = methodSize;
+
+        for (int i = 0; i < candidateChunks.size(); i++) {
+            remainingSize -= ((Chunk)candidateChunks.get(i)).getChunkSize();
         }
 
+        return remainingSize <= targetMethodSize;
+    }
+
+    /**
+     * Returns the outlined methods followed by this method itself.
+     * @param methodsOutlined the outlined <code>Method</code>s
+     * @return an array of the outlined <code>Method</code>s and this method
+     */
+    private Method[] appendThisMethod(ArrayList methodsOutlined) {
         Method[] methodsArr = new Method[methodsOutlined.size() + 1];
         methodsOutlined.toArray(methodsArr);
 
@@ -1870,12 +1950,17 @@ public class MethodGenerator extends MethodGen
      * exceed the 64KB limit, this method will attempt to split the code in
      * the {@link InstructionList} associated with this
      * <code>MethodGenerator</code> into several methods.</p>  
+     * <p>The code is also split if it would be too big for the JIT compiler
+     * to compile, provided that the method and all the methods split from it
+     * can be made small enough for the JIT compiler.  Every template body
+     * and every instruction in a template is an outlineable chunk, so a large
+     * template is split into methods for its largest instructions, and
+     * inlined templates are moved out of <code>applyTemplates</code>.</p>
      * @param classGen the {@link ClassGenerator} of which these methods are
      *                 members
      * @return an array of all the <code>Method</code>s generated
      */
     Method[] getGeneratedMethods(ClassGenerator classGen) {
-        Method[] generatedMethods;
         InstructionList il = getInstructionList();
         InstructionHandle last = il.getEnd();
 
@@ -1899,12 +1984,40 @@ public class MethodGenerator extends MethodGen
             }
         }
 
+        ArrayList methodsOutlined = new ArrayList();
+
+        // Methods with exception handlers can't be outlined, and are only
+        // reported as errors if they exceed the 64KB limit
+        if (instructionListSize > HUGE_METHOD_SIZE
+                && getExceptionHandlers().length == 0
+                && isOutlineableTo(classGen, instructionListSize,
+                                   TARGET_JIT_METHOD_SIZE,
+                                   MINIMUM_JIT_OUTLINEABLE_CHUNK_SIZE)) {
+            instructionListSize =
+                    outlineChunks(classGen, instructionListSize,
+                                  TARGET_JIT_METHOD_SIZE,
+                                  MINIMUM_JIT_OUTLINEABLE_CHUNK_SIZE,
+                                  methodsOutlined);
+        }
+
         if (instructionListSize > MAX_METHOD_SIZE) {
-            generatedMethods = outlineChunks(classGen, instructionListSize);
-        } else {
-            generatedMethods = new Method[] {getThisMethod()};
+            instructionListSize =
+                    outlineChunks(classGen, instructionListSize,
+                                  TARGET_METHOD_SIZE,
+                                  MINIMUM_OUTLINEABLE_CHUNK_SIZE,
+                                  methodsOutlined);
+
+            // Outlining failed to reduce the size of the current method
+            // sufficiently.  Throw an internal error.
+            if (instructionListSize > MAX_METHOD_SIZE) {
+                String msg =
+                    (new ErrorMsg(ErrorMsg.OUTLINE_ERR_METHOD_TOO_BIG))
+                        .toString();
+                throw new InternalError(msg);
+            }
         }
-        return generatedMethods;
+
+        return appendThisMethod(methodsOutlined);
     }
 
     protected Method getThisMethod() {
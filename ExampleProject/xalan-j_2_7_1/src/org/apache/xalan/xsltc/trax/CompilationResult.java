@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+
+package org.apache.xalan.xsltc.trax;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+
+/**
+ * The outcome of compiling one of the stylesheets passed to
+ * {@link TransformerFactoryImpl#newTemplates(Source[], int)}: either the
+ * Templates object, or the exception that compiling the stylesheet threw,
+ * and the time it took.
+ */
+public final class CompilationResult {
+
+    private final Source _source;
+    private final Templates _templates;
+    private final TransformerConfigurationException _exception;
+    private final long _compileTime;
+
+    CompilationResult(Source source, Templates templates,
+		      TransformerConfigurationException exception,
+		      long compileTime)
+    {
+	_source = source;
+	_templates = templates;
+	_exception = exception;
+	_compileTime = compileTime;
+    }
+
+    /**
+     * Returns the stylesheet that was compiled.
+     */
+    public Source getSource() {
+	return _source;
+    }
+
+    /**
+     * Returns the Templates object of the stylesheet, or null if it could
+     * not be compiled.
+     */
+    public Templates getTemplates() {
+	return _templates;
+    }
+
+    /**
+     * Returns the exception thrown by compiling the stylesheet, or null if
+     * it was compiled.
+     */
+    public TransformerConfigurationException getException() {
+	return _exception;
+    }
+
+    /**
+     * Returns the time taken to compile the stylesheet (or to load its
+     * translet), in milliseconds.
+     */
+    public long getCompileTime() {
+	return _compileTime;
+    }
+}
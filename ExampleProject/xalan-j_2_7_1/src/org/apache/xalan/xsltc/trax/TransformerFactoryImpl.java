@@ -89,6 +89,8 @@ public class TransformerFactoryImpl
     public final static String DEBUG = "debug";
     public final static String ENABLE_INLINING = "enable-inlining";
     public final static String INDENT_NUMBER = "indent-number";
+    public final static String TRANSLET_CACHE_DIRECTORY = "translet-cache-directory";
+    public final static String TRANSLET_REGISTRY = "translet-registry";
         
     /**
      * This error listener is used only for this factory and is not passed to
@@ -184,6 +186,25 @@ public class TransformerFactoryImpl
      */
     private boolean _useClasspath = false;
 
+    /**
+     * If this is set, compiled translets are stored in and loaded from
+     * this cache, under a hash of the content of their stylesheets.
+     */
+    private TransletCache _transletCache = null;
+
+    /**
+     * The name of a registry class generated by the -r option of the
+     * command line compiler, which maps stylesheet ids to translet classes
+     * that are loaded from the CLASSPATH.
+     */
+    private String _transletRegistry = null;
+
+    /**
+     * The translet class names of the registry, by stylesheet id, or null
+     * if the registry has not been loaded yet.
+     */
+    private Hashtable _registeredTranslets = null;
+
     /**
      * Number of indent spaces when indentation is turned on.
      */
@@ -301,6 +322,17 @@ public class TransformerFactoryImpl
 	    _jarFileName = (String) value;
 	    return;
 	}
+	else if (name.equals(TRANSLET_CACHE_DIRECTORY) && value instanceof String) {
+	    _transletCache = new TransletCache(new File((String) value));
+	    return;
+	}
+	else if (name.equals(TRANSLET_REGISTRY) && value instanceof String) {
+	    synchronized (this) {
+		_transletRegistry = (String) value;
+		_registeredTranslets = null;
+	    }
+	    return;
+	}
 	else if (name.equals(GENERATE_TRANSLET)) {
 	    if (value instanceof Boolean) {
 		_generateTranslet = ((Boolean) value).booleanValue();
@@ -737,6 +769,27 @@ public class TransformerFactoryImpl
 	    	return new TemplatesImpl(bytecodes, transletClassName, null, _indentNumber, this);	    
 	    }
 	}
+
+	// If a translet cache is set, try to load the bytecodes compiled
+	// before from a stylesheet with the same content. The cache is not
+	// used if a URIResolver may change the modules that are imported or
+	// included, or if the translet classes are to be written out.
+	TransletCache.Content cacheContent = null;
+	String cacheKey = null;
+	if (_transletCache != null && _uriResolver == null
+	    && !_generateTranslet && !_autoTranslet) {
+	    cacheContent = TransletCache.read(source);
+	    if (cacheContent != null) {
+		cacheKey = _transletCache.getKey(cacheContent,
+						 getCacheAttributes(source));
+		final TransletCache.Entry entry = _transletCache.load(cacheKey);
+		if (entry != null) {
+		    resetTransientAttributes();
+		    return new TemplatesImpl(entry.getBytecodes(),
+			entry.getClassName(), null, _indentNumber, this);
+		}
+	    }
+	}
 	
 	// Create and initialize a stylesheet compiler
 	final XSLTC xsltc = new XSLTC();
@@ -795,7 +848,8 @@ public class TransformerFactoryImpl
 	}
 
 	// Compile the stylesheet
-	final InputSource input = Util.getInputSource(xsltc, source);
+	final InputSource input = Util.getInputSource(xsltc,
+	    (cacheContent != null) ? cacheContent.getSource() : source);
 	byte[][] bytecodes = xsltc.compile(null, input, outputType);
 	final String transletName = xsltc.getClassName();
 
@@ -850,10 +904,295 @@ public class TransformerFactoryImpl
         throw exc;
     }
 
+	// Store the translet for the next time the stylesheet is compiled
+	if (cacheKey != null) {
+	    try {
+		_transletCache.store(cacheKey, transletName,
+				     xsltc.getModules(), bytecodes);
+	    }
+	    catch (java.io.IOException e) {
+		// The stylesheet has compiled, so this is only a warning
+		if (_errorListener != null) {
+		    ErrorMsg err = new ErrorMsg(ErrorMsg.TRANSLET_CACHE_STORE_ERR,
+						transletName, e.getMessage());
+		    try {
+			_errorListener.warning(
+			    new TransformerConfigurationException(
+				err.toString(), e));
+		    }
+		    catch (TransformerException te) {
+			throw new TransformerConfigurationException(te);
+		    }
+		}
+	    }
+	}
+
 	return new TemplatesImpl(bytecodes, transletName, 
 	    xsltc.getOutputProperties(), _indentNumber, this);
     }
 
+    /**
+     * Returns the attributes of this factory that change the translet
+     * compiled from a stylesheet, as part of its key in the translet cache.
+     *
+     * @param source The input stylesheet
+     */
+    private String getCacheAttributes(Source source) {
+	final StringBuffer buffer = new StringBuffer();
+	buffer.append(_debug).append(' ')
+	      .append(_enableInlining).append(' ')
+	      .append(_isSecureProcessing).append(' ')
+	      .append(_packageName).append(' ')
+	      .append(_transletName);
+
+	if (_piParams != null) {
+	    PIParamWrapper p = (PIParamWrapper)_piParams.get(source);
+	    if (p != null) {
+		buffer.append(' ').append(p._media)
+		      .append(' ').append(p._title)
+		      .append(' ').append(p._charset);
+	    }
+	}
+	return buffer.toString();
+    }
+
+    /**
+     * Create a Templates object from a translet that was compiled ahead of
+     * time and is registered under a stylesheet id in the class set as the
+     * translet-registry attribute.  The translet classes are loaded from
+     * the CLASSPATH, as for the use-classpath attribute, rather than being
+     * defined from bytecodes.
+     *
+     * A stylesheet is registered under its file name without the directory
+     * or the extension, so it can be named by that id or by the file name,
+     * path or URL it was compiled from: "h", "h.xsl" and "./h.xsl" all
+     * name the translet of "h.xsl".
+     *
+     * @param stylesheetId The id of the stylesheet in the registry, or its
+     * file name, path or URL
+     * @return A Templates object that can be used to create Transformers.
+     * @throws TransformerConfigurationException if there is no registry,
+     * or no translet for the id, or its class can not be loaded
+     */
+    public Templates newRegisteredTemplates(String stylesheetId)
+	throws TransformerConfigurationException 
+    {
+	final String transletName = (String) getRegisteredTranslets().get(
+	    XSLTC.getRegistryId(stylesheetId));
+	if (transletName == null) {
+	    ErrorMsg err = new ErrorMsg(ErrorMsg.FILE_NOT_FOUND_ERR, stylesheetId);
+	    throw new TransformerConfigurationException(err.toString());
+	}
+
+	try {
+	    final Class clazz = ObjectFactory.findProviderClass(
+		transletName, ObjectFactory.findClassLoader(), true);
+	    return new TemplatesImpl(new Class[]{clazz}, transletName, null,
+				     _indentNumber, this);
+	}
+	catch (ClassNotFoundException cnfe) {
+	    ErrorMsg err = new ErrorMsg(ErrorMsg.TRANSLET_CLASS_ERR, transletName);
+	    throw new TransformerConfigurationException(err.toString());
+	}
+    }
+
+    /**
+     * Returns the translet class names of the translet-registry class, by
+     * stylesheet id.  The registry is loaded the first time it is used.
+     */
+    private synchronized Hashtable getRegisteredTranslets()
+	throws TransformerConfigurationException 
+    {
+	if (_registeredTranslets != null) {
+	    return _registeredTranslets;
+	}
+
+	if (_transletRegistry == null) {
+	    ErrorMsg err = new ErrorMsg(ErrorMsg.TRANSLET_REGISTRY_UNSET_ERR,
+					TRANSLET_REGISTRY);
+	    throw new TransformerConfigurationException(err.toString());
+	}
+
+	try {
+	    final Class registry = ObjectFactory.findProviderClass(
+		_transletRegistry, ObjectFactory.findClassLoader(), true);
+	    final String[] ids = (String[]) registry.getField(
+		XSLTC.REGISTRY_IDS_FIELD).get(null);
+	    final String[] classes = (String[]) registry.getField(
+		XSLTC.REGISTRY_CLASSES_FIELD).get(null);
+
+	    final Hashtable translets = new Hashtable();
+	    for (int i = 0; i < ids.length; i++) {
+		translets.put(ids[i], classes[i]);
+	    }
+	    _registeredTranslets = translets;
+	    return translets;
+	}
+	catch (ClassNotFoundException e) {
+	    ErrorMsg err = new ErrorMsg(ErrorMsg.CLASS_NOT_FOUND_ERR,
+					_transletRegistry);
+	    throw new TransformerConfigurationException(err.toString());
+	}
+	catch (Exception e) {
+	    ErrorMsg err = new ErrorMsg(
+				 new ErrorMsg(ErrorMsg.RUNTIME_ERROR_KEY)
+				 + e.getMessage());
+	    throw new TransformerConfigurationException(err.toString());
+	}
+    }
+
+    /**
+     * Process a number of Sources into Templates objects, compiling them
+     * on a number of threads at once.  Each stylesheet is compiled by its
+     * own compiler, with a copy of the attributes of this factory, as if
+     * it was passed to newTemplates(Source).  An ErrorListener set on this
+     * factory may be called from several threads at once.
+     *
+     * @param sources The input stylesheets
+     * @param threads The number of threads to compile on, or zero to use
+     * one thread for each available processor
+     * @return The result of compiling each stylesheet, in the order of the
+     * sources
+     * @throws TransformerConfigurationException if the translet-name
+     * attribute, or the jar-name attribute when translets are generated,
+     * is set and there is more than one source, or if the calling thread
+     * is interrupted while waiting for the stylesheets to be compiled
+     */
+    public CompilationResult[] newTemplates(Source[] sources, int threads)
+	throws TransformerConfigurationException 
+    {
+	// These name one class or jar file, which every stylesheet would be
+	// written to, each overwriting the others.
+	if (sources.length > 1) {
+	    String attribute = null;
+	    if (!_transletName.equals(DEFAULT_TRANSLET_NAME)) {
+		attribute = TRANSLET_NAME;
+	    }
+	    else if (_jarFileName != null
+		     && (_generateTranslet || _autoTranslet)) {
+		attribute = JAR_NAME;
+	    }
+	    if (attribute != null) {
+		resetTransientAttributes();
+		ErrorMsg err = new ErrorMsg(
+		    ErrorMsg.PARALLEL_COMPILE_ATTRIBUTE_ERR, attribute);
+		throw new TransformerConfigurationException(err.toString());
+	    }
+	}
+
+	if (threads <= 0) {
+	    threads = Runtime.getRuntime().availableProcessors();
+	}
+	threads = Math.max(1, Math.min(threads, sources.length));
+
+	final ParallelCompilation compilation =
+	    new ParallelCompilation(sources);
+	final Thread[] workers = new Thread[threads];
+	for (int i = 0; i < threads; i++) {
+	    workers[i] = new Thread(compilation, "XSLTC compiler " + i);
+	    workers[i].setDaemon(true);
+	    workers[i].start();
+	}
+
+	InterruptedException interrupted = null;
+	for (int i = 0; i < threads; i++) {
+	    try {
+		workers[i].join();
+	    }
+	    catch (InterruptedException e) {
+		// Compile no more stylesheets, but wait for the ones that are
+		// being compiled.
+		interrupted = e;
+		compilation.cancel();
+		i--;
+	    }
+	}
+
+	// Reset the per-session attributes to their default values
+	// after each newTemplates() call.
+	resetTransientAttributes();
+
+	if (interrupted != null) {
+	    Thread.currentThread().interrupt();
+	    throw new TransformerConfigurationException(interrupted);
+	}
+	return compilation._results;
+    }
+
+    /**
+     * Compiles stylesheets for newTemplates(Source[], int) on each thread
+     * that runs it, until there are none left.
+     */
+    private final class ParallelCompilation implements Runnable {
+	private final Source[] _sources;
+	private final CompilationResult[] _results;
+	private int _next = 0;
+
+	ParallelCompilation(Source[] sources) {
+	    _sources = sources;
+	    _results = new CompilationResult[sources.length];
+	}
+
+	private synchronized int nextSource() {
+	    return (_next < _sources.length) ? _next++ : -1;
+	}
+
+	synchronized void cancel() {
+	    _next = _sources.length;
+	}
+
+	public void run() {
+	    int i;
+	    while ((i = nextSource()) >= 0) {
+		final Source source = _sources[i];
+		final long start = System.currentTimeMillis();
+		Templates templates = null;
+		TransformerConfigurationException exception = null;
+
+		try {
+		    templates = copyAttributes().newTemplates(source);
+		}
+		catch (TransformerConfigurationException e) {
+		    exception = e;
+		}
+		catch (RuntimeException e) {
+		    exception = new TransformerConfigurationException(e);
+		}
+
+		_results[i] = new CompilationResult(source, templates,
+		    exception, System.currentTimeMillis() - start);
+	    }
+	}
+    }
+
+    /**
+     * Returns a new factory with the same attributes as this one, so that
+     * a stylesheet can be compiled by it without changing them.
+     */
+    private TransformerFactoryImpl copyAttributes() {
+	final TransformerFactoryImpl factory = new TransformerFactoryImpl();
+	if (_errorListener != this) {
+	    factory._errorListener = _errorListener;
+	}
+	factory._uriResolver = _uriResolver;
+	factory._transletName = _transletName;
+	factory._destinationDirectory = _destinationDirectory;
+	factory._packageName = _packageName;
+	factory._jarFileName = _jarFileName;
+	factory._piParams = _piParams;
+	factory._debug = _debug;
+	factory._enableInlining = _enableInlining;
+	factory._generateTranslet = _generateTranslet;
+	factory._autoTranslet = _autoTranslet;
+	factory._useClasspath = _useClasspath;
+	factory._transletCache = _transletCache;
+	factory._transletRegistry = _transletRegistry;
+	factory._indentNumber = _indentNumber;
+	factory.m_DTMManagerClass = m_DTMManagerClass;
+	factory._isSecureProcessing = _isSecureProcessing;
+	return factory;
+    }
+
     /**
      * javax.xml.transform.sax.SAXTransformerFactory implementation.
      * Get a TemplatesHandler object that can process SAX ContentHandler
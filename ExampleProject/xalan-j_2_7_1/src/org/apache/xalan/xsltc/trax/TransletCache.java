@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+
+package org.apache.xalan.xsltc.trax;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Vector;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xalan.Version;
+import org.apache.xml.utils.SystemIDResolver;
+
+/**
+ * A directory of compiled translets, each stored under a hash of the
+ * content of its stylesheet and of the factory attributes it was compiled
+ * with.  An entry also records the system id and content hash of every
+ * module the stylesheet imported or included, and is only used while all
+ * of them still have the same content.  Entries are written to a temporary
+ * file which is then renamed, so that several processes may share the
+ * directory.
+ */
+final class TransletCache {
+
+    /**
+     * Identifies a translet cache entry.
+     */
+    private static final int MAGIC = 0x58544331;
+
+    /**
+     * The version of the format of the entries, which is part of the key.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The suffix of the entry files.
+     */
+    private static final String SUFFIX = ".translet";
+
+    /**
+     * The directory of the entries.
+     */
+    private final File _directory;
+
+    /**
+     * The content of a stylesheet, read into memory so that it can both be
+     * hashed and compiled.
+     */
+    static final class Content {
+	private final byte[] _digest;
+	private final String _systemId;
+	private final Source _source;
+
+	Content(byte[] digest, String systemId, Source source) {
+	    _digest = digest;
+	    _systemId = systemId;
+	    _source = source;
+	}
+
+	/**
+	 * Returns a source from which the stylesheet can be compiled.
+	 */
+	Source getSource() {
+	    return _source;
+	}
+    }
+
+    /**
+     * A translet found in the cache.
+     */
+    static final class Entry {
+	private final String _className;
+	private final byte[][] _bytecodes;
+
+	Entry(String className, byte[][] bytecodes) {
+	    _className = className;
+	    _bytecodes = bytecodes;
+	}
+
+	String getClassName() {
+	    return _className;
+	}
+
+	byte[][] getBytecodes() {
+	    return _bytecodes;
+	}
+    }
+
+    TransletCache(File directory) {
+	_directory = directory;
+    }
+
+    /**
+     * Read the content of a stylesheet, given either as a stream, a reader
+     * or a system id.
+     *
+     * @param source The stylesheet
+     * @return The content, or null if the source is not a StreamSource or
+     * can not be read
+     */
+    static Content read(Source source) {
+	if (!(source instanceof StreamSource)) return null;
+
+	final StreamSource stream = (StreamSource) source;
+	final String systemId = stream.getSystemId();
+	final StreamSource copy;
+	final byte[] bytes;
+
+	try {
+	    if (stream.getInputStream() != null) {
+		bytes = readFully(stream.getInputStream());
+		copy = new StreamSource(new ByteArrayInputStream(bytes));
+	    }
+	    else if (stream.getReader() != null) {
+		final char[] chars = readFully(stream.getReader());
+		bytes = new String(chars).getBytes("UTF-8");
+		copy = new StreamSource(new CharArrayReader(chars));
+	    }
+	    else if (systemId != null) {
+		bytes = readModule(systemId);
+		copy = new StreamSource(new ByteArrayInputStream(bytes));
+	    }
+	    else {
+		return null;
+	    }
+	}
+	catch (IOException e) {
+	    return null;
+	}
+
+	copy.setSystemId(systemId);
+	copy.setPublicId(stream.getPublicId());
+	return new Content(digest(bytes), systemId, copy);
+    }
+
+    /**
+     * Returns the key of a stylesheet.
+     *
+     * @param content The content of the stylesheet
+     * @param attributes The factory attributes that change the translet
+     */
+    String getKey(Content content, String attributes) {
+	final MessageDigest md = newDigest();
+	try {
+	    md.update(String.valueOf(FORMAT_VERSION).getBytes("UTF-8"));
+	    md.update((byte) 0);
+	    md.update(Version.getVersion().getBytes("UTF-8"));
+	    md.update((byte) 0);
+	    md.update(attributes.getBytes("UTF-8"));
+	    md.update((byte) 0);
+	    if (content._systemId != null) {
+		md.update(content._systemId.getBytes("UTF-8"));
+	    }
+	    md.update((byte) 0);
+	}
+	catch (java.io.UnsupportedEncodingException e) {
+	    // can't happen
+	    throw new org.apache.xml.utils.WrappedRuntimeException(e);
+	}
+	md.update(content._digest);
+	return toHex(md.digest());
+    }
+
+    /**
+     * Returns the translet stored under a key, if the modules it imported
+     * or included still have the same content.
+     *
+     * @param key The key of the stylesheet
+     * @return The translet, or null if there is none or it is stale
+     */
+    Entry load(String key) {
+	final File file = new File(_directory, key + SUFFIX);
+	if (!file.isFile()) return null;
+
+	DataInputStream in = null;
+	try {
+	    in = new DataInputStream(
+		new BufferedInputStream(new FileInputStream(file)));
+
+	    if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+		return null;
+	    }
+
+	    final String className = in.readUTF();
+	    final int modules = in.readInt();
+	    for (int i = 0; i < modules; i++) {
+		final String systemId = in.readUTF();
+		final byte[] digest = new byte[in.readInt()];
+		in.readFully(digest);
+
+		if (!Arrays.equals(digest, digest(readModule(systemId)))) {
+		    return null;
+		}
+	    }
+
+	    final byte[][] bytecodes = new byte[in.readInt()][];
+	    for (int i = 0; i < bytecodes.length; i++) {
+		bytecodes[i] = new byte[in.readInt()];
+		in.readFully(bytecodes[i]);
+	    }
+	    return new Entry(className, bytecodes);
+	}
+	catch (IOException e) {
+	    // A module that can not be read any more, or a truncated entry
+	    return null;
+	}
+	finally {
+	    close(in);
+	}
+    }
+
+    /**
+     * Store a translet under a key, unless a module it imported or included
+     * can not be read.
+     *
+     * @param key The key of the stylesheet
+     * @param className The name of the translet class
+     * @param modules The system ids of the modules imported or included
+     * @param bytecodes The bytecodes of the translet classes
+     */
+    void store(String key, String className, Vector modules,
+	       byte[][] bytecodes) throws IOException
+    {
+	final int count = modules.size();
+	final byte[][] digests = new byte[count][];
+	for (int i = 0; i < count; i++) {
+	    digests[i] = digest(readModule((String) modules.elementAt(i)));
+	}
+
+	if (!_directory.isDirectory() && !_directory.mkdirs()) {
+	    throw new IOException(_directory.getPath());
+	}
+
+	final File file = new File(_directory, key + SUFFIX);
+	final File temp = File.createTempFile(key, null, _directory);
+	DataOutputStream out = null;
+	try {
+	    out = new DataOutputStream(
+		new BufferedOutputStream(new FileOutputStream(temp)));
+
+	    out.writeInt(MAGIC);
+	    out.writeInt(FORMAT_VERSION);
+	    out.writeUTF(className);
+	    out.writeInt(count);
+	    for (int i = 0; i < count; i++) {
+		out.writeUTF((String) modules.elementAt(i));
+		out.writeInt(digests[i].length);
+		out.write(digests[i]);
+	    }
+	    out.writeInt(bytecodes.length);
+	    for (int i = 0; i < bytecodes.length; i++) {
+		out.writeInt(bytecodes[i].length);
+		out.write(bytecodes[i]);
+	    }
+	    out.close();
+	    out = null;
+
+	    // Replace an entry that went stale
+	    if (!temp.renameTo(file)) {
+		file.delete();
+		temp.renameTo(file);
+	    }
+	}
+	finally {
+	    close(out);
+	    temp.delete();
+	}
+    }
+
+    /**
+     * Returns the content of a stylesheet module.
+     */
+    private static byte[] readModule(String systemId) throws IOException {
+	final URL url = new URL(SystemIDResolver.getAbsoluteURI(systemId));
+	return readFully(url.openStream());
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+	try {
+	    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    final byte[] buffer = new byte[4096];
+	    int n;
+	    while ((n = input.read(buffer)) != -1) {
+		bytes.write(buffer, 0, n);
+	    }
+	    return bytes.toByteArray();
+	}
+	finally {
+	    input.close();
+	}
+    }
+
+    private static char[] readFully(Reader input) throws IOException {
+	try {
+	    final CharArrayWriter chars = new CharArrayWriter();
+	    final char[] buffer = new char[4096];
+	    int n;
+	    while ((n = input.read(buffer)) != -1) {
+		chars.write(buffer, 0, n);
+	    }
+	    return chars.toCharArray();
+	}
+	finally {
+	    input.close();
+	}
+    }
+
+    private static void close(InputStream stream) {
+	if (stream != null) {
+	    try {
+		stream.close();
+	    }
+	    catch (IOException e) { }
+	}
+    }
+
+    private static void close(DataOutputStream stream) {
+	if (stream != null) {
+	    try {
+		stream.close();
+	    }
+	    catch (IOException e) { }
+	}
+    }
+
+    private static MessageDigest newDigest() {
+	try {
+	    return MessageDigest.getInstance("SHA-1");
+	}
+	catch (NoSuchAlgorithmException e) {
+	    // can't happen
+	    throw new org.apache.xml.utils.WrappedRuntimeException(e);
+	}
+    }
+
+    private static byte[] digest(byte[] bytes) {
+	return newDigest().digest(bytes);
+    }
+
+    private static String toHex(byte[] bytes) {
+	final char[] digits = "0123456789abcdef".toCharArray();
+	final char[] hex = new char[bytes.length * 2];
+	for (int i = 0; i < bytes.length; i++) {
+	    hex[2 * i] = digits[(bytes[i] >> 4) & 0xF];
+	    hex[2 * i + 1] = digits[bytes[i] & 0xF];
+	}
+	return new String(hex);
+    }
+}
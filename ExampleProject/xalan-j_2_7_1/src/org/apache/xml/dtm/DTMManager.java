@@ -343,6 +343,67 @@ public abstract class DTMManager
   public void setSource_location(boolean sourceLocation){
     m_source_location = sourceLocation;
   }
+
+  /*
+   * Flag set by FEATURE_OFF_HEAP_STORAGE.
+   * This feature specifies whether the node tables of source documents
+   * should be kept outside the Java heap.
+   */
+  public boolean m_off_heap_storage = false;
+
+  /*
+   * Directory in which to create the files backing off-heap node tables,
+   * or null to use direct buffers.
+   */
+  public String m_off_heap_directory = null;
+
+  /**
+   * Get a flag indicating whether the node tables of source documents
+   * should be kept outside the Java heap.
+   * @return off-heap storage boolean
+   *
+   */
+  public boolean getOffHeapStorage()
+  {
+    return m_off_heap_storage;
+  }
+
+  /**
+   * Set a flag indicating whether the node tables of source documents
+   * should be kept outside the Java heap.
+   * This flag should have the same value as the FEATURE_OFF_HEAP_STORAGE
+   * feature which is set by the TransformerFactory.setAttribute() method
+   * before a DTMManager is created
+   * @param offHeapStorage boolean to use to set m_off_heap_storage
+   */
+  public void setOffHeapStorage(boolean offHeapStorage)
+  {
+    m_off_heap_storage = offHeapStorage;
+  }
+
+  /**
+   * Get the directory in which files backing off-heap node tables are
+   * created.
+   * @return a directory name, or null if direct buffers are used.
+   *
+   */
+  public String getOffHeapDirectory()
+  {
+    return m_off_heap_directory;
+  }
+
+  /**
+   * Set the directory in which files backing off-heap node tables are
+   * created. If null, the tables are kept in direct buffers instead.
+   * This value should be the same as the PROPERTY_OFF_HEAP_DIRECTORY
+   * attribute which is set by the TransformerFactory.setAttribute() method
+   * before a DTMManager is created
+   * @param directory directory name, or null.
+   */
+  public void setOffHeapDirectory(String directory)
+  {
+    m_off_heap_directory = directory;
+  }
   
 
   // -------------------- private methods --------------------
@@ -367,7 +428,11 @@ public abstract class DTMManager
    * document. The remaining bits are used to identify the DTM
    * document which contains this node.
    *
-   * If you change IDENT_DTM_NODE_BITS, be sure to rebuild _ALL_ the
+   * The value defaults to DEFAULT_NODE_BITS and may be overridden at
+   * startup through the NODE_BITS_PROPERTY system property; it cannot
+   * change once this class has been initialized.
+   *
+   * If you change DEFAULT_NODE_BITS, be sure to rebuild _ALL_ the
    * files which use it... including the IDKey testcases.
    *
    * (FuncGenerateKey currently uses the node identifier directly and
@@ -376,8 +441,60 @@ public abstract class DTMManager
    * comparison against the previous "golden" files will probably
    * complain.)
    * */
-  public static final int IDENT_DTM_NODE_BITS = 16;
-    
+  public static final int IDENT_DTM_NODE_BITS = getNodeBitsProperty();
+
+  /** The name of the system property which may be used to override
+   * the default value of IDENT_DTM_NODE_BITS at startup.
+   *
+   * Raising the value lets a very large document be addressed through
+   * fewer DTM IDs, so fewer extended addressing slots are consumed and
+   * fewer offset lookups are needed; lowering it leaves more DTM IDs for
+   * stylesheets which load many small documents or build many result
+   * tree fragments. Node handles remain 32 bit integers, so the two
+   * limits always trade off against one another: the product of
+   * IDENT_MAX_DTMS and the per-ID node count is fixed at 2^32.
+   */
+  public static final String NODE_BITS_PROPERTY =
+    "org.apache.xml.dtm.DTMManager.nodeBits";
+
+  /** The default number of node bits, used when NODE_BITS_PROPERTY is
+   * not set or is not a legal value.
+   */
+  public static final int DEFAULT_NODE_BITS = 16;
+
+  /** The smallest number of node bits that may be requested. */
+  public static final int MIN_NODE_BITS = 10;
+
+  /** The largest number of node bits that may be requested. The
+   * remaining bits must still be able to name a reasonable number of
+   * DTMs, since every result tree fragment uses at least one.
+   */
+  public static final int MAX_NODE_BITS = 24;
+
+  /**
+   * Read the NODE_BITS_PROPERTY system property.
+   *
+   * @return the requested number of node bits, or DEFAULT_NODE_BITS
+   * if the property is absent, unreadable or out of range.
+   */
+  private static int getNodeBitsProperty()
+  {
+    int bits = DEFAULT_NODE_BITS;
+    try
+    {
+      String value = System.getProperty(NODE_BITS_PROPERTY);
+      if (value != null)
+      {
+        int requested = Integer.parseInt(value.trim());
+        if (requested >= MIN_NODE_BITS && requested <= MAX_NODE_BITS)
+          bits = requested;
+      }
+    }
+    catch (SecurityException ex){}
+    catch (NumberFormatException ex){}
+    return bits;
+  }
+
 
   /** When this bitmask is ANDed with a DTM node handle number, the result
    * is the low bits of the node's index number within that DTM. To obtain
@@ -427,4 +544,25 @@ public abstract class DTMManager
     return IDENT_NODE_DEFAULT;
   }
 
+  /**
+   * Get the number of low-order bits of a node handle which address a
+   * node within a single DTM ID.
+   *
+   * @return the value of IDENT_DTM_NODE_BITS in effect for this VM.
+   */
+  public int getNodeIdentityBits()
+  {
+    return IDENT_DTM_NODE_BITS;
+  }
+
+  /**
+   * Get the maximum number of DTM IDs which this manager can hand out.
+   *
+   * @return the value of IDENT_MAX_DTMS in effect for this VM.
+   */
+  public int getMaxDTMIDs()
+  {
+    return IDENT_MAX_DTMS;
+  }
+
 }
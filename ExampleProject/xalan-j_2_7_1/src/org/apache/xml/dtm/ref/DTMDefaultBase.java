@@ -23,7 +23,9 @@ package org.apache.xml.dtm.ref;
 import org.apache.xml.dtm.*;
 import org.apache.xml.utils.SuballocatedIntVector;
 import org.apache.xml.utils.BoolStack;
+import org.apache.xml.utils.IntVector;
 
+import java.util.Hashtable;
 import java.util.Vector;
 
 import javax.xml.transform.Source;
@@ -87,6 +89,18 @@ public abstract class DTMDefaultBase implements DTM
    */
   protected int[][][] m_elemIndexes;
 
+  /**
+   * These hold indexes to elements based on the value of one of their
+   * attributes, and are built on first use by getElementsByAttributeValue.
+   * The key is a Long made of the expanded type IDs of the element and of
+   * the attribute, and the value is a Hashtable from attribute values to
+   * arrays of element identities in document order.
+   */
+  private Hashtable m_attrValueIndexes;
+
+  /** The element list returned when no element has an attribute value. */
+  private static final int[] EMPTY_ELEMENTS = new int[0];
+
   /** The default block size of the node arrays */
   public static final int DEFAULT_BLOCKSIZE = 512;  // favor small docs.
   
@@ -410,6 +424,106 @@ public abstract class DTMDefaultBase implements DTM
     return NOTPROCESSED;
   }
 
+  /**
+   * Get the elements of an expanded type that have an attribute of an
+   * expanded type with the given value.  The first request for a pair of
+   * types indexes the whole document, and the index is kept with this DTM
+   * for later requests.
+   *
+   * @param elementType The expanded type ID of the elements.
+   * @param attrType The expanded type ID of the attribute.
+   * @param value The string value of the attribute.
+   *
+   * @return The identities of the elements in document order, which must
+   *         not be modified, or null if this DTM does not index its elements
+   *         by attribute value.
+   */
+  public int[] getElementsByAttributeValue(int elementType, int attrType,
+                                           String value)
+  {
+
+    Long key = new Long(((long) elementType << 32)
+                        | (attrType & 0xFFFFFFFFL));
+    Hashtable index;
+
+    synchronized (this)
+    {
+      if (null == m_attrValueIndexes)
+        m_attrValueIndexes = new Hashtable();
+
+      index = (Hashtable) m_attrValueIndexes.get(key);
+
+      if (null == index)
+      {
+        index = buildAttributeValueIndex(elementType, attrType);
+
+        m_attrValueIndexes.put(key, index);
+      }
+    }
+
+    int[] elems = (int[]) index.get(value);
+
+    return (null == elems) ? EMPTY_ELEMENTS : elems;
+  }
+
+  /**
+   * Index the elements of an expanded type by the value of their
+   * attribute of an expanded type.
+   *
+   * @param elementType The expanded type ID of the elements.
+   * @param attrType The expanded type ID of the attribute.
+   *
+   * @return A Hashtable from attribute values to arrays of element
+   *         identities in document order.
+   */
+  private Hashtable buildAttributeValueIndex(int elementType, int attrType)
+  {
+
+    IntVector elems = new IntVector();
+    Vector values = new Vector();
+    Hashtable counts = new Hashtable();
+    int exptype;
+
+    for (int identity = 0; NULL != (exptype = _exptype(identity)); identity++)
+    {
+      if (exptype == elementType)
+      {
+        int attr = getTypedAttribute(makeNodeHandle(identity), attrType);
+
+        if (NULL != attr)
+        {
+          String value = getStringValue(attr).toString();
+          int[] count = (int[]) counts.get(value);
+
+          if (null == count)
+            counts.put(value, count = new int[1]);
+
+          count[0]++;
+          elems.addElement(identity);
+          values.addElement(value);
+        }
+      }
+    }
+
+    // Fill each list from its end, so that the elements stay in
+    // document order.
+    Hashtable index = new Hashtable(counts.size());
+
+    for (int i = elems.size() - 1; i >= 0; i--)
+    {
+      Object value = values.elementAt(i);
+      int[] count = (int[]) counts.get(value);
+      int[] list = (int[]) index.get(value);
+
+      if (null == list)
+        index.put(value, list = new int[count[0]]);
+
+      list[--count[0]] = elems.elementAt(i);
+    }
+
+    return index;
+  }
+
   /**
    * Get the next node identity value in the list, and call the iterator
    * if it hasn't been added yet.
@@ -1709,6 +1823,38 @@ public abstract class DTMDefaultBase implements DTM
     return ent.getExpandedTypeID(namespace, localName, type);
   }
 
+  /**
+   * Given an expanded name, return an ID.  If searchOnly is true and the
+   * expanded name is not in the table, DTM.NULL is returned and the table
+   * is left as it is, so that looking a name up while evaluating an
+   * expression does not grow the table.
+   *
+   * @param namespace The namespace URI, or null.
+   * @param localName The local name.
+   * @param type The simple type, i.e. one of ELEMENT, ATTRIBUTE, etc.
+   * @param searchOnly true to only look the expanded name up.
+   *
+   * @return the expanded-name id, or DTM.NULL if searchOnly is true and no
+   *         node built so far has this expanded name.
+   */
+  public int getExpandedTypeID(String namespace, String localName, int type,
+                               boolean searchOnly)
+  {
+    return m_expandedNameTable.getExpandedTypeID(namespace, localName, type,
+                                                 searchOnly);
+  }
+
+  /**
+   * Tell whether this DTM may still add nodes, so that a name which no node
+   * has yet may turn up later.  The base class can not tell, and says so.
+   *
+   * @return true if the tree is still under construction.
+   */
+  public boolean isTreeIncomplete()
+  {
+    return true;
+  }
+
   /**
    * Given an expanded-name ID, return the local name part.
    *
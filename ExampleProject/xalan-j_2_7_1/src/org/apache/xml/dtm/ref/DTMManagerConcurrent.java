@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xml.dtm.ref;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.sax.SAXSource;
+
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMException;
+import org.apache.xml.res.XMLErrorResources;
+import org.apache.xml.res.XMLMessages;
+import org.apache.xml.utils.XMLReaderManager;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * A DTMManager whose node handle lookups do not take the manager's lock.
+ *
+ * <p>DTMManagerDefault synchronizes every public method, so each
+ * handle-to-DTM resolution made by an XPath iterator acquires a monitor.
+ * This manager instead treats the DTM ID tables as copy-on-write:
+ * addDTM() builds new copies of m_dtms and m_dtm_offsets under the lock
+ * and then publishes them through the volatile fields, offsets first, so
+ * that getDTM(int), getDTMIdentity() and the node identity lookups in
+ * DTMDefaultBase can read the tables without synchronizing. Building and
+ * releasing DTMs is still serialized.</p>
+ *
+ * <p>Copying the tables makes each new DTM ID cost time proportional to
+ * the number of IDs in use, which is the right trade when lookups vastly
+ * outnumber document loads.</p>
+ *
+ * <p>To use this manager, set the <code>org.apache.xml.dtm.DTMManager</code>
+ * system property to <code>org.apache.xml.dtm.ref.DTMManagerConcurrent</code>.</p>
+ */
+public class DTMManagerConcurrent extends DTMManagerDefault
+{
+
+  /**
+   * Constructor DTMManagerConcurrent
+   *
+   */
+  public DTMManagerConcurrent(){}
+
+  /**
+   * Add a DTM to the DTM table, publishing new copies of the ID tables
+   * rather than updating the ones that unsynchronized readers may be
+   * using.
+   *
+   * @param dtm Should be a valid reference to a DTM.
+   * @param id Integer DTM ID to be bound to this DTM.
+   * @param offset Integer addressing offset. The internal DTM Node ID is
+   * obtained by adding this offset to the node-number field of the
+   * public DTM Handle. For the first DTM ID accessing each DTM, this is 0;
+   * for overflow addressing it will be a multiple of 1<<IDENT_DTM_NODE_BITS.
+   */
+  synchronized public void addDTM(DTM dtm, int id, int offset)
+  {
+    if(id>=IDENT_MAX_DTMS)
+    {
+      throw new DTMException(XMLMessages.createXMLMessage(XMLErrorResources.ER_NO_DTMIDS_AVAIL, null)); //"No more DTM IDs are available!");
+    }
+
+    DTM old_m_dtms[] = m_dtms;
+    int old_m_dtm_offsets[] = m_dtm_offsets;
+    int oldlen = old_m_dtms.length;
+    int newlen = (oldlen <= id) ? Math.min((id+256),IDENT_MAX_DTMS) : oldlen;
+
+    DTM new_m_dtms[] = new DTM[newlen];
+    System.arraycopy(old_m_dtms,0,new_m_dtms,0,oldlen);
+    int new_m_dtm_offsets[] = new int[newlen];
+    System.arraycopy(old_m_dtm_offsets,0,new_m_dtm_offsets,0,oldlen);
+
+    new_m_dtms[id] = dtm;
+    new_m_dtm_offsets[id] = offset;
+
+    // Publish the offsets before the DTMs. A reader which finds the new
+    // DTM in m_dtms is then guaranteed to see its offset as well.
+    m_dtm_offsets = new_m_dtm_offsets;
+    m_dtms = new_m_dtms;
+
+    if(id==m_firstFreeDTMID)
+      m_firstFreeDTMID++;
+
+    dtm.documentRegistration();
+  }
+
+  /**
+   * Return the DTM object containing a representation of this node.
+   * This method does not synchronize.
+   *
+   * @param nodeHandle DTM Handle indicating which node to retrieve
+   *
+   * @return a reference to the DTM object containing this node.
+   */
+  public DTM getDTM(int nodeHandle)
+  {
+    try
+    {
+      // Performance critical function.
+      return m_dtms[nodeHandle >>> IDENT_DTM_NODE_BITS];
+    }
+    catch(java.lang.ArrayIndexOutOfBoundsException e)
+    {
+      if(nodeHandle==DTM.NULL)
+        return null;    // Accept as a special case.
+      else
+        throw e;    // Programming error; want to know about it.
+    }
+  }
+
+  /**
+   * Given a DTM, find the ID number in the DTM tables which addresses
+   * the start of the document. This method does not synchronize; if the
+   * DTM cannot answer for itself, a snapshot of the ID table is searched.
+   *
+   * @param dtm The DTM which (hopefully) contains this node.
+   *
+   * @return The DTM ID (as the high bits of a NodeHandle, not as our
+   * internal index), or -1 if the DTM doesn't belong to this manager.
+   */
+  public int getDTMIdentity(DTM dtm)
+  {
+    if(dtm instanceof DTMDefaultBase)
+    {
+      DTMDefaultBase dtmdb=(DTMDefaultBase)dtm;
+      if(dtmdb.getManager()==this)
+        return dtmdb.getDTMIDs().elementAt(0);
+      else
+        return -1;
+    }
+
+    DTM dtms[] = m_dtms;
+    int offsets[] = m_dtm_offsets;
+    int n = dtms.length;
+
+    for (int i = 0; i < n; i++)
+    {
+      if (dtms[i] == dtm && offsets[i]==0)
+        return i << IDENT_DTM_NODE_BITS;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Given a W3C DOM node, try and return a DTM handle. Nodes which are
+   * already DTM proxies are resolved without synchronizing; anything else
+   * may need a new DTM, and goes through the synchronized lookup.
+   *
+   * @param node Non-null reference to a DOM node.
+   *
+   * @return a valid DTM handle.
+   */
+  public int getDTMHandleFromNode(org.w3c.dom.Node node)
+  {
+    if (node instanceof DTMNodeProxy)
+      return ((DTMNodeProxy) node).getDTMNodeNumber();
+
+    return super.getDTMHandleFromNode(node);
+  }
+
+  /**
+   * This method returns the SAX2 parser to use with the InputSource
+   * obtained from this URI. XMLReaderManager does its own locking, so
+   * this method does not synchronize.
+   *
+   * @param inputSource The value returned from the URIResolver.
+   * @return non-null XMLReader reference ready to parse.
+   */
+  public XMLReader getXMLReader(Source inputSource)
+  {
+
+    try
+    {
+      XMLReader reader = (inputSource instanceof SAXSource)
+                         ? ((SAXSource) inputSource).getXMLReader() : null;
+
+      // If user did not supply a reader, ask for one from the reader manager
+      if (null == reader) {
+        if (m_readerManager == null) {
+            m_readerManager = XMLReaderManager.getInstance();
+        }
+
+        reader = m_readerManager.getXMLReader();
+      }
+
+      return reader;
+
+    } catch (SAXException se) {
+      throw new DTMException(se.getMessage(), se);
+    }
+  }
+
+  /**
+   * Indicates that the XMLReader object is no longer in use for the
+   * transform. This method does not synchronize.
+   *
+   * @param reader The XMLReader to be released.
+   */
+  public void releaseXMLReader(XMLReader reader) {
+    if (m_readerManager != null) {
+      m_readerManager.releaseXMLReader(reader);
+    }
+  }
+}
@@ -90,8 +90,11 @@ public class DTMManagerDefault extends DTMManager
    * 
    * This array grows as necessary; see addDTM(). Growth is uncommon... but
    * access needs to be blindingly fast since it's used in node addressing.
+   *
+   * The field is volatile so that DTMManagerConcurrent can publish a
+   * replacement array to readers which do not take the manager's lock.
    */
-  protected DTM m_dtms[] = new DTM[256];
+  protected volatile DTM m_dtms[] = new DTM[256];
 	
   /** Map from DTM identifier numbers to offsets. For small DTMs with a 
    * single identifier, this will always be 0. In overflow addressing, where
@@ -106,7 +109,15 @@ public class DTMManagerDefault extends DTMManager
    * (And at the moment, that includes accessing it from DTMDefaultBase,
    * which is why this is not Protected or Private.)
    */
-  int m_dtm_offsets[] = new int[256];
+  volatile int m_dtm_offsets[] = new int[256];
+
+  /**
+   * The lowest DTM ID which may be free. Every ID below this one is known
+   * to be in use, so getFirstFreeDTMID() can start its search here rather
+   * than rescanning the whole table each time a large document needs
+   * another extended addressing ID.
+   */
+  protected int m_firstFreeDTMID = 1;
 
   /**
    * The cache for XMLReader objects to be used if the user did not
@@ -173,27 +184,46 @@ public class DTMManagerDefault extends DTMManager
 		
     m_dtms[id] = dtm;
 		m_dtm_offsets[id]=offset;
+		if(id==m_firstFreeDTMID)
+			m_firstFreeDTMID++;
     dtm.documentRegistration();
 		// The DTM should have been told who its manager was when we created it.
 		// Do we need to allow for adopting DTMs _not_ created by this manager?
   }
 
   /**
-   * Get the first free DTM ID available. %OPT% Linear search is inefficient!
+   * Get the first free DTM ID available. The search starts from the
+   * lowest ID which may be free, so IDs which are known to be in use are
+   * not rescanned every time a large document overflows into another ID.
    */
   synchronized public int getFirstFreeDTMID()
   {
     int n = m_dtms.length;
-    for (int i = 1; i < n; i++)
+    for (int i = m_firstFreeDTMID; i < n; i++)
     {
       if(null == m_dtms[i])
       {
+        m_firstFreeDTMID = i;
         return i;
       }
     }
+		m_firstFreeDTMID = n;
 		return n; // count on addDTM() to throw exception if out of range
   }
 
+  /**
+   * Forget the DTM bound to a DTM ID, making the ID available for reuse.
+   *
+   * @param id Integer DTM ID (as an index, not as the high bits of a
+   * node handle) which is to be freed.
+   */
+  protected void freeDTMID(int id)
+  {
+    m_dtms[id] = null;
+    if (id < m_firstFreeDTMID)
+      m_firstFreeDTMID = id;
+  }
+
   /**
    * The default table for exandedNameID lookups.
    */
@@ -262,6 +292,36 @@ public class DTMManagerDefault extends DTMManager
 
       return dtm;
     }
+    else if ((null != source) && source instanceof DTMSnapshotSource)
+    {
+      // A previously built tree; load it rather than parsing. Whitespace
+      // was already stripped when the snapshot was written.
+      SAX2DTM dtm = new SAX2DTM(this, source, documentID, whiteSpaceFilter,
+                                xstringFactory, doIndexing);
+
+      addDTM(dtm, dtmPos, 0);
+
+      try
+      {
+        java.io.InputStream is =
+          ((DTMSnapshotSource) source).getInputStream();
+        try
+        {
+          dtm.readSnapshot(new java.io.BufferedInputStream(is));
+        }
+        finally
+        {
+          is.close();
+        }
+      }
+      catch (java.io.IOException ioe)
+      {
+        release(dtm, true);
+        throw new DTMException(ioe);
+      }
+
+      return dtm;
+    }
     else
     {
       boolean isSAXSource = (null != source)
@@ -737,14 +797,14 @@ public class DTMManagerDefault extends DTMManager
 		{
 			org.apache.xml.utils.SuballocatedIntVector ids=((DTMDefaultBase)dtm).getDTMIDs();
 			for(int i=ids.size()-1;i>=0;--i)
-				m_dtms[ids.elementAt(i)>>>DTMManager.IDENT_DTM_NODE_BITS]=null;
+				freeDTMID(ids.elementAt(i)>>>DTMManager.IDENT_DTM_NODE_BITS);
 		}
 		else
 		{
 			int i = getDTMIdentity(dtm);
 		    if (i >= 0)
 			{
-				m_dtms[i >>> DTMManager.IDENT_DTM_NODE_BITS] = null;
+				freeDTMID(i >>> DTMManager.IDENT_DTM_NODE_BITS);
 			}
 		}
 
@@ -752,6 +812,49 @@ public class DTMManagerDefault extends DTMManager
     return true;
   }
 
+  /**
+   * Release every DTM this manager holds, so that the manager can be used
+   * again without keeping the documents of earlier work alive.
+   */
+  synchronized public void releaseAll()
+  {
+    DTM[] dtms = m_dtms;
+
+    for (int i = dtms.length - 1; i >= 0; --i)
+    {
+      if (null != dtms[i])
+        release(dtms[i], true);
+    }
+  }
+
+  /**
+   * Get the DTMs this manager holds.
+   *
+   * @return A new array holding each DTM once, in no particular order.
+   */
+  synchronized public DTM[] getDTMs()
+  {
+    int n = 0;
+
+    for (int i = 0; i < m_dtms.length; i++)
+    {
+      // A DTM using overflow addressing also has IDs with an offset.
+      if (null != m_dtms[i] && 0 == m_dtm_offsets[i])
+        n++;
+    }
+
+    DTM[] dtms = new DTM[n];
+
+    n = 0;
+    for (int i = 0; i < m_dtms.length; i++)
+    {
+      if (null != m_dtms[i] && 0 == m_dtm_offsets[i])
+        dtms[n++] = m_dtms[i];
+    }
+
+    return dtms;
+  }
+
   /**
    * Method createDocumentFragment
    *
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xml.dtm.ref;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMManager;
+import org.apache.xml.dtm.ref.sax2dtm.SAX2DTM;
+import org.apache.xml.res.XMLErrorResources;
+import org.apache.xml.res.XMLMessages;
+import org.apache.xpath.objects.XMLStringFactoryImpl;
+
+/**
+ * A Source which names a DTM snapshot, written by
+ * SAX2DTM.writeSnapshot(), rather than an XML document.
+ *
+ * <p>When DTMManagerDefault.getDTM() is given a DTMSnapshotSource, it
+ * loads the snapshot into a new SAX2DTM instead of parsing. A URIResolver
+ * can return one of these for reference documents which are loaded by
+ * document() on every transform. The system ID should be the URI of the
+ * original document, so that relative URIs still resolve against it.</p>
+ *
+ * <p>Whitespace stripping is applied when the snapshot is created, not
+ * when it is loaded, so a snapshot should only be used with stylesheets
+ * whose xsl:strip-space settings match those it was created with.
+ * Snapshots made by main() keep all whitespace.</p>
+ *
+ * <p>To create a snapshot from the command line:</p>
+ * <pre>
+ * java org.apache.xml.dtm.ref.DTMSnapshotSource lookup.xml lookup.dtm
+ * </pre>
+ */
+public class DTMSnapshotSource implements Source
+{
+
+  /** The snapshot file, or null if a stream was supplied. */
+  private File m_file;
+
+  /** The snapshot stream, or null if a file was supplied. */
+  private InputStream m_inputStream;
+
+  /** The system ID of the document the snapshot was made from. */
+  private String m_systemId;
+
+  /**
+   * Create a DTMSnapshotSource which reads a snapshot file.
+   *
+   * @param file The snapshot file.
+   * @param systemId The system ID of the document the snapshot was made
+   *                 from, or null.
+   */
+  public DTMSnapshotSource(File file, String systemId)
+  {
+    m_file = file;
+    m_systemId = systemId;
+  }
+
+  /**
+   * Create a DTMSnapshotSource which reads a snapshot from a stream. The
+   * stream is closed once the snapshot has been loaded.
+   *
+   * @param inputStream The snapshot stream.
+   * @param systemId The system ID of the document the snapshot was made
+   *                 from, or null.
+   */
+  public DTMSnapshotSource(InputStream inputStream, String systemId)
+  {
+    m_inputStream = inputStream;
+    m_systemId = systemId;
+  }
+
+  /**
+   * Open the snapshot for reading.
+   *
+   * @return a stream positioned at the start of the snapshot.
+   *
+   * @throws IOException if the snapshot file cannot be opened.
+   */
+  public InputStream getInputStream() throws IOException
+  {
+    return (null != m_file) ? new FileInputStream(m_file) : m_inputStream;
+  }
+
+  /**
+   * Set the system identifier for this Source.
+   *
+   * @param systemId The system identifier as a URL string.
+   */
+  public void setSystemId(String systemId)
+  {
+    m_systemId = systemId;
+  }
+
+  /**
+   * Get the system identifier that was set with setSystemId.
+   *
+   * @return The system identifier that was set with setSystemId, or null
+   * if setSystemId was not called.
+   */
+  public String getSystemId()
+  {
+    return m_systemId;
+  }
+
+  /**
+   * Parse an XML document and write a snapshot of it.
+   *
+   * @param xml The document to parse.
+   * @param out The stream to write the snapshot to. It is not closed.
+   *
+   * @throws IOException if the snapshot cannot be written.
+   */
+  public static void createSnapshot(Source xml, OutputStream out)
+    throws IOException
+  {
+    DTMManager mgr = DTMManager.newInstance(XMLStringFactoryImpl.getFactory());
+    DTM dtm = mgr.getDTM(xml, true, null, false, false);
+
+    if (!(dtm instanceof SAX2DTM))
+      throw new IllegalArgumentException(XMLMessages.createXMLMessage(XMLErrorResources.ER_NOT_SUPPORTED, new Object[]{xml})); //"Not supported: " + xml);
+
+    try
+    {
+      ((SAX2DTM) dtm).writeSnapshot(out);
+    }
+    finally
+    {
+      mgr.release(dtm, true);
+    }
+  }
+
+  /**
+   * Command line entry point: parse the document named by the first
+   * argument and write a snapshot to the file named by the second.
+   *
+   * @param args The XML file and the snapshot file.
+   *
+   * @throws IOException if the snapshot cannot be written.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length != 2)
+    {
+      System.err.println("Usage: java org.apache.xml.dtm.ref.DTMSnapshotSource xmlFile snapshotFile");
+      return;
+    }
+
+    OutputStream out =
+      new BufferedOutputStream(new FileOutputStream(args[1]));
+    try
+    {
+      createSnapshot(new StreamSource(new File(args[0])), out);
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+}
@@ -90,6 +90,14 @@ public class DTMStringPool
       m_hashChain.removeAllElements();
     }
 
+  /** @return the number of strings in the pool. Their indexes run from
+   * 0 to size()-1.
+   * */
+  public int size()
+    {
+      return m_intToString.size();
+    }
+
   /** @return string whose value is uniquely identified by this integer index.
    * @throws java.lang.ArrayIndexOutOfBoundsException
    *  if index doesn't map to a string.
@@ -134,6 +142,27 @@ public class DTMStringPool
       return newIndex;
     }
 
+  /** Add a string which the caller knows is not already in the pool,
+   * such as one being restored from a saved copy of another pool. This
+   * skips the search of the hash chain, which stringToIndex() must make.
+   *
+   * @return the index of the new string, which is the previous size().
+   * */
+  public int appendUnique(String s)
+    {
+      int hashslot=s.hashCode()%HASHPRIME;
+      if(hashslot<0) hashslot=-hashslot;
+
+      int newIndex=m_intToString.size();
+      m_intToString.addElement(s);
+
+      // Link in at the head of the chain rather than the tail.
+      m_hashChain.addElement(m_hashStart[hashslot]);
+      m_hashStart[hashslot]=newIndex;
+
+      return newIndex;
+    }
+
   /** Command-line unit test driver. This test relies on the fact that
    * this version of the pool assigns indices consecutively, starting
    * from zero, as new unique strings are encountered.
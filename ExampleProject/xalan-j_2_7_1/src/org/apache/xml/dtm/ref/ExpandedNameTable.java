@@ -37,8 +37,11 @@ import org.apache.xml.dtm.DTM;
 public class ExpandedNameTable
 {
 
-  /** Array of extended types for this document   */
-  private ExtendedType[] m_extendedTypes;
+  /**
+   * Array of extended types for this document. It is read without a lock,
+   * so it is written again after each new entry to publish the entry.
+   */
+  private volatile ExtendedType[] m_extendedTypes;
 
   /** The initial size of the m_extendedTypes array */
   private static int m_initialSize = 128;
@@ -63,10 +66,6 @@ public class ExpandedNameTable
   public static final int NOTATION = ((int)DTM.NOTATION_NODE) ;
   public static final int NAMESPACE = ((int)DTM.NAMESPACE_NODE) ;
 
-  /** Workspace for lookup. NOT THREAD SAFE!
-   * */
-  ExtendedType hashET = new ExtendedType(-1, "", "");
-
   /** The array to store the default extended types. */
   private static ExtendedType[] m_defaultExtendedTypes;
 
@@ -97,9 +96,11 @@ public class ExpandedNameTable
   
   /**
    * The internal array to store the hash entries.
-   * Each array member is a slot for a hash bucket.
+   * Each array member is a slot for a hash bucket. It is read without a
+   * lock, so it is written again after each new entry to publish the
+   * entry, and entries are never changed once they are in it.
    */
-  private HashEntry[] m_table;
+  private volatile HashEntry[] m_table;
 
   /**
    * Init default values
@@ -186,54 +187,81 @@ public class ExpandedNameTable
     // Calculate the hash code
     int hash = type + namespace.hashCode() + localName.hashCode();
     
-    // Redefine the hashET object to represent the new expanded name.
-    hashET.redefine(type, namespace, localName, hash);
-    
-    // Calculate the index into the HashEntry table.
-    int index = hash % m_capacity;
-    if (index < 0)
-      index = -index;
-
     // Look up the expanded name in the hash table. Return the id if
-    // the expanded name is already in the hash table.
-    for (HashEntry e = m_table[index]; e != null; e = e.next)
-    {
-      if (e.hash == hash && e.key.equals(hashET))
-        return e.value;
-    }
-    
-    if (searchOnly)
+    // the expanded name is already in the hash table. The lookup doesn't
+    // write anything, so the names of a built DTM can be looked up by
+    // several threads at once.
+    int id = lookup(type, namespace, localName, hash);
+    if (DTM.NULL != id)
+      return id;
+
+    // A lookup which races with an addition may miss an existing name,
+    // so look again under the lock before concluding that it is new.
+    synchronized (this)
     {
-      return DTM.NULL;
-    }
+      id = lookup(type, namespace, localName, hash);
+      if (DTM.NULL != id || searchOnly)
+        return id;
 
-    // Expand the internal HashEntry array if necessary.
-    if (m_nextType > m_threshold) {
-      rehash();
-      index = hash % m_capacity;
+      // Expand the internal HashEntry array if necessary.
+      if (m_nextType > m_threshold)
+        rehash();
+      
+      int index = hash % m_capacity;
       if (index < 0)
         index = -index;
+
+      // Create a new ExtendedType object
+      ExtendedType newET = new ExtendedType(type, namespace, localName, hash);
+      
+      // Expand the m_extendedTypes array if necessary.
+      ExtendedType[] types = m_extendedTypes;
+      if (types.length == m_nextType) {
+          ExtendedType[] newArray = new ExtendedType[types.length * 2];
+          System.arraycopy(types, 0, newArray, 0, types.length);
+          types = newArray;
+      }
+      
+      types[m_nextType] = newET;
+      m_extendedTypes = types;
+      
+      // Create a new hash entry for the new ExtendedType and put it into 
+      // the table.
+      HashEntry[] table = m_table;
+      HashEntry entry = new HashEntry(newET, m_nextType, hash, table[index]);
+      table[index] = entry;
+      m_table = table;
+
+      return m_nextType++;
     }
-    
-    // Create a new ExtendedType object
-    ExtendedType newET = new ExtendedType(type, namespace, localName, hash);
-    
-    // Expand the m_extendedTypes array if necessary.
-    if (m_extendedTypes.length == m_nextType) {
-        ExtendedType[] newArray = new ExtendedType[m_extendedTypes.length * 2];
-        System.arraycopy(m_extendedTypes, 0, newArray, 0,
-                         m_extendedTypes.length);
-        m_extendedTypes = newArray;
-    }
-    
-    m_extendedTypes[m_nextType] = newET;
-    
-    // Create a new hash entry for the new ExtendedType and put it into 
-    // the table.
-    HashEntry entry = new HashEntry(newET, m_nextType, hash, m_table[index]);
-    m_table[index] = entry;
+  }
 
-    return m_nextType++;
+  /**
+   * Look up an expanded name in the hash table.
+   *
+   * @param type The node type
+   * @param namespace The namespace, not null
+   * @param localName The local name, not null
+   * @param hash The hash code of the expanded name
+   *
+   * @return the expanded-name id, or DTM.NULL if it is not in the table.
+   */
+  private int lookup(int type, String namespace, String localName, int hash)
+  {
+    HashEntry[] table = m_table;
+    int index = hash % table.length;
+    if (index < 0)
+      index = -index;
+
+    for (HashEntry e = table[index]; e != null; e = e.next)
+    {
+      ExtendedType key = e.key;
+      if (e.hash == hash && key.getNodeType() == type
+          && key.getLocalName().equals(localName)
+          && key.getNamespace().equals(namespace))
+        return e.value;
+    }
+    return DTM.NULL;
   }
 
   /**
@@ -251,22 +279,22 @@ public class ExpandedNameTable
     m_capacity = newCapacity;
     m_threshold = (int)(newCapacity * m_loadFactor);
       
-    m_table = new HashEntry[newCapacity];
+    // Fill the new table before publishing it to unlocked lookups. The
+    // entries are copied, since lookups may still be walking the old ones.
+    HashEntry[] newTable = new HashEntry[newCapacity];
     for (int i = oldCapacity-1; i >=0 ; i--)
     {
-      for (HashEntry old = oldTable[i]; old != null; )
+      for (HashEntry e = oldTable[i]; e != null; e = e.next)
       {
-        HashEntry e = old;
-        old = old.next;
-          
         int newIndex = e.hash % newCapacity;
         if (newIndex < 0)
           newIndex = -newIndex;
           
-        e.next = m_table[newIndex];
-        m_table[newIndex] = e;
+        newTable[newIndex] = new HashEntry(e.key, e.value, e.hash,
+                                           newTable[newIndex]);
       }
     }
+    m_table = newTable;
   }
 
   /**
@@ -374,10 +402,10 @@ public class ExpandedNameTable
    */
   private static final class HashEntry
   {
-    ExtendedType key;
-    int value;
-    int hash;
-    HashEntry next;
+    final ExtendedType key;
+    final int value;
+    final int hash;
+    final HashEntry next;
       
     protected HashEntry(ExtendedType key, int value, int hash, HashEntry next)
     {
@@ -26,10 +26,10 @@ package org.apache.xml.dtm.ref;
  */
 public final class ExtendedType
 {
-    private int nodetype;
-    private String namespace;
-    private String localName;
-    private int hash;
+    private final int nodetype;
+    private final String namespace;
+    private final String localName;
+    private final int hash;
 
     /**
      * Create an ExtendedType object from node type, namespace and local name.
@@ -64,32 +64,6 @@ public final class ExtendedType
       this.hash = hash;
     }
 
-    /** 
-     * Redefine this ExtendedType object to represent a different extended type.
-     * This is intended to be used ONLY on the hashET object. Using it elsewhere
-     * will mess up existing hashtable entries!
-     */
-    protected void redefine(int nodetype, String namespace, String localName)
-    {
-      this.nodetype = nodetype;
-      this.namespace = namespace;
-      this.localName = localName;
-      this.hash = nodetype + namespace.hashCode() + localName.hashCode();
-    }
-
-    /** 
-     * Redefine this ExtendedType object to represent a different extended type.
-     * This is intended to be used ONLY on the hashET object. Using it elsewhere
-     * will mess up existing hashtable entries!
-     */
-    protected void redefine(int nodetype, String namespace, String localName, int hash)
-    {
-      this.nodetype = nodetype;
-      this.namespace = namespace;
-      this.localName = localName;
-      this.hash = hash;
-    }
-
     /**
      * Override the hashCode() method in the Object class
      */
@@ -20,6 +20,7 @@
  */
 package org.apache.xml.dtm.ref.dom2dtm;
 
+import java.util.HashMap;
 import java.util.Vector;
 
 import javax.xml.transform.SourceLocator;
@@ -103,6 +104,10 @@ public class DOM2DTM extends DTMDefaultBaseIterators
    * that sequence. */
   protected Vector m_nodes = new Vector();
 
+  /** Map from the DOM nodes in m_nodes to their node identities, built
+   * by indexAllNodes(), or null if the nodes have not been indexed. */
+  private HashMap m_nodeIdentities = null;
+
   /**
    * Construct a DOM2DTM object from a DOM node.
    *
@@ -315,6 +320,18 @@ public class DOM2DTM extends DTMDefaultBaseIterators
   {
     return m_nodes.size();
   }
+
+  /**
+   * Tell whether some of the DOM nodes have not been added to this DTM
+   * yet.
+   *
+   * @return true if the incremental build has not finished scanning the
+   *         DOM tree.
+   */
+  public boolean isTreeIncomplete()
+  {
+    return !m_nodesAreProcessed;
+  }
   
  /**
    * This method iterates to the next node that will be added to the table.
@@ -665,6 +682,20 @@ public class DOM2DTM extends DTMDefaultBaseIterators
   {
     if (null != node)
     {
+      HashMap identities = m_nodeIdentities;
+
+      if (null != identities)
+      {
+        Integer identity = (Integer) identities.get(node);
+
+        // The DOM's equals() is almost certainly identity, but check;
+        // if not, fall back to the search.
+        if (null == identity)
+          return DTM.NULL;
+        else if (m_nodes.elementAt(identity.intValue()) == node)
+          return makeNodeHandle(identity.intValue());
+      }
+
       int len = m_nodes.size();        
       boolean isMore;
       int i = 0;
@@ -687,6 +718,26 @@ public class DOM2DTM extends DTMDefaultBaseIterators
     return DTM.NULL;
   }
 
+  /**
+   * Process every node of the DOM tree, and index the DOM nodes so that
+   * {@link #getHandleOfNode(Node)} finds them without searching. After
+   * this the DTM no longer changes, so it may be read by several threads
+   * at once, as far as the DOM itself allows.
+   */
+  public synchronized void indexAllNodes()
+  {
+    while (nextNode())
+      ;
+
+    int len = m_nodes.size();
+    HashMap identities = new HashMap(len * 2);
+
+    for (int i = len - 1; i >= 0; --i)
+      identities.put(m_nodes.elementAt(i), new Integer(i));
+
+    m_nodeIdentities = identities;
+  }
+
   /** Get the handle from a Node. This is a more robust version of
    * getHandleFromNode, intended to be usable by the public.
    *
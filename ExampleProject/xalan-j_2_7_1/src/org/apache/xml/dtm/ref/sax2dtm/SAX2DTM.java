@@ -31,6 +31,8 @@ import org.apache.xml.utils.StringVector;
 import org.apache.xml.utils.IntVector;
 import org.apache.xml.utils.FastStringBuffer;
 import org.apache.xml.utils.IntStack;
+import org.apache.xml.utils.OffHeapIntVector;
+import org.apache.xml.utils.OffHeapStore;
 import org.apache.xml.utils.SuballocatedIntVector;
 import org.apache.xml.utils.SystemIDResolver;
 import org.apache.xml.utils.WrappedRuntimeException;
@@ -86,6 +88,11 @@ public class SAX2DTM extends DTMDefaultBaseIterators
    */
   protected SuballocatedIntVector m_data;
 
+  /** The store holding this DTM's node tables when off-heap storage has
+   * been requested through the DTMManager, or null.
+   */
+  protected OffHeapStore m_offHeapStore;
+
   /** The parent stack, needed only for construction.
    * Made protected rather than private so SAX2RTFDTM can access it.
    */
@@ -279,6 +286,13 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     //m_data = new SuballocatedIntVector(doIndexing ? (1024*2) : 512, 1024);
     //m_data = new SuballocatedIntVector(blocksize);
 
+    // Move the node tables out of the Java heap if the manager asks for it.
+    // Small (RTF-sized) DTMs are not worth a segment per table.
+    if (mgr.getOffHeapStorage() && blocksize > 64 && supportsOffHeapStorage())
+    {
+      useOffHeapStorage(mgr.getOffHeapDirectory(), blocksize);
+    }
+
     m_data.addElement(0);   // Need placeholder in case index into here must be <0.
 
     //m_dataOrQName = new SuballocatedIntVector(blocksize);
@@ -290,6 +304,59 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     m_sourceColumn = (m_useSourceLocationProperty) ?  new IntVector() : null; 
   }
 
+  /**
+   * Tell whether this DTM may keep its node tables in an OffHeapStore.
+   * Subclasses which read the tables' blocks directly through
+   * SuballocatedIntVector.getMap() must return false.
+   *
+   * @return true if off-heap node tables are supported.
+   */
+  protected boolean supportsOffHeapStorage()
+  {
+    return true;
+  }
+
+  /**
+   * Replace the (still empty) node tables with off-heap ones.
+   *
+   * @param directory The directory in which to create the backing file,
+   * or null to use direct buffers.
+   * @param blocksize The number of nodes each table holds at first.
+   */
+  private void useOffHeapStorage(String directory, int blocksize)
+  {
+    try
+    {
+      m_offHeapStore =
+        new OffHeapStore((null == directory) ? null : new java.io.File(directory));
+    }
+    catch (java.io.IOException ioe)
+    {
+      throw new DTMException(ioe);
+    }
+
+    m_exptype = new OffHeapIntVector(m_offHeapStore, blocksize, DEFAULT_NUMBLOCKS);
+    m_firstch = new OffHeapIntVector(m_offHeapStore, blocksize, DEFAULT_NUMBLOCKS);
+    m_nextsib = new OffHeapIntVector(m_offHeapStore, blocksize, DEFAULT_NUMBLOCKS);
+    m_parent = new OffHeapIntVector(m_offHeapStore, blocksize, DEFAULT_NUMBLOCKS);
+    if (m_prevsib != null)
+      m_prevsib = new OffHeapIntVector(m_offHeapStore, blocksize, DEFAULT_NUMBLOCKS);
+    m_data = new OffHeapIntVector(m_offHeapStore, blocksize, DEFAULT_NUMBLOCKS);
+    m_dataOrQName = new OffHeapIntVector(m_offHeapStore, blocksize, DEFAULT_NUMBLOCKS);
+  }
+
+  /**
+   * Called by DTMManager when the DTM is released. Lets go of the file
+   * backing the off-heap node tables, if there is one.
+   */
+  public void documentRelease()
+  {
+    super.documentRelease();
+
+    if (m_offHeapStore != null)
+      m_offHeapStore.close();
+  }
+
   /**
    * Set whether information about document source location
    * should be maintained or not. 
@@ -765,6 +832,17 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     return m_size;
   }
 
+  /**
+   * Tell whether the document is still being parsed, so that more nodes
+   * may be added to this DTM.
+   *
+   * @return true if a DTM tree is currently under construction.
+   */
+  public boolean isTreeIncomplete()
+  {
+    return !m_endDocumentOccured;
+  }
+
   /**
    * This method should try and build one or more nodes in the table.
    *
@@ -954,18 +1032,519 @@ public class SAX2DTM extends DTMDefaultBaseIterators
     
     // We have to reset the information in m_dtmIdent and
     // register the DTM with the new manager. 
+    // The new manager's free IDs need not be contiguous, so ask for
+    // each one in turn.
     int numDTMs = m_dtmIdent.size();
-    int dtmId = m_mgrDefault.getFirstFreeDTMID();
     int nodeIndex = 0;
     for (int i = 0; i < numDTMs; i++)
     {     
+      int dtmId = m_mgrDefault.getFirstFreeDTMID();
       m_dtmIdent.setElementAt(dtmId << DTMManager.IDENT_DTM_NODE_BITS, i);
       m_mgrDefault.addDTM(this, dtmId, nodeIndex);
-      dtmId++;
       nodeIndex += (1 << DTMManager.IDENT_DTM_NODE_BITS);
     }
   }
 
+  /**
+   * Node table blocks below this one have either been discarded by
+   * releaseNodesBefore() or are listed in m_heldBlocks.
+   */
+  private int m_releaseFrontier = 1;
+
+  /** Node table blocks below m_releaseFrontier which are still in use. */
+  private IntVector m_heldBlocks = new IntVector(16);
+
+  /**
+   * m_data blocks below this one have either been discarded or are
+   * listed in m_heldDataBlocks.
+   */
+  private int m_dataReleaseFrontier = 1;
+
+  /** m_data blocks below m_dataReleaseFrontier which are still in use. */
+  private IntVector m_heldDataBlocks = new IntVector(16);
+
+  /** Characters in m_chars below this offset have been discarded. */
+  private int m_charsReleaseFrontier = 0;
+
+  /**
+   * Discard the nodes which precede a node in document order, other than
+   * its ancestors and their attribute and namespace nodes, when the caller
+   * knows that none of them will be visited again. Together with
+   * incremental building, this lets a long document be transformed in a
+   * bounded amount of memory.
+   *
+   * The node tables, the m_data entries and the character buffer are
+   * discarded a block at a time, so this does nothing until the node is a
+   * block or more beyond the last one passed in. Strings in the value and
+   * prefix pool, and the ID table, are not discarded. Any attempt to reach
+   * a discarded node will fail, and a DTM which has discarded nodes can
+   * not be saved by writeSnapshot().
+   *
+   * Only plain SAX2DTM instances with on-heap node tables discard
+   * anything; for others this does nothing.
+   *
+   * @param nodeHandle The handle of a node of this DTM which has been built.
+   */
+  public void releaseNodesBefore(int nodeHandle)
+  {
+    if (getClass() != SAX2DTM.class || null != m_offHeapStore)
+      return;
+
+    int identity = makeNodeIdentity(nodeHandle);
+    if (DTM.NULL == identity)
+      return;
+
+    int blocksize = m_exptype.getBlockSize();
+    int block = identity / blocksize;
+    if (block <= m_releaseFrontier)
+      return;
+
+    int dataBlocksize = m_data.getBlockSize();
+
+    // Find the blocks which hold the ancestors and their attributes, and
+    // the m_data entries of attributes with prefixes.
+    IntVector keep = new IntVector(16);
+    IntVector keepData = new IntVector(16);
+    for (int ancestor = _parent(identity); DTM.NULL != ancestor;
+         ancestor = _parent(ancestor))
+    {
+      addUnique(keep, ancestor / blocksize);
+      for (int i = ancestor + 1; i < m_size; i++)
+      {
+        int type = _type(i);
+        if (DTM.ATTRIBUTE_NODE != type && DTM.NAMESPACE_NODE != type)
+          break;
+
+        addUnique(keep, i / blocksize);
+        int dataIndex = m_dataOrQName.elementAt(i);
+        if (DTM.ATTRIBUTE_NODE == type && dataIndex < 0)
+        {
+          addUnique(keepData, -dataIndex / dataBlocksize);
+          addUnique(keepData, (-dataIndex + 1) / dataBlocksize);
+        }
+      }
+    }
+
+    // Everything in m_data and m_chars used by the nodes from this block
+    // on lies beyond the first entry used by any of them.
+    int dataLimit = -1;
+    int charsLimit = -1;
+    for (int i = block * blocksize; i < m_size && charsLimit < 0; i++)
+    {
+      int type = _type(i);
+      int dataIndex = m_dataOrQName.elementAt(i);
+      if (DTM.TEXT_NODE == type || DTM.CDATA_SECTION_NODE == type)
+      {
+        if (dataLimit < 0)
+          dataLimit = dataIndex;
+        charsLimit = m_data.elementAt(dataIndex);
+      }
+      else if (DTM.ATTRIBUTE_NODE == type && dataIndex < 0 && dataLimit < 0)
+      {
+        dataLimit = -dataIndex;
+      }
+    }
+    if (dataLimit < 0)
+      dataLimit = m_data.size();
+    if (charsLimit < 0)
+      charsLimit = (m_textPendingStart >= 0) ? m_textPendingStart
+                                             : m_chars.size();
+
+    IntVector held = new IntVector(16);
+    for (int i = 0; i < m_heldBlocks.size(); i++)
+      releaseNodeBlock(m_heldBlocks.elementAt(i), keep, held);
+    for (int i = m_releaseFrontier; i < block; i++)
+      releaseNodeBlock(i, keep, held);
+    m_heldBlocks = held;
+    m_releaseFrontier = block;
+
+    int dataBlock = dataLimit / dataBlocksize;
+    held = new IntVector(16);
+    for (int i = 0; i < m_heldDataBlocks.size(); i++)
+      releaseDataBlock(m_heldDataBlocks.elementAt(i), keepData, held);
+    for (int i = m_dataReleaseFrontier; i < dataBlock; i++)
+      releaseDataBlock(i, keepData, held);
+    m_heldDataBlocks = held;
+    m_dataReleaseFrontier = Math.max(m_dataReleaseFrontier, dataBlock);
+
+    m_charsReleaseFrontier =
+      m_chars.discardChunks(m_charsReleaseFrontier, charsLimit);
+  }
+
+  /**
+   * Building an index of elements by attribute value reads the whole
+   * document from its first node.  A DTM which has discarded nodes can not
+   * be read from the start, and one which is being built incrementally
+   * without an element index, as for a streaming transformation, would
+   * have to be built entirely, so neither keeps such an index.
+   *
+   * @param elementType The expanded type ID of the elements.
+   * @param attrType The expanded type ID of the attribute.
+   * @param value The string value of the attribute.
+   *
+   * @return The identities of the elements in document order, or null if
+   *         this DTM does not index its elements by attribute value.
+   */
+  public int[] getElementsByAttributeValue(int elementType, int attrType,
+                                           String value)
+  {
+    if (m_releaseFrontier > 1 || (!m_indexing && isTreeIncomplete()))
+      return null;
+
+    return super.getElementsByAttributeValue(elementType, attrType, value);
+  }
+
+  /**
+   * Add a value to a list unless it is already there.
+   */
+  private static void addUnique(IntVector list, int value)
+  {
+    if (!list.contains(value))
+      list.addElement(value);
+  }
+
+  /**
+   * Discard a block of the node tables, unless it is to be kept.
+   *
+   * @param block The index of the block.
+   * @param keep The blocks which must be kept.
+   * @param held The list to add the block to if it is kept.
+   */
+  private void releaseNodeBlock(int block, IntVector keep, IntVector held)
+  {
+    if (keep.contains(block))
+    {
+      held.addElement(block);
+      return;
+    }
+
+    m_exptype.discardBlock(block);
+    m_firstch.discardBlock(block);
+    m_nextsib.discardBlock(block);
+    m_parent.discardBlock(block);
+    if (null != m_prevsib)
+      m_prevsib.discardBlock(block);
+    m_dataOrQName.discardBlock(block);
+  }
+
+  /**
+   * Discard a block of m_data, unless it is to be kept.
+   *
+   * @param block The index of the block.
+   * @param keep The blocks which must be kept.
+   * @param held The list to add the block to if it is kept.
+   */
+  private void releaseDataBlock(int block, IntVector keep, IntVector held)
+  {
+    if (keep.contains(block))
+      held.addElement(block);
+    else
+      m_data.discardBlock(block);
+  }
+
+  /** Magic number which begins every DTM snapshot ("XDTM"). */
+  public static final int SNAPSHOT_MAGIC = 0x5844544D;
+
+  /** Version of the snapshot format written by writeSnapshot(). */
+  public static final int SNAPSHOT_VERSION = 1;
+
+  /**
+   * Write a binary snapshot of this fully built DTM, which readSnapshot()
+   * can later load into a new SAX2DTM without parsing the document again.
+   *
+   * The snapshot holds the node tables, the expanded names they use, the
+   * value and prefix pool, the character buffer, the namespace
+   * declarations, ID attributes and unparsed entities. Source locations
+   * are not saved. Node handles are stored as node identities, so the
+   * snapshot does not depend on the DTM IDs assigned by this manager.
+   *
+   * Only plain SAX2DTM instances can be saved; subclasses such as
+   * SAX2DTM2 and SAX2RTFDTM lay out their tables differently.
+   *
+   * @param os The stream to write to. It is flushed but not closed.
+   *
+   * @throws java.io.IOException if the snapshot cannot be written.
+   */
+  public void writeSnapshot(java.io.OutputStream os) throws java.io.IOException
+  {
+    if (getClass() != SAX2DTM.class || null != m_incrementalSAXSource
+        || !m_endDocumentOccured || m_releaseFrontier > 1)
+      throw new DTMException(XMLMessages.createXMLMessage(XMLErrorResources.ER_NOT_SUPPORTED, new Object[]{getClass().getName()})); //"Not supported: " + class);
+
+    java.io.DataOutputStream out =
+      new java.io.DataOutputStream(new java.io.BufferedOutputStream(os));
+
+    out.writeInt(SNAPSHOT_MAGIC);
+    out.writeInt(SNAPSHOT_VERSION);
+    writeSnapshotString(out, m_documentBaseURI);
+    out.writeInt(m_size);
+
+    // The expanded name table may be shared with other DTMs; save it all
+    // so that the expanded type IDs in m_exptype can be remapped on load.
+    ExpandedNameTable ent = m_expandedNameTable;
+    int entSize = ent.getSize();
+    out.writeInt(entSize);
+    for (int i = 0; i < entSize; i++)
+    {
+      out.writeInt(ent.getType(i));
+      writeSnapshotString(out, ent.getNamespace(i));
+      writeSnapshotString(out, ent.getLocalName(i));
+    }
+
+    writeSnapshotVector(out, m_exptype);
+    writeSnapshotVector(out, m_firstch);
+    writeSnapshotVector(out, m_nextsib);
+    writeSnapshotVector(out, m_parent);
+    out.writeBoolean(null != m_prevsib);
+    if (null != m_prevsib)
+      writeSnapshotVector(out, m_prevsib);
+    writeSnapshotVector(out, m_dataOrQName);
+    writeSnapshotVector(out, m_data);
+
+    int poolSize = m_valuesOrPrefixes.size();
+    out.writeInt(poolSize);
+    for (int i = 0; i < poolSize; i++)
+      writeSnapshotString(out, m_valuesOrPrefixes.indexToString(i));
+
+    // Write the character buffer in slices rather than as one String.
+    int charsLength = m_chars.size();
+    out.writeInt(charsLength);
+    for (int start = 0; start < charsLength; start += 4096)
+    {
+      int length = Math.min(4096, charsLength - start);
+      out.writeChars(m_chars.getString(start, length));
+    }
+
+    // Namespace declaration sets hold node handles; store identities.
+    int nsSets = (null == m_namespaceDeclSets) ? 0 : m_namespaceDeclSets.size();
+    out.writeInt(nsSets);
+    for (int i = 0; i < nsSets; i++)
+    {
+      SuballocatedIntVector nsList =
+        (SuballocatedIntVector) m_namespaceDeclSets.elementAt(i);
+      int n = nsList.size();
+      out.writeInt(m_namespaceDeclSetElements.elementAt(i));
+      out.writeInt(n);
+      for (int j = 0; j < n; j++)
+        out.writeInt(makeNodeIdentity(nsList.elementAt(j)));
+    }
+
+    out.writeInt(m_idAttributes.size());
+    for (java.util.Enumeration e = m_idAttributes.keys(); e.hasMoreElements(); )
+    {
+      String id = (String) e.nextElement();
+      writeSnapshotString(out, id);
+      out.writeInt(((Integer) m_idAttributes.get(id)).intValue());
+    }
+
+    int entities = (null == m_entities) ? 0 : m_entities.size();
+    out.writeInt(entities);
+    for (int i = 0; i < entities; i++)
+      writeSnapshotString(out, (String) m_entities.elementAt(i));
+
+    out.flush();
+  }
+
+  /**
+   * Load a snapshot written by writeSnapshot() into this DTM, which must
+   * have been newly constructed and not yet received any content.
+   * The DTM must already have been added to its manager, since loading
+   * a large snapshot may need extended addressing DTM IDs.
+   *
+   * @param is The stream to read from. It is not closed.
+   *
+   * @throws java.io.IOException if the snapshot cannot be read or is not
+   *         in a format this version understands.
+   */
+  public void readSnapshot(java.io.InputStream is) throws java.io.IOException
+  {
+    java.io.DataInputStream in =
+      new java.io.DataInputStream(new java.io.BufferedInputStream(is));
+
+    if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION)
+      throw new java.io.IOException(XMLMessages.createXMLMessage(XMLErrorResources.ER_NOT_SUPPORTED, new Object[]{"DTM snapshot"})); //"Not supported: DTM snapshot");
+
+    String baseURI = readSnapshotString(in);
+    if (null == m_documentBaseURI)
+      m_documentBaseURI = baseURI;
+
+    int size = in.readInt();
+
+    int entSize = in.readInt();
+    int[] typeMap = new int[entSize];
+    ExpandedNameTable ent = m_expandedNameTable;
+    for (int i = 0; i < entSize; i++)
+    {
+      int type = in.readInt();
+      String namespace = readSnapshotString(in);
+      String localName = readSnapshotString(in);
+      typeMap[i] = ent.getExpandedTypeID(namespace, localName, type);
+    }
+
+    readSnapshotVector(in, m_exptype, typeMap);
+    readSnapshotVector(in, m_firstch, null);
+    readSnapshotVector(in, m_nextsib, null);
+    readSnapshotVector(in, m_parent, null);
+    if (in.readBoolean())
+    {
+      if (null != m_prevsib)
+        readSnapshotVector(in, m_prevsib, null);
+      else
+        readSnapshotVector(in, new SuballocatedIntVector(), null);
+    }
+    readSnapshotVector(in, m_dataOrQName, null);
+    m_data.removeAllElements();
+    readSnapshotVector(in, m_data, null);
+
+    // The saved pool holds no duplicates and begins with the empty string,
+    // which every new pool already contains.
+    int poolSize = in.readInt();
+    for (int i = 0; i < poolSize; i++)
+    {
+      String s = readSnapshotString(in);
+      if (i > 0)
+        m_valuesOrPrefixes.appendUnique(s);
+    }
+
+    int charsLength = in.readInt();
+    byte[] bytes = new byte[8192];
+    char[] chars = new char[4096];
+    for (int start = 0; start < charsLength; start += 4096)
+    {
+      int length = Math.min(4096, charsLength - start);
+      in.readFully(bytes, 0, length << 1);
+      for (int i = 0, b = 0; i < length; i++, b += 2)
+        chars[i] = (char) (((bytes[b] & 0xFF) << 8) | (bytes[b + 1] & 0xFF));
+      m_chars.append(chars, 0, length);
+    }
+
+    m_size = size;
+
+    // The element indexes are not saved; rebuild them in document order.
+    if (m_indexing)
+    {
+      for (int identity = 0; identity < size; identity++)
+        indexNode(m_exptype.elementAt(identity), identity);
+    }
+
+    // Claim the extra DTM IDs a large document needs before any node
+    // handles are made.
+    int nodesPerID = 1 << DTMManager.IDENT_DTM_NODE_BITS;
+    for (int nodeIndex = nodesPerID; nodeIndex < size; nodeIndex += nodesPerID)
+      addNewDTMID(nodeIndex);
+
+    int nsSets = in.readInt();
+    for (int i = 0; i < nsSets; i++)
+    {
+      int element = in.readInt();
+      int n = in.readInt();
+      SuballocatedIntVector nsList = new SuballocatedIntVector(32);
+      for (int j = 0; j < n; j++)
+        nsList.addElement(makeNodeHandle(in.readInt()));
+
+      if (null == m_namespaceDeclSets)
+      {
+        m_namespaceDeclSetElements = new SuballocatedIntVector(32);
+        m_namespaceDeclSets = new Vector();
+      }
+      m_namespaceDeclSetElements.addElement(element);
+      m_namespaceDeclSets.addElement(nsList);
+    }
+
+    int ids = in.readInt();
+    for (int i = 0; i < ids; i++)
+    {
+      String id = readSnapshotString(in);
+      m_idAttributes.put(id, new Integer(in.readInt()));
+    }
+
+    int entities = in.readInt();
+    if (entities > 0)
+    {
+      m_entities = new Vector(entities);
+      for (int i = 0; i < entities; i++)
+        m_entities.addElement(readSnapshotString(in));
+    }
+
+    m_parents = null;
+    m_prefixMappings = null;
+    m_contextIndexes = null;
+    m_previous = DTM.NULL;
+    m_endDocumentOccured = true;
+  }
+
+  /**
+   * Write a possibly null String of any length to a snapshot.
+   */
+  private static void writeSnapshotString(java.io.DataOutputStream out,
+                                          String s)
+    throws java.io.IOException
+  {
+    if (null == s)
+    {
+      out.writeInt(-1);
+    }
+    else
+    {
+      out.writeInt(s.length());
+      out.writeChars(s);
+    }
+  }
+
+  /**
+   * Read a String written by writeSnapshotString().
+   */
+  private static String readSnapshotString(java.io.DataInputStream in)
+    throws java.io.IOException
+  {
+    int length = in.readInt();
+    if (length < 0)
+      return null;
+
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++)
+      chars[i] = in.readChar();
+    return new String(chars);
+  }
+
+  /**
+   * Write the contents of a SuballocatedIntVector to a snapshot.
+   */
+  private static void writeSnapshotVector(java.io.DataOutputStream out,
+                                          SuballocatedIntVector v)
+    throws java.io.IOException
+  {
+    int n = v.size();
+    out.writeInt(n);
+    for (int i = 0; i < n; i++)
+      out.writeInt(v.elementAt(i));
+  }
+
+  /**
+   * Append the values written by writeSnapshotVector() to a vector. The
+   * values are read in blocks, since DataInputStream.readInt() is slow.
+   *
+   * @param map If non-null, each value is replaced by map[value].
+   */
+  private static void readSnapshotVector(java.io.DataInputStream in,
+                                         SuballocatedIntVector v, int[] map)
+    throws java.io.IOException
+  {
+    int n = in.readInt();
+    byte[] bytes = new byte[4096];
+    for (int start = 0; start < n; start += 1024)
+    {
+      int length = Math.min(1024, n - start);
+      in.readFully(bytes, 0, length << 2);
+      for (int i = 0, b = 0; i < length; i++, b += 4)
+      {
+        int value = ((bytes[b] & 0xFF) << 24) | ((bytes[b + 1] & 0xFF) << 16)
+                    | ((bytes[b + 2] & 0xFF) << 8) | (bytes[b + 3] & 0xFF);
+        v.addElement((null == map) ? value : map[value]);
+      }
+    }
+  }
+
   /**
    * Store the source location of the current node.  This method must be called
    * as every node is added to the DTM or for no node.
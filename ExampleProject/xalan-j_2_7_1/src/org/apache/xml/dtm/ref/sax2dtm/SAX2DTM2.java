@@ -1892,6 +1892,17 @@ public class SAX2DTM2 extends SAX2DTM
     m_parent_map0  = m_parent.getMap0();
   }
 
+  /**
+   * SAX2DTM2 reads the blocks of its node tables directly, so it cannot
+   * keep them off-heap.
+   *
+   * @return false
+   */
+  protected boolean supportsOffHeapStorage()
+  {
+    return false;
+  }
+
   /**
    * Override DTMDefaultBase._exptype() by dropping the incremental code.
    *
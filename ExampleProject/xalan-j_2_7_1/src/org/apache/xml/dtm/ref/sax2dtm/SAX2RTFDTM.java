@@ -148,6 +148,17 @@ public class SAX2RTFDTM extends SAX2DTM
     m_emptyDataQNCount = m_dataOrQName.size();
   }
   
+  /**
+   * Result tree fragments are small, short-lived and rewound in place,
+   * so they always keep their node tables on the heap.
+   *
+   * @return false
+   */
+  protected boolean supportsOffHeapStorage()
+  {
+    return false;
+  }
+
   /**
    * Given a DTM, find the owning document node. In the case of
    * SAX2RTFDTM, which may contain multiple documents, this returns
@@ -166,6 +177,23 @@ public class SAX2RTFDTM extends SAX2DTM
     return makeNodeHandle(m_currentDocumentNode);
   }
 
+  /**
+   * The nodes of a result tree fragment are discarded when the fragment is
+   * popped, and their identities reused, so this DTM keeps no index of
+   * elements by attribute value.
+   *
+   * @param elementType The expanded type ID of the elements.
+   * @param attrType The expanded type ID of the attribute.
+   * @param value The string value of the attribute.
+   *
+   * @return null
+   */
+  public int[] getElementsByAttributeValue(int elementType, int attrType,
+                                           String value)
+  {
+    return null;
+  }
+
   /**
    * Given a node handle, find the owning document node, using DTM semantics
    * (Document owns itself) rather than DOM semantics (Document has no owner).
@@ -352,11 +380,4 @@ public class SAX2RTFDTM extends SAX2DTM
     // Return true iff DTM now empty
     return m_size==0;
   }
- 
-  /** @return true if a DTM tree is currently under construction.
-   * */
-  public boolean isTreeIncomplete()
-  {
-    return !m_endDocumentOccured;
-  }
 }
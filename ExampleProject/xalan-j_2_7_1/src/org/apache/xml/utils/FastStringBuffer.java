@@ -309,6 +309,32 @@ public class FastStringBuffer
     m_array[0] = new char[m_chunkSize];
   }
 
+  /**
+   * Discard the storage of the chunks which lie wholly within a range of
+   * characters that will never be read again. Reading a character in a
+   * discarded chunk will fail. The chunk being appended to is never
+   * discarded, and nothing is discarded once the chunk size has grown.
+   *
+   * @param start Offset of the first character which may be discarded.
+   * @param end Offset just past the last character which may be discarded.
+   *
+   * @return The offset at which the first chunk not discarded begins,
+   * which the caller may pass as start next time.
+   */
+  public final int discardChunks(int start, int end)
+  {
+    if (m_innerFSB != null || start >= end)
+      return start;
+
+    int first = (start + m_chunkMask) >>> m_chunkBits;
+    int last = Math.min(end >>> m_chunkBits, m_lastChunk);
+
+    for (int i = first; i < last; i++)
+      m_array[i] = null;
+
+    return Math.max(start, last << m_chunkBits);
+  }
+
   /**
    * Directly set how much of the FastStringBuffer's storage is to be
    * considered part of its content. This is a fast but hazardous
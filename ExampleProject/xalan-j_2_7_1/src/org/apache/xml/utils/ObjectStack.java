@@ -209,7 +209,7 @@ public class ObjectStack extends ObjectVector
   public Object clone()
     throws CloneNotSupportedException
   {
-  	return (ObjectStack) super.clone();
+  	return new ObjectStack(this);
   }  
   
 }
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xml.utils;
+
+import java.nio.IntBuffer;
+
+/**
+ * A SuballocatedIntVector whose blocks are held outside the Java heap,
+ * in segments obtained from an OffHeapStore.
+ *
+ * The first segment starts as small as the block size of the DTM and
+ * grows to a full segment as it fills, so that small documents do not
+ * take a full segment per table.
+ *
+ * Only the public element access methods are supported. getMap0() and
+ * getMap() do NOT expose the stored values, so this class must not be
+ * used by code which reads the blocks directly (such as SAX2DTM2).
+ * @xsl.usage internal
+ */
+public class OffHeapIntVector extends SuballocatedIntVector
+{
+  /** The store from which new segments are obtained. */
+  private OffHeapStore m_store;
+
+  /** The segments, indexed by element index >>> m_SHIFT. */
+  private IntBuffer m_segments[];
+
+  /** "Shortcut" handle to m_segments[0]. */
+  private IntBuffer m_segment0;
+
+  /** The number of ints m_segment0 can hold, at most m_blocksize. */
+  private int m_segment0Size;
+
+  /**
+   * Construct an OffHeapIntVector.
+   *
+   * @param store The store to obtain segments from.
+   * @param blocksize The number of ints to hold at first.
+   * @param numblocks Number of segment slots to (over)allocate by.
+   */
+  public OffHeapIntVector(OffHeapStore store, int blocksize, int numblocks)
+  {
+    // The superclass storage is not used beyond this minimal allocation.
+    super(1, 1);
+
+    m_SHIFT = OffHeapStore.SEGMENT_SHIFT;
+    m_blocksize = OffHeapStore.SEGMENT_INTS;
+    m_MASK = m_blocksize - 1;
+    m_numblocks = numblocks;
+
+    m_store = store;
+    m_segments = new IntBuffer[numblocks];
+    m_segment0Size = Math.min(blocksize, m_blocksize);
+    m_segment0 = m_segments[0] = store.allocateSegment(m_segment0Size);
+  }
+
+  /**
+   * Replace the first segment by one at least twice as large which can
+   * hold the given index, copying the values set so far.
+   *
+   * @param at An index below m_blocksize.
+   */
+  private void growSegment0(int at)
+  {
+    int size = m_segment0Size;
+
+    while (size <= at)
+      size <<= 1;
+    size = Math.min(size, m_blocksize);
+
+    IntBuffer seg = m_store.allocateSegment(size);
+    IntBuffer from = m_segment0.duplicate();
+
+    from.clear();
+    seg.duplicate().put(from);
+    m_segment0 = m_segments[0] = seg;
+    m_segment0Size = size;
+  }
+
+  /**
+   * Get the segment holding the given index, allocating it if needed.
+   *
+   * @param index segment number (element index >>> m_SHIFT)
+   *
+   * @return the segment.
+   */
+  private IntBuffer segment(int index)
+  {
+    if (index >= m_segments.length)
+    {
+      IntBuffer newSegments[] = new IntBuffer[index + m_numblocks];
+      System.arraycopy(m_segments, 0, newSegments, 0, m_segments.length);
+      m_segments = newSegments;
+    }
+
+    IntBuffer seg = m_segments[index];
+    if (null == seg)
+      seg = m_segments[index] = m_store.allocateSegment();
+    return seg;
+  }
+
+  /**
+   * Append a int onto the vector.
+   *
+   * @param value Int to add to the list
+   */
+  public void addElement(int value)
+  {
+    if (m_firstFree < m_blocksize)
+    {
+      if (m_firstFree >= m_segment0Size)
+        growSegment0(m_firstFree);
+      m_segment0.put(m_firstFree, value);
+    }
+    else
+      segment(m_firstFree >>> m_SHIFT).put(m_firstFree & m_MASK, value);
+
+    ++m_firstFree;
+  }
+
+  /**
+   * Wipe it out. Currently defined as equivalent to setSize(0).
+   */
+  public void removeAllElements()
+  {
+    m_firstFree = 0;
+  }
+
+  /**
+   * Sets the component at the specified index of this vector to be the
+   * specified value.
+   *
+   * @param value value to set
+   * @param at    Index of where to set the value
+   */
+  public void setElementAt(int value, int at)
+  {
+    if (at < m_blocksize)
+    {
+      if (at >= m_segment0Size)
+        growSegment0(at);
+      m_segment0.put(at, value);
+    }
+    else
+      segment(at >>> m_SHIFT).put(at & m_MASK, value);
+
+    if (at >= m_firstFree)
+      m_firstFree = at + 1;
+  }
+
+  /**
+   * Get the nth element.
+   *
+   * @param i index of value to get
+   *
+   * @return value at given index.
+   */
+  public int elementAt(int i)
+  {
+    if (i < m_blocksize)
+      return (i < m_segment0Size) ? m_segment0.get(i) : 0;
+
+    return m_segments[i >>> m_SHIFT].get(i & m_MASK);
+  }
+
+  /**
+   * Searches for the first occurence of the given argument,
+   * beginning the search at index.
+   *
+   * @param elem value to look for
+   * @param index Index of where to begin search
+   * @return the index of the first occurrence of the value at position
+   * index or later in the vector; returns -1 if it is not found.
+   */
+  public int indexOf(int elem, int index)
+  {
+    for (int i = index; i < m_firstFree; i++)
+    {
+      if (elementAt(i) == elem)
+        return i;
+    }
+
+    return -1;
+  }
+}
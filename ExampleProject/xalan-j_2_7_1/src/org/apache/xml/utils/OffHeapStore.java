@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xml.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * A source of fixed size int segments which live outside the Java heap.
+ *
+ * If the store was created without a directory, each segment is a direct
+ * ByteBuffer. Otherwise the segments are consecutive regions of a single
+ * temporary file in that directory, mapped into memory with
+ * FileChannel.map(), so that the operating system may page them out.
+ *
+ * A store is normally shared by all the columns of one document. Calling
+ * close() deletes the backing file, if any; segments which have already
+ * been handed out remain readable until they are garbage collected. The
+ * files of stores which are still open when the JVM exits are deleted by
+ * a single shutdown hook.
+ *
+ * This class requires java.nio, and so is only loaded when off-heap
+ * storage has been requested.
+ * @xsl.usage internal
+ */
+public class OffHeapStore
+{
+  /** log2 of the number of ints in each segment. */
+  public static final int SEGMENT_SHIFT = 16;
+
+  /** The number of ints in each segment. */
+  public static final int SEGMENT_INTS = 1 << SEGMENT_SHIFT;
+
+  /** The backing files of the stores which have not been closed. */
+  private static final HashSet s_openFiles = new HashSet();
+
+  /** Set once the shutdown hook deleting s_openFiles is registered. */
+  private static boolean s_hookRegistered = false;
+
+  /** The backing file, or null if direct buffers are used. */
+  private File m_file;
+
+  /** The open backing file, or null if direct buffers are used. */
+  private RandomAccessFile m_raf;
+
+  /** Channel used to map regions of the backing file. */
+  private FileChannel m_channel;
+
+  /** The offset in the backing file at which the next segment is mapped. */
+  private long m_nextPosition = 0;
+
+  /**
+   * Create a store.
+   *
+   * @param directory The directory in which to create the backing file,
+   * or null to allocate direct buffers instead.
+   *
+   * @throws IOException if the backing file cannot be created.
+   */
+  public OffHeapStore(File directory) throws IOException
+  {
+    if (directory != null)
+    {
+      m_file = File.createTempFile("xalan-dtm", ".dat", directory);
+      addOpenFile(m_file);
+      m_raf = new RandomAccessFile(m_file, "rw");
+      m_channel = m_raf.getChannel();
+    }
+  }
+
+  /**
+   * Allocate a new segment of SEGMENT_INTS ints, all initially zero.
+   *
+   * @return a new IntBuffer whose capacity is SEGMENT_INTS.
+   */
+  public IntBuffer allocateSegment()
+  {
+    return allocateSegment(SEGMENT_INTS);
+  }
+
+  /**
+   * Allocate a new segment of the given number of ints, all initially
+   * zero.
+   *
+   * @param ints The number of ints, at most SEGMENT_INTS.
+   *
+   * @return a new IntBuffer whose capacity is ints.
+   */
+  public synchronized IntBuffer allocateSegment(int ints)
+  {
+    ByteBuffer bytes;
+
+    if (m_channel == null)
+    {
+      bytes = ByteBuffer.allocateDirect(ints * 4);
+    }
+    else
+    {
+      try
+      {
+        bytes = m_channel.map(FileChannel.MapMode.READ_WRITE,
+                              m_nextPosition, ints * 4);
+        m_nextPosition += ints * 4;
+      }
+      catch (IOException ioe)
+      {
+        throw new WrappedRuntimeException(ioe);
+      }
+    }
+
+    return bytes.order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+
+  /**
+   * Release the backing file, if any. Segments remain valid until they
+   * are no longer referenced.
+   */
+  public synchronized void close()
+  {
+    if (m_raf != null)
+    {
+      try
+      {
+        m_raf.close();
+      }
+      catch (IOException ioe){}
+
+      m_file.delete();
+      removeOpenFile(m_file);
+      m_raf = null;
+      m_channel = null;
+    }
+  }
+
+  /**
+   * Remember a backing file so that it is deleted if the JVM exits before
+   * its store is closed, registering the shutdown hook the first time.
+   *
+   * @param file The backing file.
+   */
+  private static void addOpenFile(File file)
+  {
+    synchronized (s_openFiles)
+    {
+      if (!s_hookRegistered)
+      {
+        Runtime.getRuntime().addShutdownHook(new Thread()
+          {
+            public void run()
+            {
+              synchronized (s_openFiles)
+              {
+                for (Iterator i = s_openFiles.iterator(); i.hasNext(); )
+                  ((File) i.next()).delete();
+                s_openFiles.clear();
+              }
+            }
+          });
+        s_hookRegistered = true;
+      }
+      s_openFiles.add(file);
+    }
+  }
+
+  /**
+   * Forget a backing file which has been deleted.
+   *
+   * @param file The backing file.
+   */
+  private static void removeOpenFile(File file)
+  {
+    synchronized (s_openFiles)
+    {
+      s_openFiles.remove(file);
+    }
+  }
+}
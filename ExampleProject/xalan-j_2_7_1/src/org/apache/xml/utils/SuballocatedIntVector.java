@@ -536,6 +536,34 @@ public class SuballocatedIntVector
     return -1;
   }
   
+  /**
+   * Get the number of elements in each block of storage.
+   *
+   * @return the block size
+   */
+  public final int getBlockSize()
+  {
+    return m_blocksize;
+  }
+
+  /**
+   * Discard a block of elements which will never be read or written
+   * again, so that its storage can be reclaimed. Reading an element of a
+   * discarded block will fail. The first block, and the block which
+   * elements are being appended to, are never discarded.
+   *
+   * @param index The index of the block; element i is in block
+   * i/getBlockSize().
+   */
+  public void discardBlock(int index)
+  {
+    if (index <= 0 || index >= (m_firstFree >>> m_SHIFT)
+        || index >= m_map.length || m_map[index] == m_buildCache)
+      return;
+
+    m_map[index] = null;
+  }
+
   /**
    * Return the internal m_map0 array
    * @return the m_map0 array
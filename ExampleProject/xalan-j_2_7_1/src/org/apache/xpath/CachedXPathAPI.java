@@ -22,6 +22,7 @@ package org.apache.xpath;
 
 import javax.xml.transform.TransformerException;
 
+import org.apache.xml.dtm.DTMManager;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.PrefixResolverDefault;
 import org.apache.xpath.objects.XObject;
@@ -52,6 +53,10 @@ import org.w3c.dom.traversal.NodeIterator;
  * returned to the heap. Essentially, it's the caller's responsibility to
  * decide when to discard the cache.
  *
+ * Documents which support mutation events are the exception once the
+ * shared {@link DOM2DTMCache} has been enabled: their DTMs are kept in
+ * that cache instead, which drops them as soon as the document changes.
+ *
  * @see <a href="http://www.w3.org/TR/xpath">XPath Specification</a>
  * */
 public class CachedXPathAPI
@@ -61,6 +66,11 @@ public class CachedXPathAPI
   */
   protected XPathContext xpathSupport;
 
+  /** XPathContext for documents whose DTMs are found in the shared
+      {@link DOM2DTMCache}, or null.
+  */
+  private XPathContext cachedSupport;
+
   /**
    * <p>Default constructor. Establishes its own {@link XPathContext}, and hence
    * its own {@link org.apache.xml.dtm.DTMManager}.
@@ -105,6 +115,33 @@ public class CachedXPathAPI
   {
     return this.xpathSupport;
   }
+
+  /**
+   * Get the XPathContext to evaluate over a node's document with. If the
+   * document's DTM is in the shared {@link DOM2DTMCache}, this is a
+   * context using a new DTMManager which holds the cached DTM; results
+   * obtained earlier keep their own manager.
+   *
+   * @param contextNode The node to start searching from.
+   *
+   * @return An XPathContext.
+   */
+  private XPathContext getXPathContext(Node contextNode)
+  {
+
+    DTMManager cachedManager =
+      DOM2DTMCache.getDefault().getDTMManager(contextNode);
+
+    if (null == cachedManager)
+      return xpathSupport;
+
+    if (null == cachedSupport)
+      cachedSupport = new XPathContext(false);
+
+    cachedSupport.setDTMManager(cachedManager);
+
+    return cachedSupport;
+  }
   
 
   /**
@@ -289,9 +326,10 @@ public class CachedXPathAPI
 
     // Execute the XPath, and have it return the result
     // return xpath.execute(xpathSupport, contextNode, prefixResolver);
-    int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
+    XPathContext xctxt = getXPathContext(contextNode);
+    int ctxtNode = xctxt.getDTMHandleFromNode(contextNode);
 
-    return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+    return xpath.execute(xctxt, ctxtNode, prefixResolver);
   }
 
   /**
@@ -332,6 +370,13 @@ public class CachedXPathAPI
     // variable resolution scopes.  Sufficient for simple XPath 1.0 expressions.
     XPathContext xpathSupport = new XPathContext(false);
 
+    // Evaluate over the cached DTM of the document, if there is one
+    DTMManager cachedManager =
+      DOM2DTMCache.getDefault().getDTMManager(contextNode);
+
+    if (null != cachedManager)
+      xpathSupport.setDTMManager(cachedManager);
+
     // Execute the XPath, and have it return the result
     int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
 
@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xpath;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.WeakHashMap;
+
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMManager;
+import org.apache.xml.dtm.ref.DTMManagerConcurrent;
+import org.apache.xml.dtm.ref.dom2dtm.DOM2DTM;
+import org.apache.xml.utils.SuballocatedIntVector;
+import org.apache.xpath.objects.XMLStringFactoryImpl;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+/**
+ * Keeps the DTM built over a W3C DOM Document, so that repeated XPath
+ * evaluations over the same Document do not each walk the DOM again.
+ *
+ * <p>The cache is off until it is enabled with
+ * {@link #setEnabled(boolean)}. {@link CachedXPathAPI}, {@link XPathAPI}
+ * and the JAXP XPath implementation use the default cache once it is
+ * enabled, for example with
+ * <code>DOM2DTMCache.getDefault().setEnabled(true)</code>.</p>
+ *
+ * <p>The first evaluation over a Document builds a {@link DOM2DTM} which
+ * has processed every node, so the whole DOM is walked once. Each
+ * evaluation then gets a DTMManager of its own which holds that DTM, see
+ * {@link XPathContext#setDTMManager(DTMManager)}. Any other DTM that an
+ * evaluation needs, for a node outside the Document, goes into that
+ * manager and is dropped with it. The cached DTM itself is only read, so
+ * several threads may evaluate over the same Document at once, as far as
+ * the DOM implementation allows concurrent reads.</p>
+ *
+ * <p>Only Documents which support DOM Level 2 mutation events are cached.
+ * The cache listens for DOMSubtreeModified and drops a Document's DTM as
+ * soon as the Document changes; nodes obtained before the change stay
+ * usable but show the old tree. Note that a listener makes some DOM
+ * implementations, Xerces among them, do extra work on every change.
+ * The listener is removed when the DTM is dropped. Call
+ * {@link #invalidate(Document)} after changing a Document in a way that
+ * fires no events.</p>
+ *
+ * <p>A Document's DTM is only reachable through the listener registered
+ * on the Document, so it is collected along with the Document.</p>
+ */
+public class DOM2DTMCache
+{
+
+  /** The cache shared by the XPath APIs. */
+  private static final DOM2DTMCache m_default = new DOM2DTMCache();
+
+  /**
+   * Map from Documents to WeakReferences to their Entries. The Entries
+   * are held by the Documents, which they listen to.
+   */
+  private final WeakHashMap m_entries = new WeakHashMap();
+
+  /** The number of invalidations so far, used to notice one made while
+   *  a DTM was being built. */
+  private int m_invalidations = 0;
+
+  /** False if nothing should be cached. */
+  private boolean m_enabled = false;
+
+  /**
+   * Get the cache used by {@link CachedXPathAPI}, {@link XPathAPI} and
+   * the JAXP XPath implementation, which is off until it is enabled.
+   *
+   * @return The default cache.
+   */
+  public static DOM2DTMCache getDefault()
+  {
+    return m_default;
+  }
+
+  /**
+   * Tell whether the cache is enabled.
+   *
+   * @return false if DTMs are not being cached.
+   */
+  public synchronized boolean isEnabled()
+  {
+    return m_enabled;
+  }
+
+  /**
+   * Enable or disable the cache. Disabling it also empties it.
+   *
+   * @param enabled true to start caching DTMs, false to stop.
+   */
+  public synchronized void setEnabled(boolean enabled)
+  {
+    m_enabled = enabled;
+
+    if (!enabled)
+      clear();
+  }
+
+  /**
+   * Get a DTMManager to evaluate XPath expressions over the Document a
+   * node belongs to, building and caching the Document's DTM if need be.
+   *
+   * @param node A node, which may be null.
+   *
+   * @return A new DTMManager whose DTM holds the whole Document, or null
+   *         if the cache is disabled or the node's Document cannot be
+   *         cached, in which case the caller should proceed without the
+   *         cache.
+   */
+  public DTMManager getDTMManager(Node node)
+  {
+
+    Document doc = getCacheableDocument(node);
+
+    if (null == doc)
+      return null;
+
+    int invalidations;
+
+    synchronized (this)
+    {
+      if (!m_enabled)
+        return null;
+
+      Entry entry = lookup(doc);
+
+      if (null != entry)
+        return new CachedDTMManager(entry.m_dtm);
+
+      invalidations = m_invalidations;
+    }
+
+    // Listen before building, so that a change made meanwhile is seen.
+    Entry entry = new Entry(doc);
+
+    entry.listen();
+
+    DTMManager mgr = new DTMManagerConcurrent();
+
+    mgr.setXMLStringFactory(XMLStringFactoryImpl.getFactory());
+
+    DTM dtm = mgr.getDTM(mgr.getDTMHandleFromNode(doc));
+
+    if (!(dtm instanceof DOM2DTM))
+    {
+      entry.unlisten();
+      return null;
+    }
+
+    entry.m_dtm = (DOM2DTM) dtm;
+    entry.m_dtm.indexAllNodes();
+
+    synchronized (this)
+    {
+      Entry other = lookup(doc);
+
+      if (null != other)
+      {
+        entry.unlisten();
+        return new CachedDTMManager(other.m_dtm);
+      }
+
+      if (m_enabled && invalidations == m_invalidations)
+        m_entries.put(doc, new WeakReference(entry));
+      else
+        entry.unlisten();
+    }
+
+    return new CachedDTMManager(entry.m_dtm);
+  }
+
+  /**
+   * Drop the DTM of a Document, which will be built again when next
+   * needed.
+   *
+   * @param doc A Document.
+   */
+  public synchronized void invalidate(Document doc)
+  {
+    m_invalidations++;
+
+    WeakReference ref = (WeakReference) m_entries.remove(doc);
+    Entry entry = (null == ref) ? null : (Entry) ref.get();
+
+    if (null != entry)
+      entry.unlisten();
+  }
+
+  /**
+   * Drop every DTM in the cache.
+   */
+  public synchronized void clear()
+  {
+    m_invalidations++;
+
+    for (Iterator i = m_entries.values().iterator(); i.hasNext(); )
+    {
+      Entry entry = (Entry) ((WeakReference) i.next()).get();
+
+      if (null != entry)
+        entry.unlisten();
+    }
+    m_entries.clear();
+  }
+
+  /**
+   * Find the cached entry of a Document.
+   *
+   * @param doc A Document.
+   *
+   * @return The entry, or null if there is none.
+   */
+  private Entry lookup(Document doc)
+  {
+
+    WeakReference ref = (WeakReference) m_entries.get(doc);
+
+    return (null == ref) ? null : (Entry) ref.get();
+  }
+
+  /**
+   * Get the Document of a node, if the node is in its tree and the
+   * Document can tell the cache about changes.
+   *
+   * @param node A node, which may be null.
+   *
+   * @return The Document, or null.
+   */
+  private static Document getCacheableDocument(Node node)
+  {
+
+    if (null == node)
+      return null;
+
+    Node root = node;
+
+    for (Node p = parentOf(node); null != p; p = parentOf(p))
+      root = p;
+
+    if (root instanceof Document && root instanceof EventTarget)
+      return (Document) root;
+
+    return null;
+  }
+
+  /**
+   * Get the parent of a node, counting an attribute's element as its
+   * parent.
+   *
+   * @param node A node.
+   *
+   * @return The parent, or null.
+   */
+  private static Node parentOf(Node node)
+  {
+    return (node.getNodeType() == Node.ATTRIBUTE_NODE)
+           ? ((Attr) node).getOwnerElement() : node.getParentNode();
+  }
+
+  /**
+   * The DTM of a cached Document, and the listener which drops it when
+   * the Document changes.
+   */
+  private class Entry implements EventListener
+  {
+
+    /** The Document. */
+    final Document m_doc;
+
+    /** The DTM built over the Document. */
+    DOM2DTM m_dtm;
+
+    /**
+     * Create an entry for a Document.
+     *
+     * @param doc The Document.
+     */
+    Entry(Document doc)
+    {
+      m_doc = doc;
+    }
+
+    /** Start listening for changes to the Document. */
+    void listen()
+    {
+      ((EventTarget) m_doc).addEventListener("DOMSubtreeModified", this,
+                                             true);
+    }
+
+    /** Stop listening for changes to the Document. */
+    void unlisten()
+    {
+      ((EventTarget) m_doc).removeEventListener("DOMSubtreeModified", this,
+                                                true);
+    }
+
+    /**
+     * Drop the DTM when the Document changes.
+     *
+     * @param evt A DOMSubtreeModified event.
+     */
+    public void handleEvent(Event evt)
+    {
+      invalidate(m_doc);
+    }
+  }
+
+  /**
+   * The DTMManager of one evaluation over a cached DTM. The cached DTM
+   * keeps the IDs it was given by the manager which built it, and is
+   * found by them here too.
+   */
+  private static class CachedDTMManager extends DTMManagerConcurrent
+  {
+
+    /** The cached DTM. */
+    private final DOM2DTM m_dtm;
+
+    /**
+     * Create a manager holding a cached DTM.
+     *
+     * @param dtm The cached DTM.
+     */
+    CachedDTMManager(DOM2DTM dtm)
+    {
+      m_dtm = dtm;
+
+      setXMLStringFactory(XMLStringFactoryImpl.getFactory());
+
+      SuballocatedIntVector ids = dtm.getDTMIDs();
+
+      for (int i = 0; i < ids.size(); i++)
+        addDTM(dtm, ids.elementAt(i) >>> IDENT_DTM_NODE_BITS,
+               i << IDENT_DTM_NODE_BITS);
+    }
+
+    /**
+     * Find the ID of a DTM, which for the cached DTM is the one it was
+     * built with.
+     *
+     * @param dtm The DTM.
+     *
+     * @return The DTM ID, or -1 if the DTM does not belong to this
+     *         manager.
+     */
+    public int getDTMIdentity(DTM dtm)
+    {
+      if (dtm == m_dtm)
+        return m_dtm.getDTMIDs().elementAt(0);
+
+      return super.getDTMIdentity(dtm);
+    }
+  }
+}
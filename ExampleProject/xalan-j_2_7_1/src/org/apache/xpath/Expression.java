@@ -186,6 +186,24 @@ public abstract class Expression implements java.io.Serializable, ExpressionNode
     return execute(xctxt).bool();
   }
 
+  /**
+   * Tell what type of object this expression always evaluates to, if that
+   * can be known without evaluating it. Callers which only want a number
+   * or a boolean, such as comparisons and predicates, use this to call
+   * {@link #num(XPathContext)} or {@link #bool(XPathContext)} rather than
+   * {@link #execute(XPathContext)}, so that no XObject is created.
+   * Expressions which override num() or bool() to avoid creating objects
+   * should override this as well.
+   *
+   * @return One of the XObject.CLASS_XXX constants, such as
+   *         XObject.CLASS_NUMBER, or XObject.CLASS_UNKNOWN if the type
+   *         depends on the evaluation.
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_UNKNOWN;
+  }
+
   /**
    * Cast result object to a string.
    *
@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xpath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.Hashtable;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMException;
+import org.apache.xml.dtm.ref.sax2dtm.SAX2DTM;
+
+/**
+ * A least recently used cache of parsed source documents, which can be
+ * shared by the SourceTreeManagers of several transformers.
+ *
+ * <p>A DTM belongs to the DTMManager of the transformer which built it,
+ * so the cache does not hold DTMs. It holds a snapshot of each document,
+ * written by SAX2DTM.writeSnapshot(), which each transformer loads into
+ * its own DTMManager. Loading a snapshot is much cheaper than parsing.</p>
+ *
+ * <p>The cache is bounded both by the number of documents and by the
+ * total size of their snapshots, and evicts the least recently used
+ * documents to stay within both. A document is revalidated against the
+ * last modified time of its URL at most once per revalidation interval,
+ * and is dropped if it has changed.</p>
+ *
+ * <p>Only documents named purely by a system ID are cached, since the
+ * content of a Source which carries its own stream or reader cannot be
+ * identified by its system ID. All methods are thread safe.</p>
+ * @xsl.usage advanced
+ */
+public class SourceTreeCache
+{
+
+  /** The default interval, in milliseconds, between revalidations. */
+  public static final long DEFAULT_REVALIDATION_INTERVAL = 1000;
+
+  /** The maximum number of documents to hold. */
+  private final int m_maxEntries;
+
+  /** The maximum total size, in bytes, of the snapshots held. */
+  private final long m_maxBytes;
+
+  /** Interval, in milliseconds, between revalidations of a document. */
+  private long m_revalidationInterval = DEFAULT_REVALIDATION_INTERVAL;
+
+  /** Map from system ID to Entry. */
+  private Hashtable m_entries = new Hashtable();
+
+  /**
+   * Sentinel of the circular list of entries, in order of use. The most
+   * recently used entry follows it, and the least recently used precedes it.
+   */
+  private final Entry m_head = new Entry(null, null, 0);
+
+  /** The total size, in bytes, of the snapshots held. */
+  private long m_bytes = 0;
+
+  /** Statistics counters. */
+  private long m_hits = 0, m_misses = 0, m_evictions = 0,
+               m_invalidations = 0;
+
+  /**
+   * Create a SourceTreeCache.
+   *
+   * @param maxEntries The maximum number of documents to hold.
+   * @param maxBytes The maximum total size of the snapshots held, in bytes.
+   */
+  public SourceTreeCache(int maxEntries, long maxBytes)
+  {
+    m_maxEntries = maxEntries;
+    m_maxBytes = maxBytes;
+    m_head.m_prev = m_head.m_next = m_head;
+  }
+
+  /**
+   * Set the minimum time between checks of whether a cached document
+   * has been modified. Zero checks on every use; a negative value never
+   * checks.
+   *
+   * @param millis The revalidation interval, in milliseconds.
+   */
+  public synchronized void setRevalidationInterval(long millis)
+  {
+    m_revalidationInterval = millis;
+  }
+
+  /**
+   * Get the minimum time between checks of whether a cached document
+   * has been modified.
+   *
+   * @return The revalidation interval, in milliseconds.
+   */
+  public synchronized long getRevalidationInterval()
+  {
+    return m_revalidationInterval;
+  }
+
+  /**
+   * Tell whether a Source could be cached, which is the case when the
+   * document is identified only by its system ID.
+   *
+   * @param source The Source to test.
+   *
+   * @return true if the Source has a system ID and no content of its own.
+   */
+  public static boolean isCacheable(Source source)
+  {
+    if (null == source.getSystemId() || !(source instanceof StreamSource))
+      return false;
+
+    StreamSource ss = (StreamSource) source;
+    return (null == ss.getInputStream()) && (null == ss.getReader());
+  }
+
+  /**
+   * Get the snapshot of a document, if it is cached and has not been
+   * modified since it was cached.
+   *
+   * @param systemId The system ID of the document.
+   *
+   * @return The snapshot, which must not be modified, or null.
+   */
+  public byte[] get(String systemId)
+  {
+    Entry entry;
+    boolean revalidate;
+
+    synchronized (this)
+    {
+      entry = (Entry) m_entries.get(systemId);
+      if (null == entry)
+      {
+        m_misses++;
+        return null;
+      }
+
+      unlink(entry);
+      link(entry);
+
+      long now = System.currentTimeMillis();
+      revalidate = (m_revalidationInterval >= 0)
+                   && (now - entry.m_lastChecked >= m_revalidationInterval);
+      if (revalidate)
+        entry.m_lastChecked = now;
+    }
+
+    // Check the URL without holding the lock, since it may be remote.
+    if (revalidate && getLastModified(systemId) != entry.m_lastModified)
+    {
+      synchronized (this)
+      {
+        if (m_entries.get(systemId) == entry)
+          remove(entry);
+        m_invalidations++;
+        m_misses++;
+      }
+      return null;
+    }
+
+    synchronized (this)
+    {
+      m_hits++;
+    }
+    return entry.m_snapshot;
+  }
+
+  /**
+   * Cache a snapshot of a newly built document. Documents which cannot
+   * be saved as snapshots, or whose snapshots are larger than the whole
+   * cache, are not cached.
+   *
+   * @param systemId The system ID of the document.
+   * @param dtm The document, which must be completely built.
+   * @param lastModified The last modified time of the document, obtained
+   *                     from getLastModified() before it was parsed.
+   */
+  public void put(String systemId, DTM dtm, long lastModified)
+  {
+    if (!(dtm instanceof SAX2DTM))
+      return;
+
+    byte[] snapshot;
+    try
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ((SAX2DTM) dtm).writeSnapshot(out);
+      snapshot = out.toByteArray();
+    }
+    catch (DTMException de)
+    {
+      // This kind of DTM can't be saved.
+      return;
+    }
+    catch (IOException ioe)
+    {
+      return;
+    }
+
+    if (snapshot.length > m_maxBytes)
+      return;
+
+    Entry entry = new Entry(systemId, snapshot, lastModified);
+    entry.m_lastChecked = System.currentTimeMillis();
+
+    synchronized (this)
+    {
+      Entry old = (Entry) m_entries.get(systemId);
+      if (null != old)
+        remove(old);
+
+      m_entries.put(systemId, entry);
+      link(entry);
+      m_bytes += snapshot.length;
+
+      while (m_entries.size() > m_maxEntries || m_bytes > m_maxBytes)
+      {
+        remove(m_head.m_prev);
+        m_evictions++;
+      }
+    }
+  }
+
+  /**
+   * Remove all documents from the cache. The statistics are not reset.
+   */
+  public synchronized void clear()
+  {
+    m_entries.clear();
+    m_head.m_prev = m_head.m_next = m_head;
+    m_bytes = 0;
+  }
+
+  /**
+   * Get the last modified time of the resource at a URL.
+   *
+   * @param systemId The URL of the resource.
+   *
+   * @return The last modified time, or 0 if it is not known.
+   */
+  public long getLastModified(String systemId)
+  {
+    try
+    {
+      URL url = new URL(systemId);
+
+      // Avoid opening a connection for local files. A '+' in a file URL
+      // is not an encoded space.
+      if ("file".equals(url.getProtocol()))
+      {
+        String path = url.getFile().replace('+', '\u0000');
+
+        path = URLDecoder.decode(path, "UTF-8").replace('\u0000', '+');
+        return new File(path).lastModified();
+      }
+
+      URLConnection connection = url.openConnection();
+
+      // Only ask an HTTP server for the headers, and let go of the
+      // connection of any other kind of URL once its time has been read.
+      if (connection instanceof HttpURLConnection)
+      {
+        HttpURLConnection http = (HttpURLConnection) connection;
+
+        http.setRequestMethod("HEAD");
+        try
+        {
+          return http.getLastModified();
+        }
+        finally
+        {
+          http.disconnect();
+        }
+      }
+
+      try
+      {
+        return connection.getLastModified();
+      }
+      finally
+      {
+        close(connection);
+      }
+    }
+    catch (Exception e)
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * Close the input stream of a URL connection, if it can be opened.
+   *
+   * @param connection A connection which has been connected.
+   */
+  private static void close(URLConnection connection)
+  {
+    try
+    {
+      connection.getInputStream().close();
+    }
+    catch (IOException ioe)
+    {
+      // The connection failed, so there is nothing to close.
+    }
+  }
+
+  /** @return the number of documents in the cache. */
+  public synchronized int getEntryCount()
+  {
+    return m_entries.size();
+  }
+
+  /** @return the total size, in bytes, of the snapshots in the cache. */
+  public synchronized long getByteCount()
+  {
+    return m_bytes;
+  }
+
+  /** @return the number of lookups which found a valid document. */
+  public synchronized long getHitCount()
+  {
+    return m_hits;
+  }
+
+  /** @return the number of lookups which did not find a valid document. */
+  public synchronized long getMissCount()
+  {
+    return m_misses;
+  }
+
+  /** @return the number of documents evicted to make room for others. */
+  public synchronized long getEvictionCount()
+  {
+    return m_evictions;
+  }
+
+  /** @return the number of documents dropped because they were modified. */
+  public synchronized long getInvalidationCount()
+  {
+    return m_invalidations;
+  }
+
+  /**
+   * Remove an entry from the map and the list of entries.
+   *
+   * @param entry An entry which is in the cache.
+   */
+  private void remove(Entry entry)
+  {
+    m_entries.remove(entry.m_systemId);
+    unlink(entry);
+    m_bytes -= entry.m_snapshot.length;
+  }
+
+  /**
+   * Insert an entry at the most recently used end of the list.
+   *
+   * @param entry An entry which is not in the list.
+   */
+  private void link(Entry entry)
+  {
+    entry.m_prev = m_head;
+    entry.m_next = m_head.m_next;
+    m_head.m_next.m_prev = entry;
+    m_head.m_next = entry;
+  }
+
+  /**
+   * Take an entry out of the list.
+   *
+   * @param entry An entry which is in the list.
+   */
+  private void unlink(Entry entry)
+  {
+    entry.m_prev.m_next = entry.m_next;
+    entry.m_next.m_prev = entry.m_prev;
+    entry.m_prev = entry.m_next = null;
+  }
+
+  /**
+   * A cached document.
+   */
+  private static class Entry
+  {
+    /** The system ID of the document. */
+    final String m_systemId;
+
+    /** The snapshot of the document. */
+    final byte[] m_snapshot;
+
+    /** The last modified time of the document when it was parsed. */
+    final long m_lastModified;
+
+    /** The last time the document was revalidated. */
+    long m_lastChecked;
+
+    /** Neighbours in the list of entries. */
+    Entry m_prev, m_next;
+
+    Entry(String systemId, byte[] snapshot, long lastModified)
+    {
+      m_systemId = systemId;
+      m_snapshot = snapshot;
+      m_lastModified = lastModified;
+    }
+  }
+}
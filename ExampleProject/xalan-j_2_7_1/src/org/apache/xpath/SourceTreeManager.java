@@ -31,6 +31,7 @@ import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.ref.DTMSnapshotSource;
 import org.apache.xml.utils.SystemIDResolver;
 
 import org.xml.sax.XMLReader;
@@ -40,6 +41,9 @@ import org.xml.sax.helpers.XMLReaderFactory;
  * This class bottlenecks all management of source trees.  The methods
  * in this class should allow easy garbage collection of source
  * trees (not yet!), and should centralize parsing for those source trees.
+ * The transformers which share a parallel xsl:apply-templates share one
+ * manager, so the methods which use the list of trees are synchronized,
+ * and a document is only parsed once.
  */
 public class SourceTreeManager
 {
@@ -51,11 +55,35 @@ public class SourceTreeManager
    * Reset the list of SourceTree objects that this manager manages.
    *
    */
-  public void reset()
+  public synchronized void reset()
   {
     m_sourceTree = new Vector();
   }
 
+  /** The cache of documents shared with other transformers, or null. */
+  private SourceTreeCache m_documentCache;
+
+  /**
+   * Set a cache of parsed documents, which may be shared with the
+   * SourceTreeManagers of other transformers. It is not cleared by reset().
+   *
+   * @param cache The document cache, or null for none.
+   */
+  public void setDocumentCache(SourceTreeCache cache)
+  {
+    m_documentCache = cache;
+  }
+
+  /**
+   * Get the cache of parsed documents shared with other transformers.
+   *
+   * @return The document cache, or null if there is none.
+   */
+  public SourceTreeCache getDocumentCache()
+  {
+    return m_documentCache;
+  }
+
   /** The TrAX URI resolver used to obtain source trees. */
   URIResolver m_uriResolver;
 
@@ -87,7 +115,7 @@ public class SourceTreeManager
    *
    * @return The base URI of the owner argument.
    */
-  public String findURIFromDoc(int owner)
+  public synchronized String findURIFromDoc(int owner)
   {
     int n = m_sourceTree.size();
 
@@ -142,7 +170,7 @@ public class SourceTreeManager
    *
    * @param n The node to remove.
    */
-  public void removeDocumentFromCache(int n)
+  public synchronized void removeDocumentFromCache(int n)
   {
     if(DTM.NULL ==n)
       return;
@@ -166,7 +194,7 @@ public class SourceTreeManager
    * @param n The node to cache.
    * @param source The Source object to cache.
    */
-  public void putDocumentInCache(int n, Source source)
+  public synchronized void putDocumentInCache(int n, Source source)
   {
 
     int cachedNode = getNode(source);
@@ -193,7 +221,7 @@ public class SourceTreeManager
    *
    * @return The node that is associated with the Source, or null if not found.
    */
-  public int getNode(Source source)
+  public synchronized int getNode(Source source)
   {
 
 //    if (source instanceof DOMSource)
@@ -269,7 +297,7 @@ public class SourceTreeManager
    * @throws TransformerException if the Source argument can't be resolved to 
    *         a node.
    */
-  public int getSourceTree(Source source, SourceLocator locator, XPathContext xctxt)
+  public synchronized int getSourceTree(Source source, SourceLocator locator, XPathContext xctxt)
           throws TransformerException
   {
 
@@ -278,7 +306,10 @@ public class SourceTreeManager
     if (DTM.NULL != n)
       return n;
 
-    n = parseToNode(source, locator, xctxt);
+    if (null != m_documentCache && SourceTreeCache.isCacheable(source))
+      n = loadToNode(source, locator, xctxt);
+    else
+      n = parseToNode(source, locator, xctxt);
 
     if (DTM.NULL != n)
       putDocumentInCache(n, source);
@@ -286,6 +317,42 @@ public class SourceTreeManager
     return n;
   }
 
+  /**
+   * Get a source tree from the shared document cache, or parse it and
+   * add it to the cache.
+   *
+   * @param source The Source object that identifies the source node.
+   * @param locator The location of the caller, for diagnostic purposes.
+   *
+   * @return non-null reference to node identified by the source argument.
+   *
+   * @throws TransformerException if the source argument can not be resolved
+   *         to a source node.
+   */
+  private int loadToNode(Source source, SourceLocator locator, XPathContext xctxt)
+          throws TransformerException
+  {
+
+    String url = source.getSystemId();
+    byte[] snapshot = m_documentCache.get(url);
+
+    if (null != snapshot)
+    {
+      return parseToNode(new DTMSnapshotSource(
+                           new java.io.ByteArrayInputStream(snapshot), url),
+                         locator, xctxt);
+    }
+
+    // Find the modification time first, so that a change made while
+    // the document is being parsed is noticed later.
+    long lastModified = m_documentCache.getLastModified(url);
+    int n = parseToNode(source, locator, xctxt);
+
+    m_documentCache.put(url, xctxt.getDTM(n), lastModified);
+
+    return n;
+  }
+
   /**
    * Try to create a DOM source tree from the input source.
    *
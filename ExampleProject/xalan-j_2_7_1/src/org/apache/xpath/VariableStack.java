@@ -91,6 +91,12 @@ public class VariableStack implements Cloneable
    */
   int _frameTop;
 
+  /**
+   * The highest top of the stack frame since the last reset, below which
+   * <code>_stackFrames</code> may hold variables.
+   */
+  private int _frameMax;
+
   /**
    * The bottom index of the current frame (relative to <code>_stackFrames</code>).
    * @serial
@@ -166,8 +172,15 @@ public class VariableStack implements Cloneable
     // (As long as the caller doesn't screw up link/unlink.)
     _links[_linksTop++] = 0;
 
-    // Get a clean _stackFrames array and discard the old one.
-    _stackFrames = new XObject[varArraySize]; 
+    // Clear the part of the old _stackFrames array that was used, rather
+    // than allocating a new one, so that a reused transformer does not
+    // allocate its stack again for each transform.
+    if (_stackFrames == null || _stackFrames.length < varArraySize)
+      _stackFrames = new XObject[varArraySize];
+    else
+      java.util.Arrays.fill(_stackFrames, 0, _frameMax, null);
+
+    _frameMax = 0;
   }
 
   /**
@@ -213,9 +226,16 @@ public class VariableStack implements Cloneable
     _currentFrameBottom = _frameTop;
     _frameTop += size;
 
+    if (_frameTop > _frameMax)
+      _frameMax = _frameTop;
+
+    // Double the arrays when they fill up, so that deep recursion copies
+    // the stack a logarithmic number of times rather than a linear one.
     if (_frameTop >= _stackFrames.length)
     {
-      XObject newsf[] = new XObject[_stackFrames.length + XPathContext.RECURSIONLIMIT + size];
+      int newSize = Math.max(_stackFrames.length * 2,
+                             _frameTop + XPathContext.RECURSIONLIMIT);
+      XObject newsf[] = new XObject[newSize];
 
       System.arraycopy(_stackFrames, 0, newsf, 0, _stackFrames.length);
 
@@ -224,7 +244,7 @@ public class VariableStack implements Cloneable
 
     if (_linksTop + 1 >= _links.length)
     {
-      int newlinks[] = new int[_links.length + (CLEARLIMITATION * 2)];
+      int newlinks[] = new int[_links.length * 2];
 
       System.arraycopy(_links, 0, newlinks, 0, _links.length);
 
@@ -425,6 +445,10 @@ public class VariableStack implements Cloneable
   public void setGlobalVariable(final int index, final XObject val)
   {
     _stackFrames[index] = val;
+
+    // Parameters may be set before the global stack frame is linked.
+    if (index >= _frameMax)
+      _frameMax = index + 1;
   }
 
   /**
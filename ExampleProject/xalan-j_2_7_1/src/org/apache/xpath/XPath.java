@@ -31,6 +31,7 @@ import org.apache.xml.dtm.DTM;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.SAXSourceLocator;
 import org.apache.xpath.compiler.Compiler;
+import org.apache.xpath.compiler.ExistenceTestRewriter;
 import org.apache.xpath.compiler.FunctionTable;
 import org.apache.xpath.compiler.XPathParser;
 import org.apache.xpath.functions.Function;
@@ -186,10 +187,13 @@ public class XPath implements Serializable, ExpressionOwner
 
     // System.out.println("expr: "+expr);
     this.setExpression(expr);
+
+    // Let tests for the existence of nodes stop at the first node.
+    ExistenceTestRewriter.rewrite(this);
     
     if((null != locator) && locator instanceof ExpressionNode)
     {
-    	expr.exprSetParent((ExpressionNode)locator);
+    	m_mainExp.exprSetParent((ExpressionNode)locator);
     }
 
   }
@@ -238,10 +242,13 @@ public class XPath implements Serializable, ExpressionOwner
 
     // System.out.println("expr: "+expr);
     this.setExpression(expr);
+
+    // Let tests for the existence of nodes stop at the first node.
+    ExistenceTestRewriter.rewrite(this);
     
     if((null != locator) && locator instanceof ExpressionNode)
     {
-    	expr.exprSetParent((ExpressionNode)locator);
+    	m_mainExp.exprSetParent((ExpressionNode)locator);
     }
 
   }
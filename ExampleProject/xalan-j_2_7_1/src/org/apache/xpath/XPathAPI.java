@@ -22,6 +22,7 @@ package org.apache.xpath;
 
 import javax.xml.transform.TransformerException;
 
+import org.apache.xml.dtm.DTMManager;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.PrefixResolverDefault;
 import org.apache.xpath.objects.XObject;
@@ -47,6 +48,10 @@ import org.w3c.dom.traversal.NodeIterator;
  * consider using an instance of CachedXPathAPI rather than these static
  * methods.
  *
+ * The exception is a Document which supports mutation events, once the
+ * shared {@link DOM2DTMCache} has been enabled: its DTM is kept in that
+ * cache, which drops it as soon as the Document changes.
+ *
  * @see <a href="http://www.w3.org/TR/xpath">XPath Specification</a> 
  * */
 public class XPathAPI
@@ -235,6 +240,13 @@ public class XPathAPI
     // Create the XPath object.
     XPath xpath = new XPath(str, null, prefixResolver, XPath.SELECT, null);
 
+    // Evaluate over the cached DTM of the document, if there is one
+    DTMManager cachedManager =
+      DOM2DTMCache.getDefault().getDTMManager(contextNode);
+
+    if (null != cachedManager)
+      xpathSupport.setDTMManager(cachedManager);
+
     // Execute the XPath, and have it return the result
     // return xpath.execute(xpathSupport, contextNode, prefixResolver);
     int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
@@ -280,6 +292,13 @@ public class XPathAPI
     // variable resolution scopes.  Sufficient for simple XPath 1.0 expressions.
     XPathContext xpathSupport = new XPathContext(false);
 
+    // Evaluate over the cached DTM of the document, if there is one
+    DTMManager cachedManager =
+      DOM2DTMCache.getDefault().getDTMManager(contextNode);
+
+    if (null != cachedManager)
+      xpathSupport.setDTMManager(cachedManager);
+
     // Execute the XPath, and have it return the result
     int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
 
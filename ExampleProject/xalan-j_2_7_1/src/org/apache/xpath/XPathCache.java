@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xpath;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.xml.transform.SourceLocator;
+import javax.xml.transform.TransformerException;
+
+import org.apache.xml.utils.PrefixResolver;
+
+/**
+ * A bounded cache of compiled XPath expressions, for callers which are
+ * handed the same expression strings over and over, such as the EXSLT
+ * dynamic functions.
+ *
+ * <p>Expressions are keyed by their string, their type and the identity
+ * of the PrefixResolver used to compile them, since namespace prefixes
+ * are resolved at compile time. When the cache is full, the least
+ * recently used expression is discarded. A compiled XPath can be executed
+ * by several threads at once, so cached expressions may be shared.</p>
+ *
+ * <p>The cache holds references to the PrefixResolvers it has seen, and
+ * the expressions to the elements they were compiled for, which are
+ * normally stylesheet elements. A cache of a stylesheet's expressions
+ * should therefore belong to that stylesheet, as the one returned by
+ * StylesheetRoot.getXPathCache(int) does, so as not to keep it alive.
+ * Expressions which fail to compile are not cached.</p>
+ * @xsl.usage advanced
+ */
+public class XPathCache
+{
+
+  /** The maximum number of expressions to hold, or 0 to hold none. */
+  private int m_maxSize;
+
+  /** Map from Key to XPath, in order of use. */
+  private final LinkedHashMap m_xpaths = new LinkedHashMap(16, 0.75f, true);
+
+  /** Statistics counters. */
+  private long m_hits = 0, m_misses = 0, m_evictions = 0;
+
+  /**
+   * Create an XPathCache.
+   *
+   * @param maxSize The maximum number of expressions to hold; 0 disables
+   * caching.
+   */
+  public XPathCache(int maxSize)
+  {
+    m_maxSize = maxSize;
+  }
+
+  /**
+   * Get a compiled XPath, compiling it if it is not in the cache.
+   *
+   * @param exprString The XPath expression.
+   * @param locator The location of the expression, for error messages;
+   *                only used if the expression must be compiled.
+   * @param prefixResolver A prefix resolver to use to resolve prefixes to
+   *                       namespace URIs.
+   * @param type one of {@link XPath#SELECT} or {@link XPath#MATCH}.
+   *
+   * @return A compiled XPath, which the caller must not modify.
+   *
+   * @throws javax.xml.transform.TransformerException if the expression
+   * cannot be compiled.
+   */
+  public XPath getXPath(String exprString, SourceLocator locator,
+                        PrefixResolver prefixResolver, int type)
+          throws TransformerException
+  {
+
+    if (null == exprString)
+      return new XPath(exprString, locator, prefixResolver, type);
+
+    Key key = new Key(exprString, prefixResolver, type);
+
+    synchronized (this)
+    {
+      XPath xpath = (XPath) m_xpaths.get(key);
+      if (null != xpath)
+      {
+        m_hits++;
+        return xpath;
+      }
+      m_misses++;
+    }
+
+    // Compile outside the lock. Two threads may compile the same
+    // expression at once; either result will do.
+    XPath xpath = new XPath(exprString, locator, prefixResolver, type);
+
+    synchronized (this)
+    {
+      if (m_maxSize > 0)
+      {
+        m_xpaths.put(key, xpath);
+        trim();
+      }
+    }
+
+    return xpath;
+  }
+
+  /**
+   * Set the maximum number of expressions to hold. Reducing it discards
+   * the least recently used expressions.
+   *
+   * @param maxSize The maximum number of expressions; 0 disables caching.
+   */
+  public synchronized void setMaxSize(int maxSize)
+  {
+    m_maxSize = maxSize;
+    trim();
+  }
+
+  /** @return the maximum number of expressions held. */
+  public synchronized int getMaxSize()
+  {
+    return m_maxSize;
+  }
+
+  /** Discard all the cached expressions. The statistics are not reset. */
+  public synchronized void clear()
+  {
+    m_xpaths.clear();
+  }
+
+  /** @return the number of expressions in the cache. */
+  public synchronized int getSize()
+  {
+    return m_xpaths.size();
+  }
+
+  /** @return the number of lookups which found a compiled expression. */
+  public synchronized long getHitCount()
+  {
+    return m_hits;
+  }
+
+  /** @return the number of lookups which had to compile the expression. */
+  public synchronized long getMissCount()
+  {
+    return m_misses;
+  }
+
+  /** @return the number of expressions discarded to make room for others. */
+  public synchronized long getEvictionCount()
+  {
+    return m_evictions;
+  }
+
+  /**
+   * Discard the least recently used expressions until the cache is
+   * within its maximum size.
+   */
+  private void trim()
+  {
+    Iterator it = m_xpaths.entrySet().iterator();
+    while (m_xpaths.size() > m_maxSize && it.hasNext())
+    {
+      it.next();
+      it.remove();
+      m_evictions++;
+    }
+  }
+
+  /**
+   * The key of a cached expression.
+   */
+  private static class Key
+  {
+    /** The expression string. */
+    final String m_exprString;
+
+    /** The prefix resolver, compared by identity. */
+    final PrefixResolver m_prefixResolver;
+
+    /** The expression type. */
+    final int m_type;
+
+    Key(String exprString, PrefixResolver prefixResolver, int type)
+    {
+      m_exprString = exprString;
+      m_prefixResolver = prefixResolver;
+      m_type = type;
+    }
+
+    public int hashCode()
+    {
+      return m_exprString.hashCode()
+             ^ System.identityHashCode(m_prefixResolver) ^ m_type;
+    }
+
+    public boolean equals(Object obj)
+    {
+      if (!(obj instanceof Key))
+        return false;
+
+      Key other = (Key) obj;
+      return m_prefixResolver == other.m_prefixResolver
+             && m_type == other.m_type
+             && m_exprString.equals(other.m_exprString);
+    }
+  }
+}
@@ -39,6 +39,7 @@ import org.apache.xml.dtm.DTMFilter;
 import org.apache.xml.dtm.DTMIterator;
 import org.apache.xml.dtm.DTMManager;
 import org.apache.xml.dtm.DTMWSFilter;
+import org.apache.xml.dtm.ref.DTMManagerDefault;
 import org.apache.xml.dtm.ref.sax2dtm.SAX2RTFDTM;
 import org.apache.xml.utils.IntStack;
 import org.apache.xml.utils.NodeVector;
@@ -46,6 +47,7 @@ import org.apache.xml.utils.ObjectStack;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xml.utils.SAXSourceLocator;
 import org.apache.xml.utils.XMLString;
+import org.apache.xpath.axes.IteratorCache;
 import org.apache.xpath.axes.SubContextList;
 import org.apache.xpath.objects.XObject;
 import org.apache.xpath.objects.DTMXRTreeFrag;
@@ -112,6 +114,18 @@ public class XPathContext extends DTMManager // implements ExpressionContext
    {
      return m_dtmManager;
    }
+
+  /**
+   * Set the DTMManager object, so that this context can see the same
+   * documents as another one. The manager is replaced again by reset().
+   *
+   * @param dtmManager The DTMManager to use from now on.
+   * @xsl.usage internal
+   */
+   public void setDTMManager(DTMManager dtmManager)
+   {
+     m_dtmManager = dtmManager;
+   }
   
   /**
    * Set the state of the secure processing feature
@@ -373,8 +387,14 @@ public class XPathContext extends DTMManager // implements ExpressionContext
     m_global_rtfdtm=null;
     
   	
+    // Carry the manager's settings over to its replacement.
+    DTMManager oldManager = m_dtmManager;
     m_dtmManager = DTMManager.newInstance(
                    org.apache.xpath.objects.XMLStringFactoryImpl.getFactory());
+    m_dtmManager.setIncremental(oldManager.getIncremental());
+    m_dtmManager.setSource_location(oldManager.getSource_location());
+    m_dtmManager.setOffHeapStorage(oldManager.getOffHeapStorage());
+    m_dtmManager.setOffHeapDirectory(oldManager.getOffHeapDirectory());
                    
     m_saxLocations.removeAllElements();   
 	m_axesIteratorStack.removeAllElements();
@@ -385,6 +405,7 @@ public class XPathContext extends DTMManager // implements ExpressionContext
 	m_predicatePos.removeAllElements();
 	m_predicateRoots.RemoveAllNoClear();
 	m_prefixResolvers.removeAllElements();
+	m_iteratorCache.clear();
 	
 	m_prefixResolvers.push(null);
     m_currentNodes.push(DTM.NULL);
@@ -392,6 +413,29 @@ public class XPathContext extends DTMManager // implements ExpressionContext
     m_saxLocations.push(null);
   }
 
+  /**
+   * Release the documents this context has built or adapted, keeping the
+   * DTM manager itself, so that the context can be used again for an
+   * unrelated evaluation at less cost than {@link #reset()}. Only the
+   * documents are released; the caller must not be holding on to nodes
+   * from them.
+   */
+  public void releaseDocuments()
+  {
+    if (m_dtmManager instanceof DTMManagerDefault)
+    {
+      releaseDTMXRTreeFrags();
+      m_rtfdtm_stack = null;
+      m_which_rtfdtm = -1;
+      m_global_rtfdtm = null;
+      ((DTMManagerDefault) m_dtmManager).releaseAll();
+    }
+    else
+    {
+      reset();
+    }
+  }
+
   /** The current stylesheet locator. */
   ObjectStack m_saxLocations = new ObjectStack(RECURSIONLIMIT);
 
@@ -495,6 +539,23 @@ public class XPathContext extends DTMManager // implements ExpressionContext
     m_variableStacks = varStack;
   }
 
+  // ================ IteratorCache ===================
+
+  /** The iterators of compiled expressions that this context keeps free
+   *  for reuse. */
+  private final IteratorCache m_iteratorCache = new IteratorCache();
+
+  /**
+   * Get the iterators of compiled expressions that this context keeps free
+   * for reuse, with the counts of how often they were reused.
+   *
+   * @return the IteratorCache of this execution context.
+   */
+  public final IteratorCache getIteratorCache()
+  {
+    return m_iteratorCache;
+  }
+
   // ================ SourceTreeManager ===================
 
   /** The source tree manager, which associates Source objects to source 
@@ -665,10 +726,29 @@ public class XPathContext extends DTMManager // implements ExpressionContext
   /**
    * The current context node list.
    */
-  private Stack m_contextNodeLists = new Stack();
+  private ObjectStack m_contextNodeLists = new ObjectStack();
   
-  public Stack getContextNodeListsStack() { return m_contextNodeLists; }
-  public void setContextNodeListsStack(Stack s) { m_contextNodeLists = s; }
+  /**
+   * Get a copy of the context node lists stack.
+   *
+   * @return a new Stack holding the current context node lists, with the
+   * innermost list on top.
+   */
+  public Stack getContextNodeListsStack()
+  {
+    return toStack(m_contextNodeLists);
+  }
+
+  /**
+   * Replace the context node lists stack with the contents of the given
+   * stack.
+   *
+   * @param s the context node lists to install, innermost on top.
+   */
+  public void setContextNodeListsStack(Stack s)
+  {
+    fromStack(s, m_contextNodeLists);
+  }
 
   /**
    * Get the current context node list.
@@ -703,7 +783,7 @@ public class XPathContext extends DTMManager // implements ExpressionContext
    */
   public final void popContextNodeList()
   {
-  	if(m_contextNodeLists.isEmpty())
+  	if(m_contextNodeLists.empty())
   	  System.err.println("Warning: popContextNodeList when stack is empty!");
   	else
       m_contextNodeLists.pop();
@@ -968,10 +1048,54 @@ public class XPathContext extends DTMManager // implements ExpressionContext
   /**
    * Stack of AxesIterators.
    */
-  private Stack m_axesIteratorStack = new Stack();
+  private ObjectStack m_axesIteratorStack = new ObjectStack();
   
-  public Stack getAxesIteratorStackStacks() { return m_axesIteratorStack; }
-  public void setAxesIteratorStackStacks(Stack s) { m_axesIteratorStack = s; }
+  /**
+   * Get a copy of the stack of sub-context lists.
+   *
+   * @return a new Stack holding the sub-context lists, innermost on top.
+   */
+  public Stack getAxesIteratorStackStacks()
+  {
+    return toStack(m_axesIteratorStack);
+  }
+
+  /**
+   * Replace the stack of sub-context lists with the contents of the given
+   * stack.
+   *
+   * @param s the sub-context lists to install, innermost on top.
+   */
+  public void setAxesIteratorStackStacks(Stack s)
+  {
+    fromStack(s, m_axesIteratorStack);
+  }
+
+  /**
+   * Copy an internal stack into a java.util.Stack, for the public
+   * accessors that predate the internal ObjectStacks.
+   */
+  private static Stack toStack(ObjectStack from)
+  {
+    final int n = from.size();
+    Stack to = new Stack();
+    to.ensureCapacity(n);
+    for (int i = 0; i < n; i++)
+      to.push(from.elementAt(i));
+    return to;
+  }
+
+  /**
+   * Replace the contents of an internal stack with those of a
+   * java.util.Stack.
+   */
+  private static void fromStack(Stack from, ObjectStack to)
+  {
+    final int n = from.size();
+    to.removeAllElements();
+    for (int i = 0; i < n; i++)
+      to.push(from.elementAt(i));
+  }
 
   /**
    * Push a TreeWalker on the stack.
@@ -1001,7 +1125,7 @@ public class XPathContext extends DTMManager // implements ExpressionContext
    */
   public SubContextList getSubContextList()
   {
-    return m_axesIteratorStack.isEmpty()
+    return m_axesIteratorStack.empty()
            ? null : (SubContextList) m_axesIteratorStack.peek();
   }
   
@@ -1015,7 +1139,7 @@ public class XPathContext extends DTMManager // implements ExpressionContext
 
   public org.apache.xpath.axes.SubContextList getCurrentNodeList()
   {
-    return m_axesIteratorStack.isEmpty()
+    return m_axesIteratorStack.empty()
            ? null : (SubContextList) m_axesIteratorStack.elementAt(0);
   }
   //==========================================================
@@ -1201,6 +1325,16 @@ public class XPathContext extends DTMManager // implements ExpressionContext
 	}
     return m_global_rtfdtm;
   }
+
+  /**
+   * Make the next global Result Tree Fragment go into a new DTM, so that
+   * the DTM holding those built so far is not changed again. Other
+   * threads may then go on reading the earlier fragments.
+   */
+  public void startNewGlobalRTFDTM()
+  {
+    m_global_rtfdtm = null;
+  }
   
 
 
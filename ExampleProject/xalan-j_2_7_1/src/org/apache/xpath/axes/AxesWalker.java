@@ -23,14 +23,18 @@ package org.apache.xpath.axes;
 import java.util.Vector;
 
 import org.apache.xalan.res.XSLMessages;
+import org.apache.xml.dtm.Axis;
 import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMAxisTraverser;
+import org.apache.xml.dtm.DTMFilter;
 import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.dtm.ref.DTMDefaultBase;
 import org.apache.xpath.Expression;
 import org.apache.xpath.ExpressionOwner;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.XPathVisitor;
 import org.apache.xpath.compiler.Compiler;
+import org.apache.xpath.patterns.NodeTest;
 import org.apache.xpath.res.XPATHErrorResources;
 
 /**
@@ -220,7 +224,32 @@ public class AxesWalker extends PredicatedNodeTest
     m_dtm = xctxt.getDTM(root);
     m_traverser = m_dtm.getAxisTraverser(m_axis);
     m_isFresh = true;
+
+    // A descendant step that tests for an element name lets the DTM find
+    // the elements of that name, from its element index if it has one.
+    // Child steps only look the type up when their first predicate can use
+    // the attribute value index, since the DTM finds children of one type
+    // no faster than the node test does.  The name is only looked up, so that evaluating the step
+    // does not add it to the expanded name table; if a complete tree does
+    // not know the name, the step selects nothing.
+    m_extendedTypeID = 0;
     m_foundLast = false;
+    if ((Axis.DESCENDANT == m_axis
+         || (Axis.CHILD == m_axis && null != getIndexedAttributeTest()))
+        && DTMFilter.SHOW_ELEMENT == getWhatToShow()
+        && !NodeTest.WILD.equals(getLocalName())
+        && !NodeTest.WILD.equals(getNamespace())
+        && m_dtm instanceof DTMDefaultBase)
+    {
+      DTMDefaultBase dtm = (DTMDefaultBase) m_dtm;
+      int type = dtm.getExpandedTypeID(getNamespace(), getLocalName(),
+                                       DTM.ELEMENT_NODE, true);
+
+      if (DTM.NULL != type)
+        m_extendedTypeID = type;
+      else if (!dtm.isTreeIncomplete())
+        m_foundLast = true;
+    }
     m_root = root;
     m_currentNode = root;
 
@@ -322,9 +351,22 @@ public class AxesWalker extends PredicatedNodeTest
     if (m_foundLast)
       return DTM.NULL;
 
+    // A step whose first predicate tests an attribute value takes its
+    // elements from the attribute value index of the DTM.
     if (m_isFresh)
+      m_indexedElements = (0 == m_extendedTypeID)
+                          ? null : getIndexedElements();
+
+    if (null != m_indexedElements)
+    {
+      m_currentNode = getNextIndexedElement();
+      m_isFresh = false;
+    }
+    else if (m_isFresh)
     {
-      m_currentNode = m_traverser.first(m_root);
+      m_currentNode = (0 == m_extendedTypeID || Axis.CHILD == m_axis)
+                      ? m_traverser.first(m_root)
+                      : m_traverser.first(m_root, m_extendedTypeID);
       m_isFresh = false;
     }
     // I shouldn't have to do this the check for current node, I think.
@@ -332,7 +374,10 @@ public class AxesWalker extends PredicatedNodeTest
     // it occurs as the walkers are backing up. -sb
     else if(DTM.NULL != m_currentNode) 
     {
-      m_currentNode = m_traverser.next(m_root, m_currentNode);
+      m_currentNode = (0 == m_extendedTypeID || Axis.CHILD == m_axis)
+                      ? m_traverser.next(m_root, m_currentNode)
+                      : m_traverser.next(m_root, m_currentNode,
+                                         m_extendedTypeID);
     }
 
     if (DTM.NULL == m_currentNode)
@@ -341,6 +386,62 @@ public class AxesWalker extends PredicatedNodeTest
     return m_currentNode;
   }
 
+  /**
+   * Look up the elements of this step in the attribute value index of the
+   * DTM, and start at the first of them that follows the root.
+   *
+   * @return The identities of the elements in document order, or null if
+   *         the index can not be used.
+   */
+  private int[] getIndexedElements()
+  {
+
+    int[] elems;
+
+    try
+    {
+      elems = getIndexedElements(wi().getXPathContext(), m_dtm,
+                                 m_extendedTypeID);
+    }
+    catch (javax.xml.transform.TransformerException te)
+    {
+      throw new org.apache.xml.utils.WrappedRuntimeException(te);
+    }
+
+    if (null != elems)
+      m_indexedPos = findFirstInSubtree(m_dtm, elems, m_root, false);
+
+    return elems;
+  }
+
+  /**
+   * Get the next element from the attribute value index that is on the
+   * axis of this step.
+   *
+   * @return The next element, or DTM.NULL.
+   */
+  private int getNextIndexedElement()
+  {
+
+    int[] elems = m_indexedElements;
+
+    while (m_indexedPos < elems.length)
+    {
+      int elem =
+        ((DTMDefaultBase) m_dtm).makeNodeHandle(elems[m_indexedPos++]);
+
+      if (!isInSubtree(m_dtm, elem, m_root, false))
+        break;
+
+      if (Axis.CHILD != m_axis || m_dtm.getParent(elem) == m_root)
+        return elem;
+    }
+
+    m_indexedPos = elems.length;
+
+    return DTM.NULL;
+  }
+
   /**
    *  Moves the <code>TreeWalker</code> to the next visible node in document
    * order relative to the current node, and returns the new node. If the
@@ -587,4 +688,16 @@ public class AxesWalker extends PredicatedNodeTest
 
   /** The DTM inner traversal class, that corresponds to the super axis. */
   protected DTMAxisTraverser m_traverser; 
+
+  /** The expanded type ID of the elements this child or descendant step
+   *  selects, or 0 if it does not select one type of node.  Set by
+   *  setRoot. */
+  transient int m_extendedTypeID;
+
+  /** The elements found for this step in the attribute value index of the
+   *  DTM, or null if the step walks its axis. */
+  transient int[] m_indexedElements;
+
+  /** The position of the next element in m_indexedElements. */
+  transient int m_indexedPos;
 }
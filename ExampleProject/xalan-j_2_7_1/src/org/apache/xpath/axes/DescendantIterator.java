@@ -25,6 +25,7 @@ import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMAxisTraverser;
 import org.apache.xml.dtm.DTMFilter;
 import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.dtm.ref.DTMDefaultBase;
 import org.apache.xpath.Expression;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.compiler.Compiler;
@@ -201,9 +202,18 @@ public class DescendantIterator extends LocPathIterator
     
     try
     {
+      // If the first predicate tests an attribute value, take the elements
+      // from the attribute value index of the DTM.
+      if (DTM.NULL == m_lastFetched)
+        m_indexedElements = getIndexedElements();
+
       do
       {
-        if(0 == m_extendedTypeID)
+        if (null != m_indexedElements)
+        {
+          next = m_lastFetched = getNextIndexedElement();
+        }
+        else if(0 == m_extendedTypeID)
         {
           next = m_lastFetched = (DTM.NULL == m_lastFetched)
                        ? m_traverser.first(m_context)
@@ -251,6 +261,76 @@ public class DescendantIterator extends LocPathIterator
     }
   }
   
+  /**
+   * Look up the elements of this iterator in the attribute value index of
+   * the DTM, and start at the first of them that is on the axis.
+   *
+   * @return The identities of the elements in document order, or null if
+   *         the index can not be used.
+   */
+  private int[] getIndexedElements()
+  {
+
+    if (0 == m_extendedTypeID || DTMFilter.SHOW_ELEMENT != m_whatToShow)
+      return null;
+
+    int[] elems;
+
+    try
+    {
+      elems = getIndexedElements(m_execContext, m_cdtm, m_extendedTypeID);
+    }
+    catch (javax.xml.transform.TransformerException te)
+    {
+      throw new org.apache.xml.utils.WrappedRuntimeException(te);
+    }
+
+    if (null != elems)
+      m_indexedPos = findFirstInSubtree(m_cdtm, elems, getIndexedRoot(),
+                                        Axis.DESCENDANT != m_axis);
+
+    return elems;
+  }
+
+  /**
+   * Get the root of the subtree the axis of this iterator walks.
+   *
+   * @return The document root for the axes from the root, or else the
+   *         context node.
+   */
+  private int getIndexedRoot()
+  {
+    return (Axis.DESCENDANTSFROMROOT == m_axis
+            || Axis.DESCENDANTSORSELFFROMROOT == m_axis)
+           ? m_cdtm.getDocumentRoot(m_context) : m_context;
+  }
+
+  /**
+   * Get the next element from the attribute value index that is on the
+   * axis of this iterator.
+   *
+   * @return The next element, or DTM.NULL.
+   */
+  private int getNextIndexedElement()
+  {
+
+    int[] elems = m_indexedElements;
+
+    if (m_indexedPos < elems.length)
+    {
+      int elem =
+        ((DTMDefaultBase) m_cdtm).makeNodeHandle(elems[m_indexedPos++]);
+
+      if (isInSubtree(m_cdtm, elem, getIndexedRoot(),
+                      Axis.DESCENDANT != m_axis))
+        return elem;
+    }
+
+    m_indexedPos = elems.length;
+
+    return DTM.NULL;
+  }
+
   /**
    * Initialize the context values for this expression
    * after it is cloned.
@@ -276,11 +356,39 @@ public class DescendantIterator extends LocPathIterator
     }
     else
     {
-      int type = getNodeTypeTest(what);
-      m_extendedTypeID = m_cdtm.getExpandedTypeID(namespace, localName, type);
+      // Only look the name up, so that evaluating the iterator does not
+      // add it to the expanded name table.  If a complete tree does not
+      // know the name, the iterator selects nothing.
+      int type = getExpandedTypeID(m_cdtm, namespace, localName,
+                                   getNodeTypeTest(what));
+
+      if (DTM.NULL != type)
+        m_extendedTypeID = type;
+      else
+      {
+        m_extendedTypeID = 0;
+        m_foundLast = !((DTMDefaultBase) m_cdtm).isTreeIncomplete();
+      }
     }
     
   }
+
+  /**
+   * Look up the expanded type ID of a name in a DTM, without adding the
+   * name to the expanded name table.
+   *
+   * @return The expanded type ID, 0 if the DTM can not look names up
+   *         without adding them, or DTM.NULL if no node of the DTM built so
+   *         far has the name.
+   */
+  private static int getExpandedTypeID(DTM dtm, String namespace,
+                                       String localName, int type)
+  {
+    return (dtm instanceof DTMDefaultBase)
+           ? ((DTMDefaultBase) dtm).getExpandedTypeID(namespace, localName,
+                                                      type, true)
+           : 0;
+  }
   
   /**
    * Return the first node out of the nodeset, if this expression is 
@@ -317,8 +425,15 @@ public class DescendantIterator extends LocPathIterator
     }
     else
     {
-      int type = getNodeTypeTest(what);
-      int extendedType = dtm.getExpandedTypeID(namespace, localName, type);
+      int extendedType = getExpandedTypeID(dtm, namespace, localName,
+                                           getNodeTypeTest(what));
+
+      if (DTM.NULL == extendedType)
+        return ((DTMDefaultBase) dtm).isTreeIncomplete()
+               ? super.asNode(xctxt) : DTM.NULL;
+      else if (0 == extendedType)
+        return super.asNode(xctxt);
+
       return traverser.first(current, extendedType);
     }
   }
@@ -335,6 +450,7 @@ public class DescendantIterator extends LocPathIterator
     if (m_allowDetach) {
       m_traverser = null;    
       m_extendedTypeID = 0;
+      m_indexedElements = null;
 
       // Always call the superclass detach last!
       super.detach();
@@ -361,6 +477,13 @@ public class DescendantIterator extends LocPathIterator
   
   /** The extended type ID, not set until setRoot. */
   protected int m_extendedTypeID;
+
+  /** The elements found in the attribute value index of the DTM, or null
+   *  if the iterator walks its axis. */
+  transient int[] m_indexedElements;
+
+  /** The position of the next element in m_indexedElements. */
+  transient int m_indexedPos;
   
   /**
    * @see Expression#deepEquals(Expression)
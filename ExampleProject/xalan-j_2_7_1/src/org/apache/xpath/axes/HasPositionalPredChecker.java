@@ -53,6 +53,21 @@ public class HasPositionalPredChecker extends XPathVisitor
 		path.callVisitors(null, hppc);
 		return hppc.m_hasPositionalPred;
 	}
+
+	/**
+	 * Tell if any of the predicates of a single step may depend on the 
+	 * position of the node in the step's axis.
+	 * @param step The step whose predicates are checked.
+	 * @return true if a predicate may be positional.
+	 */
+	public static boolean check(PredicatedNodeTest step)
+	{
+		HasPositionalPredChecker hppc = new HasPositionalPredChecker();
+		int n = step.getPredicateCount();
+		for (int i = 0; i < n && !hppc.m_hasPositionalPred; i++)
+			hppc.visitPredicate(null, step.getPredicate(i));
+		return hppc.m_hasPositionalPred;
+	}
 	
 	/**
 	 * Visit a function.
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xpath.axes;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.utils.ObjectStack;
+import org.apache.xpath.XPathContext;
+
+/**
+ * The iterators that one XPathContext keeps free for reuse, for each
+ * {@link IteratorPool} it takes iterators from.
+ *
+ * <p>An IteratorPool belongs to a compiled expression, which may be shared
+ * by any number of threads, so taking iterators from it means taking its
+ * lock.  An XPathContext is only used by one thread at a time, so the
+ * iterators it keeps are taken and freed without locking.  Since a free
+ * iterator keeps its expression alive, only the pools of the most recently
+ * used expressions are kept, so that a long-lived context which is handed
+ * a new expression for every evaluation does not keep them all.</p>
+ * @xsl.usage internal
+ */
+public final class IteratorCache
+{
+
+  /**
+   * The default for the most iterators kept free for each pool.
+   */
+  public static final int DEFAULT_MAX_FREE = XPathContext.RECURSIONLIMIT;
+
+  /**
+   * The default for the most pools whose iterators are kept free.
+   */
+  public static final int DEFAULT_MAX_POOLS = 64;
+
+  /**
+   * The free iterators, as an ObjectStack for each IteratorPool, in order
+   * of use.
+   */
+  private final LinkedHashMap m_freeStacks = new LinkedHashMap(16, 0.75f, true);
+
+  /**
+   * The most pools whose iterators are kept free.
+   */
+  private int m_maxPools = DEFAULT_MAX_POOLS;
+
+  /**
+   * The most iterators kept free for each pool.
+   */
+  private int m_maxFree = DEFAULT_MAX_FREE;
+
+  /**
+   * The number of iterators taken from the free ones.
+   */
+  private long m_hits;
+
+  /**
+   * The number of iterators that had to be cloned from the original.
+   */
+  private long m_misses;
+
+  /**
+   * Get an iterator of a pool, either one that was freed, or a new clone
+   * of the original.
+   *
+   * @param pool The pool of the expression.
+   *
+   * @return An iterator.
+   *
+   * @throws CloneNotSupportedException
+   */
+  DTMIterator getInstance(IteratorPool pool) throws CloneNotSupportedException
+  {
+
+    ObjectStack free = (ObjectStack) m_freeStacks.get(pool);
+
+    if (null != free && !free.empty())
+    {
+      m_hits++;
+
+      return (DTMIterator) free.pop();
+    }
+
+    m_misses++;
+
+    return pool.newInstance();
+  }
+
+  /**
+   * Keep an iterator of a pool for reuse, unless the most iterators that
+   * are kept for a pool are already kept for it.
+   *
+   * @param pool The pool of the expression.
+   * @param iter An iterator taken from the pool, which is no longer used.
+   */
+  void freeInstance(IteratorPool pool, DTMIterator iter)
+  {
+
+    ObjectStack free = (ObjectStack) m_freeStacks.get(pool);
+
+    if (null == free)
+    {
+      if (m_maxPools <= 0)
+        return;
+
+      free = new ObjectStack();
+
+      m_freeStacks.put(pool, free);
+      trim();
+    }
+
+    if (free.size() < m_maxFree)
+      free.push(iter);
+  }
+
+  /**
+   * Get the most iterators kept free for each pool.
+   *
+   * @return The most iterators kept free for each pool.
+   */
+  public int getMaxFree()
+  {
+    return m_maxFree;
+  }
+
+  /**
+   * Set the most iterators kept free for each pool.  Iterators freed
+   * beyond that are left to the garbage collector.
+   *
+   * @param maxFree The most iterators kept free for each pool.
+   */
+  public void setMaxFree(int maxFree)
+  {
+    m_maxFree = maxFree;
+  }
+
+  /**
+   * Get the most pools whose iterators are kept free.
+   *
+   * @return The most pools whose iterators are kept free.
+   */
+  public int getMaxPools()
+  {
+    return m_maxPools;
+  }
+
+  /**
+   * Set the most pools whose iterators are kept free.  Reducing it drops
+   * the iterators of the least recently used pools.
+   *
+   * @param maxPools The most pools whose iterators are kept free.
+   */
+  public void setMaxPools(int maxPools)
+  {
+    m_maxPools = maxPools;
+    trim();
+  }
+
+  /**
+   * Get the number of pools whose iterators are kept free.
+   *
+   * @return The number of pools.
+   */
+  public int getPoolCount()
+  {
+    return m_freeStacks.size();
+  }
+
+  /**
+   * Drop the iterators of the least recently used pools, until no more
+   * than the most pools allowed are left.
+   */
+  private void trim()
+  {
+
+    Iterator it = m_freeStacks.keySet().iterator();
+    int excess = m_freeStacks.size() - Math.max(m_maxPools, 0);
+
+    while (excess-- > 0 && it.hasNext())
+    {
+      it.next();
+      it.remove();
+    }
+  }
+
+  /**
+   * Get the number of iterators that were reused.
+   *
+   * @return The number of iterators taken from the free ones.
+   */
+  public long getHitCount()
+  {
+    return m_hits;
+  }
+
+  /**
+   * Get the number of iterators that were not reused.
+   *
+   * @return The number of iterators that had to be cloned from the
+   *         expression.
+   */
+  public long getMissCount()
+  {
+    return m_misses;
+  }
+
+  /**
+   * Drop all the free iterators, and set the counters to zero.
+   */
+  public void clear()
+  {
+
+    m_freeStacks.clear();
+
+    m_hits = 0;
+    m_misses = 0;
+  }
+}
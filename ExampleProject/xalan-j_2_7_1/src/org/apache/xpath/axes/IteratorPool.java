@@ -24,9 +24,13 @@ import java.util.ArrayList;
 
 import org.apache.xml.dtm.DTMIterator;
 import org.apache.xml.utils.WrappedRuntimeException;
+import org.apache.xpath.XPathContext;
 
 /**
- * Pool of object of a given type to pick from to help memory usage
+ * Pool of object of a given type to pick from to help memory usage.
+ * Iterators taken in an XPathContext are kept free by the
+ * {@link IteratorCache} of the context, so that threads that share the
+ * expression do not contend for this pool.
  * @xsl.usage internal
  */
 public final class IteratorPool implements java.io.Serializable
@@ -116,4 +120,69 @@ public final class IteratorPool implements java.io.Serializable
   {
     m_freeStack.add(obj);
   }
+
+  /**
+   * Get an instance of the given object for use in an execution context.
+   *
+   * @param xctxt The XPath runtime context, or null.
+   *
+   * @return An instance of the given object
+   */
+  public DTMIterator getInstanceOrThrow(XPathContext xctxt)
+    throws CloneNotSupportedException
+  {
+    if (null == xctxt)
+      return getInstanceOrThrow();
+    else
+      return xctxt.getIteratorCache().getInstance(this);
+  }
+
+  /**
+   * Get an instance of the given object for use in an execution context.
+   *
+   * @param xctxt The XPath runtime context, or null.
+   *
+   * @return An instance of the given object
+   */
+  public DTMIterator getInstance(XPathContext xctxt)
+  {
+    if (null == xctxt)
+      return getInstance();
+
+    try
+    {
+      return xctxt.getIteratorCache().getInstance(this);
+    }
+    catch (CloneNotSupportedException ex)
+    {
+      throw new WrappedRuntimeException(ex);
+    }
+  }
+
+  /**
+   * Give back an instance that was used in an execution context.
+   *
+   * @param xctxt The XPath runtime context the instance was used in, or
+   *              null.
+   * @param obj Object to add.
+   */
+  public void freeInstance(XPathContext xctxt, DTMIterator obj)
+  {
+    if (null == xctxt)
+      freeInstance(obj);
+    else
+      xctxt.getIteratorCache().freeInstance(this, obj);
+  }
+
+  /**
+   * Create a new instance of the given object.
+   *
+   * @return A clone of the original iterator.
+   *
+   * @throws CloneNotSupportedException
+   */
+  DTMIterator newInstance() throws CloneNotSupportedException
+  {
+    return (DTMIterator)m_orig.clone();
+  }
 }
@@ -207,7 +207,7 @@ public abstract class LocPathIterator extends PredicatedNodeTest
           throws javax.xml.transform.TransformerException
   {
 
-    XNodeSet iter = new XNodeSet((LocPathIterator)m_clones.getInstance());
+    XNodeSet iter = new XNodeSet((LocPathIterator)m_clones.getInstance(xctxt));
 
     iter.setRoot(xctxt.getCurrentNode(), xctxt);
 
@@ -233,7 +233,7 @@ public abstract class LocPathIterator extends PredicatedNodeTest
             throws javax.xml.transform.TransformerException,
                    org.xml.sax.SAXException
   {
-    LocPathIterator clone = (LocPathIterator)m_clones.getInstance();
+    LocPathIterator clone = (LocPathIterator)m_clones.getInstance(xctxt);
 
     int current = xctxt.getCurrentNode();
     clone.setRoot(current, xctxt);
@@ -264,7 +264,7 @@ public abstract class LocPathIterator extends PredicatedNodeTest
           XPathContext xctxt, int contextNode)
             throws javax.xml.transform.TransformerException
   {
-    XNodeSet iter = new XNodeSet((LocPathIterator)m_clones.getInstance());
+    XNodeSet iter = new XNodeSet((LocPathIterator)m_clones.getInstance(xctxt));
 
     iter.setRoot(contextNode, xctxt);
 
@@ -293,7 +293,7 @@ public abstract class LocPathIterator extends PredicatedNodeTest
   public int asNode(XPathContext xctxt)
     throws javax.xml.transform.TransformerException
   {
-    DTMIterator iter = (DTMIterator)m_clones.getInstance();
+    DTMIterator iter = (DTMIterator)m_clones.getInstance(xctxt);
     
     int current = xctxt.getCurrentNode();
     
@@ -320,6 +320,71 @@ public abstract class LocPathIterator extends PredicatedNodeTest
     return (asNode(xctxt) != DTM.NULL);
   }
 
+  /**
+   * Evaluate this location path directly to a number, the number value
+   * of the first node, without creating an XNodeSet.
+   *
+   * @param xctxt The runtime execution context.
+   *
+   * @return The number value of the first node, or NaN if there is none.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public double num(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    // The first node walked is not always the first in document order.
+    if (!isDocOrdered())
+      return super.num(xctxt);
+
+    int node = asNode(xctxt);
+
+    return (DTM.NULL == node)
+           ? Double.NaN : xctxt.getDTM(node).getStringValue(node).toDouble();
+  }
+
+  /**
+   * A location path always evaluates to a node-set.
+   *
+   * @return XObject.CLASS_NODESET
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NODESET;
+  }
+
+  /**
+   * Given a context, get a copy of this iterator from the pool, ready to
+   * iterate over the nodes it selects. Unlike
+   * {@link #asIterator(XPathContext, int)}, no XNodeSet is created to
+   * hold it; the caller must call detach() on the iterator when done,
+   * which returns it to the pool.
+   *
+   * <p>A path whose walk may return nodes out of document order, or more
+   * than once, still needs the XNodeSet to sort them and drop the
+   * duplicates, so {@link #asIterator(XPathContext, int)} is used for it
+   * instead.</p>
+   *
+   * @param xctxt The execution context.
+   * @param contextNode The node that "." expresses.
+   *
+   * @return An iterator over the selected nodes.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public DTMIterator asPooledIterator(XPathContext xctxt, int contextNode)
+          throws javax.xml.transform.TransformerException
+  {
+    if (!isDocOrdered())
+      return asIterator(xctxt, contextNode);
+
+    DTMIterator iter = (DTMIterator)m_clones.getInstance(xctxt);
+
+    iter.setRoot(contextNode, xctxt);
+
+    return iter;
+  }
+
 
   /**
    * Set if this is an iterator at the upper level of
@@ -677,6 +742,8 @@ public abstract class LocPathIterator extends PredicatedNodeTest
   {    
     if(m_allowDetach)
     {
+      XPathContext xctxt = m_execContext;
+
       // sb: allow reusing of cached nodes when possible?
       // m_cachedNodes = null;
       m_execContext = null;
@@ -688,7 +755,7 @@ public abstract class LocPathIterator extends PredicatedNodeTest
       m_context = DTM.NULL;
       m_currentContextNode = DTM.NULL;
       
-      m_clones.freeInstance(this);
+      m_clones.freeInstance(xctxt, this);
     }
   }
   
@@ -712,7 +779,7 @@ public abstract class LocPathIterator extends PredicatedNodeTest
   {
     LocPathIterator clone;
 //    clone = (LocPathIterator) clone();
-    clone = (LocPathIterator)m_clones.getInstanceOrThrow();
+    clone = (LocPathIterator)m_clones.getInstanceOrThrow(m_execContext);
     clone.m_execContext = m_execContext;
     clone.m_cdtm = m_cdtm;
     
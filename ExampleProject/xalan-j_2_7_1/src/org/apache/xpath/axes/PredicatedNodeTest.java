@@ -21,7 +21,9 @@
 package org.apache.xpath.axes;
 
 import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMFilter;
 import org.apache.xml.dtm.DTMIterator;
+import org.apache.xml.dtm.ref.DTMDefaultBase;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xpath.Expression;
 import org.apache.xpath.ExpressionOwner;
@@ -29,6 +31,9 @@ import org.apache.xpath.XPathContext;
 import org.apache.xpath.XPathVisitor;
 import org.apache.xpath.compiler.Compiler;
 import org.apache.xpath.objects.XObject;
+import org.apache.xpath.objects.XString;
+import org.apache.xpath.operations.Equals;
+import org.apache.xpath.operations.Variable;
 import org.apache.xpath.patterns.NodeTest;
 
 public abstract class PredicatedNodeTest extends NodeTest implements SubContextList
@@ -339,11 +344,24 @@ public abstract class PredicatedNodeTest extends NodeTest implements SubContextL
       for (int i = 0; i < nPredicates; i++)
       {
         // System.out.println("Executing predicate expression - waiting count: "+m_lpi.getWaitingCount());
-        XObject pred = m_predicates[i].execute(xctxt);
+        // A predicate known to give a number or a boolean is evaluated
+        // without creating an XObject for its result.
+        int predType = m_predicates[i].getStaticType();
+        XObject pred = null;
+
+        if (XObject.CLASS_NUMBER != predType
+            && XObject.CLASS_BOOLEAN != predType)
+        {
+          pred = m_predicates[i].execute(xctxt);
+          predType = pred.getType();
+        }
         // System.out.println("\nBack from executing predicate expression - waiting count: "+m_lpi.getWaitingCount());
         // System.out.println("pred.getType(): "+pred.getType());
-        if (XObject.CLASS_NUMBER == pred.getType())
+        if (XObject.CLASS_NUMBER == predType)
         {
+          double predNum = (null == pred)
+                           ? m_predicates[i].num(xctxt) : pred.num();
+
           if (DEBUG_PREDICATECOUNTING)
           {
             System.out.flush();
@@ -351,11 +369,11 @@ public abstract class PredicatedNodeTest extends NodeTest implements SubContextL
             System.out.println("m_predicateIndex: " + m_predicateIndex);
             // System.out.println("getProximityPosition(m_predicateIndex): "
             //                   + getProximityPosition(m_predicateIndex));
-            System.out.println("pred.num(): " + pred.num());
+            System.out.println("pred.num(): " + predNum);
           }
 
           int proxPos = this.getProximityPosition(m_predicateIndex);
-          int predIndex = (int) pred.num();
+          int predIndex = (int) predNum;
           if (proxPos != predIndex)
           {
             if (DEBUG_PREDICATECOUNTING)
@@ -387,7 +405,7 @@ public abstract class PredicatedNodeTest extends NodeTest implements SubContextL
             m_foundLast = true;
           }
         }
-        else if (!pred.bool())
+        else if (!((null == pred) ? m_predicates[i].bool(xctxt) : pred.bool()))
           return false;
 
         countProximityPosition(++m_predicateIndex);
@@ -449,6 +467,155 @@ public abstract class PredicatedNodeTest extends NodeTest implements SubContextL
   
   //=============== NodeFilter Implementation ===============
 
+  /**
+   * Get the attribute test of the first predicate of this step, if the
+   * predicate compares an attribute with a literal or a variable, as in
+   * <code>//item[@id = $id]</code>, so that the elements of the step can be
+   * taken from the attribute value index of a DTM.
+   *
+   * @return The attribute test, or null if the index can not be used.
+   */
+  AttributeIterator getIndexedAttributeTest()
+  {
+
+    if (getPredicateCount() == 0 || !(getPredicate(0) instanceof Equals))
+      return null;
+
+    Equals eq = (Equals) getPredicate(0);
+    Expression attr = eq.getLeftOperand();
+    Expression value = eq.getRightOperand();
+
+    if (!(attr instanceof AttributeIterator))
+    {
+      attr = value;
+      value = eq.getLeftOperand();
+    }
+
+    if (!(attr instanceof AttributeIterator)
+        || !(value instanceof XString || value instanceof Variable))
+      return null;
+
+    AttributeIterator attrTest = (AttributeIterator) attr;
+
+    if (attrTest.getPredicateCount() > 0
+        || DTMFilter.SHOW_ATTRIBUTE != attrTest.m_whatToShow
+        || NodeTest.WILD.equals(attrTest.getLocalName())
+        || NodeTest.WILD.equals(attrTest.getNamespace()))
+      return null;
+
+    return attrTest;
+  }
+
+  /**
+   * Look up the elements that pass the first predicate of this step in the
+   * attribute value index of a DTM, if getIndexedAttributeTest() allows it.
+   * The elements still have to be tested against the node test, the axis
+   * and the predicates of the step.
+   *
+   * @param xctxt The XPath runtime context.
+   * @param dtm The DTM the step walks.
+   * @param elementType The expanded type ID of the elements the step selects.
+   *
+   * @return The identities of the elements in document order, or null if
+   *         the index can not be used.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  int[] getIndexedElements(XPathContext xctxt, DTM dtm, int elementType)
+          throws javax.xml.transform.TransformerException
+  {
+
+    if (!(dtm instanceof DTMDefaultBase))
+      return null;
+
+    AttributeIterator attrTest = getIndexedAttributeTest();
+
+    if (null == attrTest)
+      return null;
+
+    Equals eq = (Equals) getPredicate(0);
+    Expression value = (attrTest == eq.getLeftOperand())
+                       ? eq.getRightOperand() : eq.getLeftOperand();
+    XObject v = value.execute(xctxt);
+
+    if (XObject.CLASS_STRING != v.getType())
+      return null;
+
+    // Only look the attribute name up, so that evaluating the step does not
+    // add it to the expanded name table.  If a complete tree does not know
+    // the name, no element has the attribute.
+    DTMDefaultBase base = (DTMDefaultBase) dtm;
+    int attrType = base.getExpandedTypeID(attrTest.getNamespace(),
+                                          attrTest.getLocalName(),
+                                          DTM.ATTRIBUTE_NODE, true);
+
+    if (DTM.NULL == attrType)
+      return base.isTreeIncomplete() ? null : NO_ELEMENTS;
+
+    return base.getElementsByAttributeValue(elementType, attrType, v.str());
+  }
+
+  /**
+   * Find where the elements in the subtree of a node start in a list of
+   * element identities from the attribute value index.  The elements of the
+   * subtree follow one another in the list, since it is in document order.
+   *
+   * @param dtm The DTM that holds the elements.
+   * @param elems The element identities, in document order.
+   * @param root The root of the subtree.
+   * @param orSelf true if the root itself is in the subtree.
+   *
+   * @return The position of the first element that follows the root, or
+   *         that is the root if orSelf is true.
+   */
+  static int findFirstInSubtree(DTM dtm, int[] elems, int root,
+                                boolean orSelf)
+  {
+
+    root = ((DTMDefaultBase) dtm).makeNodeIdentity(root);
+
+    int low = 0;
+    int high = elems.length;
+
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+
+      if (elems[mid] < root || (elems[mid] == root && !orSelf))
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    return low;
+  }
+
+  /**
+   * Tell if a node is in the subtree of another node.
+   *
+   * @param dtm The DTM that holds both nodes.
+   * @param node The node to test.
+   * @param root The root of the subtree.
+   * @param orSelf true if the root itself is in the subtree.
+   *
+   * @return true if the node is the root, and orSelf is true, or if the
+   *         node is a descendant of the root.
+   */
+  static boolean isInSubtree(DTM dtm, int node, int root, boolean orSelf)
+  {
+
+    if (node == root)
+      return orSelf;
+
+    while (DTM.NULL != (node = dtm.getParent(node)))
+    {
+      if (node == root)
+        return true;
+    }
+
+    return false;
+  }
+
   /**
    *  Test whether a specified node is visible in the logical view of a
    * TreeWalker or NodeIterator. This function will be called by the
@@ -613,6 +780,9 @@ public abstract class PredicatedNodeTest extends NodeTest implements SubContextL
    */
   transient protected int[] m_proximityPositions;
 
+  /** The element list of an attribute which no element of a DTM has. */
+  private static final int[] NO_ELEMENTS = new int[0];
+
   /** If true, diagnostic messages about predicate execution will be posted.  */
   static final boolean DEBUG_PREDICATECOUNTING = false;
   
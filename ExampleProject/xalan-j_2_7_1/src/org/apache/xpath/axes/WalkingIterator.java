@@ -20,7 +20,9 @@
  */
 package org.apache.xpath.axes;
 
+import org.apache.xml.dtm.Axis;
 import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMFilter;
 import org.apache.xml.utils.PrefixResolver;
 import org.apache.xpath.Expression;
 import org.apache.xpath.ExpressionOwner;
@@ -62,9 +64,58 @@ public class WalkingIterator extends LocPathIterator implements ExpressionOwner
     if (shouldLoadWalkers)
     {
       m_firstWalker = WalkerFactory.loadWalkers(this, compiler, firstStepPos, 0);
+      fuseDescendantSteps();
       m_lastUsedWalker = m_firstWalker;
     }
   }
+
+  /**
+   * Replace each descendant-or-self::node() step that is followed by a 
+   * child step, as "//" abbreviates, by a single descendant step.  That is, 
+   * "//order/line" is walked as "/descendant::order/child::line", which 
+   * visits only the nodes the DTM finds for the order name, instead of 
+   * every node in the document.  This is only done if the predicates of 
+   * the child step do not depend on the position of the node, since the 
+   * positions along the two axes differ.
+   */
+  private void fuseDescendantSteps()
+  {
+
+    AxesWalker prev = null;
+    AxesWalker walker = m_firstWalker;
+
+    while (null != walker)
+    {
+      AxesWalker next = walker.getNextWalker();
+
+      if (null != next
+          && walker.getClass() == AxesWalker.class
+          && next.getClass() == AxesWalker.class
+          && Axis.DESCENDANTORSELF == walker.getAxis()
+          && DTMFilter.SHOW_ALL == walker.getWhatToShow()
+          && 0 == walker.getPredicateCount()
+          && Axis.CHILD == next.getAxis()
+          && !HasPositionalPredChecker.check(next))
+      {
+        next.m_axis = Axis.DESCENDANT;
+
+        if (null == prev)
+        {
+          m_firstWalker = next;
+          next.setPrevWalker(null);
+        }
+        else
+        {
+          prev.setNextWalker(next);
+          next.setPrevWalker(prev);
+        }
+      }
+      else
+        prev = walker;
+
+      walker = next;
+    }
+  }
   
   /**
    * Create a WalkingIterator object.
@@ -70,6 +70,11 @@ public class WalkingIteratorSorted extends WalkingIterator
             throws javax.xml.transform.TransformerException
   {
     super(compiler, opPos, analysis, shouldLoadWalkers);
+
+    // Known from the analysis alone, so that the nodes need not be sorted
+    // when the expression is used without a call to fixupVariables, as
+    // the XPath APIs do.
+    m_inNaturalOrderStatic = WalkerFactory.isNaturalDocOrder(analysis);
   }
   
   /**
@@ -197,8 +202,12 @@ public class WalkingIteratorSorted extends WalkingIterator
   {
     super.fixupVariables(vars, globalsSize);
 
+    // The walkers may have been rewritten since the path was analysed, 
+    // "//a//b" becoming "descendant::a/descendant::b", whose bits alone 
+    // no longer show that it can return a node twice.  So only keep the 
+    // order the analysis of the whole path allowed.
     int analysis = getAnalysisBits();
-    if(WalkerFactory.isNaturalDocOrder(analysis))
+    if(m_inNaturalOrderStatic && WalkerFactory.isNaturalDocOrder(analysis))
     {
     	m_inNaturalOrderStatic = true;
     }
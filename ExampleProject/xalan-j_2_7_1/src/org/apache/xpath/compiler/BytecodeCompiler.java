@@ -0,0 +1,764 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xpath.compiler;
+
+import java.util.Vector;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.BranchHandle;
+import org.apache.bcel.generic.BranchInstruction;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.GOTO;
+import org.apache.bcel.generic.IFEQ;
+import org.apache.bcel.generic.IFGE;
+import org.apache.bcel.generic.IFGT;
+import org.apache.bcel.generic.IFLE;
+import org.apache.bcel.generic.IFLT;
+import org.apache.bcel.generic.IFNE;
+import org.apache.bcel.generic.IF_ICMPEQ;
+import org.apache.bcel.generic.IF_ICMPNE;
+import org.apache.bcel.generic.InstructionConstants;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.PUSH;
+import org.apache.bcel.generic.Type;
+import org.apache.xpath.Expression;
+import org.apache.xpath.ExpressionOwner;
+import org.apache.xpath.XPath;
+import org.apache.xpath.XPathVisitor;
+import org.apache.xpath.functions.FuncBoolean;
+import org.apache.xpath.functions.FuncCeiling;
+import org.apache.xpath.functions.FuncContains;
+import org.apache.xpath.functions.FuncCount;
+import org.apache.xpath.functions.FuncFalse;
+import org.apache.xpath.functions.FuncFloor;
+import org.apache.xpath.functions.FuncLang;
+import org.apache.xpath.functions.FuncLast;
+import org.apache.xpath.functions.FuncNot;
+import org.apache.xpath.functions.FuncNumber;
+import org.apache.xpath.functions.FuncPosition;
+import org.apache.xpath.functions.FuncRound;
+import org.apache.xpath.functions.FuncStartsWith;
+import org.apache.xpath.functions.FuncStringLength;
+import org.apache.xpath.functions.FuncSum;
+import org.apache.xpath.functions.FuncTrue;
+import org.apache.xpath.functions.Function;
+import org.apache.xpath.functions.FunctionOneArg;
+import org.apache.xpath.objects.XNumber;
+import org.apache.xpath.operations.And;
+import org.apache.xpath.operations.Bool;
+import org.apache.xpath.operations.Div;
+import org.apache.xpath.operations.Equals;
+import org.apache.xpath.operations.Gt;
+import org.apache.xpath.operations.Gte;
+import org.apache.xpath.operations.Lt;
+import org.apache.xpath.operations.Lte;
+import org.apache.xpath.operations.Minus;
+import org.apache.xpath.operations.Mod;
+import org.apache.xpath.operations.Mult;
+import org.apache.xpath.operations.Neg;
+import org.apache.xpath.operations.NotEquals;
+import org.apache.xpath.operations.Operation;
+import org.apache.xpath.operations.Or;
+import org.apache.xpath.operations.Plus;
+import org.apache.xpath.operations.UnaryOperation;
+
+/**
+ * Compiles the number and boolean valued parts of XPath expressions into
+ * JVM bytecode, using BCEL.
+ *
+ * <p>Arithmetic, comparisons between numbers and booleans, and, or, not(),
+ * boolean(), position() and last() become straight-line code working on
+ * Java doubles and booleans, with no XObject created for intermediate
+ * values. Everything else, such as location paths, variables and most
+ * functions, becomes an operand of the generated class and is evaluated
+ * by the interpreter as before. Comparisons involving a node-set or a
+ * string keep their XPath semantics by being left to the interpreter.</p>
+ *
+ * <p>The compiler is an XPathVisitor which replaces each outermost
+ * expression it can compile with a {@link CompiledExpression}, then goes
+ * on to look inside the operands left to the interpreter, such as the
+ * predicates of a location path. Expressions which are not worth
+ * compiling, such as a lone number, are left alone. If a class can not be
+ * generated or loaded, for instance because of a security manager, the
+ * expression is left alone too.</p>
+ * @xsl.usage internal
+ */
+public class BytecodeCompiler extends XPathVisitor
+{
+
+  /** The static type of an expression whose value could be anything. */
+  private static final int UNKNOWN = 0;
+
+  /** The static type of an expression whose value is always a number. */
+  private static final int NUMBER = 1;
+
+  /** The static type of an expression whose value is always a boolean. */
+  private static final int BOOLEAN = 2;
+
+  /** The package of the generated classes. */
+  private static final String PACKAGE = "org.apache.xpath.compiled.";
+
+  /** The class the generated classes extend. */
+  private static final String BASE_CLASS =
+    "org.apache.xpath.compiler.CompiledExpression";
+
+  /** Type of Expression. */
+  private static final ObjectType EXPRESSION =
+    new ObjectType("org.apache.xpath.Expression");
+
+  /** Type of XPathContext. */
+  private static final ObjectType XPATH_CONTEXT =
+    new ObjectType("org.apache.xpath.XPathContext");
+
+  /** The number of classes generated so far, used to name them. */
+  private static int m_classCount = 0;
+
+  /**
+   * Compile the parts of an XPath which are worth compiling, replacing
+   * them in place.
+   *
+   * @param xpath The XPath, which should have had its variables fixed up
+   *              if it is to be.
+   */
+  public static void compile(XPath xpath)
+  {
+    xpath.callVisitors(xpath, new BytecodeCompiler());
+  }
+
+  /**
+   * Compile an operation, if it is worth compiling.
+   *
+   * @param owner The owner of the operation.
+   * @param op The operation.
+   *
+   * @return true if the operands should be visited.
+   */
+  public boolean visitBinaryOperation(ExpressionOwner owner, Operation op)
+  {
+    return replace(owner, op);
+  }
+
+  /**
+   * Compile an operation, if it is worth compiling.
+   *
+   * @param owner The owner of the operation.
+   * @param op The operation.
+   *
+   * @return true if the operand should be visited.
+   */
+  public boolean visitUnaryOperation(ExpressionOwner owner, UnaryOperation op)
+  {
+    return replace(owner, op);
+  }
+
+  /**
+   * Compile a function call, if it is worth compiling.
+   *
+   * @param owner The owner of the function call.
+   * @param func The function call.
+   *
+   * @return true if the arguments should be visited.
+   */
+  public boolean visitFunction(ExpressionOwner owner, Function func)
+  {
+    return replace(owner, func);
+  }
+
+  /**
+   * Replace an expression with a compiled one, and visit the operands of
+   * the compiled expression.
+   *
+   * @param owner The owner of the expression.
+   * @param expr The expression.
+   *
+   * @return true if the expression was not replaced, so that its
+   *         sub-expressions should be visited instead.
+   */
+  private boolean replace(ExpressionOwner owner, Expression expr)
+  {
+
+    if (!isWorthCompiling(expr))
+      return true;
+
+    CompiledExpression compiled = compile(expr);
+
+    if (null == compiled)
+      return true;
+
+    compiled.exprSetParent(expr.exprGetParent());
+    owner.setExpression(compiled);
+
+    Expression[] operands = compiled.m_operands;
+
+    for (int i = 0; i < operands.length; i++)
+      operands[i].callVisitors(new OperandOwner(operands, i), this);
+
+    return false;
+  }
+
+  /**
+   * Compile an expression, whatever its size.
+   *
+   * @param expr An expression for which {@link #isInline(Expression)} is
+   *             true.
+   *
+   * @return The compiled expression, or null if it could not be
+   *         compiled.
+   */
+  public static CompiledExpression compile(Expression expr)
+  {
+
+    if (!isInline(expr))
+      return null;
+
+    try
+    {
+      String className;
+
+      synchronized (BytecodeCompiler.class)
+      {
+        className = PACKAGE + "XPath" + (m_classCount++);
+      }
+
+      Generator gen = new Generator(className);
+      boolean isNumber = (typeOf(expr) == NUMBER);
+      byte[] bytes = gen.generate(expr, isNumber);
+      Expression[] operands = new Expression[gen.m_operands.size()];
+
+      gen.m_operands.copyInto(operands);
+
+      Class clazz = new Loader(CompiledExpression.class.getClassLoader())
+                          .define(className, bytes);
+
+      return (CompiledExpression) clazz.getConstructor(new Class[] {
+        Expression.class, Expression[].class, Boolean.TYPE }).newInstance(
+          new Object[] { expr, operands, new Boolean(isNumber) });
+    }
+    catch (LinkageError le)
+    {
+      return null;
+    }
+    catch (Exception e)
+    {
+
+      // Most likely a security manager which does not allow class loaders
+      // to be created. The interpreter will do.
+      return null;
+    }
+  }
+
+  /**
+   * Tell whether compiling an expression would remove some interpretive
+   * overhead: that it is made of an operator which can be compiled, and
+   * not just a constant or a single function call.
+   *
+   * @param expr An expression.
+   *
+   * @return true if the expression should be compiled.
+   */
+  private static boolean isWorthCompiling(Expression expr)
+  {
+    return isInline(expr)
+           && !(expr instanceof XNumber || expr instanceof FuncTrue
+                || expr instanceof FuncFalse || expr instanceof FuncPosition
+                || expr instanceof FuncLast);
+  }
+
+  /**
+   * Tell whether an expression can be compiled into code of its own, as
+   * opposed to being left to the interpreter as an operand.
+   *
+   * @param expr An expression.
+   *
+   * @return true if code can be generated for the expression.
+   */
+  private static boolean isInline(Expression expr)
+  {
+
+    if (expr instanceof Plus || expr instanceof Minus
+        || expr instanceof Mult || expr instanceof Div || expr instanceof Mod
+        || expr instanceof Neg
+        || expr instanceof org.apache.xpath.operations.Number
+        || expr instanceof And || expr instanceof Or || expr instanceof Bool
+        || expr instanceof FuncNot || expr instanceof FuncBoolean
+        || expr instanceof FuncTrue || expr instanceof FuncFalse
+        || expr instanceof FuncPosition || expr instanceof FuncLast
+        || expr instanceof XNumber)
+      return true;
+
+    // Comparisons are only simple if neither side can be a node-set or a
+    // string.
+    if (expr instanceof Equals || expr instanceof NotEquals
+        || expr instanceof Lt || expr instanceof Lte || expr instanceof Gt
+        || expr instanceof Gte)
+    {
+      Operation op = (Operation) expr;
+
+      return typeOf(op.getLeftOperand()) != UNKNOWN
+             && typeOf(op.getRightOperand()) != UNKNOWN;
+    }
+
+    return false;
+  }
+
+  /**
+   * Get the static type of an expression.
+   *
+   * @param expr An expression.
+   *
+   * @return NUMBER or BOOLEAN if the expression always has a value of
+   *         that type, otherwise UNKNOWN.
+   */
+  private static int typeOf(Expression expr)
+  {
+
+    if (expr instanceof CompiledExpression)
+      return typeOf(((CompiledExpression) expr).m_original);
+
+    if (expr instanceof XNumber || expr instanceof Plus
+        || expr instanceof Minus || expr instanceof Mult
+        || expr instanceof Div || expr instanceof Mod || expr instanceof Neg
+        || expr instanceof org.apache.xpath.operations.Number
+        || expr instanceof FuncNumber || expr instanceof FuncCount
+        || expr instanceof FuncSum || expr instanceof FuncStringLength
+        || expr instanceof FuncPosition || expr instanceof FuncLast
+        || expr instanceof FuncFloor || expr instanceof FuncCeiling
+        || expr instanceof FuncRound)
+      return NUMBER;
+
+    if (expr instanceof And || expr instanceof Or || expr instanceof Equals
+        || expr instanceof NotEquals || expr instanceof Lt
+        || expr instanceof Lte || expr instanceof Gt || expr instanceof Gte
+        || expr instanceof Bool || expr instanceof FuncNot
+        || expr instanceof FuncBoolean || expr instanceof FuncTrue
+        || expr instanceof FuncFalse || expr instanceof FuncLang
+        || expr instanceof FuncContains || expr instanceof FuncStartsWith)
+      return BOOLEAN;
+
+    return UNKNOWN;
+  }
+
+  /**
+   * Generates the class for one expression.
+   */
+  private static class Generator
+  {
+
+    /** The name of the class. */
+    final String m_className;
+
+    /** The class being generated. */
+    final ClassGen m_classGen;
+
+    /** The constant pool of the class. */
+    final ConstantPoolGen m_cp;
+
+    /** Factory for instructions that use the constant pool. */
+    final InstructionFactory m_factory;
+
+    /** The operands to be evaluated by the interpreter. */
+    final Vector m_operands = new Vector();
+
+    /** The code of the method being generated. */
+    InstructionList m_il;
+
+    /**
+     * Create a generator.
+     *
+     * @param className The name of the class to generate.
+     */
+    Generator(String className)
+    {
+      m_className = className;
+      m_classGen = new ClassGen(className, BASE_CLASS, "<generated>",
+                                Constants.ACC_PUBLIC | Constants.ACC_FINAL
+                                | Constants.ACC_SUPER, null);
+      m_cp = m_classGen.getConstantPool();
+      m_factory = new InstructionFactory(m_classGen, m_cp);
+    }
+
+    /**
+     * Generate the class.
+     *
+     * @param expr The expression.
+     * @param isNumber True to override num(), false to override bool().
+     *
+     * @return The class file.
+     */
+    byte[] generate(Expression expr, boolean isNumber)
+    {
+
+      Type[] ctorArgs = { EXPRESSION, new ArrayType(EXPRESSION, 1),
+                          Type.BOOLEAN };
+
+      m_il = new InstructionList();
+      m_il.append(InstructionConstants.ALOAD_0);
+      m_il.append(InstructionConstants.ALOAD_1);
+      m_il.append(InstructionConstants.ALOAD_2);
+      m_il.append(new org.apache.bcel.generic.ILOAD(3));
+      m_il.append(m_factory.createInvoke(BASE_CLASS, "<init>", Type.VOID,
+                                         ctorArgs, Constants.INVOKESPECIAL));
+      m_il.append(InstructionConstants.RETURN);
+      addMethod(Type.VOID, ctorArgs,
+                new String[] { "original", "operands", "isNumber" }, "<init>");
+
+      m_il = new InstructionList();
+      generate(expr, isNumber ? NUMBER : BOOLEAN);
+
+      if (isNumber)
+      {
+        m_il.append(InstructionConstants.DRETURN);
+        addMethod(Type.DOUBLE, new Type[] { XPATH_CONTEXT },
+                  new String[] { "xctxt" }, "num");
+      }
+      else
+      {
+        m_il.append(InstructionConstants.IRETURN);
+        addMethod(Type.BOOLEAN, new Type[] { XPATH_CONTEXT },
+                  new String[] { "xctxt" }, "bool");
+      }
+
+      return m_classGen.getJavaClass().getBytes();
+    }
+
+    /**
+     * Add the code in m_il to the class as a public method.
+     */
+    private void addMethod(Type returnType, Type[] argTypes,
+                           String[] argNames, String name)
+    {
+
+      MethodGen mg = new MethodGen(Constants.ACC_PUBLIC, returnType,
+                                   argTypes, argNames, name, m_className,
+                                   m_il, m_cp);
+
+      if (!"<init>".equals(name))
+        mg.addException("javax.xml.transform.TransformerException");
+
+      mg.setMaxStack();
+      mg.setMaxLocals();
+      m_classGen.addMethod(mg.getMethod());
+      m_il.dispose();
+    }
+
+    /**
+     * Generate code which leaves the value of an expression on the stack,
+     * as a double or as an int which is 0 or 1.
+     *
+     * @param expr The expression.
+     * @param want NUMBER or BOOLEAN.
+     */
+    private void generate(Expression expr, int want)
+    {
+
+      if (!isInline(expr))
+      {
+        generateOperand(expr, want);
+        return;
+      }
+
+      int type = generateInline(expr);
+
+      if (type == NUMBER && want == BOOLEAN)
+        m_il.append(m_factory.createInvoke(BASE_CLASS, "toBoolean",
+                                           Type.BOOLEAN,
+                                           new Type[] { Type.DOUBLE },
+                                           Constants.INVOKESTATIC));
+      else if (type == BOOLEAN && want == NUMBER)
+        m_il.append(InstructionConstants.I2D);
+    }
+
+    /**
+     * Generate code which calls the interpreter for an operand.
+     *
+     * @param expr The operand.
+     * @param want NUMBER or BOOLEAN.
+     */
+    private void generateOperand(Expression expr, int want)
+    {
+
+      loadOperand(expr);
+      m_il.append(InstructionConstants.ALOAD_1);
+
+      if (want == NUMBER)
+        m_il.append(m_factory.createInvoke("org.apache.xpath.Expression",
+                                           "num", Type.DOUBLE,
+                                           new Type[] { XPATH_CONTEXT },
+                                           Constants.INVOKEVIRTUAL));
+      else
+        m_il.append(m_factory.createInvoke("org.apache.xpath.Expression",
+                                           "bool", Type.BOOLEAN,
+                                           new Type[] { XPATH_CONTEXT },
+                                           Constants.INVOKEVIRTUAL));
+    }
+
+    /**
+     * Generate code which pushes an expression kept in the operands array.
+     *
+     * @param expr The expression.
+     */
+    private void loadOperand(Expression expr)
+    {
+
+      int index = m_operands.size();
+
+      m_operands.addElement(expr);
+      m_il.append(InstructionConstants.ALOAD_0);
+      m_il.append(m_factory.createFieldAccess(BASE_CLASS, "m_operands",
+                                              new ArrayType(EXPRESSION, 1),
+                                              Constants.GETFIELD));
+      m_il.append(new PUSH(m_cp, index));
+      m_il.append(InstructionConstants.AALOAD);
+    }
+
+    /**
+     * Generate the code of an expression for which isInline() is true.
+     *
+     * @param expr The expression.
+     *
+     * @return The type of the value left on the stack.
+     */
+    private int generateInline(Expression expr)
+    {
+
+      if (expr instanceof XNumber)
+      {
+        m_il.append(new PUSH(m_cp, ((XNumber) expr).num()));
+        return NUMBER;
+      }
+
+      if (expr instanceof FuncTrue || expr instanceof FuncFalse)
+      {
+        m_il.append(new PUSH(m_cp, expr instanceof FuncTrue));
+        return BOOLEAN;
+      }
+
+      if (expr instanceof FuncPosition || expr instanceof FuncLast)
+      {
+        String className = expr.getClass().getName();
+        String method = (expr instanceof FuncPosition)
+                        ? "getPositionInContextNodeList"
+                        : "getCountOfContextNodeList";
+
+        loadOperand(expr);
+        m_il.append(m_factory.createCheckCast(new ObjectType(className)));
+        m_il.append(InstructionConstants.ALOAD_1);
+        m_il.append(m_factory.createInvoke(className, method, Type.INT,
+                                           new Type[] { XPATH_CONTEXT },
+                                           Constants.INVOKEVIRTUAL));
+        m_il.append(InstructionConstants.I2D);
+        return NUMBER;
+      }
+
+      if (expr instanceof Neg
+          || expr instanceof org.apache.xpath.operations.Number)
+      {
+        generate(((UnaryOperation) expr).getOperand(), NUMBER);
+
+        if (expr instanceof Neg)
+          m_il.append(InstructionConstants.DNEG);
+
+        return NUMBER;
+      }
+
+      if (expr instanceof Bool)
+      {
+        generate(((UnaryOperation) expr).getOperand(), BOOLEAN);
+        return BOOLEAN;
+      }
+
+      if (expr instanceof FuncNot || expr instanceof FuncBoolean)
+      {
+        generate(((FunctionOneArg) expr).getArg0(), BOOLEAN);
+
+        if (expr instanceof FuncNot)
+        {
+          m_il.append(InstructionConstants.ICONST_1);
+          m_il.append(InstructionConstants.IXOR);
+        }
+
+        return BOOLEAN;
+      }
+
+      Operation op = (Operation) expr;
+      Expression left = op.getLeftOperand();
+      Expression right = op.getRightOperand();
+
+      if (expr instanceof And || expr instanceof Or)
+      {
+        boolean isAnd = (expr instanceof And);
+
+        generate(left, BOOLEAN);
+
+        BranchHandle shortCut = m_il.append(isAnd ? (BranchInstruction) new IFEQ(null)
+                                                  : new IFNE(null));
+
+        generate(right, BOOLEAN);
+
+        BranchHandle toEnd = m_il.append(new GOTO(null));
+
+        shortCut.setTarget(m_il.append(isAnd ? InstructionConstants.ICONST_0
+                                             : InstructionConstants.ICONST_1));
+        toEnd.setTarget(m_il.append(InstructionConstants.NOP));
+
+        return BOOLEAN;
+      }
+
+      if (expr instanceof Plus || expr instanceof Minus
+          || expr instanceof Mult || expr instanceof Div
+          || expr instanceof Mod)
+      {
+        generate(left, NUMBER);
+        generate(right, NUMBER);
+        m_il.append((expr instanceof Plus) ? InstructionConstants.DADD
+                    : (expr instanceof Minus) ? InstructionConstants.DSUB
+                    : (expr instanceof Mult) ? InstructionConstants.DMUL
+                    : (expr instanceof Div) ? InstructionConstants.DDIV
+                    : InstructionConstants.DREM);
+
+        return NUMBER;
+      }
+
+      // A comparison. = and != compare booleans if either side is one,
+      // and everything else compares numbers.
+      BranchInstruction test;
+
+      if ((expr instanceof Equals || expr instanceof NotEquals)
+          && (typeOf(left) == BOOLEAN || typeOf(right) == BOOLEAN))
+      {
+        generate(left, BOOLEAN);
+        generate(right, BOOLEAN);
+        test = (expr instanceof Equals) ? (BranchInstruction) new IF_ICMPEQ(null)
+                                        : new IF_ICMPNE(null);
+      }
+      else
+      {
+        generate(left, NUMBER);
+        generate(right, NUMBER);
+
+        // Choose the comparison so that NaN makes everything but != false.
+        if (expr instanceof Lt || expr instanceof Lte)
+          m_il.append(InstructionConstants.DCMPG);
+        else
+          m_il.append(InstructionConstants.DCMPL);
+
+        test = (expr instanceof Equals) ? (BranchInstruction) new IFEQ(null)
+               : (expr instanceof NotEquals) ? (BranchInstruction) new IFNE(null)
+               : (expr instanceof Lt) ? (BranchInstruction) new IFLT(null)
+               : (expr instanceof Lte) ? (BranchInstruction) new IFLE(null)
+               : (expr instanceof Gt) ? (BranchInstruction) new IFGT(null)
+               : new IFGE(null);
+      }
+
+      BranchHandle isTrue = m_il.append(test);
+
+      m_il.append(InstructionConstants.ICONST_0);
+
+      BranchHandle toEnd = m_il.append(new GOTO(null));
+      InstructionHandle trueHandle = m_il.append(InstructionConstants.ICONST_1);
+
+      isTrue.setTarget(trueHandle);
+      toEnd.setTarget(m_il.append(InstructionConstants.NOP));
+
+      return BOOLEAN;
+    }
+  }
+
+  /**
+   * Loads one generated class. Each class has its own loader, so that it
+   * can be unloaded when its expression is no longer used.
+   */
+  private static class Loader extends ClassLoader
+  {
+
+    /**
+     * Create a loader.
+     *
+     * @param parent The loader of the Xalan classes.
+     */
+    Loader(ClassLoader parent)
+    {
+      super(parent);
+    }
+
+    /**
+     * Define a generated class.
+     *
+     * @param name The name of the class.
+     * @param bytes The class file.
+     *
+     * @return The class.
+     */
+    Class define(String name, byte[] bytes)
+    {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  /**
+   * Owns an operand of a compiled expression, so that a visitor can
+   * replace it.
+   */
+  private static class OperandOwner implements ExpressionOwner
+  {
+
+    /** The operands of the compiled expression. */
+    private final Expression[] m_operands;
+
+    /** The index of the operand. */
+    private final int m_index;
+
+    /**
+     * Create an owner.
+     *
+     * @param operands The operands of the compiled expression.
+     * @param index The index of the operand.
+     */
+    OperandOwner(Expression[] operands, int index)
+    {
+      m_operands = operands;
+      m_index = index;
+    }
+
+    /**
+     * @see ExpressionOwner#getExpression()
+     */
+    public Expression getExpression()
+    {
+      return m_operands[m_index];
+    }
+
+    /**
+     * @see ExpressionOwner#setExpression(Expression)
+     */
+    public void setExpression(Expression exp)
+    {
+      exp.exprSetParent(m_operands[m_index].exprGetParent());
+      m_operands[m_index] = exp;
+    }
+  }
+}
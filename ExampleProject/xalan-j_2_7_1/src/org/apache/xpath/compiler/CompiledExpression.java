@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xpath.compiler;
+
+import org.apache.xpath.Expression;
+import org.apache.xpath.ExpressionOwner;
+import org.apache.xpath.XPathContext;
+import org.apache.xpath.XPathVisitor;
+import org.apache.xpath.objects.XBoolean;
+import org.apache.xpath.objects.XNumber;
+import org.apache.xpath.objects.XObject;
+
+/**
+ * The base class of the expressions generated by {@link BytecodeCompiler}.
+ * A subclass evaluates a number or boolean valued expression in bytecode,
+ * overriding {@link #num(XPathContext)} or {@link #bool(XPathContext)},
+ * and evaluates the operands it could not compile, such as location
+ * paths and variable references, by calling them in the usual way.
+ *
+ * <p>The expression tree the class was generated from is kept. Variable
+ * fixups, visitors and comparisons are passed on to it, and it is what is
+ * written when the expression is serialized, since the generated class
+ * can not be loaded again elsewhere.</p>
+ * @xsl.usage internal
+ */
+public abstract class CompiledExpression extends Expression
+{
+    static final long serialVersionUID = -6186215734011356082L;
+
+  /** The expression this was compiled from. */
+  protected final Expression m_original;
+
+  /** The operands which are evaluated by the interpreter. */
+  protected final Expression[] m_operands;
+
+  /** True if the value is a number, false if it is a boolean. */
+  private final boolean m_isNumber;
+
+  /**
+   * Construct a compiled expression.
+   *
+   * @param original The expression this was compiled from.
+   * @param operands The operands which are evaluated by the interpreter.
+   * @param isNumber True if the value is a number, false if it is a
+   *                 boolean.
+   */
+  protected CompiledExpression(Expression original, Expression[] operands,
+                               boolean isNumber)
+  {
+    m_original = original;
+    m_operands = operands;
+    m_isNumber = isNumber;
+  }
+
+  /**
+   * Get the expression this was compiled from.
+   *
+   * @return The original expression tree.
+   */
+  public Expression getOriginal()
+  {
+    return m_original;
+  }
+
+  /**
+   * Execute the expression, wrapping the number or boolean computed by the
+   * generated code.
+   *
+   * @param xctxt The XPath runtime context.
+   *
+   * @return An XNumber or XBoolean.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public XObject execute(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+
+    if (m_isNumber)
+      return new XNumber(num(xctxt));
+
+    return bool(xctxt) ? XBoolean.S_TRUE : XBoolean.S_FALSE;
+  }
+
+  /**
+   * Evaluate the expression as a number. Subclasses with a number value
+   * override this.
+   *
+   * @param xctxt The XPath runtime context.
+   *
+   * @return The value as a number.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public double num(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    return bool(xctxt) ? 1.0 : 0.0;
+  }
+
+  /**
+   * Evaluate the expression as a boolean. Subclasses with a boolean value
+   * override this.
+   *
+   * @param xctxt The XPath runtime context.
+   *
+   * @return The value as a boolean.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public boolean bool(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    return toBoolean(num(xctxt));
+  }
+
+  /**
+   * Tell whether the expression gives a number or a boolean.
+   *
+   * @return XObject.CLASS_NUMBER or XObject.CLASS_BOOLEAN.
+   */
+  public int getStaticType()
+  {
+    return m_isNumber ? XObject.CLASS_NUMBER : XObject.CLASS_BOOLEAN;
+  }
+
+  /**
+   * Convert a number to a boolean, as the boolean() function does.
+   * Called by generated code.
+   *
+   * @param d A number.
+   *
+   * @return false if the number is zero or NaN, otherwise true.
+   */
+  public static boolean toBoolean(double d)
+  {
+    return !(Double.isNaN(d) || d == 0.0);
+  }
+
+  /**
+   * Pass variable fixups on to the original expression, which shares its
+   * operands with this one.
+   *
+   * @param vars List of QNames that correspond to variables.
+   * @param globalsSize The number of variables in the global variable area.
+   */
+  public void fixupVariables(java.util.Vector vars, int globalsSize)
+  {
+    m_original.fixupVariables(vars, globalsSize);
+  }
+
+  /**
+   * Tell if the original expression can traverse outside the current
+   * subtree.
+   *
+   * @return true if traversal outside the context node's subtree can occur.
+   */
+  public boolean canTraverseOutsideSubtree()
+  {
+    return m_original.canTraverseOutsideSubtree();
+  }
+
+  /**
+   * Compare the original expressions.
+   *
+   * @param expr Another expression.
+   *
+   * @return true if the expressions are the same.
+   */
+  public boolean deepEquals(Expression expr)
+  {
+
+    if (expr instanceof CompiledExpression)
+      expr = ((CompiledExpression) expr).m_original;
+
+    return m_original.deepEquals(expr);
+  }
+
+  /**
+   * Let a visitor see the original expression tree.
+   *
+   * @param owner The owner of this expression.
+   * @param visitor The visitor.
+   */
+  public void callVisitors(ExpressionOwner owner, XPathVisitor visitor)
+  {
+    m_original.callVisitors(owner, visitor);
+  }
+
+  /**
+   * Serialize the original expression in place of this one.
+   *
+   * @return The original expression.
+   */
+  protected Object writeReplace()
+  {
+    return m_original;
+  }
+}
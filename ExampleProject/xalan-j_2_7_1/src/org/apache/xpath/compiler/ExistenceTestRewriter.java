@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the  "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * $Id$
+ */
+package org.apache.xpath.compiler;
+
+import org.apache.xpath.Expression;
+import org.apache.xpath.ExpressionOwner;
+import org.apache.xpath.XPathVisitor;
+import org.apache.xpath.axes.LocPathIterator;
+import org.apache.xpath.functions.FuncBoolean;
+import org.apache.xpath.functions.FuncCount;
+import org.apache.xpath.functions.FuncNot;
+import org.apache.xpath.functions.Function;
+import org.apache.xpath.functions.FunctionOneArg;
+import org.apache.xpath.functions.WrongNumberArgsException;
+import org.apache.xpath.objects.XNumber;
+import org.apache.xpath.operations.Bool;
+import org.apache.xpath.operations.Equals;
+import org.apache.xpath.operations.Gt;
+import org.apache.xpath.operations.Gte;
+import org.apache.xpath.operations.Lt;
+import org.apache.xpath.operations.Lte;
+import org.apache.xpath.operations.NotEquals;
+import org.apache.xpath.operations.Operation;
+
+/**
+ * Rewrites expressions which only ask whether a location path selects
+ * any node, so that they stop at the first node found instead of
+ * counting them all.
+ *
+ * <p>A comparison of count(path) with a number less than one, such as
+ * <code>count(item) &gt; 0</code> or <code>count(item) = 0</code>, is
+ * true either for every non-empty node-set or for none of them, and is
+ * replaced by <code>boolean(item)</code> or <code>not(item)</code>.
+ * <code>boolean(count(item))</code> and <code>not(count(item))</code> are
+ * rewritten the same way.  The rewritten expressions give the same result
+ * as the original ones.</p>
+ *
+ * <p>Selections such as <code>(//item)[1]</code> need no rewriting, since
+ * a constant position predicate already ends the walk once it has been
+ * satisfied, and a location path evaluated as a boolean stops at its first
+ * node.</p>
+ */
+public class ExistenceTestRewriter extends XPathVisitor
+{
+
+  /**
+   * Rewrite the existence tests in an expression.
+   *
+   * @param owner The owner of the expression, which is given the rewritten
+   *              expression if the expression itself is rewritten.
+   */
+  public static void rewrite(ExpressionOwner owner)
+  {
+    owner.getExpression().callVisitors(owner, new ExistenceTestRewriter());
+  }
+
+  /**
+   * Rewrite a comparison of count(path) with a number less than one.
+   *
+   * @param owner The owner of the operation.
+   * @param op The operation.
+   *
+   * @return true if the operands should be visited.
+   */
+  public boolean visitBinaryOperation(ExpressionOwner owner, Operation op)
+  {
+
+    Expression left = op.getLeftOperand();
+    Expression right = op.getRightOperand();
+    LocPathIterator path = getCountedPath(left);
+    boolean reversed = false;
+
+    if (null == path)
+    {
+      path = getCountedPath(right);
+      reversed = true;
+
+      Expression tmp = left;
+
+      left = right;
+      right = tmp;
+    }
+
+    if (null == path || !(right instanceof XNumber))
+      return true;
+
+    double n = ((XNumber) right).num();
+
+    // For any count of one or more the comparison has the same result as
+    // it has for one, since every such count is greater than n.
+    if (!(n < 1.0))
+      return true;
+
+    int cmp = getComparison(op, reversed);
+
+    if (NONE == cmp)
+      return true;
+
+    boolean empty = compare(cmp, 0.0, n);
+    boolean nonEmpty = compare(cmp, 1.0, n);
+
+    if (empty == nonEmpty)
+      return true;
+
+    Expression test;
+
+    if (nonEmpty)
+    {
+      Bool bool = new Bool();
+
+      bool.setRight(path);
+
+      test = bool;
+    }
+    else
+    {
+      test = newFunction(new FuncNot(), path);
+    }
+
+    owner.setExpression(test);
+    test.callVisitors(owner, this);
+
+    return false;
+  }
+
+  /**
+   * Rewrite boolean(count(path)) and not(count(path)).
+   *
+   * @param owner The owner of the function call.
+   * @param func The function call.
+   *
+   * @return true if the arguments should be visited.
+   */
+  public boolean visitFunction(ExpressionOwner owner, Function func)
+  {
+
+    if (func instanceof FuncBoolean || func instanceof FuncNot)
+    {
+      LocPathIterator path =
+        getCountedPath(((FunctionOneArg) func).getArg0());
+
+      if (null != path)
+        newFunction((FunctionOneArg) func, path);
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the location path counted by an expression.
+   *
+   * @param expr An expression.
+   *
+   * @return The path, if the expression is count(path), or null.
+   */
+  private static LocPathIterator getCountedPath(Expression expr)
+  {
+
+    if (expr instanceof FuncCount)
+    {
+      Expression arg = ((FuncCount) expr).getArg0();
+
+      if (arg instanceof LocPathIterator)
+        return (LocPathIterator) arg;
+    }
+
+    return null;
+  }
+
+  /**
+   * Give a function call its argument.
+   *
+   * @param func A function of one argument.
+   * @param arg The argument.
+   *
+   * @return The function call.
+   */
+  private static Expression newFunction(FunctionOneArg func, Expression arg)
+  {
+
+    try
+    {
+      func.setArg(arg, 0);
+    }
+    catch (WrongNumberArgsException wnae)
+    {
+      // can't happen
+      throw new org.apache.xml.utils.WrappedRuntimeException(wnae);
+    }
+
+    return func;
+  }
+
+  /** Not a comparison. */
+  private static final int NONE = -1;
+
+  /** The '=' comparison. */
+  private static final int EQ = 0;
+
+  /** The '!=' comparison. */
+  private static final int NEQ = 1;
+
+  /** The '&lt;' comparison. */
+  private static final int LT = 2;
+
+  /** The '&lt;=' comparison. */
+  private static final int LTE = 3;
+
+  /** The '&gt;' comparison. */
+  private static final int GT = 4;
+
+  /** The '&gt;=' comparison. */
+  private static final int GTE = 5;
+
+  /**
+   * Get the comparison made by an operation.
+   *
+   * @param op The operation.
+   * @param reversed true if the operands are to be swapped.
+   *
+   * @return One of the comparison codes, or NONE.
+   */
+  private static int getComparison(Operation op, boolean reversed)
+  {
+
+    if (op instanceof Equals)
+      return EQ;
+    else if (op instanceof NotEquals)
+      return NEQ;
+    else if (op instanceof Lt)
+      return reversed ? GT : LT;
+    else if (op instanceof Lte)
+      return reversed ? GTE : LTE;
+    else if (op instanceof Gt)
+      return reversed ? LT : GT;
+    else if (op instanceof Gte)
+      return reversed ? LTE : GTE;
+    else
+      return NONE;
+  }
+
+  /**
+   * Compare two numbers.
+   *
+   * @param cmp One of the comparison codes other than NONE.
+   * @param n1 The left number.
+   * @param n2 The right number.
+   *
+   * @return The result of the comparison.
+   */
+  private static boolean compare(int cmp, double n1, double n2)
+  {
+
+    switch (cmp)
+    {
+    case EQ :
+      return n1 == n2;
+    case NEQ :
+      return n1 != n2;
+    case LT :
+      return n1 < n2;
+    case LTE :
+      return n1 <= n2;
+    case GT :
+      return n1 > n2;
+    default :
+      return n1 >= n2;
+    }
+  }
+}
@@ -54,4 +54,14 @@ public class FuncContains extends Function2Args
 
     return (index > -1) ? XBoolean.S_TRUE : XBoolean.S_FALSE;
   }
+
+  /**
+   * This function always evaluates to a boolean.
+   *
+   * @return XObject.CLASS_BOOLEAN
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_BOOLEAN;
+  }
 }
@@ -20,8 +20,10 @@
  */
 package org.apache.xpath.functions;
 
+import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMIterator;
 import org.apache.xpath.XPathContext;
+import org.apache.xpath.axes.LocPathIterator;
 import org.apache.xpath.objects.XNumber;
 import org.apache.xpath.objects.XObject;
 
@@ -43,22 +45,60 @@ public class FuncCount extends FunctionOneArg
    */
   public XObject execute(XPathContext xctxt) throws javax.xml.transform.TransformerException
   {
+    return new XNumber(num(xctxt));
+  }
+
+  /**
+   * Evaluate the function directly to a number.
+   *
+   * @param xctxt The current execution context.
+   *
+   * @return The result of the function as a double.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public double num(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    DTMIterator nl;
+
+    // A location path can be counted with a pooled iterator, without
+    // creating an XNodeSet for it.
+    if (m_arg0 instanceof LocPathIterator)
+    {
+      nl = ((LocPathIterator) m_arg0).asPooledIterator(xctxt,
+                                                       xctxt.getCurrentNode());
+
+      int i = 0;
 
-//    DTMIterator nl = m_arg0.asIterator(xctxt, xctxt.getCurrentNode());
+      try
+      {
+        while (DTM.NULL != nl.nextNode())
+        {
+          i++;
+        }
+      }
+      finally
+      {
+        nl.detach();
+      }
 
-//    // We should probably make a function on the iterator for this, 
-//    // as a given implementation could optimize.
-//    int i = 0;
-//
-//    while (DTM.NULL != nl.nextNode())
-//    {
-//      i++;
-//    }
-//    nl.detach();
-	DTMIterator nl = m_arg0.asIterator(xctxt, xctxt.getCurrentNode());
+      return (double) i;
+    }
+
+	nl = m_arg0.asIterator(xctxt, xctxt.getCurrentNode());
 	int i = nl.getLength();	
 	nl.detach();
+    return (double) i;
+  }
 
-    return new XNumber((double) i);
+  /**
+   * This function always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
   }
 }
@@ -42,6 +42,31 @@ public class FuncFloor extends FunctionOneArg
    */
   public XObject execute(XPathContext xctxt) throws javax.xml.transform.TransformerException
   {
-    return new XNumber(java.lang.Math.floor(m_arg0.execute(xctxt).num()));
+    return new XNumber(num(xctxt));
+  }
+
+  /**
+   * Evaluate the function directly to a number.
+   *
+   * @param xctxt The current execution context.
+   *
+   * @return The result of the function as a double.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public double num(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    return java.lang.Math.floor(m_arg0.num(xctxt));
+  }
+
+  /**
+   * This function always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
   }
 }
@@ -79,4 +79,14 @@ public class FuncLang extends FunctionOneArg
 
     return isLang ? XBoolean.S_TRUE : XBoolean.S_FALSE;
   }
+
+  /**
+   * This function always evaluates to a boolean.
+   *
+   * @return XObject.CLASS_BOOLEAN
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_BOOLEAN;
+  }
 }
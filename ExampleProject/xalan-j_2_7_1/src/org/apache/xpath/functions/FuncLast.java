@@ -90,9 +90,32 @@ public class FuncLast extends Function
    */
   public XObject execute(XPathContext xctxt) throws javax.xml.transform.TransformerException
   {
-    XNumber xnum = new XNumber((double) getCountOfContextNodeList(xctxt));
-    // System.out.println("last: "+xnum.num());
-    return xnum;
+    return new XNumber(num(xctxt));
+  }
+
+  /**
+   * Evaluate the function directly to a number.
+   *
+   * @param xctxt The current execution context.
+   *
+   * @return The result of the function as a double.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public double num(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    return (double) getCountOfContextNodeList(xctxt);
+  }
+
+  /**
+   * This function always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
   }
   
   /**
@@ -45,4 +45,14 @@ public class FuncStartsWith extends Function2Args
     return m_arg0.execute(xctxt).xstr().startsWith(m_arg1.execute(xctxt).xstr())
            ? XBoolean.S_TRUE : XBoolean.S_FALSE;
   }
+
+  /**
+   * This function always evaluates to a boolean.
+   *
+   * @return XObject.CLASS_BOOLEAN
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_BOOLEAN;
+  }
 }
@@ -24,6 +24,7 @@ import org.apache.xml.dtm.DTM;
 import org.apache.xml.dtm.DTMIterator;
 import org.apache.xml.utils.XMLString;
 import org.apache.xpath.XPathContext;
+import org.apache.xpath.axes.LocPathIterator;
 import org.apache.xpath.objects.XNumber;
 import org.apache.xpath.objects.XObject;
 
@@ -45,21 +46,54 @@ public class FuncSum extends FunctionOneArg
    */
   public XObject execute(XPathContext xctxt) throws javax.xml.transform.TransformerException
   {
+    return new XNumber(num(xctxt));
+  }
 
-    DTMIterator nodes = m_arg0.asIterator(xctxt, xctxt.getCurrentNode());
+  /**
+   * Evaluate the function directly to a number.
+   *
+   * @param xctxt The current execution context.
+   *
+   * @return The result of the function as a double.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public double num(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    DTMIterator nodes = (m_arg0 instanceof LocPathIterator)
+      ? ((LocPathIterator) m_arg0).asPooledIterator(xctxt,
+                                                    xctxt.getCurrentNode())
+      : m_arg0.asIterator(xctxt, xctxt.getCurrentNode());
     double sum = 0.0;
     int pos;
 
-    while (DTM.NULL != (pos = nodes.nextNode()))
+    try
     {
-      DTM dtm = nodes.getDTM(pos);
-      XMLString s = dtm.getStringValue(pos);
+      while (DTM.NULL != (pos = nodes.nextNode()))
+      {
+        DTM dtm = nodes.getDTM(pos);
+        XMLString s = dtm.getStringValue(pos);
 
-      if (null != s)
-        sum += s.toDouble();
+        if (null != s)
+          sum += s.toDouble();
+      }
     }
-    nodes.detach();
+    finally
+    {
+      nodes.detach();
+    }
+
+    return sum;
+  }
 
-    return new XNumber(sum);
+  /**
+   * This function always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
   }
 }
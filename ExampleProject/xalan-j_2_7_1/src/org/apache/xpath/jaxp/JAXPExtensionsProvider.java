@@ -43,7 +43,7 @@ import javax.xml.namespace.QName;
  */
 public class JAXPExtensionsProvider implements ExtensionsProvider {
     	
-    private final XPathFunctionResolver resolver;
+    private XPathFunctionResolver resolver;
     private boolean extensionInvocationDisabled = false;
 	
     public JAXPExtensionsProvider(XPathFunctionResolver resolver) {
@@ -57,6 +57,14 @@ public class JAXPExtensionsProvider implements ExtensionsProvider {
         this.extensionInvocationDisabled = featureSecureProcessing;
     }
 
+    /**
+     * Change the function resolver, so that a provider kept for reuse
+     * need not hold on to the last one it was used with.
+     */
+    public void setResolver(XPathFunctionResolver resolver) {
+        this.resolver = resolver;
+    }
+
     /**
      * Is the extension function available?
      */
@@ -39,12 +39,20 @@ import org.apache.xalan.res.XSLMessages;
  */
 public class JAXPVariableStack extends VariableStack {
     	
-    private final XPathVariableResolver resolver;
+    private XPathVariableResolver resolver;
 	
     public JAXPVariableStack(XPathVariableResolver resolver) {
         super(2);
         this.resolver = resolver;
     }
+
+    /**
+     * Change the variable resolver, so that a stack kept for reuse need
+     * not hold on to the last one it was used with.
+     */
+    public void setResolver(XPathVariableResolver resolver) {
+        this.resolver = resolver;
+    }
 	
     public XObject getVariableOrParam(XPathContext xctxt, QName qname)
         throws TransformerException,IllegalArgumentException {
@@ -27,6 +27,8 @@ import org.apache.xml.utils.PrefixResolver;
 import org.apache.xpath.res.XPATHErrorResources;
 import org.apache.xalan.res.XSLMessages;
 
+import java.lang.ref.WeakReference;
+
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPathExpressionException;
@@ -47,6 +49,15 @@ import org.xml.sax.InputSource;
 /**
  * The XPathExpression interface encapsulates a (compiled) XPath expression.
  *
+ * <p>An XPathExpressionImpl may be evaluated by several threads at once,
+ * as long as its resolvers can be, and it is not changed with
+ * {@link #setXPath(org.apache.xpath.XPath)} meanwhile. Each thread
+ * evaluates it with an XPathContext of its own. A thread keeps a few
+ * contexts, one for each function resolver and secure processing setting
+ * it has evaluated expressions with, and shares them among all the
+ * expressions it evaluates. Node-set results are copied out of the
+ * context, so they stay valid after the next evaluation.</p>
+ *
  * @version $Revision$
  * @author  Ramesh Mandava
  */
@@ -62,6 +73,31 @@ public class XPathExpressionImpl  implements javax.xml.xpath.XPathExpression{
     // extensions function need to throw XPathFunctionException
     private boolean featureSecureProcessing = false;
 
+    // Building an XPathContext, with its DTMManager and stacks, costs more
+    // than evaluating most expressions, so each thread keeps its contexts
+    // and reuses them for every expression it evaluates. Expressions only
+    // need different contexts if one has a function resolver and the other
+    // has not, or their secure processing settings differ. The resolvers
+    // are installed on the context for each evaluation and taken off again
+    // afterwards, so that a context kept by a thread does not keep them.
+    private static final ThreadLocal contexts = new ThreadLocal();
+
+    /** The most contexts a thread keeps. */
+    private static final int MAX_CACHED_CONTEXTS = 4;
+
+    /**
+     * An XPathContext a thread keeps, with the settings it was made for.
+     */
+    private static final class CachedContext {
+        boolean hasFunctionResolver;
+        boolean featureSecureProcessing;
+        JAXPExtensionsProvider extensions;
+        JAXPVariableStack variables;
+        WeakReference expression;
+        org.apache.xpath.XPathContext context;
+        boolean inUse;
+    }
+
     /** Protected constructor to prevent direct instantiation; use compile()
      * from the context.
      */
@@ -96,26 +132,112 @@ public class XPathExpressionImpl  implements javax.xml.xpath.XPathExpression{
 
     public Object eval(Object item, QName returnType)
             throws javax.xml.transform.TransformerException {
-        XObject resultObject = eval ( item );
-        return getResultAsType( resultObject, returnType );
+        org.apache.xpath.XPathContext xpathSupport = acquireContext();
+        // Evaluate over the cached DTM of the document, if there is one.
+        // The context only borrows its manager, since results are copied
+        // out of it.
+        org.apache.xml.dtm.DTMManager ownManager =
+            xpathSupport.getDTMManager();
+        org.apache.xml.dtm.DTMManager cachedManager = ( item instanceof Node )
+            ? DOM2DTMCache.getDefault().getDTMManager( (Node)item ) : null;
+        if ( cachedManager != null ) {
+            xpathSupport.setDTMManager( cachedManager );
+        }
+        try {
+            XObject resultObject = eval( xpathSupport, item );
+            return getResultAsType( resultObject, returnType );
+        } finally {
+            xpathSupport.setDTMManager( ownManager );
+            // Keep the context, but not the documents it has seen, so that
+            // the caller's DOM can be collected and changed freely
+            xpathSupport.releaseDocuments();
+            releaseContext( xpathSupport );
+        }
     }
-    
-    private XObject eval ( Object contextItem )
-            throws javax.xml.transform.TransformerException {
-        org.apache.xpath.XPathContext xpathSupport = null;
 
-        // Create an XPathContext that doesn't support pushing and popping of
-        // variable resolution scopes.  Sufficient for simple XPath 1.0
-        // expressions.
-        if ( functionResolver != null ) {
-            JAXPExtensionsProvider jep = new JAXPExtensionsProvider(
-                    functionResolver, featureSecureProcessing );
-            xpathSupport = new org.apache.xpath.XPathContext(jep, false);
+    /**
+     * Get an XPathContext for an evaluation of this expression on the
+     * current thread, reusing one the thread keeps if it was made for
+     * expressions with or without a function resolver, as this one is,
+     * and the same secure processing setting.
+     */
+    private org.apache.xpath.XPathContext acquireContext() {
+        CachedContext[] cache = (CachedContext[]) contexts.get();
+        if ( cache == null ) {
+            cache = new CachedContext[MAX_CACHED_CONTEXTS];
+            contexts.set( cache );
+        }
+        CachedContext cached = null;
+        int free = -1;
+        for ( int i = 0; i < cache.length; i++ ) {
+            CachedContext c = cache[i];
+            if ( c == null ) {
+                if ( free < 0 || cache[free] != null ) free = i;
+            } else if ( !c.inUse ) {
+                if ( c.hasFunctionResolver == ( functionResolver != null )
+                        && c.featureSecureProcessing == featureSecureProcessing ) {
+                    cached = c;
+                    break;
+                }
+                if ( free < 0 || cache[free] != null ) free = i;
+            }
+        }
+        // A resolver may evaluate an expression from inside an evaluation,
+        // which then needs a context of its own, kept if there is room
+        if ( cached == null ) {
+            if ( free < 0 ) {
+                return createContext();
+            }
+            cached = new CachedContext();
+            cached.hasFunctionResolver = ( functionResolver != null );
+            cached.featureSecureProcessing = featureSecureProcessing;
+            cached.context = createContext();
+            cached.extensions =
+                (JAXPExtensionsProvider) cached.context.getOwnerObject();
+            cached.variables =
+                (JAXPVariableStack) cached.context.getVarStack();
+            // Move the others along, dropping the least recently made
+            System.arraycopy( cache, 0, cache, 1, free );
+            cache[0] = cached;
         } else {
-            xpathSupport = new org.apache.xpath.XPathContext(false);
+            if ( cached.extensions != null ) {
+                cached.extensions.setResolver( functionResolver );
+            }
+            cached.variables.setResolver( variableResolver );
         }
+        // The iterators the context keeps free belong to the expressions
+        // which used it, and would keep them alive, so only those of the
+        // last expression are kept
+        if ( cached.expression == null || cached.expression.get() != this ) {
+            cached.context.getIteratorCache().clear();
+            cached.expression = new WeakReference( this );
+        }
+        cached.inUse = true;
+        return cached.context;
+    }
 
-        xpathSupport.setVarStack(new JAXPVariableStack(variableResolver));
+    /**
+     * Give back a context got from acquireContext(), taking this
+     * expression's resolvers off it.
+     */
+    private void releaseContext( org.apache.xpath.XPathContext xpathSupport ) {
+        CachedContext[] cache = (CachedContext[]) contexts.get();
+        for ( int i = 0; i < cache.length; i++ ) {
+            CachedContext c = cache[i];
+            if ( c != null && c.context == xpathSupport ) {
+                if ( c.extensions != null ) {
+                    c.extensions.setResolver( null );
+                }
+                c.variables.setResolver( null );
+                c.inUse = false;
+                return;
+            }
+        }
+    }
+    
+    private XObject eval ( org.apache.xpath.XPathContext xpathSupport,
+            Object contextItem )
+            throws javax.xml.transform.TransformerException {
         XObject xobj = null;
           
         Node contextNode = (Node)contextItem;
@@ -130,6 +252,31 @@ public class XPathExpressionImpl  implements javax.xml.xpath.XPathExpression{
         return xobj;
     }
 
+    /**
+     * <p>Create an XPathContext which one thread can use to evaluate this
+     * expression, and others with the same function resolver and secure
+     * processing setting.</p>
+     *
+     * @return A new XPathContext.
+     */
+    private org.apache.xpath.XPathContext createContext() {
+        org.apache.xpath.XPathContext xpathSupport = null;
+
+        // Create an XPathContext that doesn't support pushing and popping of
+        // variable resolution scopes.  Sufficient for simple XPath 1.0
+        // expressions.
+        if ( functionResolver != null ) {
+            JAXPExtensionsProvider jep = new JAXPExtensionsProvider(
+                    functionResolver, featureSecureProcessing );
+            xpathSupport = new org.apache.xpath.XPathContext(jep, false);
+        } else {
+            xpathSupport = new org.apache.xpath.XPathContext(false);
+        }
+
+        xpathSupport.setVarStack(new JAXPVariableStack(variableResolver));
+        return xpathSupport;
+    }
+
 
     /**
      * <p>Evaluate the compiled XPath expression in the specified context and
@@ -232,8 +379,6 @@ public class XPathExpressionImpl  implements javax.xml.xpath.XPathExpression{
 
 
     static DocumentBuilderFactory dbf = null;
-    static DocumentBuilder db = null;
-    static Document d = null;
 
     /**
      * <p>Evaluate the compiled XPath expression in the context of the 
@@ -286,13 +431,7 @@ public class XPathExpressionImpl  implements javax.xml.xpath.XPathExpression{
             throw new IllegalArgumentException ( fmsg );
         }
         try {
-            if ( dbf == null ) {
-                dbf = DocumentBuilderFactory.newInstance();
-                dbf.setNamespaceAware( true );
-                dbf.setValidating( false );
-            }
-            db = dbf.newDocumentBuilder();
-            Document document = db.parse( source );
+            Document document = newDocumentBuilder().parse( source );
             return eval(  document, returnType );
         } catch ( Exception e ) {
             throw new XPathExpressionException ( e );
@@ -354,7 +493,9 @@ public class XPathExpressionImpl  implements javax.xml.xpath.XPathExpression{
         }
         // XPathConstants.NODESET ---ORdered, UNOrdered???
         if ( returnType.equals( XPathConstants.NODESET ) ) {
-            return resultObject.nodelist();
+            // Copy the nodes, since the DTM behind the result is released
+            // once the evaluation is over
+            return new NodeSet( resultObject.nodeset() );
         }
         // XPathConstants.NODE
         if ( returnType.equals( XPathConstants.NODE ) ) {
@@ -371,26 +512,31 @@ public class XPathExpressionImpl  implements javax.xml.xpath.XPathExpression{
     }
 
 
+    /**
+     * <p>Create a DocumentBuilder. The factory is shared, so this is
+     * synchronized; each caller gets a builder of its own.</p>
+     *
+     * @return A namespace aware, non validating DocumentBuilder.
+     */
+    private static synchronized DocumentBuilder newDocumentBuilder()
+            throws javax.xml.parsers.ParserConfigurationException {
+        if ( dbf == null ) {
+            dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware( true );
+            dbf.setValidating( false );
+        }
+        return dbf.newDocumentBuilder();
+    }
+
     private static Document getDummyDocument( ) {
         try {
-            if ( dbf == null ) {
-                dbf = DocumentBuilderFactory.newInstance();
-                dbf.setNamespaceAware( true );
-                dbf.setValidating( false );
-            }
-            db = dbf.newDocumentBuilder();
-
-            DOMImplementation dim = db.getDOMImplementation();
-            d = dim.createDocument("http://java.sun.com/jaxp/xpath",
+            DOMImplementation dim = newDocumentBuilder().getDOMImplementation();
+            return dim.createDocument("http://java.sun.com/jaxp/xpath",
                 "dummyroot", null);
-            return d;
         } catch ( Exception e ) {
             e.printStackTrace();
         }
         return null;
     }
 
-
-
-
 }
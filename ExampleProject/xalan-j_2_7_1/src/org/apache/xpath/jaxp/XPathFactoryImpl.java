@@ -55,6 +55,18 @@ public  class XPathFactoryImpl extends XPathFactory {
 	 * <p>State of secure processing feature.</p>
 	 */
 	private boolean featureSecureProcessing = false;
+
+	/**
+	 * <p>Name of the feature which compiles the number and boolean
+	 * valued parts of expressions into bytecode.</p>
+	 */
+	static final String FEATURE_COMPILE_XPATH =
+                "http://xml.apache.org/xalan/features/compile-xpath";
+
+	/**
+	 * <p>State of compile XPath feature.</p>
+	 */
+	private boolean featureCompileXPath = false;
 		
 	/**
 	 * <p>Is specified object model supported by this 
@@ -104,7 +116,7 @@ public  class XPathFactoryImpl extends XPathFactory {
 	public javax.xml.xpath.XPath newXPath() {
 	    return new org.apache.xpath.jaxp.XPathImpl(
                     xPathVariableResolver, xPathFunctionResolver,
-                    featureSecureProcessing );
+                    featureSecureProcessing, featureCompileXPath );
 	}
 	    
 	/**
@@ -152,6 +164,15 @@ public  class XPathFactoryImpl extends XPathFactory {
                 // all done processing feature
                 return;
             }
+
+            // compile expressions to bytecode?
+            if (name.equals(FEATURE_COMPILE_XPATH)) {
+
+                featureCompileXPath = value;
+
+                // all done processing feature
+                return;
+            }
 		
             // unknown feature
             String fmsg = XSLMessages.createXPATHMessage(
@@ -198,6 +219,11 @@ public  class XPathFactoryImpl extends XPathFactory {
             if (name.equals(XMLConstants.FEATURE_SECURE_PROCESSING)) {
                 return featureSecureProcessing;
             }
+
+            // compile expressions to bytecode?
+            if (name.equals(FEATURE_COMPILE_XPATH)) {
+                return featureCompileXPath;
+            }
 		
             // unknown feature
             String fmsg = XSLMessages.createXPATHMessage(
@@ -67,6 +67,10 @@ public class XPathImpl implements javax.xml.xpath.XPath {
     // Secure Processing Feature is set on XPathFactory then the invocation of
     // extensions function need to throw XPathFunctionException
     private boolean featureSecureProcessing = false; 
+    // If the compile XPath feature is set on XPathFactory then compiled
+    // expressions have their number and boolean valued parts turned into
+    // bytecode
+    private boolean featureCompileXPath = false;
 
     XPathImpl( XPathVariableResolver vr, XPathFunctionResolver fr ) {
         this.origVariableResolver = this.variableResolver = vr;
@@ -80,6 +84,12 @@ public class XPathImpl implements javax.xml.xpath.XPath {
         this.featureSecureProcessing = featureSecureProcessing;
     }
 
+    XPathImpl( XPathVariableResolver vr, XPathFunctionResolver fr, 
+            boolean featureSecureProcessing, boolean featureCompileXPath ) {
+        this( vr, fr, featureSecureProcessing );
+        this.featureCompileXPath = featureCompileXPath;
+    }
+
     /**
      * <p>Establishes a variable resolver.</p>
      *
@@ -213,6 +223,13 @@ public class XPathImpl implements javax.xml.xpath.XPath {
         
         // If item is null, then we will create a a Dummy contextNode
         if ( contextItem instanceof Node ) {
+            // Evaluate over the cached DTM of the document, if there is one
+            org.apache.xml.dtm.DTMManager cachedManager =
+                org.apache.xpath.DOM2DTMCache.getDefault().getDTMManager(
+                        (Node)contextItem );
+            if ( cachedManager != null ) {
+                xpathSupport.setDTMManager( cachedManager );
+            }
             xobj = xpath.execute (xpathSupport, (Node)contextItem,
                     prefixResolver );
         } else {
@@ -399,6 +416,9 @@ public class XPathImpl implements javax.xml.xpath.XPath {
         try {
             org.apache.xpath.XPath xpath = new XPath (expression, null,
                     prefixResolver, org.apache.xpath.XPath.SELECT );
+            if ( featureCompileXPath ) {
+                org.apache.xpath.compiler.BytecodeCompiler.compile( xpath );
+            }
             // Can have errorListener
             XPathExpressionImpl ximpl = new XPathExpressionImpl (xpath,
                     prefixResolver, functionResolver, variableResolver,
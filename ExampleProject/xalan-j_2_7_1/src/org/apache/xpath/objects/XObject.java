@@ -204,6 +204,16 @@ public class XObject extends Expression implements Serializable, Cloneable
   /** Represents an unresolved variable type as an integer. */
   public static final int CLASS_UNRESOLVEDVARIABLE = 600;
 
+  /**
+   * A constant's type is known before it is evaluated.
+   *
+   * @return The type of this object.
+   */
+  public int getStaticType()
+  {
+    return getType();
+  }
+
   /**
    * Tell what kind of class this is.
    *
@@ -928,19 +928,30 @@ public class XStringForFSB extends XString
     return edit ? xsf.newstr(buf, start, d - start) : this;
   }
 
+  /**
+   * The powers of ten that are exact as doubles.
+   */
+  private static final double[] EXACT_POWERS_OF_TEN =
+  {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+    1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  /**
+   * The largest integer up to which every integer is exact as a double.
+   */
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
   /**
    * Convert a string to a double -- Allowed input is in fixed
    * notation ddd.fff.
    *
-   * %OPT% CHECK PERFORMANCE against generating a Java String and
-   * converting it to double. The advantage of running in native
-   * machine code -- perhaps even microcode, on some systems -- may
-   * more than make up for the cost of allocating and discarding the
-   * additional object. We need to benchmark this. 
-   *
-   * %OPT% More importantly, we need to decide whether we _care_ about
-   * the performance of this operation. Does XString.toDouble constitute
-   * any measurable percentage of our typical runtime? I suspect not!
+   * The characters are read in place from the fsb, so that comparing the
+   * string-value of a node with a number does not copy the value into a
+   * String.  When the digits make an integer that is exact as a double,
+   * and there are no more than 22 digits after the point, the value is
+   * that integer divided by a power of ten, which is rounded correctly.
+   * Other values are converted by Double.
    *
    * @return A double value representation of the string, or return Double.NaN 
    * if the string can not be converted.  */
@@ -948,38 +959,74 @@ public class XStringForFSB extends XString
   {
     if(m_length == 0)
       return Double.NaN;
-    int i;
+
+    FastStringBuffer fsb = fsb();
+    int end = m_start + m_length;
+    int i = m_start;
     char c;
-    String valueString = fsb().getString(m_start,m_length);
-    
+
     // The following are permitted in the Double.valueOf, but not by the XPath spec:
     // - a plus sign
     // - The use of e or E to indicate exponents
     // - trailing f, F, d, or D
-    // See function comments; not sure if this is slower than actually doing the
-    // conversion ourselves (as was before).
     
-    for (i=0;i<m_length;i++)
-      if (!XMLCharacterRecognizer.isWhiteSpace(valueString.charAt(i)))
-        break;
-    if (i == m_length) return Double.NaN;
-    if (valueString.charAt(i) == '-')
+    while (i < end && XMLCharacterRecognizer.isWhiteSpace(fsb.charAt(i)))
+      i++;
+    if (i == end) return Double.NaN;
+
+    boolean negative = false;
+    if (fsb.charAt(i) == '-')
+    {
+      negative = true;
       i++;
-    for (;i<m_length;i++) {
-      c = valueString.charAt(i);
-      if (c != '.' && (c < '0' || c > '9'))
+    }
+
+    long mantissa = 0;
+    boolean exact = true;
+    int digits = 0;
+    int scale = -1;
+
+    for (;i<end;i++) {
+      c = fsb.charAt(i);
+      if (c == '.')
+      {
+        // Double periods can not be converted.
+        if (scale >= 0)
+          return Double.NaN;
+        scale = 0;
+      }
+      else if (c >= '0' && c <= '9')
+      {
+        digits++;
+        if (scale >= 0)
+          scale++;
+        if (exact)
+        {
+          mantissa = mantissa * 10 + (c - '0');
+          exact = (mantissa <= MAX_EXACT_MANTISSA);
+        }
+      }
+      else
         break;
-    }   	    	
-    for (;i<m_length;i++)
-      if (!XMLCharacterRecognizer.isWhiteSpace(valueString.charAt(i)))
+    }
+    for (;i<end;i++)
+      if (!XMLCharacterRecognizer.isWhiteSpace(fsb.charAt(i)))
         break;
-    if (i != m_length)
+    if (i != end || digits == 0)
       return Double.NaN;
-    	
+
+    if (exact && scale < EXACT_POWERS_OF_TEN.length)
+    {
+      double result = (scale > 0)
+                      ? mantissa / EXACT_POWERS_OF_TEN[scale] : mantissa;
+
+      return negative ? -result : result;
+    }
+
     try {
-      return new Double(valueString).doubleValue();
+      return new Double(fsb.getString(m_start, m_length)).doubleValue();
     } catch (NumberFormatException nfe) {
-      // This should catch double periods, empty strings.
+      // can't happen
       return Double.NaN;
     }
   }
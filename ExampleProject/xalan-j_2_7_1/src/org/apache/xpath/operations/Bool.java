@@ -65,4 +65,13 @@ public class Bool extends UnaryOperation
     return m_right.bool(xctxt);
   }
 
+  /**
+   * The boolean conversion always evaluates to a boolean.
+   *
+   * @return XObject.CLASS_BOOLEAN
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_BOOLEAN;
+  }
 }
@@ -64,4 +64,13 @@ public class Div extends Operation
     return (m_left.num(xctxt) / m_right.num(xctxt));
   }
 
+  /**
+   * An arithmetic operation always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
+  }
 }
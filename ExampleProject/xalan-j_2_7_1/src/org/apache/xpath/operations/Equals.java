@@ -49,26 +49,44 @@ public class Equals extends Operation
   }
   
   /**
-   * Execute a binary operation by calling execute on each of the operands,
-   * and then calling the operate method on the derived class.
+   * Execute the comparison, without creating XObjects for the operands
+   * where their static types allow it.
    *
+   * @param xctxt The runtime execution context.
+   *
+   * @return XBoolean.S_TRUE or XBoolean.S_FALSE.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  public XObject execute(XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+    return compare(xctxt, EQ) ? XBoolean.S_TRUE : XBoolean.S_FALSE;
+  }
+
+  /**
+   * Evaluate the comparison directly to a boolean.
    *
    * @param xctxt The runtime execution context.
    *
-   * @return The XObject result of the operation.
+   * @return The result of the comparison.
    *
    * @throws javax.xml.transform.TransformerException
    */
   public boolean bool(XPathContext xctxt)
           throws javax.xml.transform.TransformerException
   {
-    XObject left = m_left.execute(xctxt, true);
-    XObject right = m_right.execute(xctxt, true);
+    return compare(xctxt, EQ);
+  }
 
-    boolean result = left.equals(right) ? true : false;
-	left.detach();
-	right.detach();
-    return result;
+  /**
+   * A comparison always evaluates to a boolean.
+   *
+   * @return XObject.CLASS_BOOLEAN
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_BOOLEAN;
   }
 
 }
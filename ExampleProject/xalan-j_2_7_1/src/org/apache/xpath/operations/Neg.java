@@ -62,4 +62,13 @@ public class Neg extends UnaryOperation
     return -(m_right.num(xctxt));
   }
 
+  /**
+   * Negation always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
+  }
 }
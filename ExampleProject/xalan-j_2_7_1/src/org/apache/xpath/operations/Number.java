@@ -66,4 +66,13 @@ public class Number extends UnaryOperation
     return m_right.num(xctxt);
   }
 
+  /**
+   * The number conversion always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
+  }
 }
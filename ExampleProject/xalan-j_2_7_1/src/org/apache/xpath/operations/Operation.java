@@ -20,10 +20,13 @@
  */
 package org.apache.xpath.operations;
 
+import org.apache.xml.dtm.DTM;
+import org.apache.xml.dtm.DTMIterator;
 import org.apache.xpath.Expression;
 import org.apache.xpath.ExpressionOwner;
 import org.apache.xpath.XPathContext;
 import org.apache.xpath.XPathVisitor;
+import org.apache.xpath.axes.LocPathIterator;
 import org.apache.xpath.objects.XObject;
 
 /**
@@ -132,6 +135,220 @@ public class Operation extends Expression implements ExpressionOwner
     return null;  // no-op
   }
 
+  /** Comparison code for '=', see {@link #compare(XPathContext, int)}. */
+  protected static final int EQ = 0;
+
+  /** Comparison code for '!='. */
+  protected static final int NEQ = 1;
+
+  /** Comparison code for '&lt;'. */
+  protected static final int LT = 2;
+
+  /** Comparison code for '&lt;='. */
+  protected static final int LTE = 3;
+
+  /** Comparison code for '&gt;'. */
+  protected static final int GT = 4;
+
+  /** Comparison code for '&gt;='. */
+  protected static final int GTE = 5;
+
+  /**
+   * Evaluate a comparison of the two operands to a boolean.  When the
+   * static types of the operands allow it, the operands are evaluated
+   * with num() and bool(), and a node-set compared to a number is walked
+   * with a pooled iterator, so no XObject is created.  Otherwise the
+   * operands are executed and compared as XObjects.
+   *
+   * @param xctxt The runtime execution context.
+   * @param op One of EQ, NEQ, LT, LTE, GT or GTE.
+   *
+   * @return The result of the comparison.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  protected boolean compare(XPathContext xctxt, int op)
+          throws javax.xml.transform.TransformerException
+  {
+
+    int lt = m_left.getStaticType();
+    int rt = m_right.getStaticType();
+
+    if (isScalar(lt) && isScalar(rt)
+        || (XObject.CLASS_NODESET == lt && XObject.CLASS_BOOLEAN == rt)
+        || (XObject.CLASS_BOOLEAN == lt && XObject.CLASS_NODESET == rt))
+    {
+      // From http://www.w3.org/TR/xpath: for = and !=, if at least one
+      // object is a boolean, both are converted to booleans; a node-set
+      // compared to a boolean is converted to a boolean in any case.
+      if ((EQ == op || NEQ == op)
+          && (XObject.CLASS_BOOLEAN == lt || XObject.CLASS_BOOLEAN == rt))
+      {
+        boolean b1 = m_left.bool(xctxt);
+        boolean b2 = m_right.bool(xctxt);
+
+        return (EQ == op) ? (b1 == b2) : (b1 != b2);
+      }
+
+      double n1 = scalarNum(m_left, lt, xctxt);
+      double n2 = scalarNum(m_right, rt, xctxt);
+
+      return compareNumbers(op, n1, n2);
+    }
+    else if (XObject.CLASS_NUMBER == rt
+             && m_left instanceof LocPathIterator)
+    {
+      return compareNodes((LocPathIterator) m_left, op,
+                          m_right.num(xctxt), xctxt);
+    }
+    else if (XObject.CLASS_NUMBER == lt
+             && m_right instanceof LocPathIterator)
+    {
+      double n1 = m_left.num(xctxt);
+
+      return compareNodes((LocPathIterator) m_right, reverse(op), n1,
+                          xctxt);
+    }
+
+    XObject left = m_left.execute(xctxt, true);
+    XObject right = m_right.execute(xctxt, true);
+
+    boolean result = operate(left, right).bool();
+    left.detach();
+    right.detach();
+    return result;
+  }
+
+  /**
+   * Tell if a static type is a number or a boolean.
+   *
+   * @param type One of the XObject.CLASS_XXX constants.
+   *
+   * @return true for CLASS_NUMBER and CLASS_BOOLEAN.
+   */
+  private static boolean isScalar(int type)
+  {
+    return XObject.CLASS_NUMBER == type || XObject.CLASS_BOOLEAN == type;
+  }
+
+  /**
+   * Evaluate an operand of a comparison to a number, converting a
+   * boolean or node-set through its boolean value.
+   *
+   * @param expr The operand.
+   * @param type The static type of the operand.
+   * @param xctxt The runtime execution context.
+   *
+   * @return The number to compare.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  private static double scalarNum(Expression expr, int type,
+                                  XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+
+    if (XObject.CLASS_NUMBER == type)
+      return expr.num(xctxt);
+
+    return expr.bool(xctxt) ? 1.0 : 0.0;
+  }
+
+  /**
+   * Compare the nodes selected by a location path to a number.  The
+   * comparison is true if it is true for the number value of some node.
+   *
+   * @param path The location path, as the left operand.
+   * @param op One of EQ, NEQ, LT, LTE, GT or GTE.
+   * @param n2 The number, as the right operand.
+   * @param xctxt The runtime execution context.
+   *
+   * @return The result of the comparison.
+   *
+   * @throws javax.xml.transform.TransformerException
+   */
+  private static boolean compareNodes(LocPathIterator path, int op,
+                                      double n2, XPathContext xctxt)
+          throws javax.xml.transform.TransformerException
+  {
+
+    DTMIterator iter = path.asPooledIterator(xctxt, xctxt.getCurrentNode());
+
+    try
+    {
+      int node;
+
+      while (DTM.NULL != (node = iter.nextNode()))
+      {
+        double n1 = iter.getDTM(node).getStringValue(node).toDouble();
+
+        if (compareNumbers(op, n1, n2))
+          return true;
+      }
+
+      return false;
+    }
+    finally
+    {
+      iter.detach();
+    }
+  }
+
+  /**
+   * Get the comparison which gives the same result with its operands
+   * swapped.
+   *
+   * @param op One of EQ, NEQ, LT, LTE, GT or GTE.
+   *
+   * @return The reversed comparison.
+   */
+  private static int reverse(int op)
+  {
+
+    switch (op)
+    {
+    case LT :
+      return GT;
+    case LTE :
+      return GTE;
+    case GT :
+      return LT;
+    case GTE :
+      return LTE;
+    default :
+      return op;
+    }
+  }
+
+  /**
+   * Compare two numbers.
+   *
+   * @param op One of EQ, NEQ, LT, LTE, GT or GTE.
+   * @param n1 The left number.
+   * @param n2 The right number.
+   *
+   * @return The result of the comparison.
+   */
+  protected static boolean compareNumbers(int op, double n1, double n2)
+  {
+
+    switch (op)
+    {
+    case EQ :
+      return n1 == n2;
+    case NEQ :
+      return n1 != n2;
+    case LT :
+      return n1 < n2;
+    case LTE :
+      return n1 <= n2;
+    case GT :
+      return n1 > n2;
+    default :
+      return n1 >= n2;
+    }
+  }
+
   /** @return the left operand of binary operation, as an Expression.
    */
   public Expression getLeftOperand(){
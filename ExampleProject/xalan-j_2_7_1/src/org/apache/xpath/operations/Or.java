@@ -72,4 +72,13 @@ public class Or extends Operation
     return (m_left.bool(xctxt) || m_right.bool(xctxt));
   }
 
+  /**
+   * A logical operation always evaluates to a boolean.
+   *
+   * @return XObject.CLASS_BOOLEAN
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_BOOLEAN;
+  }
 }
@@ -49,4 +49,14 @@ public class Quo extends Operation
   {
     return new XNumber((int) (left.num() / right.num()));
   }
+
+  /**
+   * An arithmetic operation always evaluates to a number.
+   *
+   * @return XObject.CLASS_NUMBER
+   */
+  public int getStaticType()
+  {
+    return XObject.CLASS_NUMBER;
+  }
 }
@@ -724,6 +724,20 @@ public class StepPattern extends NodeTest implements SubContextList, ExpressionO
 
         try
         {
+          // A predicate known to give a boolean is evaluated without
+          // creating an XObject for its result.
+          if (XObject.CLASS_BOOLEAN == m_predicates[i].getStaticType())
+          {
+            if (!m_predicates[i].bool(xctxt))
+            {
+              result = false;
+
+              break;
+            }
+
+            continue;
+          }
+
           XObject pred = m_predicates[i].execute(xctxt);
 
           try